@@ -0,0 +1,106 @@
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@MediumTest
+public class DatabaseConcurrencyTest {
+	private static final String databaseName = "concurrency_test.db";
+	private static final String tableName = "items";
+	
+	private Context context;
+	private SQLiteOpenHelper databaseHelper;
+	
+	@Before
+	public void setUp() {
+		context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		context.deleteDatabase(databaseName);
+		
+		//Opening a database with write-ahead logging, like DatabaseManager does
+		databaseHelper = new SQLiteOpenHelper(context, databaseName, null, 1) {
+			@Override
+			public void onCreate(SQLiteDatabase database) {
+				database.execSQL("CREATE TABLE " + tableName + " (_id INTEGER PRIMARY KEY, value TEXT);");
+			}
+			
+			@Override
+			public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+			}
+		};
+		databaseHelper.setWriteAheadLoggingEnabled(true);
+		insertItem(databaseHelper.getWritableDatabase(), "committed");
+	}
+	
+	@After
+	public void tearDown() {
+		databaseHelper.close();
+		context.deleteDatabase(databaseName);
+	}
+	
+	@Test
+	public void testReadDuringWriteTransaction() {
+		CountDownLatch transactionStarted = new CountDownLatch(1);
+		CountDownLatch readFinished = new CountDownLatch(1);
+		
+		//Holding a write transaction open on the writer thread until the read has completed
+		Completable write = Completable.fromAction(() -> {
+			SQLiteDatabase database = databaseHelper.getWritableDatabase();
+			database.beginTransaction();
+			try {
+				insertItem(database, "uncommitted");
+				transactionStarted.countDown();
+				readFinished.await(10, TimeUnit.SECONDS);
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
+			}
+		}).subscribeOn(DatabaseSchedulers.write).cache();
+		write.subscribe();
+		assertThat(awaitLatch(transactionStarted)).isTrue();
+		
+		//The read should complete while the transaction is still open, and only see committed rows.
+		//If it had to wait for the transaction, it would time out before the transaction ends.
+		long itemCount = Single.fromCallable(() -> DatabaseUtils.queryNumEntries(databaseHelper.getReadableDatabase(), tableName))
+				.subscribeOn(DatabaseSchedulers.read)
+				.timeout(5, TimeUnit.SECONDS)
+				.blockingGet();
+		readFinished.countDown();
+		assertThat(itemCount).isEqualTo(1L);
+		
+		//The write should then commit normally
+		write.blockingAwait();
+		assertThat(DatabaseUtils.queryNumEntries(databaseHelper.getReadableDatabase(), tableName)).isEqualTo(2L);
+	}
+	
+	private static void insertItem(SQLiteDatabase database, String value) {
+		ContentValues contentValues = new ContentValues();
+		contentValues.put("value", value);
+		database.insertOrThrow(tableName, null, contentValues);
+	}
+	
+	private static boolean awaitLatch(CountDownLatch latch) {
+		try {
+			return latch.await(5, TimeUnit.SECONDS);
+		} catch(InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.enums.ConversationItemType;
+import me.tagavari.airmessage.enums.ConversationState;
+import me.tagavari.airmessage.enums.MessageSendErrorCode;
+import me.tagavari.airmessage.enums.MessageState;
+import me.tagavari.airmessage.enums.ServiceHandler;
+import me.tagavari.airmessage.helper.MessageArchiveHelper;
+import me.tagavari.airmessage.messaging.ConversationInfo;
+import me.tagavari.airmessage.messaging.ConversationItem;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@MediumTest
+public class MessageArchiveRestoreTest {
+	private static final String databaseName = "archive_test.db";
+	private static final long conversationID = 1;
+	
+	//Enough messages for two archive blocks past the items that are always kept
+	private static final int archivedCount = MessageArchiveHelper.blockItemCount * 2;
+	private static final int messageCount = MessageArchiveHelper.minimumHotItems + archivedCount;
+	
+	//An archived message with an attachment and a tapback, in the older block
+	private static final long decoratedMessageID = 5;
+	
+	private Context context;
+	private DatabaseManager databaseManager;
+	
+	@Before
+	public void setUp() {
+		context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		context.deleteDatabase(databaseName);
+		databaseManager = DatabaseManager.createTestInstance(context, databaseName);
+		
+		SQLiteDatabase database = databaseManager.getWritableDatabase();
+		database.beginTransaction();
+		try {
+			ContentValues conversationValues = new ContentValues();
+			conversationValues.put("_id", conversationID);
+			conversationValues.put("guid", "archive-test");
+			conversationValues.put("state", ConversationState.ready);
+			conversationValues.put("service_handler", ServiceHandler.systemMessaging);
+			database.insertOrThrow("conversations", null, conversationValues);
+			
+			//Dating every message long ago, so that all but the latest items can be archived
+			for(int i = 1; i <= messageCount; i++) {
+				ContentValues messageValues = new ContentValues();
+				messageValues.put("_id", (long) i);
+				messageValues.put("chat", conversationID);
+				messageValues.put("date", (long) i);
+				messageValues.put("item_type", ConversationItemType.message);
+				messageValues.put("state", MessageState.sent);
+				messageValues.put("error", MessageSendErrorCode.none);
+				messageValues.put("message_text", "Message " + i);
+				database.insertOrThrow("messages", null, messageValues);
+			}
+			
+			//Attachments without a file are archived along with their message
+			ContentValues attachmentValues = new ContentValues();
+			attachmentValues.put("message", decoratedMessageID);
+			attachmentValues.put("type", "image/png");
+			attachmentValues.put("name", "photo.png");
+			database.insertOrThrow("attachments", null, attachmentValues);
+			
+			ContentValues tapbackValues = new ContentValues();
+			tapbackValues.put("message", decoratedMessageID);
+			tapbackValues.put("message_index", 0);
+			tapbackValues.put("sender", "+15550100");
+			tapbackValues.put("code", 0);
+			database.insertOrThrow("tapback", null, tapbackValues);
+			
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		databaseManager.close();
+		context.deleteDatabase(databaseName);
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		//Archiving the old items should remove them and their attachments and tapbacks from the main tables
+		assertThat(databaseManager.archiveOldConversationItems()).isEqualTo(archivedCount);
+		SQLiteDatabase database = databaseManager.getReadableDatabase();
+		assertThat(DatabaseUtils.queryNumEntries(database, "messages")).isEqualTo((long) MessageArchiveHelper.minimumHotItems);
+		assertThat(DatabaseUtils.queryNumEntries(database, "message_archive")).isEqualTo(2L);
+		assertThat(DatabaseUtils.queryNumEntries(database, "attachments")).isEqualTo(0L);
+		assertThat(DatabaseUtils.queryNumEntries(database, "tapback")).isEqualTo(0L);
+		
+		//Paging through the conversation should restore every item with its original ID
+		assertThat(loadAllItemIDs()).isEqualTo(range(1, messageCount));
+		assertThat(DatabaseUtils.queryNumEntries(database, "message_archive")).isEqualTo(0L);
+		assertThat(DatabaseUtils.queryNumEntries(database, "attachments", "message = ?", new String[]{Long.toString(decoratedMessageID)})).isEqualTo(1L);
+		assertThat(DatabaseUtils.queryNumEntries(database, "tapback", "message = ?", new String[]{Long.toString(decoratedMessageID)})).isEqualTo(1L);
+	}
+	
+	@Test
+	public void testFailedBlock() {
+		assertThat(databaseManager.archiveOldConversationItems()).isEqualTo(archivedCount);
+		
+		//Corrupting the newer block
+		SQLiteDatabase database = databaseManager.getWritableDatabase();
+		database.execSQL("UPDATE message_archive SET data = X'00' WHERE newest_sort = (SELECT MAX(newest_sort) FROM message_archive)");
+		
+		//The corrupted block should be set aside, and the older block behind it should still be restored
+		List<Long> expectedIDs = range(1, MessageArchiveHelper.blockItemCount);
+		expectedIDs.addAll(range(archivedCount + 1, messageCount));
+		assertThat(loadAllItemIDs()).isEqualTo(expectedIDs);
+		assertThat(DatabaseUtils.queryNumEntries(database, "message_archive", "restore_failed != 0", null)).isEqualTo(1L);
+		assertThat(DatabaseUtils.queryNumEntries(database, "attachments", "message = ?", new String[]{Long.toString(decoratedMessageID)})).isEqualTo(1L);
+		
+		//Opening the conversation again shouldn't try the corrupted block again
+		assertThat(loadAllItemIDs()).isEqualTo(expectedIDs);
+	}
+	
+	/**
+	 * Pages through the whole conversation like the message list does, restoring archived items along the way
+	 * @return The IDs of all loaded items, oldest first
+	 */
+	private List<Long> loadAllItemIDs() {
+		ConversationInfo conversationInfo = databaseManager.fetchConversationInfo(context, conversationID);
+		DatabaseManager.ConversationLazyLoader loader = new DatabaseManager.ConversationLazyLoader(databaseManager, conversationInfo);
+		
+		List<Long> itemIDs = new ArrayList<>();
+		while(true) {
+			loader.restoreNextChunk();
+			List<ConversationItem> chunk = loader.loadNextChunk(context);
+			if(chunk.isEmpty()) break;
+			
+			List<Long> chunkIDs = new ArrayList<>();
+			for(ConversationItem item : chunk) chunkIDs.add(item.getLocalID());
+			itemIDs.addAll(0, chunkIDs);
+		}
+		return itemIDs;
+	}
+	
+	private static List<Long> range(long first, long last) {
+		List<Long> list = new ArrayList<>();
+		for(long i = first; i <= last; i++) list.add(i);
+		return list;
+	}
+}
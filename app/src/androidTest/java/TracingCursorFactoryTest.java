@@ -0,0 +1,85 @@
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.tagavari.airmessage.data.QueryTracer;
+import me.tagavari.airmessage.data.TracingCursorFactory;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@SmallTest
+public class TracingCursorFactoryTest {
+	private static final String databaseName = "tracer_test.db";
+	private static final String tableName = "items";
+	private static final int itemCount = 50;
+	
+	private Context context;
+	private SQLiteOpenHelper databaseHelper;
+	
+	@Before
+	public void setUp() {
+		context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		context.deleteDatabase(databaseName);
+		
+		//Opening a database with the tracing cursor factory, like DatabaseManager does
+		databaseHelper = new SQLiteOpenHelper(context, databaseName, new TracingCursorFactory(), 1) {
+			@Override
+			public void onCreate(SQLiteDatabase database) {
+				database.execSQL("CREATE TABLE " + tableName + " (_id INTEGER PRIMARY KEY, value TEXT);");
+			}
+			
+			@Override
+			public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+			}
+		};
+		
+		SQLiteDatabase database = databaseHelper.getWritableDatabase();
+		for(int i = 0; i < itemCount; i++) {
+			ContentValues contentValues = new ContentValues();
+			contentValues.put("value", "item " + i);
+			database.insertOrThrow(tableName, null, contentValues);
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		databaseHelper.close();
+		context.deleteDatabase(databaseName);
+	}
+	
+	@Test
+	public void testQueryBudget() throws Exception {
+		SQLiteDatabase database = databaseHelper.getReadableDatabase();
+		
+		//Reading every row, then counting them again, should only be recorded as one query
+		QueryTracer.Trace<Integer> trace = QueryTracer.trace(() -> {
+			int rowCount = 0;
+			try(Cursor cursor = database.query(tableName, new String[]{"value"}, null, null, null, null, null)) {
+				while(cursor.moveToNext()) rowCount++;
+				assertThat(cursor.getCount()).isEqualTo(rowCount);
+			}
+			return rowCount;
+		});
+		assertThat(trace.getResult()).isEqualTo(itemCount);
+		assertThat(trace.getQueryCount()).isEqualTo(1);
+		assertThat(trace.getQueryCount(QueryTracer.unknownOperation)).isEqualTo(1);
+		assertThat(trace.getStats().get(0).getRowCount()).isEqualTo((long) itemCount);
+		assertThat(trace.getStats().get(0).getTotalNanos()).isGreaterThan(0L);
+		
+		//A cursor that is never read from runs no query, and shouldn't count against the budget
+		QueryTracer.Trace<Boolean> unreadTrace = QueryTracer.trace(() -> {
+			database.query(tableName, null, null, null, null, null, null).close();
+			return true;
+		});
+		assertThat(unreadTrace.getQueryCount()).isEqualTo(0);
+	}
+}
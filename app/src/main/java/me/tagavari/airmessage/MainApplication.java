@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Process;
@@ -19,6 +20,8 @@ import androidx.work.OneTimeWorkRequest;
 import androidx.work.OutOfQuotaPolicy;
 import androidx.work.WorkManager;
 
+import io.reactivex.rxjava3.core.Completable;
+
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.PrintWriter;
@@ -29,18 +32,26 @@ import java.security.Security;
 import me.tagavari.airmessage.activity.CrashReport;
 import me.tagavari.airmessage.activity.Preferences;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
+import me.tagavari.airmessage.data.QueryTracer;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.data.UserCacheHelper;
 import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 import me.tagavari.airmessage.flavor.MapsBridge;
+import me.tagavari.airmessage.helper.AITransport;
 import me.tagavari.airmessage.helper.NotificationHelper;
 import me.tagavari.airmessage.helper.ThemeHelper;
 import me.tagavari.airmessage.redux.ReduxEmitterNetwork;
+import me.tagavari.airmessage.redux.ReduxReceiverAIResponseCache;
 import me.tagavari.airmessage.redux.ReduxReceiverConversationMemory;
 import me.tagavari.airmessage.redux.ReduxReceiverFaceTime;
 import me.tagavari.airmessage.redux.ReduxReceiverNotification;
 import me.tagavari.airmessage.redux.ReduxReceiverShortcut;
+import me.tagavari.airmessage.worker.AttachmentCacheWorker;
+import me.tagavari.airmessage.worker.FileSweepWorker;
+import me.tagavari.airmessage.worker.MessageArchiveWorker;
 import me.tagavari.airmessage.worker.SystemMessageCleanupWorker;
+import me.tagavari.airmessage.worker.SystemMessageSyncWorker;
 
 public class MainApplication extends Application {
 	//Creating the reference values
@@ -62,6 +73,15 @@ public class MainApplication extends Application {
 		}
 	};
 	
+	private final ContentObserver textMessageObserver = new ContentObserver(null) {
+		@Override
+		public void onChange(boolean selfChange) {
+			super.onChange(selfChange);
+			SystemMessageSyncWorker.enqueue(MainApplication.this);
+		}
+	};
+	private boolean textMessageObserverRegistered = false;
+	
 	//Creating the cache helpers
 	private UserCacheHelper userCacheHelper;
 	
@@ -130,9 +150,16 @@ public class MainApplication extends Application {
 		new ReduxReceiverNotification(this).initialize();
 		new ReduxReceiverFaceTime(this).initialize();
 		ReduxReceiverConversationMemory.initialize(this);
+		ReduxReceiverAIResponseCache.initialize(this);
 		
-		//Checking if text message integration is not permitted
-		if(!Preferences.isTextMessageIntegrationActive(this)) {
+		//Checking if text message integration is permitted
+		if(Preferences.isTextMessageIntegrationActive(this)) {
+			//Keeping imported text messages up to date
+			if(SharedPreferencesManager.getTextMessageConversationsInstalled(this)) {
+				registerTextMessageListener();
+				SystemMessageSyncWorker.enqueue(this);
+			}
+		} else {
 			boolean cleanUpMessages = false;
 			//Checking if the toggle is enabled (creating an invalid state)
 			if(Preferences.getPreferenceTextMessageIntegration(this)) {
@@ -157,6 +184,15 @@ public class MainApplication extends Application {
 			}
 		}
 		
+		//Keeping attachment files under the storage quota
+		AttachmentCacheWorker.schedule(this);
+		
+		//Moving old messages out of the main database tables
+		MessageArchiveWorker.schedule(this);
+		
+		//Finishing removing the files of deleted conversations, in case the last sweep was interrupted
+		FileSweepWorker.enqueue(this);
+		
 		//Registering BouncyCastle as a security provider on older versions
 		//Otherwise, Android provides everything we need by default, so we'll just stick with that
 		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
@@ -172,6 +208,11 @@ public class MainApplication extends Application {
 			WebView.setWebContentsDebuggingEnabled(true);
 		}
 		
+		//Restoring database query tracing
+		if(BuildConfig.DEBUG) {
+			QueryTracer.setEnabled(Preferences.getPreferenceQueryTracing(this));
+		}
+		
 		// Initialize Ollama keep-alive if enabled
 		initializeOllamaKeepAlive();
 	}
@@ -204,12 +245,9 @@ public class MainApplication extends Application {
 	}
 	
 	private void sendOllamaKeepAlive(String url) throws Exception {
-		okhttp3.OkHttpClient client = new okhttp3.OkHttpClient.Builder()
-			.connectTimeout(5, java.util.concurrent.TimeUnit.SECONDS)
-			.readTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-			.build();
+		okhttp3.OkHttpClient client = AITransport.newClient(5, 10);
 		
-		okhttp3.Request request = new okhttp3.Request.Builder()
+		okhttp3.Request request = AITransport.asProbe(new okhttp3.Request.Builder())
 			.url(url)
 			.get()
 			.build();
@@ -221,10 +259,7 @@ public class MainApplication extends Application {
 	}
 	
 	private void sendOllamaModelKeepAlive(String baseUrl, String model) throws Exception {
-		okhttp3.OkHttpClient client = new okhttp3.OkHttpClient.Builder()
-			.connectTimeout(5, java.util.concurrent.TimeUnit.SECONDS)
-			.readTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-			.build();
+		okhttp3.OkHttpClient client = AITransport.newClient(5, 10);
 		
 		// Send a keep-alive request to load the model
 		String jsonPayload = "{\"model\":\"" + model + "\",\"keep_alive\":\"5m\"}";
@@ -232,7 +267,7 @@ public class MainApplication extends Application {
 			jsonPayload, okhttp3.MediaType.parse("application/json")
 		);
 		
-		okhttp3.Request request = new okhttp3.Request.Builder()
+		okhttp3.Request request = AITransport.asProbe(new okhttp3.Request.Builder())
 			.url(baseUrl + "/api/generate")
 			.post(body)
 			.build();
@@ -255,6 +290,15 @@ public class MainApplication extends Application {
 		getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contentObserver);
 	}
 	
+	/**
+	 * Starts listening for changes to the system message database, to keep imported text messages up to date
+	 */
+	public void registerTextMessageListener() {
+		if(textMessageObserverRegistered) return;
+		getContentResolver().registerContentObserver(Uri.parse("content://mms-sms/"), true, textMessageObserver);
+		textMessageObserverRegistered = true;
+	}
+	
 	public static boolean canUseContacts(Context context) {
 		//Returning if the permission has been granted
 		return context.checkSelfPermission(android.Manifest.permission.READ_CONTACTS) == PackageManager.PERMISSION_GRANTED;
@@ -264,6 +308,11 @@ public class MainApplication extends Application {
 	public void onTrimMemory(int level) {
 		super.onTrimMemory(level);
 		
+		if(level >= TRIM_MEMORY_UI_HIDDEN) {
+			//Writing pending updates to disk
+			Completable.fromAction(DatabaseManager.getInstance()::flushPendingWrites).subscribeOn(DatabaseSchedulers.write).subscribe();
+		}
+		
 		if(level >= TRIM_MEMORY_BACKGROUND) {
 			//Clearing the caches
 			userCacheHelper.clearCache();
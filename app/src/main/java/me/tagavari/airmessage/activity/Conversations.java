@@ -40,6 +40,8 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -53,11 +55,13 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.ObjIntConsumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -70,7 +74,8 @@ import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleEmitter;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
 import kotlin.Pair;
 import me.tagavari.airmessage.BuildConfig;
 import me.tagavari.airmessage.MainApplication;
@@ -86,6 +91,7 @@ import me.tagavari.airmessage.constants.ColorConstants;
 import me.tagavari.airmessage.constants.ExternalLinkConstants;
 import me.tagavari.airmessage.constants.VersionConstants;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.enums.ConnectionErrorCode;
 import me.tagavari.airmessage.enums.ConnectionState;
@@ -174,6 +180,7 @@ public class Conversations extends AppCompatCompositeActivity {
     private LinearProgressIndicator progressBarSync;
     private ViewGroup viewGroupError;
     private ConversationRecyclerAdapter conversationRecyclerAdapter = null;
+    private BatchingListUpdateCallback conversationListUpdateCallback = null; //Collects changes to the conversation list, so that related changes reach the adapter together
     private final Runnable timeUpdateHandlerRunnable = new Runnable() {
         @Override
         public void run() {
@@ -391,7 +398,8 @@ public class Conversations extends AppCompatCompositeActivity {
 
         pluginRXD.activity().addAll(
                 ReduxEmitterNetwork.getMessageUpdateSubject().subscribe(this::updateConversationList), //Subscribing to messaging updates
-                ReduxEmitterNetwork.getTextImportUpdateSubject().subscribe(this::updateStateTextImport) //Subscribing to message import updates
+                ReduxEmitterNetwork.getTextImportUpdateSubject().subscribe(this::updateStateTextImport), //Subscribing to message import updates
+                viewModel.conversationAppendSubject.subscribe(this::updateConversationListAppended) //Subscribing to conversation page loads
         );
     }
 
@@ -743,6 +751,7 @@ public class Conversations extends AppCompatCompositeActivity {
         if (state == ActivityViewModel.stateReady) {
             //Setting the list adapters
             viewMainList.setAdapter(conversationRecyclerAdapter = new ConversationRecyclerAdapter(viewModel.conversationList));
+            conversationListUpdateCallback = new BatchingListUpdateCallback(new AdapterListUpdateCallback(conversationRecyclerAdapter));
             viewSearchList.setAdapter(searchRecyclerAdapter = new SearchRecyclerAdapter(viewModel.conversationList));
 
             //Restoring the action mode
@@ -878,6 +887,20 @@ public class Conversations extends AppCompatCompositeActivity {
         }
     }
 
+    /**
+     * Updates the list after conversations are appended to the end of the conversation list
+     *
+     * @param startIndex The index of the first appended conversation
+     */
+    private void updateConversationListAppended(int startIndex) {
+        //Ignoring if the list isn't being displayed
+        if (viewModel.stateLD.getValue() != ActivityViewModel.stateReady || conversationRecyclerAdapter == null) return;
+
+        //Updating the list
+        conversationRecyclerAdapter.notifyItemRangeInserted(startIndex, viewModel.conversationList.size() - startIndex);
+        updateMarkAllRead();
+    }
+
     /**
      * Updates the state from a text message import event
      */
@@ -948,7 +971,18 @@ public class Conversations extends AppCompatCompositeActivity {
         if (viewModel.stateLD.getValue() != ActivityViewModel.stateReady || conversationRecyclerAdapter == null)
             return;
 
-        if (event instanceof ReduxEventMessaging.Message) {
+        //Applying the event, then updating the adapter with all of its changes at once
+        applyConversationListEvent(event);
+        conversationListUpdateCallback.dispatchLastEvent();
+    }
+
+    /**
+     * Applies a messaging event to the conversation list, collecting adapter updates in {@link #conversationListUpdateCallback}
+     */
+    private void applyConversationListEvent(ReduxEventMessaging event) {
+        if (event instanceof ReduxEventMessaging.Batch) {
+            for (ReduxEventMessaging batchEvent : ((ReduxEventMessaging.Batch) event).getEvents()) applyConversationListEvent(batchEvent);
+        } else if (event instanceof ReduxEventMessaging.Message) {
             updateMessageListMessageUpdate((ReduxEventMessaging.Message) event);
         } else if (event instanceof ReduxEventMessaging.ConversationUpdate) {
             updateMessageListConversationUpdate((ReduxEventMessaging.ConversationUpdate) event);
@@ -957,7 +991,7 @@ public class Conversations extends AppCompatCompositeActivity {
 
             getConversationFromAction(unreadEvent, (conversation, i) -> {
                 conversation.setUnreadMessageCount(unreadEvent.getUnreadCount());
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadUnread);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadUnread);
             });
 
             updateMarkAllRead();
@@ -969,14 +1003,14 @@ public class Conversations extends AppCompatCompositeActivity {
                     conversation.getMembers().add(memberEvent.getMember().clone());
                 else
                     conversation.getMembers().removeIf(member -> member.getAddress().equals(memberEvent.getMember().getAddress()));
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadMember);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadMember);
             });
         } else if (event instanceof ReduxEventMessaging.ConversationMute) {
             ReduxEventMessaging.ConversationMute muteEvent = (ReduxEventMessaging.ConversationMute) event;
 
             getConversationFromAction(muteEvent, (conversation, i) -> {
                 conversation.setMuted(muteEvent.isMuted());
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadMuted);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadMuted);
             });
         } else if (event instanceof ReduxEventMessaging.ConversationArchive) {
             ReduxEventMessaging.ConversationArchive archiveEvent = (ReduxEventMessaging.ConversationArchive) event;
@@ -995,11 +1029,11 @@ public class Conversations extends AppCompatCompositeActivity {
                 //Adding the conversation
                 int index = ConversationHelper.findInsertionIndex(conversationInfo, viewModel.conversationList);
                 viewModel.conversationList.add(index, conversationInfo);
-                conversationRecyclerAdapter.notifyItemInserted(index);
+                conversationListUpdateCallback.onInserted(index, 1);
             } else { //This conversation is to be removed from the list
                 getConversationFromAction(archiveEvent, (conversation, i) -> {
                     viewModel.conversationList.remove(i);
-                    conversationRecyclerAdapter.notifyItemRemoved(i);
+                    conversationListUpdateCallback.onRemoved(i, 1);
                 });
 
                 //Showing the blank state view if there are no more conversations
@@ -1013,7 +1047,7 @@ public class Conversations extends AppCompatCompositeActivity {
             //Removing the conversation
             getConversationFromAction(deleteEvent, (conversation, i) -> {
                 viewModel.conversationList.remove(i);
-                conversationRecyclerAdapter.notifyItemRemoved(i);
+                conversationListUpdateCallback.onRemoved(i, 1);
             });
 
             //Showing the blank state view if there are no more conversations
@@ -1031,7 +1065,7 @@ public class Conversations extends AppCompatCompositeActivity {
                     continue;
 
                 iterator.remove();
-                conversationRecyclerAdapter.notifyItemRemoved(i);
+                conversationListUpdateCallback.onRemoved(i, 1);
             }
 
             //Showing the blank state view if there are no more conversations
@@ -1043,7 +1077,7 @@ public class Conversations extends AppCompatCompositeActivity {
 
             getConversationFromAction(titleEvent, (conversation, i) -> {
                 conversation.setTitle(titleEvent.getTitle());
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadTitle);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadTitle);
             });
         } else if (event instanceof ReduxEventMessaging.ConversationDraftMessageUpdate) {
             ReduxEventMessaging.ConversationDraftMessageUpdate draftMessageEvent = (ReduxEventMessaging.ConversationDraftMessageUpdate) event;
@@ -1052,7 +1086,7 @@ public class Conversations extends AppCompatCompositeActivity {
                 //Updating the conversation
                 conversation.setDraftMessage(draftMessageEvent.getDraftMessage());
                 conversation.setDraftUpdateTime(draftMessageEvent.getUpdateTime());
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadPreview);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadPreview);
 
                 //Re-sorting the conversation
                 int conversationIndex = viewModel.conversationList.indexOf(conversation);
@@ -1060,7 +1094,7 @@ public class Conversations extends AppCompatCompositeActivity {
                 if (conversationIndex != insertionIndex) {
                     viewModel.conversationList.remove(conversation);
                     viewModel.conversationList.add(insertionIndex, conversation);
-                    conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
+                    conversationListUpdateCallback.onMoved(conversationIndex, insertionIndex);
                 }
             });
         } else if (event instanceof ReduxEventMessaging.ConversationDraftFileUpdate) {
@@ -1073,7 +1107,7 @@ public class Conversations extends AppCompatCompositeActivity {
                 else
                     conversation.getDraftFiles().removeIf(draft -> draft.getLocalID() == draftFileEvent.getDraft().getLocalID());
                 conversation.setDraftUpdateTime(draftFileEvent.getUpdateTime());
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadPreview);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadPreview);
 
                 //Re-sorting the conversation
                 int conversationIndex = viewModel.conversationList.indexOf(conversation);
@@ -1081,7 +1115,7 @@ public class Conversations extends AppCompatCompositeActivity {
                 if (conversationIndex != insertionIndex) {
                     viewModel.conversationList.remove(conversation);
                     viewModel.conversationList.add(insertionIndex, conversation);
-                    conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
+                    conversationListUpdateCallback.onMoved(conversationIndex, insertionIndex);
                 }
             });
         } else if (event instanceof ReduxEventMessaging.ConversationDraftFileClear) {
@@ -1091,7 +1125,7 @@ public class Conversations extends AppCompatCompositeActivity {
                 //Updating the conversation
                 conversation.getDraftFiles().clear();
                 conversation.setDraftUpdateTime(System.currentTimeMillis());
-                conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadPreview);
+                conversationListUpdateCallback.onChanged(i, 1, conversationPayloadPreview);
 
                 //Re-sorting the conversation
                 int conversationIndex = viewModel.conversationList.indexOf(conversation);
@@ -1099,7 +1133,7 @@ public class Conversations extends AppCompatCompositeActivity {
                 if (conversationIndex != insertionIndex) {
                     viewModel.conversationList.remove(conversation);
                     viewModel.conversationList.add(insertionIndex, conversation);
-                    conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
+                    conversationListUpdateCallback.onMoved(conversationIndex, insertionIndex);
                 }
             });
         }
@@ -1143,11 +1177,11 @@ public class Conversations extends AppCompatCompositeActivity {
             if (conversationIndex != insertionIndex) {
                 viewModel.conversationList.remove(conversation);
                 viewModel.conversationList.add(insertionIndex, conversation);
-                conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
+                conversationListUpdateCallback.onMoved(conversationIndex, insertionIndex);
             }
 
             //Updating the conversation preview
-            conversationRecyclerAdapter.notifyItemChanged(insertionIndex, conversationPayloadPreview);
+            conversationListUpdateCallback.onChanged(insertionIndex, 1, conversationPayloadPreview);
         }
     }
 
@@ -1217,7 +1251,7 @@ public class Conversations extends AppCompatCompositeActivity {
 
             //Inserting the conversation
             conversationList.add(insertionIndex, conversationInfo);
-            conversationRecyclerAdapter.notifyItemInserted(insertionIndex);
+            conversationListUpdateCallback.onInserted(insertionIndex, 1);
         }
     }
 
@@ -1411,6 +1445,8 @@ public class Conversations extends AppCompatCompositeActivity {
         static final int stateSyncing = 2;
         static final int stateReady = 3;
         static final int stateError = 4;
+        //The number of conversations to load before showing the list
+        private static final int conversationFirstPageSize = 20;
         //Parameters
         final boolean isViewArchived;
         //State
@@ -1421,6 +1457,8 @@ public class Conversations extends AppCompatCompositeActivity {
         final MutableLiveData<Integer> playServicesErrorCode = new MutableLiveData<>(null);
         final List<Long> actionModeSelections = new ArrayList<>();
         private final CompositeDisposable compositeDisposable = new CompositeDisposable();
+        //Emits the start index of conversations appended to the list after the first page
+        final Subject<Integer> conversationAppendSubject = PublishSubject.create();
         //Data
         List<ConversationInfo> conversationList;
         boolean isSearching = false;
@@ -1458,18 +1496,50 @@ public class Conversations extends AppCompatCompositeActivity {
             //Updating the state
             stateLD.setValue(stateLoading);
 
-            //Loading the conversations
-            compositeDisposable.add(conversationLoadDisposable = Single.create((SingleEmitter<List<ConversationInfo>> emitter) -> {
+            //Loading the first page of conversations
+            compositeDisposable.add(conversationLoadDisposable = Single.create((SingleEmitter<DatabaseManager.ConversationSummaryPage> emitter) -> {
                         //Loading the conversations
-                        emitter.onSuccess(DatabaseManager.getInstance().fetchSummaryConversations(getApplication(), isViewArchived));
-                    }).subscribeOn(Schedulers.single())
+                        emitter.onSuccess(DatabaseManager.getInstance().fetchSummaryConversationPage(getApplication(), isViewArchived, conversationFirstPageSize, null));
+                    }).subscribeOn(DatabaseSchedulers.read)
                     .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe((conversations) -> {
+                    .subscribe((page) -> {
                         //Setting the conversation list
-                        conversationList = conversations;
+                        conversationList = page.getConversations();
 
                         //Setting the state
                         stateLD.setValue(stateReady);
+
+                        //Loading the rest of the conversations if the first page was filled
+                        if (page.getConversations().size() >= conversationFirstPageSize) {
+                            loadRemainingConversations(page.getLastKey());
+                        }
+                    }));
+        }
+
+        /**
+         * Loads the conversations after the first page, and appends them to the conversation list
+         *
+         * @param after The sort key of the last conversation of the first page
+         */
+        private void loadRemainingConversations(DatabaseManager.ConversationSortKey after) {
+            compositeDisposable.add(conversationLoadDisposable = Single.create((SingleEmitter<List<ConversationInfo>> emitter) -> {
+                        //Loading the conversations
+                        emitter.onSuccess(DatabaseManager.getInstance().fetchSummaryConversationPage(getApplication(), isViewArchived, -1, after).getConversations());
+                    }).subscribeOn(DatabaseSchedulers.read)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe((conversations) -> {
+                        //Ignoring conversations that were already added by an update while loading
+                        Set<Long> loadedIDs = new HashSet<>();
+                        for (ConversationInfo conversationInfo : conversationList) loadedIDs.add(conversationInfo.getLocalID());
+
+                        //Appending the conversations
+                        int startIndex = conversationList.size();
+                        for (ConversationInfo conversationInfo : conversations) {
+                            if (!loadedIDs.contains(conversationInfo.getLocalID())) conversationList.add(conversationInfo);
+                        }
+
+                        //Notifying listeners
+                        if (conversationList.size() > startIndex) conversationAppendSubject.onNext(startIndex);
                     }));
         }
 
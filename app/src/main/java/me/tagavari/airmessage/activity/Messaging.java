@@ -102,6 +102,8 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.LinearSmoothScroller;
 import androidx.recyclerview.widget.RecyclerView;
@@ -171,6 +173,7 @@ import me.tagavari.airmessage.constants.ColorConstants;
 import me.tagavari.airmessage.constants.MIMEConstants;
 import me.tagavari.airmessage.constants.TimingConstants;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.AttachmentReqErrorCode;
 import me.tagavari.airmessage.enums.AttachmentType;
 import me.tagavari.airmessage.enums.ConnectionErrorCode;
@@ -356,6 +359,7 @@ public class Messaging extends AppCompatCompositeActivity {
 	private RecyclerView listAttachmentQueue;
 
 	private MessageListRecyclerAdapter messageListAdapter;
+	private BatchingListUpdateCallback messageListUpdateCallback; //Collects changes to the message list, so that related changes reach the adapter together
 
 	//Creating the fragment values
 	private FragmentMessagingAttachments fragmentAttachments;
@@ -812,6 +816,9 @@ public class Messaging extends AppCompatCompositeActivity {
 
 		//Saving the draft message
 		viewModel.applyDraftMessage(messageInputField.getText().toString());
+
+		//Writing pending updates to disk
+		Completable.fromAction(DatabaseManager.getInstance()::flushPendingWrites).subscribeOn(DatabaseSchedulers.write).subscribe();
 	}
 
 	@Override
@@ -869,6 +876,7 @@ public class Messaging extends AppCompatCompositeActivity {
 
 				//Setting the list adapter
 				messageListAdapter = new MessageListRecyclerAdapter(viewModel.conversationItemList);
+				messageListUpdateCallback = new BatchingListUpdateCallback(new AdapterListUpdateCallback(messageListAdapter));
 				messageList.setAdapter(messageListAdapter);
 				messageList.addOnScrollListener(messageListScrollListener);
 				viewModel.conversationActionsLD.observe(this, messageListAdapter::setConversationActions);
@@ -948,7 +956,18 @@ public class Messaging extends AppCompatCompositeActivity {
 		//Ignoring the event if we aren't loaded yet
 		if(viewModel.stateLD.getValue() != ActivityViewModel.stateReady || messageListAdapter == null) return;
 
-		if(event instanceof ReduxEventMessaging.Message) {
+		//Applying the event, then updating the adapter with all of its changes at once
+		applyMessageListEvent(event);
+		messageListUpdateCallback.dispatchLastEvent();
+	}
+
+	/**
+	 * Applies a messaging event to the message list, collecting adapter updates in {@link #messageListUpdateCallback}
+	 */
+	private void applyMessageListEvent(ReduxEventMessaging event) {
+		if(event instanceof ReduxEventMessaging.Batch) {
+			for(ReduxEventMessaging batchEvent : ((ReduxEventMessaging.Batch) event).getEvents()) applyMessageListEvent(batchEvent);
+		} else if(event instanceof ReduxEventMessaging.Message) {
 			ReduxEventMessaging.Message messageEvent = (ReduxEventMessaging.Message) event;
 
 			//Getting the conversation items for this conversation
@@ -995,11 +1014,11 @@ public class Messaging extends AppCompatCompositeActivity {
 						}
 
 						//Updating the adapter
-						messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(i), MessageListPayload.state);
+						messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(i), 1, MessageListPayload.state);
 						if(update != null) {
-							messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(update.getNewMessage())), MessageListPayload.status);
+							messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(update.getNewMessage())), 1, MessageListPayload.status);
 							for(MessageInfo changedMessage : update.getOldMessages()) {
-								messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(changedMessage)), MessageListPayload.status);
+								messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(changedMessage)), 1, MessageListPayload.status);
 							}
 						}
 					});
@@ -1016,7 +1035,7 @@ public class Messaging extends AppCompatCompositeActivity {
 						messageInfo.setErrorDetails(eventError.getErrorDetails());
 
 						//Updating the adapter
-						messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(i), MessageListPayload.state);
+						messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(i), 1, MessageListPayload.state);
 					});
 		} else if(event instanceof ReduxEventMessaging.MessageDelete) {
 			IntStream.range(0, viewModel.conversationItemList.size())
@@ -1027,7 +1046,7 @@ public class Messaging extends AppCompatCompositeActivity {
 						viewModel.conversationItemList.remove(i);
 
 						//Updating the adapter
-						messageListAdapter.notifyItemRemoved(messageListAdapter.mapRecyclerIndex(i));
+						messageListUpdateCallback.onRemoved(messageListAdapter.mapRecyclerIndex(i), 1);
 					});
 		} else if(event instanceof ReduxEventMessaging.AttachmentFile) {
 			ReduxEventMessaging.AttachmentFile attachmentEvent = (ReduxEventMessaging.AttachmentFile) event;
@@ -1052,7 +1071,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			attachment.setDownloadFileType(attachmentEvent.getDownloadType());
 
 			//Updating the adapter
-			messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(messageIndex), new MessageListPayload.Attachment(attachmentIndex));
+			messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(messageIndex), 1, new MessageListPayload.Attachment(attachmentIndex));
 		} else if(event instanceof ReduxEventMessaging.TapbackUpdate) {
 			ReduxEventMessaging.TapbackUpdate tapbackEvent = (ReduxEventMessaging.TapbackUpdate) event;
 
@@ -1081,7 +1100,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			}
 
 			//Updating the adapter
-			messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(messageIndex), new MessageListPayload.Tapback(tapbackEvent.getMetadata().getComponentIndex()));
+			messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(messageIndex), 1, new MessageListPayload.Tapback(tapbackEvent.getMetadata().getComponentIndex()));
 		} else if(event instanceof ReduxEventMessaging.StickerAdd) {
 			ReduxEventMessaging.StickerAdd stickerEvent = (ReduxEventMessaging.StickerAdd) event;
 
@@ -1101,7 +1120,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			component.getStickers().add(stickerEvent.getStickerInfo());
 
 			//Updating the adapter
-			messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(messageIndex), new MessageListPayload.Sticker(stickerEvent.getMetadata().getComponentIndex(), stickerEvent.getStickerInfo()));
+			messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(messageIndex), 1, new MessageListPayload.Sticker(stickerEvent.getMetadata().getComponentIndex(), stickerEvent.getStickerInfo()));
 		} else if(event instanceof ReduxEventMessaging.ReduxConversationAction) {
 			//Ignoring if the event is not relevant to this conversation
 			if(((ReduxEventMessaging.ReduxConversationAction) event).getConversationInfo().getLocalID() != viewModel.conversationInfo.getLocalID()) return;
@@ -1131,7 +1150,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				viewModel.conversationInfo.setConversationColor(colorEvent.getColor());
 				updateUIColor();
 				if(!Preferences.getPreferenceAdvancedColor(Messaging.this)) {
-					messageListAdapter.notifyItemRangeChanged(messageListAdapter.mapRecyclerIndex(0), viewModel.conversationItemList.size(), MessageListPayload.color);
+					messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(0), viewModel.conversationItemList.size(), MessageListPayload.color);
 				}
 			} else if(event instanceof ReduxEventMessaging.ConversationMemberColor) {
 				ReduxEventMessaging.ConversationMemberColor memberColorEvent = (ReduxEventMessaging.ConversationMemberColor) event;
@@ -1145,7 +1164,7 @@ public class Messaging extends AppCompatCompositeActivity {
 						int i = iterator.nextIndex();
 						ConversationItem item = iterator.next();
 						if(item.getItemType() == ConversationItemType.message && memberColorEvent.getMemberInfo().getAddress().equals(((MessageInfo) item).getSender())) {
-							messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(i), MessageListPayload.color);
+							messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(i), 1, MessageListPayload.color);
 						}
 					}
 				});
@@ -1182,8 +1201,8 @@ public class Messaging extends AppCompatCompositeActivity {
 				}
 
 				viewModel.conversationItemList.add(insertIndex, newItem);
-				messageListAdapter.notifyItemInserted(messageListAdapter.mapRecyclerIndex(insertIndex));
-				if(insertIndex > 0 && viewModel.conversationItemList.get(insertIndex - 1).getItemType() == ConversationItemType.message) messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(insertIndex - 1), MessageListPayload.flow);
+				messageListUpdateCallback.onInserted(messageListAdapter.mapRecyclerIndex(insertIndex), 1);
+				if(insertIndex > 0 && viewModel.conversationItemList.get(insertIndex - 1).getItemType() == ConversationItemType.message) messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(insertIndex - 1), 1, MessageListPayload.flow);
 			}
 
 			messageTargetCandidates.addAll(result.getNewItems().stream().filter(item -> item.getItemType() == ConversationItemType.message).map(item -> (MessageInfo) item).collect(Collectors.toList()));
@@ -1206,7 +1225,7 @@ public class Messaging extends AppCompatCompositeActivity {
 					localItem.getAttachments().clear();
 					localItem.getAttachments().addAll(updatedItem.getAttachments());
 
-					messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(localItem)), MessageListPayload.attachmentRebuild);
+					messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(localItem)), 1, MessageListPayload.attachmentRebuild);
 				}
 
 				localItem.setDate(updatedItem.getDate());
@@ -1215,7 +1234,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				localItem.setMessageState(updatedItem.getMessageState());
 				localItem.setErrorDetailsAvailable(updatedItem.isErrorDetailsAvailable());
 				localItem.setDateRead(updatedItem.getDateRead());
-				messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(localItem)), MessageListPayload.state);
+				messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(localItem)), 1, MessageListPayload.state);
 			}
 
 			//Adding new ghost items
@@ -1247,9 +1266,9 @@ public class Messaging extends AppCompatCompositeActivity {
 
 		//Updating the adapter
 		for(MessageTargetUpdate update : messageTargetUpdates) {
-			messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(update.getNewMessage())), MessageListPayload.status);
+			messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(update.getNewMessage())), 1, MessageListPayload.status);
 			for(MessageInfo changedMessage : update.getOldMessages()) {
-				messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(changedMessage)), MessageListPayload.status);
+				messageListUpdateCallback.onChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(changedMessage)), 1, MessageListPayload.status);
 			}
 		}
 
@@ -1267,8 +1286,9 @@ public class Messaging extends AppCompatCompositeActivity {
 			}
 		}
 
-		//Scrolling to the bottom of the list
+		//Scrolling to the bottom of the list, once the adapter knows about the new items
 		if(messageOutgoing || wasScrolledToBottom) {
+			messageListUpdateCallback.dispatchLastEvent();
 			messageListAdapter.scrollToBottom();
 		}
 
@@ -3017,7 +3037,7 @@ public class Messaging extends AppCompatCompositeActivity {
 					View targetView = ((VHMessageStructure) holder).getContainerMessagePart();
 					targetView.post(() -> playScreenEffect(messageInfo.getSendStyle(), targetView));
 					Completable.fromAction(() -> DatabaseManager.getInstance().markSendStyleViewed(messageInfo.getLocalID()))
-							.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()).subscribe();
+							.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread()).subscribe();
 				}
 			}
 			//Otherwise checking if the item is an action
@@ -3316,7 +3336,7 @@ public class Messaging extends AppCompatCompositeActivity {
 							String errorDetails = DatabaseManager.getInstance().getMessageErrorDetails(messageInfo.getLocalID());
 							if(errorDetails != null) emitter.onSuccess(errorDetails);
 							else emitter.onError(new Exception("No error details available"));
-						}).subscribeOn(Schedulers.single())
+						}).subscribeOn(DatabaseSchedulers.read)
 								.observeOn(AndroidSchedulers.mainThread()).subscribe(
 										details -> {
 											//Showing the error details
@@ -3750,8 +3770,22 @@ public class Messaging extends AppCompatCompositeActivity {
 						String finalTargetURL = targetURL;
 						viewHolder.getCompositeDisposable().add(
 								viewModel.taskLinkPreview(component.getLocalID(), targetURL)
-										.observeOn(Schedulers.single())
-										.map(metadata -> {
+										.observeOn(Schedulers.io())
+										.flatMap(metadata -> {
+											//Creating the message preview caption
+											String caption;
+											if(metadata.getSiteName() != null && !metadata.getSiteName().isEmpty()) {
+												caption = metadata.getSiteName();
+											} else {
+												caption = LanguageHelper.getDomainName(finalTargetURL);
+												if(caption == null) {
+													//Updating the message state
+													return Completable.fromAction(() -> DatabaseManager.getInstance().setMessagePreviewState(component.getLocalID(), MessagePreviewState.unavailable))
+															.subscribeOn(DatabaseSchedulers.write)
+															.andThen(Single.<MessagePreviewInfo>error(new IllegalStateException("Cannot find domain name of " + finalTargetURL)));
+												}
+											}
+
 											//Downloading the preview image
 											byte[] imageBytes = null;
 											if(metadata.getImageURL() != null) {
@@ -3766,27 +3800,13 @@ public class Messaging extends AppCompatCompositeActivity {
 												}
 											}
 
-											//Creating the message preview
-											String caption;
-											if(metadata.getSiteName() != null && !metadata.getSiteName().isEmpty()) {
-												caption = metadata.getSiteName();
-											} else {
-												caption = LanguageHelper.getDomainName(finalTargetURL);
-												if(caption == null) {
-													//Updating the message state
-													DatabaseManager.getInstance().setMessagePreviewState(component.getLocalID(), MessagePreviewState.unavailable);
-
-													throw new IllegalStateException("Cannot find domain name of " + finalTargetURL);
-												}
-											}
-
 											//Creating the message preview
 											MessagePreviewInfo messagePreview = new MessagePreviewInfo(MessagePreviewType.link, component.getLocalID(), imageBytes, finalTargetURL, metadata.getTitle(), metadata.getDescription(), caption);
 
 											//Writing the metadata to disk
-											DatabaseManager.getInstance().setMessagePreviewData(component.getLocalID(), messagePreview);
-
-											return messagePreview;
+											return Completable.fromAction(() -> DatabaseManager.getInstance().setMessagePreviewData(component.getLocalID(), messagePreview))
+													.subscribeOn(DatabaseSchedulers.write)
+													.toSingleDefault(messagePreview);
 										})
 										.observeOn(AndroidSchedulers.mainThread())
 										//Updating the state
@@ -3806,7 +3826,7 @@ public class Messaging extends AppCompatCompositeActivity {
 						//Updating the state on disk
 						Completable.create(emitter -> {
 							DatabaseManager.getInstance().setMessagePreviewState(messageInfo.getLocalID(), MessagePreviewState.unavailable);
-						}).subscribeOn(Schedulers.single()).subscribe();
+						}).subscribeOn(DatabaseSchedulers.write).subscribe();
 					}
 				}
 			}
@@ -3843,6 +3863,9 @@ public class Messaging extends AppCompatCompositeActivity {
 
 				//Setting up the content view
 				bindMessageComponentContent(viewHolderStructure, viewHolder, messageInfo, component);
+
+				//Recording the view, so that recently viewed files are kept when attachments use too much storage
+				DatabaseManager.getInstance().updateAttachmentViewed(component.getLocalID(), System.currentTimeMillis());
 			} else {
 				//Getting the current download state
 				BehaviorSubject<ReduxEventAttachmentDownload> downloadObservable = ConnectionTaskManager.getDownload(component.getLocalID());
@@ -3880,7 +3903,7 @@ public class Messaging extends AppCompatCompositeActivity {
 								.subscribe(() -> {
 									component.setShouldAutoDownload(false);
 									Completable.fromAction(() -> DatabaseManager.getInstance().markAttachmentAutoDownloaded(messageInfo.getLocalID()))
-										.subscribeOn(Schedulers.single()).subscribe();
+										.subscribeOn(DatabaseSchedulers.write).subscribe();
 									downloadAttachmentContent(viewHolderStructure, viewHolder, messageInfo, component);
 								})
 						);
@@ -4374,7 +4397,7 @@ public class Messaging extends AppCompatCompositeActivity {
 					AttachmentInfo attachmentInfo = (AttachmentInfo) messageComponent;
 
 					//Deleting the attachment file
-					MessageActionTask.deleteAttachmentFile(messageInfo.getLocalID(), attachmentInfo).subscribe();
+					MessageActionTask.deleteAttachmentFile(Messaging.this, messageInfo.getLocalID(), attachmentInfo).subscribe();
 
 					//Removing the download from the cache
 					ConnectionTaskManager.removeDownload(attachmentInfo.getLocalID());
@@ -5228,7 +5251,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				MessagePreviewInfo messagePreview = DatabaseManager.getInstance().loadMessagePreview(id);
 				if(messagePreview != null) return messagePreview;
 				else throw new RuntimeException("No preview with ID " + id + " found");
-			}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()));
+			}).subscribeOn(DatabaseSchedulers.read).observeOn(AndroidSchedulers.mainThread()));
 		}
 		final TaskManager<FileDisplayMetadata> taskManagerMetadata = new TaskManager<>();
 
@@ -5296,7 +5319,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				DatabaseManager.ConversationLazyLoader lazyLoader = new DatabaseManager.ConversationLazyLoader(DatabaseManager.getInstance(), conversationInfo);
 
 				emitter.onSuccess(new Pair<>(conversationInfo, lazyLoader));
-			}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()).subscribe(result -> applyConversation(result.getFirst(), result.getSecond()), (error) -> {
+			}).subscribeOn(DatabaseSchedulers.read).observeOn(AndroidSchedulers.mainThread()).subscribe(result -> applyConversation(result.getFirst(), result.getSecond()), (error) -> {
 				//Setting the state to failed if the conversation info couldn't be fetched
 				stateLD.setValue(stateFailedConversation);
 			}));
@@ -5313,7 +5336,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				//Finding or creating a matching conversation in Android's SMS / MMS database
 				emitter.onSuccess(Telephony.Threads.getOrCreateThreadId(getApplication(), new HashSet<>(Arrays.asList(conversationParticipantsTarget))));
 			}).subscribeOn(Schedulers.io())
-					.observeOn(Schedulers.single()).map((threadID) -> {
+					.observeOn(DatabaseSchedulers.write).map((threadID) -> {
 						//Finding the conversation in the database
 						ConversationInfo conversationInfo = DatabaseManager.getInstance().findConversationByExternalID(getApplication(), threadID, ServiceHandler.systemMessaging, ServiceType.systemSMS);
 
@@ -5373,8 +5396,9 @@ public class Messaging extends AppCompatCompositeActivity {
 
 			//Loading the messages
 			compositeDisposable.add(
-					Single.fromCallable(() -> conversationLazyLoader.loadNextChunk(getApplication()))
-							.subscribeOn(Schedulers.single())
+					Completable.fromAction(conversationLazyLoader::restoreNextChunk)
+							.subscribeOn(DatabaseSchedulers.write)
+							.andThen(Single.fromCallable(() -> conversationLazyLoader.loadNextChunk(getApplication())).subscribeOn(DatabaseSchedulers.read))
 							.observeOn(AndroidSchedulers.mainThread()).subscribe((result) -> {
 						//Checking if the result is invalid
 						if(result == null) {
@@ -5437,8 +5461,9 @@ public class Messaging extends AppCompatCompositeActivity {
 			//Setting the flags
 			progressiveLoadInProgress.setValue(true);
 
-			compositeDisposable.add(Single.fromCallable(() -> conversationLazyLoader.loadNextChunk(getApplication()))
-					.subscribeOn(Schedulers.single())
+			compositeDisposable.add(Completable.fromAction(conversationLazyLoader::restoreNextChunk)
+					.subscribeOn(DatabaseSchedulers.write)
+					.andThen(Single.fromCallable(() -> conversationLazyLoader.loadNextChunk(getApplication())).subscribeOn(DatabaseSchedulers.read))
 					.observeOn(AndroidSchedulers.mainThread()).subscribe((result) -> {
 						//Checking if there are no new conversation items
 						if(result.isEmpty()) {
@@ -5542,8 +5567,8 @@ public class Messaging extends AppCompatCompositeActivity {
 			//Clearing the conversation's drafts on disk
 			Completable.fromAction(() -> {
 				DatabaseManager.getInstance().clearDraftReferences(conversationIDTarget);
-				DatabaseManager.getInstance().updateConversationDraftMessage(conversationIDTarget, null, -1);
-			}).subscribeOn(Schedulers.single())
+				DatabaseManager.getInstance().queueConversationDraftMessage(conversationIDTarget, null, -1);
+			}).subscribeOn(DatabaseSchedulers.write)
 					.observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.ConversationDraftFileClear(conversationInfo)))
 					.subscribe();
 		}
@@ -5738,7 +5763,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				//Deleting the draft file
 				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameDraft, draft.getFile());
 			}).subscribeOn(Schedulers.io())
-					.observeOn(Schedulers.single())
+					.observeOn(DatabaseSchedulers.write)
 					.doOnComplete(() -> {
 						//Removing the item from the database
 						DatabaseManager.getInstance().removeDraftReference(draft.getLocalID(), updateTime);
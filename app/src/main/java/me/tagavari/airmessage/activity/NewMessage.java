@@ -37,7 +37,6 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import kotlin.Pair;
 import me.tagavari.airmessage.BuildConfig;
@@ -53,6 +52,7 @@ import me.tagavari.airmessage.compositeplugin.PluginRXDisposable;
 import me.tagavari.airmessage.connection.ConnectionManager;
 import me.tagavari.airmessage.constants.ColorConstants;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.ConversationState;
 import me.tagavari.airmessage.enums.ServiceHandler;
 import me.tagavari.airmessage.enums.ServiceType;
@@ -752,14 +752,14 @@ public class NewMessage extends AppCompatCompositeActivity {
 				//Creates the unlinked conversation locally in the event that the server cannot be reached
 				Single<Pair<ConversationInfo, Boolean>> errorConversationSingle = Single.fromCallable(
 						() -> DatabaseManager.getInstance().addRetrieveClientCreatedConversationInfo(getApplication(), participants, ServiceHandler.appleBridge, serviceType)).
-						subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+						subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread());
 
 				if(connectionManager == null) {
 					//Create an unlinked conversation locally
 					conversationSingle = errorConversationSingle;
 				} else {
 					conversationSingle = connectionManager.createChat(participants.toArray(new String[0]), serviceType)
-							.observeOn(Schedulers.single())
+							.observeOn(DatabaseSchedulers.write)
 							//If the server returned a valid result, try to find a matching conversation in the database, or create a new one
 							.map(chatGUID -> DatabaseManager.getInstance().addRetrieveMixedConversationInfoAMBridge(getApplication(), chatGUID, participants, serviceType))
 							//Otherwise, make our own client-side conversation to be linked later
@@ -794,7 +794,7 @@ public class NewMessage extends AppCompatCompositeActivity {
 							//Completing with the conversation
 							return new Pair<>(conversationInfo, false);
 						}
-					}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+					}).subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread());
 				} else {
 					throw new UnsupportedOperationException("Service type " + currentService.serviceType + " is not supported");
 				}
@@ -18,6 +18,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.Settings;
+import android.text.format.Formatter;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
@@ -61,15 +62,18 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.Disposable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
+import me.tagavari.airmessage.BuildConfig;
 import me.tagavari.airmessage.R;
 import me.tagavari.airmessage.composite.AppCompatCompositeActivity;
 import me.tagavari.airmessage.compositeplugin.PluginConnectionService;
@@ -79,11 +83,16 @@ import me.tagavari.airmessage.connection.MassRetrievalParams;
 import me.tagavari.airmessage.constants.ColorConstants;
 import me.tagavari.airmessage.contract.ContractDefaultMessagingApp;
 import me.tagavari.airmessage.contract.ContractNotificationRingtoneSelector;
+import me.tagavari.airmessage.data.AIResponseCache;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.data.MessagesDataHelper;
+import me.tagavari.airmessage.data.QueryTracer;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.enums.ProxyType;
 import me.tagavari.airmessage.flavor.FirebaseAuthBridge;
+import me.tagavari.airmessage.helper.AIRequestScheduler;
+import me.tagavari.airmessage.helper.AITransport;
 import me.tagavari.airmessage.helper.ConversationMemoryManager;
 import me.tagavari.airmessage.helper.LanguageHelper;
 import me.tagavari.airmessage.helper.MMSSMSHelper;
@@ -93,6 +102,7 @@ import me.tagavari.airmessage.helper.ThemeHelper;
 import me.tagavari.airmessage.helper.WindowHelper;
 import me.tagavari.airmessage.receiver.StartBootReceiver;
 import me.tagavari.airmessage.service.ConnectionService;
+import me.tagavari.airmessage.worker.AttachmentCacheWorker;
 
 public class Preferences extends AppCompatCompositeActivity implements PreferenceFragmentCompat.OnPreferenceStartScreenCallback {
 	private static final String TAG = Preferences.class.getSimpleName();
@@ -180,6 +190,9 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 
 	public static class SettingsFragment extends PreferenceFragmentCompat {
 		static final String FRAGMENT_TAG = "preferencefragment";
+		
+		//The maximum amount of operations to show in the query statistics
+		private static final int querySummaryLimit = 20;
 
 		//Creating the callback values
 		private final ActivityResultLauncher<Uri> requestRingtoneLauncher = registerForActivityResult(new ContractNotificationRingtoneSelector(), result -> {
@@ -235,6 +248,7 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 
 		//Creating the subscription values
 		private Disposable syncSubscription;
+		private Disposable attachmentSavingsSubscription;
 
 		// Google Sign-In for AI features
 		private final ActivityResultLauncher<Intent> googleSignInLauncher = registerForActivityResult(
@@ -775,11 +789,107 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 			return true;
 		};
 
+		Preference.OnPreferenceChangeListener attachmentQuotaChangeListener = (preference, newValue) -> {
+			//Trimming attachment files to the new quota
+			AttachmentCacheWorker.enqueue(getContext());
+
+			return true;
+		};
+
+		Preference.OnPreferenceChangeListener queryTracingChangeListener = (preference, newValue) -> {
+			//Starting or stopping query tracing
+			QueryTracer.setEnabled((boolean) newValue);
+			
+			return true;
+		};
+		
+		Preference.OnPreferenceClickListener queryStatsClickListener = preference -> {
+			//Listing the operations that spent the most time querying
+			List<QueryTracer.OperationStats> statsList = QueryTracer.getStats();
+			String message;
+			if(statsList.isEmpty()) {
+				message = getResources().getString(R.string.message_querystats_empty);
+			} else {
+				message = statsList.stream().limit(querySummaryLimit).map(stats -> getResources().getString(R.string.message_querystats_operation,
+						stats.getOperation(),
+						stats.getQueryCount(),
+						stats.getRowCount(),
+						TimeUnit.NANOSECONDS.toMillis(stats.getTotalNanos()),
+						TimeUnit.NANOSECONDS.toMillis(stats.getMaxNanos()))).collect(Collectors.joining("\n\n"));
+			}
+			
+			new MaterialAlertDialogBuilder(getActivity())
+					.setTitle(R.string.preference_debug_querystats_title)
+					.setMessage(message)
+					.setNeutralButton(R.string.action_reset, (dialogInterface, which) -> QueryTracer.reset())
+					.setPositiveButton(R.string.action_close, (dialogInterface, which) -> dialogInterface.dismiss())
+					.create().show();
+			
+			return true;
+		};
+		
+		Preference.OnPreferenceClickListener responseCacheStatsClickListener = preference -> {
+			//Showing how much the AI response cache has saved
+			AIResponseCache responseCache = AIResponseCache.getInstance(getContext());
+			AIResponseCache.Stats stats = responseCache.getStats();
+			String message = getResources().getString(R.string.message_responsecachestats,
+					Math.round(stats.getHitRate() * 100),
+					stats.getHitCount(),
+					stats.getMissCount(),
+					stats.getSavedMillis());
+			
+			new MaterialAlertDialogBuilder(getActivity())
+					.setTitle(R.string.preference_debug_responsecachestats_title)
+					.setMessage(message)
+					.setNeutralButton(R.string.action_reset, (dialogInterface, which) -> responseCache.resetStats())
+					.setPositiveButton(R.string.action_close, (dialogInterface, which) -> dialogInterface.dismiss())
+					.create().show();
+			
+			return true;
+		};
+		
+		Preference.OnPreferenceClickListener aiLatencyStatsClickListener = preference -> {
+			//Listing how long each AI provider takes to respond
+			List<AITransport.LatencyStats> statsList = AITransport.getLatencyStats();
+			String message;
+			if(statsList.isEmpty()) {
+				message = getResources().getString(R.string.message_ailatencystats_empty);
+			} else {
+				message = statsList.stream().map(stats -> getResources().getString(R.string.message_ailatencystats_provider,
+						stats.getProvider(),
+						stats.getRequestCount(),
+						stats.getFailureCount(),
+						stats.getAverageMillis(),
+						stats.getMaxMillis())).collect(Collectors.joining("\n\n"));
+				
+				//Listing how long requests of each priority took, including time spent waiting to be scheduled
+				message += "\n\n" + AIRequestScheduler.getShared().getLatencyStats().stream().map(stats -> getResources().getString(R.string.message_ailatencystats_priority,
+						stats.getPriority().name().toLowerCase(Locale.ROOT),
+						stats.getRequestCount(),
+						stats.getPreemptedCount(),
+						stats.getP50Millis(),
+						stats.getP90Millis(),
+						stats.getP99Millis())).collect(Collectors.joining("\n\n"));
+			}
+			
+			new MaterialAlertDialogBuilder(getActivity())
+					.setTitle(R.string.preference_debug_ailatencystats_title)
+					.setMessage(message)
+					.setNeutralButton(R.string.action_reset, (dialogInterface, which) -> {
+						AITransport.resetLatencyStats();
+						AIRequestScheduler.getShared().resetLatencyStats();
+					})
+					.setPositiveButton(R.string.action_close, (dialogInterface, which) -> dialogInterface.dismiss())
+					.create().show();
+			
+			return true;
+		};
+		
 		Preference.OnPreferenceChangeListener autoDownloadAttachmentsChangeListener = (preference, newValue) -> {
 			//If the user disables auto-download attachments, clear the status in the database
 			if(!((boolean) newValue)) {
 				Completable.fromAction(() -> DatabaseManager.getInstance().clearAutoDownloaded())
-					.subscribeOn(Schedulers.single()).subscribe();
+					.subscribeOn(DatabaseSchedulers.write).subscribe();
 			}
 
 			return true;
@@ -793,6 +903,7 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 			int accountType = SharedPreferencesManager.getProxyType(getContext());
 			if(accountType == ProxyType.direct) addPreferencesFromResource(R.xml.preferences_server);
 			else if(accountType == ProxyType.connect) addPreferencesFromResource(R.xml.preferences_account);
+			if(BuildConfig.DEBUG) addPreferencesFromResource(R.xml.preferences_debug);
 			addPreferencesFromResource(R.xml.preferences_footer);
 
 			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -849,7 +960,27 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 				if(preference != null) preference.setOnPreferenceChangeListener(startOnBootChangeListener);
 			}
 			findPreference(getResources().getString(R.string.preference_storage_deleteattachments_key)).setOnPreferenceClickListener(deleteAttachmentsClickListener);
+			findPreference(getResources().getString(R.string.preference_storage_quota_key)).setOnPreferenceChangeListener(attachmentQuotaChangeListener);
+			{
+				//Showing how much has been saved by sharing attachment files
+				Preference preference = findPreference(getResources().getString(R.string.preference_storage_sharefiles_key));
+				Context context = getContext();
+				attachmentSavingsSubscription = Single.fromCallable(() -> DatabaseManager.getInstance().fetchAttachmentBytesSaved())
+					.subscribeOn(DatabaseSchedulers.read)
+					.observeOn(AndroidSchedulers.mainThread())
+					.subscribe(bytesSaved -> {
+						long bytesAvoided = SharedPreferencesManager.getAttachmentTransferBytesAvoided(context);
+						if(bytesSaved == 0 && bytesAvoided == 0) return;
+						preference.setSummary(getResources().getString(R.string.preference_storage_sharefiles_savings, Formatter.formatShortFileSize(context, bytesSaved), Formatter.formatShortFileSize(context, bytesAvoided)));
+					});
+			}
 			findPreference(getResources().getString(R.string.preference_server_downloadmessages_key)).setOnPreferenceClickListener(syncMessagesClickListener);
+			if(BuildConfig.DEBUG) {
+				findPreference(getResources().getString(R.string.preference_debug_querytracing_key)).setOnPreferenceChangeListener(queryTracingChangeListener);
+				findPreference(getResources().getString(R.string.preference_debug_querystats_key)).setOnPreferenceClickListener(queryStatsClickListener);
+				findPreference(getResources().getString(R.string.preference_debug_responsecachestats_key)).setOnPreferenceClickListener(responseCacheStatsClickListener);
+				findPreference(getResources().getString(R.string.preference_debug_ailatencystats_key)).setOnPreferenceClickListener(aiLatencyStatsClickListener);
+			}
 			
 			// AI Settings button
 			{
@@ -987,6 +1118,7 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 
 			//Cancelling task subscriptions
 			if(syncSubscription != null && !syncSubscription.isDisposed()) syncSubscription.dispose();
+			if(attachmentSavingsSubscription != null && !attachmentSavingsSubscription.isDisposed()) attachmentSavingsSubscription.dispose();
 		}
 
 		void setDarkAMOLEDSamsung() {
@@ -1127,12 +1259,9 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 			// Make API call to get models
 			new Thread(() -> {
 				try {
-					OkHttpClient client = new OkHttpClient.Builder()
-						.connectTimeout(10, TimeUnit.SECONDS)
-						.readTimeout(30, TimeUnit.SECONDS)
-						.build();
+					OkHttpClient client = AITransport.newClient(10, 30);
 
-					Request request = new Request.Builder()
+					Request request = AITransport.asProbe(new Request.Builder())
 						.url(baseUrl + "/api/tags")
 						.get()
 						.build();
@@ -1785,6 +1914,19 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_storage_autodownload_key), true);
 	}
 
+	public static long getPreferenceAttachmentQuota(Context context) {
+		String value = PreferenceManager.getDefaultSharedPreferences(context).getString(context.getResources().getString(R.string.preference_storage_quota_key), "2048");
+		return Long.parseLong(value) * 1024 * 1024;
+	}
+
+	public static boolean getPreferenceQueryTracing(Context context) {
+		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_debug_querytracing_key), false);
+	}
+	
+	public static boolean getPreferenceShareAttachmentFiles(Context context) {
+		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_storage_sharefiles_key), true);
+	}
+	
 	public static boolean getPreferenceSMSDeliveryReports(Context context) {
 		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_textmessage_deliveryreport_key), false);
 	}
@@ -38,6 +38,7 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 
 import me.tagavari.airmessage.R;
+import me.tagavari.airmessage.helper.AITransport;
 import me.tagavari.airmessage.helper.ConversationMemoryManager;
 import me.tagavari.airmessage.helper.TwoFACodeManager;
 
@@ -401,8 +402,8 @@ public class PreferencesAI extends AppCompatActivity implements PreferenceFragme
 			Toast.makeText(getContext(), "Scanning for models...", Toast.LENGTH_SHORT).show();
 
 			// Create HTTP client and request
-			OkHttpClient client = new OkHttpClient();
-			Request request = new Request.Builder()
+			OkHttpClient client = AITransport.getClient();
+			Request request = AITransport.asProbe(new Request.Builder())
 					.url(baseUrl + "/api/tags")
 					.build();
 
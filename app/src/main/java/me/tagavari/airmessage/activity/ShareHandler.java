@@ -25,10 +25,10 @@ import androidx.recyclerview.widget.RecyclerView;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.R;
 import me.tagavari.airmessage.composite.AppCompatCompositeActivity;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.helper.ResourceHelper;
 import me.tagavari.airmessage.helper.ShortcutHelper;
@@ -337,7 +337,7 @@ public class ShareHandler extends AppCompatCompositeActivity {
 			compositeDisposable.add(
 					//Loading the conversations
 					Single.fromCallable(() -> DatabaseManager.getInstance().fetchSummaryConversations(getApplication(), false))
-							.subscribeOn(Schedulers.single())
+							.subscribeOn(DatabaseSchedulers.read)
 							.observeOn(AndroidSchedulers.mainThread())
 							.subscribe((conversations) -> {
 								//Setting the conversation list
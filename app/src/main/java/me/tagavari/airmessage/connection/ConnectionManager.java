@@ -35,6 +35,7 @@ import java.util.stream.Collectors;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.CompletableTransformer;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableTransformer;
 import io.reactivex.rxjava3.core.Scheduler;
@@ -60,6 +61,7 @@ import me.tagavari.airmessage.connection.task.ChatResponseTask;
 import me.tagavari.airmessage.connection.task.MessageUpdateTask;
 import me.tagavari.airmessage.connection.task.ModifierUpdateTask;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.enums.AttachmentReqErrorCode;
 import me.tagavari.airmessage.enums.ChatCreateErrorCode;
@@ -200,7 +202,7 @@ public class ConnectionManager {
 		
 		//Loading pending conversations from the database
 		Single.fromCallable(() -> DatabaseManager.getInstance().fetchConversationsWithState(context, ConversationState.incompleteServer))
-				.observeOn(Schedulers.single())
+				.observeOn(DatabaseSchedulers.write)
 				.subscribeOn(AndroidSchedulers.mainThread())
 				.doOnSuccess(conversations -> {
 					for(ConversationInfo conversation : conversations) {
@@ -416,10 +418,8 @@ public class ConnectionManager {
 					.flatMap(foregroundConversations -> MessageUpdateTask.create(getContext(), foregroundConversations, filteredData, false))
 					.observeOn(AndroidSchedulers.mainThread())
 					.doOnSuccess(response -> {
-						//Emitting any generated events
-						for(ReduxEventMessaging event : response.getEvents()) {
-							ReduxEmitterNetwork.getMessageUpdateSubject().onNext(event);
-						}
+						//Emitting the generated events together
+						ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.Batch(response.getEvents()));
 						
 						//Fetching pending conversations
 						addPendingConversations(response.getIncompleteServerConversations());
@@ -698,13 +698,17 @@ public class ConnectionManager {
 			
 			//Writing modifiers to disk
 			ModifierUpdateTask.create(getContext(), filteredData).doOnSuccess(result -> {
-				//Pushing emitter updates
+				//Collecting emitter updates
+				List<ReduxEventMessaging> events = new ArrayList<>();
 				for(ActivityStatusUpdate statusUpdate : result.getActivityStatusUpdates()) {
-					ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.MessageState(statusUpdate.getMessageID(), statusUpdate.getMessageState(), statusUpdate.getDateRead()));
+					events.add(new ReduxEventMessaging.MessageState(statusUpdate.getMessageID(), statusUpdate.getMessageState(), statusUpdate.getDateRead()));
 				}
-				for(Pair<StickerInfo, ModifierMetadata> sticker : result.getStickerModifiers()) ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.StickerAdd(sticker.getFirst(), sticker.getSecond()));
-				for(Pair<TapbackInfo, ModifierMetadata> tapback : result.getTapbackModifiers()) ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.TapbackUpdate(tapback.getFirst(), tapback.getSecond(), true));
-				for(Pair<TapbackInfo, ModifierMetadata> tapback : result.getTapbackRemovals()) ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.TapbackUpdate(tapback.getFirst(), tapback.getSecond(), false));
+				for(Pair<StickerInfo, ModifierMetadata> sticker : result.getStickerModifiers()) events.add(new ReduxEventMessaging.StickerAdd(sticker.getFirst(), sticker.getSecond()));
+				for(Pair<TapbackInfo, ModifierMetadata> tapback : result.getTapbackModifiers()) events.add(new ReduxEventMessaging.TapbackUpdate(tapback.getFirst(), tapback.getSecond(), true));
+				for(Pair<TapbackInfo, ModifierMetadata> tapback : result.getTapbackRemovals()) events.add(new ReduxEventMessaging.TapbackUpdate(tapback.getFirst(), tapback.getSecond(), false));
+				
+				//Pushing the updates together
+				if(!events.isEmpty()) ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.Batch(events));
 			}).subscribe();
 		}
 		
@@ -1248,6 +1252,23 @@ public class ConnectionManager {
 	 * @return An observable to track the progress of the download, or an {@link AMRequestException} with an {@link AttachmentReqErrorCode}
 	 */
 	public Observable<ReduxEventAttachmentDownload> fetchAttachment(long messageLocalID, long attachmentLocalID, String attachmentGUID, String attachmentName) {
+		//Sharing a saved file with the same contents if there is one, instead of downloading the attachment
+		return Maybe.fromCallable(() -> DatabaseManager.getInstance().linkStoredAttachmentFile(getContext(), attachmentLocalID))
+				.subscribeOn(DatabaseSchedulers.write)
+				.observeOn(AndroidSchedulers.mainThread())
+				.map(storedFile -> {
+					ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.AttachmentFile(messageLocalID, attachmentLocalID, storedFile.getFile(), storedFile.getDownloadFileName(), storedFile.getDownloadFileType()));
+					return (ReduxEventAttachmentDownload) new ReduxEventAttachmentDownload.Complete(storedFile.getFile());
+				})
+				.toObservable()
+				.switchIfEmpty(Observable.defer(() -> downloadAttachment(messageLocalID, attachmentLocalID, attachmentGUID, attachmentName)));
+	}
+	
+	/**
+	 * Downloads the data of an attachment from the server
+	 * @see #fetchAttachment(long, long, String, String)
+	 */
+	private Observable<ReduxEventAttachmentDownload> downloadAttachment(long messageLocalID, long attachmentLocalID, String attachmentGUID, String attachmentName) {
 		final Throwable error = new AMRequestException(AttachmentReqErrorCode.localTimeout);
 		
 		//Failing immediately if there is no network connection
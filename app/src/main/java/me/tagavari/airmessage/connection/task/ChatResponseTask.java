@@ -4,8 +4,8 @@ import android.content.Context;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleEmitter;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.messaging.ConversationInfo;
 import me.tagavari.airmessage.messaging.ConversationItem;
 import me.tagavari.airmessage.messaging.MemberInfo;
@@ -66,7 +66,7 @@ public class ChatResponseTask {
 			}
 			
 			emitter.onSuccess(new Response(availableConversationItems, transferredConversations));
-		}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+		}).subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread());
 	}
 	
 	public static class Response {
@@ -5,10 +5,10 @@ import androidx.annotation.Nullable;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.CheckReturnValue;
 import io.reactivex.rxjava3.core.Single;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.common.Blocks;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.ConversationItemType;
 import me.tagavari.airmessage.enums.ConversationState;
 import me.tagavari.airmessage.enums.GroupAction;
@@ -36,91 +36,94 @@ public class MessageUpdateTask {
 	@CheckReturnValue
 	public static Single<Response> create(Context context, Collection<Long> foregroundConversationIDs, Collection<Blocks.ConversationItem> conversationItems, boolean collectAttachments) {
 		return Single.fromCallable(() -> {
-			//Creating the collector lists
-			List<ReduxEventMessaging> events = new ArrayList<>();
-			List<Pair<ConversationInfo, List<ReplaceInsertResult>>> updatedCompleteConversations = new ArrayList<>();
-			List<ConversationInfo> incompleteServerConversations = new ArrayList<>();
-			List<Pair<MessageInfo, AttachmentInfo>> collectedAttachments = collectAttachments ? new ArrayList<>() : null;
-			
-			//Grouping the messages by conversation and iterating
-			for(Map.Entry<String, List<Blocks.ConversationItem>> entry : conversationItems.stream().collect(Collectors.groupingBy(item -> item.chatGuid)).entrySet()) {
-				//Retrieving / creating the conversation from the database
-				ConversationInfo conversationInfo = DatabaseManager.getInstance().addRetrieveServerCreatedConversationInfo(context, entry.getKey());
-				if(conversationInfo == null) continue;
+			//Writing the whole update in a single transaction
+			return DatabaseManager.getInstance().runInTransaction(() -> {
+				//Creating the collector lists
+				List<ReduxEventMessaging> events = new ArrayList<>();
+				List<Pair<ConversationInfo, List<ReplaceInsertResult>>> updatedCompleteConversations = new ArrayList<>();
+				List<ConversationInfo> incompleteServerConversations = new ArrayList<>();
+				List<Pair<MessageInfo, AttachmentInfo>> collectedAttachments = collectAttachments ? new ArrayList<>() : null;
 				
-				int newIncomingMessageCount = 0;
-				List<ReplaceInsertResult> newItems = conversationInfo.getState() == ConversationState.ready ? new ArrayList<>(entry.getValue().size()) : null;
-				for(Blocks.ConversationItem conversationItem : entry.getValue()) {
-					//Adding the conversation item to the database
-					ReplaceInsertResult replaceInsertResult = DatabaseManager.getInstance().mergeOrWriteConversationItem(context, conversationInfo.getLocalID(), conversationItem, false);
-					if(replaceInsertResult == null) continue;
+				//Grouping the messages by conversation and iterating
+				for(Map.Entry<String, List<Blocks.ConversationItem>> entry : conversationItems.stream().collect(Collectors.groupingBy(item -> item.chatGuid)).entrySet()) {
+					//Retrieving / creating the conversation from the database
+					ConversationInfo conversationInfo = DatabaseManager.getInstance().addRetrieveServerCreatedConversationInfo(context, entry.getKey());
+					if(conversationInfo == null) continue;
 					
-					ConversationItem targetItem = replaceInsertResult.getTargetItem();
-					
-					if(conversationInfo.getState() == ConversationState.ready) {
-						//Adding the conversation item to the complete list
-						newItems.add(replaceInsertResult);
+					int newIncomingMessageCount = 0;
+					List<ReplaceInsertResult> newItems = conversationInfo.getState() == ConversationState.ready ? new ArrayList<>(entry.getValue().size()) : null;
+					for(Blocks.ConversationItem conversationItem : entry.getValue()) {
+						//Adding the conversation item to the database
+						ReplaceInsertResult replaceInsertResult = DatabaseManager.getInstance().mergeOrWriteConversationItem(context, conversationInfo.getLocalID(), conversationItem, false);
+						if(replaceInsertResult == null) continue;
 						
-						//Checking the conversation item's influence
-						if(targetItem.getItemType() == ConversationItemType.member) {
-							//Converting the item to a group action info
-							ChatMemberAction groupActionInfo = (ChatMemberAction) targetItem;
+						ConversationItem targetItem = replaceInsertResult.getTargetItem();
+						
+						if(conversationInfo.getState() == ConversationState.ready) {
+							//Adding the conversation item to the complete list
+							newItems.add(replaceInsertResult);
 							
-							//Adding or removing the member on disk
-							if(groupActionInfo.getOther() != null) {
-								//Creating the member
-								int otherColor = ConversationColorHelper.getNextUserColor(conversationInfo);
-								MemberInfo otherMember = new MemberInfo(groupActionInfo.getOther(), otherColor);
+							//Checking the conversation item's influence
+							if(targetItem.getItemType() == ConversationItemType.member) {
+								//Converting the item to a group action info
+								ChatMemberAction groupActionInfo = (ChatMemberAction) targetItem;
 								
-								if(groupActionInfo.getActionType() == GroupAction.join) {
-									DatabaseManager.getInstance().addConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther(), otherMember.getColor());
-									events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, true));
-								} else if(groupActionInfo.getActionType() == GroupAction.leave) {
-									DatabaseManager.getInstance().removeConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther());
-									events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, false));
+								//Adding or removing the member on disk
+								if(groupActionInfo.getOther() != null) {
+									//Creating the member
+									int otherColor = ConversationColorHelper.getNextUserColor(conversationInfo);
+									MemberInfo otherMember = new MemberInfo(groupActionInfo.getOther(), otherColor);
+									
+									if(groupActionInfo.getActionType() == GroupAction.join) {
+										DatabaseManager.getInstance().addConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther(), otherMember.getColor());
+										events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, true));
+									} else if(groupActionInfo.getActionType() == GroupAction.leave) {
+										DatabaseManager.getInstance().removeConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther());
+										events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, false));
+									}
 								}
+							} else if(targetItem.getItemType() == ConversationItemType.chatRename) {
+								String title = ((ChatRenameAction) targetItem).getTitle();
+								
+								//Writing the new title to the database
+								DatabaseManager.getInstance().updateConversationTitle(conversationInfo.getLocalID(), title);
+								
+								//Adding the event
+								events.add(new ReduxEventMessaging.ConversationTitle(conversationInfo, title));
 							}
-						} else if(targetItem.getItemType() == ConversationItemType.chatRename) {
-							String title = ((ChatRenameAction) targetItem).getTitle();
-							
-							//Writing the new title to the database
-							DatabaseManager.getInstance().updateConversationTitle(conversationInfo.getLocalID(), title);
-							
-							//Adding the event
-							events.add(new ReduxEventMessaging.ConversationTitle(conversationInfo, title));
+						}
+						
+						//Counting the new incoming message count
+						if(targetItem.getItemType() == ConversationItemType.message && !((MessageInfo) targetItem).isOutgoing()) {
+							newIncomingMessageCount++;
+						}
+						
+						if(collectAttachments && targetItem.getItemType() == ConversationItemType.message) {
+							//Adding attachments
+							MessageInfo messageInfo = (MessageInfo) targetItem;
+							collectedAttachments.addAll(messageInfo.getAttachments().stream().map(attachment -> new Pair<>(messageInfo, attachment)).collect(Collectors.toList()));
 						}
 					}
 					
-					//Counting the new incoming message count
-					if(targetItem.getItemType() == ConversationItemType.message && !((MessageInfo) targetItem).isOutgoing()) {
-						newIncomingMessageCount++;
-					}
+					//Updating the conversation values
+					ConversationValueUpdateResult updateResult = ConversationHelper.updateConversationValues(foregroundConversationIDs, conversationInfo, newIncomingMessageCount);
+					events.addAll(updateResult.getEvents(conversationInfo));
 					
-					if(collectAttachments && targetItem.getItemType() == ConversationItemType.message) {
-						//Adding attachments
-						MessageInfo messageInfo = (MessageInfo) targetItem;
-						collectedAttachments.addAll(messageInfo.getAttachments().stream().map(attachment -> new Pair<>(messageInfo, attachment)).collect(Collectors.toList()));
+					//Adding the results
+					if(conversationInfo.getState() == ConversationState.ready) {
+						updatedCompleteConversations.add(new Pair<>(conversationInfo, newItems));
+					} else {
+						incompleteServerConversations.add(conversationInfo);
 					}
 				}
 				
-				//Updating the conversation values
-				ConversationValueUpdateResult updateResult = ConversationHelper.updateConversationValues(foregroundConversationIDs, conversationInfo, newIncomingMessageCount);
-				events.addAll(updateResult.getEvents(conversationInfo));
+				//Adding the message update event
+				events.add(new ReduxEventMessaging.Message(updatedCompleteConversations));
 				
-				//Adding the results
-				if(conversationInfo.getState() == ConversationState.ready) {
-					updatedCompleteConversations.add(new Pair<>(conversationInfo, newItems));
-				} else {
-					incompleteServerConversations.add(conversationInfo);
-				}
-			}
-			
-			//Adding the message update event
-			events.add(new ReduxEventMessaging.Message(updatedCompleteConversations));
-			
-			//Finishing
-			return new Response(events, incompleteServerConversations, collectedAttachments);
-		}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+				//Finishing
+				return new Response(events, incompleteServerConversations, collectedAttachments);
+			});
+		}).subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread());
 	}
 	
 	public static class Response {
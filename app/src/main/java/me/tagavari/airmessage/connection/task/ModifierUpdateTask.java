@@ -4,11 +4,10 @@ import android.content.Context;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.CheckReturnValue;
 import io.reactivex.rxjava3.core.Single;
-import io.reactivex.rxjava3.core.SingleEmitter;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.common.Blocks;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 import me.tagavari.airmessage.messaging.StickerInfo;
 import me.tagavari.airmessage.messaging.TapbackInfo;
@@ -28,62 +27,64 @@ public class ModifierUpdateTask {
 	 */
 	@CheckReturnValue
 	public static Single<Response> create(Context context, Collection<Blocks.ModifierInfo> structModifiers) {
-		return Single.create((SingleEmitter<Response> emitter) -> {
-			//Creating the result lists
-			
-			List<ActivityStatusUpdate> activityStatusUpdates = new ArrayList<>();
-			List<Pair<StickerInfo, ModifierMetadata>> stickerModifiers = new ArrayList<>();
-			List<Pair<TapbackInfo, ModifierMetadata>> tapbackModifiers = new ArrayList<>();
-			List<Pair<TapbackInfo, ModifierMetadata>> tapbackRemovals = new ArrayList<>();
-			
-			//Iterating over the modifiers
-			for(Blocks.ModifierInfo modifierInfo : structModifiers) {
-				//Checking if the modifier is an activity status modifier
-				if(modifierInfo instanceof Blocks.ActivityStatusModifierInfo) {
-					//Casting to the activity status modifier
-					Blocks.ActivityStatusModifierInfo activityStatusModifierInfo = (Blocks.ActivityStatusModifierInfo) modifierInfo;
-					
-					//Finding the message in the database
-					long messageID = DatabaseManager.getInstance().messageGUIDToLocalID(activityStatusModifierInfo.message);
-					if(messageID == -1) continue;
-					
-					//Updating the modifier in the database
-					DatabaseManager.getInstance().updateMessageState(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead);
-					
-					activityStatusUpdates.add(new ActivityStatusUpdate(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead));
-				}
-				//Otherwise checking if the modifier is a sticker update
-				else if(modifierInfo instanceof Blocks.StickerModifierInfo) {
-					//Updating the modifier in the database
-					Blocks.StickerModifierInfo stickerInfo = (Blocks.StickerModifierInfo) modifierInfo;
-					try {
-						Pair<StickerInfo, ModifierMetadata> pair = DatabaseManager.getInstance().addMessageSticker(context, stickerInfo);
-						if(pair != null) stickerModifiers.add(pair);
-					} catch(OutOfMemoryError exception) {
-						exception.printStackTrace();
-						CrashlyticsBridge.recordException(exception);
+		return Single.fromCallable(() -> {
+			//Writing the whole update in a single transaction
+			return DatabaseManager.getInstance().runInTransaction(() -> {
+				//Creating the result lists
+				List<ActivityStatusUpdate> activityStatusUpdates = new ArrayList<>();
+				List<Pair<StickerInfo, ModifierMetadata>> stickerModifiers = new ArrayList<>();
+				List<Pair<TapbackInfo, ModifierMetadata>> tapbackModifiers = new ArrayList<>();
+				List<Pair<TapbackInfo, ModifierMetadata>> tapbackRemovals = new ArrayList<>();
+				
+				//Iterating over the modifiers
+				for(Blocks.ModifierInfo modifierInfo : structModifiers) {
+					//Checking if the modifier is an activity status modifier
+					if(modifierInfo instanceof Blocks.ActivityStatusModifierInfo) {
+						//Casting to the activity status modifier
+						Blocks.ActivityStatusModifierInfo activityStatusModifierInfo = (Blocks.ActivityStatusModifierInfo) modifierInfo;
+						
+						//Finding the message in the database
+						long messageID = DatabaseManager.getInstance().messageGUIDToLocalID(activityStatusModifierInfo.message);
+						if(messageID == -1) continue;
+						
+						//Queuing the modifier to be written to the database
+						DatabaseManager.getInstance().queueMessageState(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead);
+						
+						activityStatusUpdates.add(new ActivityStatusUpdate(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead));
 					}
-				}
-				//Otherwise checking if the modifier is a tapback update
-				else if(modifierInfo instanceof Blocks.TapbackModifierInfo) {
-					//Getting the tapback modifier
-					Blocks.TapbackModifierInfo tapbackModifierInfo = (Blocks.TapbackModifierInfo) modifierInfo;
-					
-					//Updating the modifier in the database
-					if(tapbackModifierInfo.isAddition) {
-						Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().addMessageTapback(tapbackModifierInfo);
-						if(result != null) tapbackModifiers.add(result);
+					//Otherwise checking if the modifier is a sticker update
+					else if(modifierInfo instanceof Blocks.StickerModifierInfo) {
+						//Updating the modifier in the database
+						Blocks.StickerModifierInfo stickerInfo = (Blocks.StickerModifierInfo) modifierInfo;
+						try {
+							Pair<StickerInfo, ModifierMetadata> pair = DatabaseManager.getInstance().addMessageSticker(context, stickerInfo);
+							if(pair != null) stickerModifiers.add(pair);
+						} catch(OutOfMemoryError exception) {
+							exception.printStackTrace();
+							CrashlyticsBridge.recordException(exception);
+						}
 					}
-					//Deleting the modifier from the database
-					else {
-						Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().removeMessageTapback(tapbackModifierInfo);
-						if(result != null) tapbackRemovals.add(result);
+					//Otherwise checking if the modifier is a tapback update
+					else if(modifierInfo instanceof Blocks.TapbackModifierInfo) {
+						//Getting the tapback modifier
+						Blocks.TapbackModifierInfo tapbackModifierInfo = (Blocks.TapbackModifierInfo) modifierInfo;
+						
+						//Updating the modifier in the database
+						if(tapbackModifierInfo.isAddition) {
+							Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().addMessageTapback(tapbackModifierInfo);
+							if(result != null) tapbackModifiers.add(result);
+						}
+						//Deleting the modifier from the database
+						else {
+							Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().removeMessageTapback(tapbackModifierInfo);
+							if(result != null) tapbackRemovals.add(result);
+						}
 					}
 				}
-			}
-			
-			emitter.onSuccess(new Response(activityStatusUpdates, stickerModifiers, tapbackModifiers, tapbackRemovals));
-		}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+				
+				return new Response(activityStatusUpdates, stickerModifiers, tapbackModifiers, tapbackRemovals);
+			});
+		}).subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread());
 	}
 	
 	public static class Response {
@@ -0,0 +1,251 @@
+package me.tagavari.airmessage.data
+
+import android.content.Context
+import java.io.*
+import java.security.MessageDigest
+import java.util.concurrent.Callable
+
+/**
+ * Caches AI provider responses in memory and on disk, so identical requests don't have to be computed again
+ *
+ * Responses are keyed by feature, model and a hash of the normalized input, and are grouped by the conversation they were
+ * generated for, so they can be invalidated when the conversation changes.
+ *
+ * @param directory The directory to store cached responses in, or NULL to only cache in memory
+ * @param memoryCapacity The maximum number of responses to keep in memory
+ * @param diskCapacity The maximum number of responses to keep on disk
+ * @param ttlMillis How long a cached response can be used for
+ * @param clock Gets the current time in milliseconds
+ */
+class AIResponseCache @JvmOverloads constructor(
+	private val directory: File?,
+	private val memoryCapacity: Int = defaultMemoryCapacity,
+	private val diskCapacity: Int = defaultDiskCapacity,
+	private val ttlMillis: Long = defaultTtlMillis,
+	private val clock: () -> Long = System::currentTimeMillis
+) {
+	private val memoryCache = object : LinkedHashMap<String, Entry>(16, 0.75F, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>): Boolean = size > memoryCapacity
+	}
+
+	//Incremented whenever responses are invalidated, so responses that were being read or computed meanwhile aren't cached
+	private var generation = 0
+
+	private var hitCount = 0
+	private var missCount = 0
+	private var savedMillis = 0L
+
+	/**
+	 * A cached response
+	 * @param conversationID The ID of the conversation the response was generated for, or -1 if it isn't tied to a conversation
+	 * @param value The response
+	 * @param createTime The time the response was generated
+	 * @param computeMillis How long it took to generate the response
+	 */
+	private class Entry(val conversationID: Long, val value: String, val createTime: Long, val computeMillis: Long)
+
+	/**
+	 * Statistics about the cache's usage
+	 * @param hitCount The number of requests served from the cache
+	 * @param missCount The number of requests that had to be computed
+	 * @param savedMillis The total time that would have been spent computing the requests served from the cache
+	 */
+	class Stats(val hitCount: Int, val missCount: Int, val savedMillis: Long) {
+		/**
+		 * The fraction of requests served from the cache
+		 */
+		val hitRate: Float
+			get() = if(hitCount + missCount == 0) 0F else hitCount.toFloat() / (hitCount + missCount)
+	}
+
+	/**
+	 * Gets a cached response, or computes and caches it if it isn't available
+	 * @param feature The name of the feature making the request
+	 * @param model The provider and model that generates the response
+	 * @param conversationID The ID of the conversation the request is for, or -1 if it isn't tied to a conversation
+	 * @param input The input to the model
+	 * @param compute Generates the response
+	 * @return The response
+	 */
+	fun getOrCompute(feature: String, model: String, conversationID: Long, input: String, compute: Callable<String>): String {
+		val key = getKey(feature, model, input)
+
+		//Checking the memory cache, then the disk cache outside of the lock
+		val startGeneration: Int
+		val memoryEntry = synchronized(this) {
+			startGeneration = generation
+			memoryCache[key]
+		}
+		val entry = memoryEntry ?: readEntry(conversationID, key)?.also { diskEntry ->
+			synchronized(this) {
+				if(startGeneration == generation) memoryCache[key] = diskEntry
+			}
+		}
+
+		val cachedEntry = entry?.takeIf { clock() - it.createTime < ttlMillis }
+		synchronized(this) {
+			if(cachedEntry != null) {
+				hitCount++
+				savedMillis += cachedEntry.computeMillis
+			} else {
+				missCount++
+			}
+		}
+		if(cachedEntry != null) return cachedEntry.value
+
+		//Computing the response
+		val startTime = System.nanoTime()
+		val value = compute.call()
+		val newEntry = Entry(conversationID, value, clock(), (System.nanoTime() - startTime) / 1_000_000)
+
+		//Caching the response, unless the cache was invalidated while it was being computed
+		val isCurrent = synchronized(this) {
+			(startGeneration == generation).also { if(it) memoryCache[key] = newEntry }
+		}
+		if(isCurrent) {
+			val file = writeEntry(key, newEntry)
+
+			//Removing the file again if the cache was invalidated while it was being written
+			if(file != null && synchronized(this) { startGeneration != generation }) file.delete()
+		}
+
+		return value
+	}
+
+	/**
+	 * Removes all cached responses for a conversation
+	 */
+	fun invalidateConversation(conversationID: Long) {
+		synchronized(this) {
+			generation++
+			memoryCache.values.removeAll { it.conversationID == conversationID }
+		}
+		directory?.let { File(it, getGroupName(conversationID)).deleteRecursively() }
+	}
+
+	/**
+	 * Removes all cached responses
+	 */
+	fun clear() {
+		synchronized(this) {
+			generation++
+			memoryCache.clear()
+		}
+		directory?.deleteRecursively()
+	}
+
+	/**
+	 * Gets statistics about the cache's usage since it was created, or since they were last reset
+	 */
+	fun getStats(): Stats {
+		return synchronized(this) {
+			Stats(hitCount, missCount, savedMillis)
+		}
+	}
+
+	/**
+	 * Resets the cache's usage statistics
+	 */
+	fun resetStats() {
+		synchronized(this) {
+			hitCount = 0
+			missCount = 0
+			savedMillis = 0
+		}
+	}
+
+	private fun readEntry(conversationID: Long, key: String): Entry? {
+		val file = File(directory ?: return null, getGroupName(conversationID) + File.separator + key)
+		if(!file.exists()) return null
+
+		return try {
+			DataInputStream(BufferedInputStream(FileInputStream(file))).use { stream ->
+				val createTime = stream.readLong()
+				val computeMillis = stream.readLong()
+				val value = ByteArray(stream.readInt()).also { stream.readFully(it) }.toString(Charsets.UTF_8)
+				Entry(conversationID, value, createTime, computeMillis)
+			}
+		} catch(exception: IOException) {
+			file.delete()
+			null
+		}
+	}
+
+	/**
+	 * Writes a response to the disk cache, and removes the oldest responses if the disk cache is full
+	 * @return The file the response was written to, or NULL if it couldn't be written
+	 */
+	private fun writeEntry(key: String, entry: Entry): File? {
+		val groupDirectory = File(directory ?: return null, getGroupName(entry.conversationID))
+		if(!groupDirectory.exists() && !groupDirectory.mkdirs()) return null
+
+		//Writing to a temporary file first, so readers never see a partially written response
+		val file = File(groupDirectory, key)
+		try {
+			val tempFile = File.createTempFile(key, tempFileSuffix, groupDirectory)
+			DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { stream ->
+				stream.writeLong(entry.createTime)
+				stream.writeLong(entry.computeMillis)
+				val bytes = entry.value.toByteArray(Charsets.UTF_8)
+				stream.writeInt(bytes.size)
+				stream.write(bytes)
+			}
+			if(!tempFile.renameTo(file)) {
+				tempFile.delete()
+				return null
+			}
+		} catch(exception: IOException) {
+			return null
+		}
+
+		//Removing the oldest responses if the disk cache is full
+		val files = directory.listFiles()?.flatMap { it.listFiles()?.filter { file -> !file.name.endsWith(tempFileSuffix) } ?: emptyList() } ?: return file
+		if(files.size > diskCapacity) {
+			files.sortedBy { it.lastModified() }.take(files.size - diskCapacity).forEach { it.delete() }
+		}
+
+		return file
+	}
+
+	companion object {
+		//The default size limits of the cache
+		const val defaultMemoryCapacity = 64
+		const val defaultDiskCapacity = 256
+
+		//How long a cached response is used for by default
+		const val defaultTtlMillis = 24 * 60 * 60 * 1000L
+
+		private const val directoryName = "ai_responses"
+		private const val tempFileSuffix = ".tmp"
+
+		@Volatile
+		private var instance: AIResponseCache? = null
+
+		/**
+		 * Gets the shared response cache, which stores responses in the app's cache directory
+		 */
+		@JvmStatic
+		fun getInstance(context: Context): AIResponseCache {
+			return instance ?: synchronized(this) {
+				instance ?: AIResponseCache(File(context.cacheDir, directoryName)).also { instance = it }
+			}
+		}
+
+		/**
+		 * Normalizes a model input, so inputs that only differ by whitespace share a cache entry
+		 */
+		@JvmStatic
+		fun normalizeInput(input: String): String = input.trim().replace(Regex("\\s+"), " ")
+
+		/**
+		 * Gets the cache key for a request
+		 */
+		@JvmStatic
+		fun getKey(feature: String, model: String, input: String): String {
+			val digest = MessageDigest.getInstance("SHA-256").digest("$feature\n$model\n${normalizeInput(input)}".toByteArray(Charsets.UTF_8))
+			return digest.joinToString("") { "%02x".format(it) }
+		}
+
+		private fun getGroupName(conversationID: Long) = if(conversationID == -1L) "global" else conversationID.toString()
+	}
+}
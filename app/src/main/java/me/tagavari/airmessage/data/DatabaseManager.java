@@ -3,15 +3,19 @@ package me.tagavari.airmessage.data;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 import android.util.Base64;
 import android.util.LongSparseArray;
 import android.webkit.MimeTypeMap;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import kotlin.Pair;
 import me.tagavari.airmessage.MainApplication;
 import me.tagavari.airmessage.activity.Messaging;
@@ -23,9 +27,11 @@ import me.tagavari.airmessage.helper.*;
 import me.tagavari.airmessage.messaging.*;
 import me.tagavari.airmessage.util.ModifierMetadata;
 import me.tagavari.airmessage.util.ReplaceInsertResult;
+import me.tagavari.airmessage.worker.FileSweepWorker;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -35,7 +41,7 @@ import java.util.zip.Inflater;
 public class DatabaseManager extends SQLiteOpenHelper {
 	//If you change the database schema, you must increment the database version
 	private static final String DATABASE_NAME = "messages.db";
-	private static final int DATABASE_VERSION = 16;
+	private static final int DATABASE_VERSION = 25;
 	
 	//Creating the fetch statements
 	/* private static final String SQL_FETCH_CONVERSATIONS = "SELECT * FROM (" +
@@ -104,7 +110,8 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			Contract.MessageEntry.COLUMN_NAME_PREVIEW_STATE + " INTEGER DEFAULT 0," +
 			Contract.MessageEntry.COLUMN_NAME_PREVIEW_ID + " INTEGER," +
 			Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED + " INTEGER," +
-			Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + " INTEGER" +
+			Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + " INTEGER," +
+			Contract.MessageEntry.COLUMN_NAME_GHOSTHASH + " INTEGER" +
 			");";
 	private static final String SQL_CREATE_TABLE_CONVERSATIONS = "CREATE TABLE " + Contract.ConversationEntry.TABLE_NAME + " (" +
 			Contract.ConversationEntry._ID + " INTEGER PRIMARY KEY UNIQUE, " +
@@ -148,7 +155,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE + " TEXT," +
 			Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME + " TEXT," +
 			Contract.AttachmentEntry.COLUMN_NAME_SORT + " INTEGER, " +
-			Contract.AttachmentEntry.COLUMN_NAME_SHOULDAUTODOWNLOAD + " INTEGER NOT NULL DEFAULT 0" +
+			Contract.AttachmentEntry.COLUMN_NAME_SHOULDAUTODOWNLOAD + " INTEGER NOT NULL DEFAULT 0," +
+			Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH + " INTEGER," +
+			Contract.AttachmentEntry.COLUMN_NAME_LASTVIEWED + " INTEGER" +
 			");";
 	private static final String SQL_CREATE_TABLE_MESSAGEPREVIEW = "CREATE TABLE " + Contract.MessagePreviewEntry.TABLE_NAME + " (" +
 			Contract.MessagePreviewEntry._ID + " INTEGER PRIMARY KEY UNIQUE," +
@@ -184,6 +193,163 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			Contract.TwoFACodeEntry.COLUMN_NAME_TIMESTAMP + " INTEGER NOT NULL," +
 			Contract.TwoFACodeEntry.COLUMN_NAME_IS_USED + " INTEGER NOT NULL DEFAULT 0" +
 			");";
+	private static final String SQL_CREATE_TABLE_CONVERSATIONSUMMARY = "CREATE TABLE " + Contract.ConversationSummaryEntry.TABLE_NAME + " (" +
+			Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + " INTEGER PRIMARY KEY," +
+			Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWID + " INTEGER," +
+			Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWDATE + " INTEGER," +
+			Contract.ConversationSummaryEntry.COLUMN_NAME_SORTTIME + " INTEGER NOT NULL DEFAULT 0," +
+			Contract.ConversationSummaryEntry.COLUMN_NAME_MEMBERS + " TEXT" +
+			");";
+	private static final String SQL_CREATE_TABLE_MESSAGEARCHIVE = "CREATE TABLE " + Contract.MessageArchiveEntry.TABLE_NAME + " (" +
+			Contract.MessageArchiveEntry._ID + " INTEGER PRIMARY KEY," +
+			Contract.MessageArchiveEntry.COLUMN_NAME_CHAT + " INTEGER NOT NULL," +
+			Contract.MessageArchiveEntry.COLUMN_NAME_NEWESTSORT + " INTEGER NOT NULL," +
+			Contract.MessageArchiveEntry.COLUMN_NAME_ITEMCOUNT + " INTEGER NOT NULL," +
+			Contract.MessageArchiveEntry.COLUMN_NAME_DATA + " BLOB NOT NULL," +
+			Contract.MessageArchiveEntry.COLUMN_NAME_RESTOREFAILED + " INTEGER NOT NULL DEFAULT 0" +
+			");";
+	private static final String SQL_CREATE_TABLE_FILETRASH = "CREATE TABLE " + Contract.FileTrashEntry.TABLE_NAME + " (" +
+			Contract.FileTrashEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+			Contract.FileTrashEntry.COLUMN_NAME_DIRECTORY + " TEXT NOT NULL," +
+			Contract.FileTrashEntry.COLUMN_NAME_PATH + " TEXT NOT NULL" +
+			");";
+	private static final String SQL_CREATE_TABLE_CONVERSATIONMEMORY = "CREATE TABLE " + Contract.ConversationMemoryEntry.TABLE_NAME + " (" +
+			Contract.ConversationMemoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_MEMORYID + " TEXT NOT NULL," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONGUID + " TEXT NOT NULL," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONTITLE + " TEXT," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_EXTRACTEDINFO + " TEXT NOT NULL," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_ORIGINALMESSAGE + " TEXT NOT NULL," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_SENDERNAME + " TEXT," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP + " INTEGER NOT NULL," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_CATEGORY + " TEXT NOT NULL," +
+			Contract.ConversationMemoryEntry.COLUMN_NAME_CONFIDENCE + " REAL NOT NULL," +
+			"UNIQUE (" + Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONGUID + ", " + Contract.ConversationMemoryEntry.COLUMN_NAME_ORIGINALMESSAGE + ")" +
+			");";
+	
+	//Creating the index creation statements
+	private static final String[] SQL_CREATE_INDICES = new String[] {
+			"CREATE INDEX IF NOT EXISTS messages_chat_sort ON " + Contract.MessageEntry.TABLE_NAME + " (" + Contract.MessageEntry.COLUMN_NAME_CHAT + ", " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED + ", " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + ");",
+			"CREATE INDEX IF NOT EXISTS messages_chat_date ON " + Contract.MessageEntry.TABLE_NAME + " (" + Contract.MessageEntry.COLUMN_NAME_CHAT + ", " + Contract.MessageEntry.COLUMN_NAME_DATE + ");",
+			"CREATE INDEX IF NOT EXISTS users_chat ON " + Contract.MemberEntry.TABLE_NAME + " (" + Contract.MemberEntry.COLUMN_NAME_CHAT + ");",
+			"CREATE INDEX IF NOT EXISTS draft_files_chat ON " + Contract.DraftFileEntry.TABLE_NAME + " (" + Contract.DraftFileEntry.COLUMN_NAME_CHAT + ");",
+			"CREATE INDEX IF NOT EXISTS attachments_message ON " + Contract.AttachmentEntry.TABLE_NAME + " (" + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + ");",
+			"CREATE INDEX IF NOT EXISTS conversation_summary_sort ON " + Contract.ConversationSummaryEntry.TABLE_NAME + " (" + Contract.ConversationSummaryEntry.COLUMN_NAME_SORTTIME + " DESC);"
+	};
+	
+	//Creating the ghost message lookup indices (partial, so that they only cover rows that can be matched)
+	private static final String[] SQL_CREATE_INDICES_GHOST = new String[] {
+			"CREATE INDEX IF NOT EXISTS messages_ghost_hash ON " + Contract.MessageEntry.TABLE_NAME + " (" + Contract.MessageEntry.COLUMN_NAME_CHAT + ", " + Contract.MessageEntry.COLUMN_NAME_GHOSTHASH + ")" +
+					" WHERE " + Contract.MessageEntry.COLUMN_NAME_GHOSTHASH + " IS NOT NULL AND " + Contract.MessageEntry.COLUMN_NAME_STATE + " = " + MessageState.ghost + ";",
+			"CREATE INDEX IF NOT EXISTS attachments_checksum_hash ON " + Contract.AttachmentEntry.TABLE_NAME + " (" + Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH + ")" +
+					" WHERE " + Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH + " IS NOT NULL;"
+	};
+	
+	//Creating the attachment file reference index
+	private static final String[] SQL_CREATE_INDICES_ATTACHMENTSTORE = new String[] {
+			"CREATE INDEX IF NOT EXISTS attachments_path ON " + Contract.AttachmentEntry.TABLE_NAME + " (" + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + ")" +
+					" WHERE " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL;"
+	};
+	
+	//Creating the message archive index
+	private static final String[] SQL_CREATE_INDICES_MESSAGEARCHIVE = new String[] {
+			"CREATE INDEX IF NOT EXISTS message_archive_chat ON " + Contract.MessageArchiveEntry.TABLE_NAME + " (" + Contract.MessageArchiveEntry.COLUMN_NAME_CHAT + ", " + Contract.MessageArchiveEntry.COLUMN_NAME_NEWESTSORT + ");"
+	};
+	
+	//Creating the message date index, used to page through messages across all conversations
+	private static final String[] SQL_CREATE_INDICES_MESSAGEDATE = new String[] {
+			"CREATE INDEX IF NOT EXISTS messages_date ON " + Contract.MessageEntry.TABLE_NAME + " (" + Contract.MessageEntry.COLUMN_NAME_DATE + ", " + Contract.MessageEntry._ID + ")" +
+					" WHERE " + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " = " + ConversationItemType.message + ";"
+	};
+	
+	//Creating the conversation memory index, used to find the oldest memories
+	private static final String[] SQL_CREATE_INDICES_CONVERSATIONMEMORY = new String[] {
+			"CREATE INDEX IF NOT EXISTS conversation_memory_timestamp ON " + Contract.ConversationMemoryEntry.TABLE_NAME + " (" + Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP + ");"
+	};
+	
+	//Creating the conversation summary triggers
+	private static final String[] SQL_CREATE_TRIGGERS_CONVERSATIONSUMMARY = new String[] {
+			"CREATE TRIGGER summary_conversation_insert AFTER INSERT ON " + Contract.ConversationEntry.TABLE_NAME + " BEGIN " +
+					"INSERT OR REPLACE INTO " + Contract.ConversationSummaryEntry.TABLE_NAME + " (" + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + ") VALUES (NEW." + Contract.ConversationEntry._ID + ");" +
+					buildSummaryRefreshPreviewSQL("NEW." + Contract.ConversationEntry._ID) +
+					buildSummaryRefreshMembersSQL("NEW." + Contract.ConversationEntry._ID) +
+					" END;",
+			"CREATE TRIGGER summary_conversation_delete AFTER DELETE ON " + Contract.ConversationEntry.TABLE_NAME + " BEGIN " +
+					"DELETE FROM " + Contract.ConversationSummaryEntry.TABLE_NAME + " WHERE " + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + " = OLD." + Contract.ConversationEntry._ID + ";" +
+					" END;",
+			"CREATE TRIGGER summary_conversation_update AFTER UPDATE OF " + Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER + ", " + Contract.ConversationEntry.COLUMN_NAME_DRAFTMESSAGE + ", " + Contract.ConversationEntry.COLUMN_NAME_DRAFTUPDATETIME + " ON " + Contract.ConversationEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshPreviewSQL("NEW." + Contract.ConversationEntry._ID) +
+					" END;",
+			"CREATE TRIGGER summary_message_insert AFTER INSERT ON " + Contract.MessageEntry.TABLE_NAME + " WHEN NEW." + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " IN (" + ConversationItemType.message + ", " + ConversationItemType.chatCreate + ") BEGIN " +
+					buildSummaryRefreshPreviewSQL("NEW." + Contract.MessageEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_message_delete AFTER DELETE ON " + Contract.MessageEntry.TABLE_NAME + " WHEN OLD." + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " IN (" + ConversationItemType.message + ", " + ConversationItemType.chatCreate + ") BEGIN " +
+					buildSummaryRefreshPreviewSQL("OLD." + Contract.MessageEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_message_update AFTER UPDATE OF " + Contract.MessageEntry.COLUMN_NAME_CHAT + ", " + Contract.MessageEntry.COLUMN_NAME_DATE + ", " + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + ", " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED + ", " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + " ON " + Contract.MessageEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshPreviewSQL("NEW." + Contract.MessageEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_message_move AFTER UPDATE OF " + Contract.MessageEntry.COLUMN_NAME_CHAT + " ON " + Contract.MessageEntry.TABLE_NAME + " WHEN OLD." + Contract.MessageEntry.COLUMN_NAME_CHAT + " != NEW." + Contract.MessageEntry.COLUMN_NAME_CHAT + " BEGIN " +
+					buildSummaryRefreshPreviewSQL("OLD." + Contract.MessageEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_member_insert AFTER INSERT ON " + Contract.MemberEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshMembersSQL("NEW." + Contract.MemberEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_member_delete AFTER DELETE ON " + Contract.MemberEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshMembersSQL("OLD." + Contract.MemberEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_member_update AFTER UPDATE ON " + Contract.MemberEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshMembersSQL("NEW." + Contract.MemberEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_draft_insert AFTER INSERT ON " + Contract.DraftFileEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshSortSQL("NEW." + Contract.DraftFileEntry.COLUMN_NAME_CHAT) +
+					" END;",
+			"CREATE TRIGGER summary_draft_delete AFTER DELETE ON " + Contract.DraftFileEntry.TABLE_NAME + " BEGIN " +
+					buildSummaryRefreshSortSQL("OLD." + Contract.DraftFileEntry.COLUMN_NAME_CHAT) +
+					" END;"
+	};
+	
+	//Creating the conversation summary fetch statement
+	private static final String SQL_FETCH_SUMMARY_CONVERSATIONS = "SELECT " +
+			Arrays.stream(sqlQueryConversationData).map(column -> Contract.ConversationEntry.TABLE_NAME + '.' + column + " AS " + column).collect(Collectors.joining(", ")) + ", " +
+			Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_MEMBERS + " AS summary_members, " +
+			Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_SORTTIME + " AS summary_sort_time, " +
+			Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWID + " AS preview_id, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " AS preview_item_type, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_DATE + " AS preview_date, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_SENDER + " AS preview_sender, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT + " AS preview_text, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_MESSAGESUBJECT + " AS preview_subject, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_SENDSTYLE + " AS preview_send_style, " +
+			Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_ERROR + " AS preview_error" +
+			" FROM " + Contract.ConversationSummaryEntry.TABLE_NAME +
+			" JOIN " + Contract.ConversationEntry.TABLE_NAME + " ON " + Contract.ConversationEntry.TABLE_NAME + '.' + Contract.ConversationEntry._ID + " = " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT +
+			" LEFT JOIN " + Contract.MessageEntry.TABLE_NAME + " ON " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + " = " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWID;
+	
+	//Creating the compiled write statements (the bind order of each statement follows its column order)
+	private static final String SQL_INSERT_MESSAGE = buildInsertSQL(Contract.MessageEntry.TABLE_NAME,
+			Contract.MessageEntry.COLUMN_NAME_SERVERID, Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED, Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET,
+			Contract.MessageEntry.COLUMN_NAME_GUID, Contract.MessageEntry.COLUMN_NAME_DATE, Contract.MessageEntry.COLUMN_NAME_CHAT,
+			Contract.MessageEntry.COLUMN_NAME_SENDER, Contract.MessageEntry.COLUMN_NAME_ITEMTYPE, Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT, Contract.MessageEntry.COLUMN_NAME_MESSAGESUBJECT,
+			Contract.MessageEntry.COLUMN_NAME_STATE, Contract.MessageEntry.COLUMN_NAME_ERROR, Contract.MessageEntry.COLUMN_NAME_ERRORDETAILS, Contract.MessageEntry.COLUMN_NAME_DATEREAD, Contract.MessageEntry.COLUMN_NAME_SENDSTYLE,
+			Contract.MessageEntry.COLUMN_NAME_GHOSTHASH);
+	private static final String SQL_INSERT_ATTACHMENT = buildInsertSQL(Contract.AttachmentEntry.TABLE_NAME,
+			Contract.AttachmentEntry.COLUMN_NAME_GUID, Contract.AttachmentEntry.COLUMN_NAME_MESSAGE, Contract.AttachmentEntry.COLUMN_NAME_FILENAME, Contract.AttachmentEntry.COLUMN_NAME_FILETYPE,
+			Contract.AttachmentEntry.COLUMN_NAME_FILESIZE, Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, Contract.AttachmentEntry.COLUMN_NAME_SORT,
+			Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH);
+	private static final String SQL_INSERT_STICKER = buildInsertSQL(Contract.StickerEntry.TABLE_NAME,
+			Contract.StickerEntry.COLUMN_NAME_GUID, Contract.StickerEntry.COLUMN_NAME_MESSAGE, Contract.StickerEntry.COLUMN_NAME_MESSAGEINDEX, Contract.StickerEntry.COLUMN_NAME_SENDER, Contract.StickerEntry.COLUMN_NAME_DATE);
+	private static final String SQL_INSERT_TAPBACK = buildInsertSQL(Contract.TapbackEntry.TABLE_NAME,
+			Contract.TapbackEntry.COLUMN_NAME_CODE, Contract.TapbackEntry.COLUMN_NAME_MESSAGE, Contract.TapbackEntry.COLUMN_NAME_MESSAGEINDEX, Contract.TapbackEntry.COLUMN_NAME_SENDER);
+	private static final String SQL_UPDATE_STICKER_FILE = buildUpdateSQL(Contract.StickerEntry.TABLE_NAME, Contract.StickerEntry._ID, Contract.StickerEntry.COLUMN_NAME_FILEPATH);
+	private static final String SQL_UPDATE_TAPBACK_CODE = buildUpdateSQL(Contract.TapbackEntry.TABLE_NAME, Contract.TapbackEntry._ID, Contract.TapbackEntry.COLUMN_NAME_CODE);
+	private static final String SQL_UPDATE_MESSAGE_STATE = buildUpdateSQL(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_STATE);
+	private static final String SQL_UPDATE_MESSAGE_STATE_READ = buildUpdateSQL(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_STATE, Contract.MessageEntry.COLUMN_NAME_DATEREAD);
+	private static final String SQL_UPDATE_ATTACHMENT_FILE_BY_ID = buildUpdateSQL(Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry._ID,
+			Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME, Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE);
+	private static final String SQL_UPDATE_ATTACHMENT_FILE_BY_GUID = buildUpdateSQL(Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry.COLUMN_NAME_GUID,
+			Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME, Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE);
+	
 	/* private static final String SQL_CREATE_TABLE_BLOCKED = "CREATE TABLE " + Contract.BlockedEntry.TABLE_NAME + " (" +
 			Contract.BlockedEntry.COLUMN_NAME_ADDRESS + " TEXT NOT NULL," +
 			Contract.BlockedEntry.COLUMN_NAME_BLOCKCOUNT + " INTEGER NOT NULL DEFAULT 0" +
@@ -192,8 +358,41 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	//Creating the database instance variable
 	private static DatabaseManager instance = null;
 	
+	//Creating the compiled statement cache for the writable database
+	private StatementCache statementCache = null;
+	
+	//Creating the write-behind buffers for updates that frequently supersede each other
+	private static final long writeBehindDelay = 500; //0.5 seconds
+	private final WriteBehindBuffer<Long, DraftUpdate> draftWriteBuffer = new WriteBehindBuffer<>(writeBehindDelay, DatabaseSchedulers.write, (pending, update) -> update, this::writeDraftUpdates);
+	private final WriteBehindBuffer<Long, MessageStateUpdate> messageStateWriteBuffer = new WriteBehindBuffer<>(writeBehindDelay, DatabaseSchedulers.write, MessageStateUpdate::merge, this::writeMessageStateUpdates);
+	private final WriteBehindBuffer<Long, Long> attachmentViewWriteBuffer = new WriteBehindBuffer<>(writeBehindDelay, DatabaseSchedulers.write, Math::max, this::writeAttachmentViewUpdates);
+	
+	//The amount of trashed files to remove at a time
+	private static final int fileSweepBatchSize = 100;
+	
 	private DatabaseManager(Context context) {
-		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		this(context, DATABASE_NAME);
+	}
+	
+	private DatabaseManager(Context context, String databaseName) {
+		super(context, databaseName, new TracingCursorFactory(), DATABASE_VERSION);
+		
+		//Letting reads run alongside the writer thread
+		setWriteAheadLoggingEnabled(true);
+	}
+	
+	@Override
+	public synchronized void close() {
+		//Writing pending updates
+		flushPendingWrites();
+		
+		//Releasing the compiled statements
+		if(statementCache != null) {
+			statementCache.close();
+			statementCache = null;
+		}
+		
+		super.close();
 	}
 	
 	@Override
@@ -208,7 +407,20 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		database.execSQL(SQL_CREATE_TABLE_STICKER);
 		database.execSQL(SQL_CREATE_TABLE_TAPBACK);
 		database.execSQL(SQL_CREATE_TABLE_TWOFA_CODES);
+		database.execSQL(SQL_CREATE_TABLE_CONVERSATIONSUMMARY);
+		database.execSQL(SQL_CREATE_TABLE_MESSAGEARCHIVE);
+		database.execSQL(SQL_CREATE_TABLE_FILETRASH);
+		database.execSQL(SQL_CREATE_TABLE_CONVERSATIONMEMORY);
 		//database.execSQL(SQL_CREATE_TABLE_BLOCKED);
+		
+		//Creating the indices and triggers
+		for(String statement : SQL_CREATE_INDICES) database.execSQL(statement);
+		for(String statement : SQL_CREATE_INDICES_GHOST) database.execSQL(statement);
+		for(String statement : SQL_CREATE_INDICES_ATTACHMENTSTORE) database.execSQL(statement);
+		for(String statement : SQL_CREATE_INDICES_MESSAGEARCHIVE) database.execSQL(statement);
+		for(String statement : SQL_CREATE_INDICES_MESSAGEDATE) database.execSQL(statement);
+		for(String statement : SQL_CREATE_INDICES_CONVERSATIONMEMORY) database.execSQL(statement);
+		for(String statement : SQL_CREATE_TRIGGERS_CONVERSATIONSUMMARY) database.execSQL(statement);
 	}
 	
 	@Override
@@ -568,6 +780,81 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			case 15:
 				//Adding the 2FA codes table for storing verification codes
 				database.execSQL(SQL_CREATE_TABLE_TWOFA_CODES);
+			case 16:
+				//Adding the conversation summary table, and the indices it depends on
+				database.execSQL(SQL_CREATE_TABLE_CONVERSATIONSUMMARY);
+				for(String statement : SQL_CREATE_INDICES) database.execSQL(statement);
+				for(String statement : SQL_CREATE_TRIGGERS_CONVERSATIONSUMMARY) database.execSQL(statement);
+				
+				//Filling in the summary for existing conversations
+				database.execSQL("INSERT INTO " + Contract.ConversationSummaryEntry.TABLE_NAME + " (" + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + ") SELECT " + Contract.ConversationEntry._ID + " FROM " + Contract.ConversationEntry.TABLE_NAME + ";");
+				for(String statement : (buildSummaryRefreshPreviewSQL(Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT) + buildSummaryRefreshMembersSQL(Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT)).split(";")) {
+					database.execSQL(statement);
+				}
+			case 17: {
+				//Adding the ghost message lookup hashes
+				database.execSQL("ALTER TABLE messages ADD ghost_hash INTEGER;");
+				database.execSQL("ALTER TABLE attachments ADD checksum_hash INTEGER;");
+				for(String statement : SQL_CREATE_INDICES_GHOST) database.execSQL(statement);
+				
+				//Filling in the hashes of pending outgoing messages
+				try(Cursor cursor = database.rawQuery("SELECT _id, message_text FROM messages WHERE state = " + MessageState.ghost + " AND sender IS NULL AND message_text IS NOT NULL;", null)) {
+					ContentValues contentValues = new ContentValues();
+					while(cursor.moveToNext()) {
+						contentValues.put("ghost_hash", GhostMatchHelper.hashText(cursor.getString(1)));
+						database.update("messages", contentValues, "_id = ?", new String[]{Long.toString(cursor.getLong(0))});
+					}
+				}
+				try(Cursor cursor = database.rawQuery("SELECT attachments._id, attachments.checksum FROM attachments JOIN messages ON attachments.message = messages._id WHERE messages.state = " + MessageState.ghost + " AND messages.sender IS NULL AND attachments.checksum IS NOT NULL;", null)) {
+					ContentValues contentValues = new ContentValues();
+					while(cursor.moveToNext()) {
+						//Checksums may be stored as Base64 text or as raw bytes
+						byte[] checksum = cursor.getType(1) == Cursor.FIELD_TYPE_BLOB ? cursor.getBlob(1) : Base64.decode(cursor.getString(1), Base64.NO_WRAP);
+						contentValues.put("checksum_hash", GhostMatchHelper.hashChecksum(checksum));
+						database.update("attachments", contentValues, "_id = ?", new String[]{Long.toString(cursor.getLong(0))});
+					}
+				}
+			}
+			case 18: {
+				//Adding the index used to count references to shared attachment files
+				for(String statement : SQL_CREATE_INDICES_ATTACHMENTSTORE) database.execSQL(statement);
+				
+				//Filling in the checksum hashes of saved attachments, so that their files can be shared
+				try(Cursor cursor = database.rawQuery("SELECT _id, checksum FROM attachments WHERE path IS NOT NULL AND checksum IS NOT NULL AND checksum_hash IS NULL;", null)) {
+					ContentValues contentValues = new ContentValues();
+					while(cursor.moveToNext()) {
+						byte[] checksum = cursor.getType(1) == Cursor.FIELD_TYPE_BLOB ? cursor.getBlob(1) : Base64.decode(cursor.getString(1), Base64.NO_WRAP);
+						contentValues.put("checksum_hash", GhostMatchHelper.hashChecksum(checksum));
+						database.update("attachments", contentValues, "_id = ?", new String[]{Long.toString(cursor.getLong(0))});
+					}
+				}
+			}
+			case 19: {
+				//Adding the attachment view time, used to remove the least recently viewed files first
+				database.execSQL("ALTER TABLE attachments ADD last_viewed INTEGER;");
+			}
+			case 20: {
+				//Adding the message archive
+				database.execSQL(SQL_CREATE_TABLE_MESSAGEARCHIVE);
+				for(String statement : SQL_CREATE_INDICES_MESSAGEARCHIVE) database.execSQL(statement);
+			}
+			case 21: {
+				//Adding the list of files waiting to be deleted
+				database.execSQL(SQL_CREATE_TABLE_FILETRASH);
+			}
+			case 22: {
+				//Adding the message date index, used by the conversation memory backfill
+				for(String statement : SQL_CREATE_INDICES_MESSAGEDATE) database.execSQL(statement);
+			}
+			case 23: {
+				//Adding the conversation memory store, which replaces conversation_memory.json
+				database.execSQL(SQL_CREATE_TABLE_CONVERSATIONMEMORY);
+				for(String statement : SQL_CREATE_INDICES_CONVERSATIONMEMORY) database.execSQL(statement);
+			}
+			case 24: {
+				//Adding the flag for archive blocks that couldn't be restored
+				database.execSQL("ALTER TABLE message_archive ADD restore_failed INTEGER NOT NULL DEFAULT 0;");
+			}
 		}
 	}
 	
@@ -610,6 +897,7 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			public static final String COLUMN_NAME_PREVIEW_ID = "preview_id";
 			public static final String COLUMN_NAME_SORTID_LINKED = "sort_id_linked"; //The last serverlinked (server_id is not null) item above this item
 			public static final String COLUMN_NAME_SORTID_LINKEDOFFSET = "sort_id_linked_offset"; //How many items away this item is from the last serverlinked item
+			public static final String COLUMN_NAME_GHOSTHASH = "ghost_hash"; //The hash of the normalized text of an outgoing ghost message, used to match it to its sent message
 		}
 		
 		static class ConversationEntry implements BaseColumns {
@@ -659,6 +947,8 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			static final String COLUMN_NAME_DOWNLOADFILENAME = "download_name"; //The name type of the downloaded file (NULL if the same as attachment file)
 			static final String COLUMN_NAME_SORT = "sort";
 			static final String COLUMN_NAME_SHOULDAUTODOWNLOAD = "should_auto_download"; //Whether this file should be downloaded automatically when it is loaded
+			static final String COLUMN_NAME_CHECKSUMHASH = "checksum_hash"; //The hash of the raw checksum bytes, used to match ghost attachments
+			static final String COLUMN_NAME_LASTVIEWED = "last_viewed"; //The last time this attachment was shown to the user, used to decide which files to remove first
 		}
 		
 		static class MessagePreviewEntry implements BaseColumns {
@@ -699,6 +989,43 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			static final String COLUMN_NAME_IS_USED = "is_used";
 		}
 		
+		static class ConversationSummaryEntry implements BaseColumns {
+			static final String TABLE_NAME = "conversation_summary";
+			static final String COLUMN_NAME_CHAT = "chat";
+			static final String COLUMN_NAME_PREVIEWID = "preview_id"; //The local ID of the latest message or chat creation item
+			static final String COLUMN_NAME_PREVIEWDATE = "preview_date";
+			static final String COLUMN_NAME_SORTTIME = "sort_time"; //The later of the preview date and the draft update time
+			static final String COLUMN_NAME_MEMBERS = "members"; //Member addresses and colors, delimited by unit and record separators
+		}
+		
+		static class MessageArchiveEntry implements BaseColumns {
+			static final String TABLE_NAME = "message_archive";
+			static final String COLUMN_NAME_CHAT = "chat";
+			static final String COLUMN_NAME_NEWESTSORT = "newest_sort"; //The sort key (linked sort ID or date) of the newest item in the block
+			static final String COLUMN_NAME_ITEMCOUNT = "item_count";
+			static final String COLUMN_NAME_DATA = "data"; //The compressed rows of the block's items, encoded by MessageArchiveHelper
+			static final String COLUMN_NAME_RESTOREFAILED = "restore_failed"; //Whether restoring the block failed, in which case it is skipped
+		}
+		
+		static class FileTrashEntry implements BaseColumns {
+			static final String TABLE_NAME = "file_trash";
+			static final String COLUMN_NAME_DIRECTORY = "directory"; //The storage directory of the file, as used by AttachmentStorageHelper
+			static final String COLUMN_NAME_PATH = "path"; //The relative path of the file
+		}
+		
+		static class ConversationMemoryEntry implements BaseColumns {
+			static final String TABLE_NAME = "conversation_memory";
+			static final String COLUMN_NAME_MEMORYID = "memory_id";
+			static final String COLUMN_NAME_CONVERSATIONGUID = "conversation_guid";
+			static final String COLUMN_NAME_CONVERSATIONTITLE = "conversation_title";
+			static final String COLUMN_NAME_EXTRACTEDINFO = "extracted_info";
+			static final String COLUMN_NAME_ORIGINALMESSAGE = "original_message"; //The text of the message the memory was extracted from
+			static final String COLUMN_NAME_SENDERNAME = "sender_name";
+			static final String COLUMN_NAME_TIMESTAMP = "timestamp";
+			static final String COLUMN_NAME_CATEGORY = "category";
+			static final String COLUMN_NAME_CONFIDENCE = "confidence";
+		}
+		
 		/* static class BlockedEntry implements BaseColumns {
 			static final String TABLE_NAME = "blocked";
 			static final String COLUMN_NAME_ADDRESS = "address";
@@ -706,10 +1033,56 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		} */
 	}
 	
+	/**
+	 * Gets the compiled statement cache for the writable database, recreating it if the database has been reopened
+	 */
+	private synchronized StatementCache getStatementCache() {
+		SQLiteDatabase database = getWritableDatabase();
+		if(statementCache == null || statementCache.getDatabase() != database) {
+			if(statementCache != null) statementCache.close();
+			statementCache = new StatementCache(database);
+		}
+		
+		return statementCache;
+	}
+	
+	/**
+	 * Binds a value read from {@link ContentValues} to a statement
+	 */
+	private static void bindContentValue(SQLiteStatement statement, int index, @Nullable Object value) {
+		if(value == null) statement.bindNull(index);
+		else if(value instanceof Number) statement.bindLong(index, ((Number) value).longValue());
+		else statement.bindString(index, value.toString());
+	}
+	
+	/**
+	 * Builds an INSERT statement with a parameter for each column
+	 */
+	private static String buildInsertSQL(String table, String... columns) {
+		return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+	}
+	
+	/**
+	 * Builds an UPDATE statement with a parameter for each column, followed by a parameter for the selection column
+	 */
+	private static String buildUpdateSQL(String table, String selectionColumn, String... columns) {
+		return "UPDATE " + table + " SET " + Arrays.stream(columns).map(column -> column + " = ?").collect(Collectors.joining(", ")) + " WHERE " + selectionColumn + " = ?";
+	}
+	
 	public static void createInstance(Context context) {
 		instance = new DatabaseManager(context);
 	}
 	
+	/**
+	 * Creates a database manager for a separate database file, without replacing the shared instance
+	 * @param context The context to use
+	 * @param databaseName The name of the database file
+	 */
+	@VisibleForTesting
+	public static DatabaseManager createTestInstance(Context context, String databaseName) {
+		return new DatabaseManager(context, databaseName);
+	}
+	
 	public static DatabaseManager getInstance() {
 		return instance;
 	}
@@ -887,6 +1260,74 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		}
 	}
 	
+	/**
+	 * Builds the statements that recalculate a conversation's latest preview item in the summary table, followed by its sort time
+	 * @param chat An SQL expression that evaluates to the local ID of the conversation
+	 * @return A series of semicolon-terminated SQL statements
+	 */
+	private static String buildSummaryRefreshPreviewSQL(String chat) {
+		String previewCandidates = " FROM " + Contract.MessageEntry.TABLE_NAME +
+				" WHERE " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_CHAT + " = " + chat +
+				" AND " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " IN (" + ConversationItemType.message + ", " + ConversationItemType.chatCreate + ")";
+		
+		return "UPDATE " + Contract.ConversationSummaryEntry.TABLE_NAME + " SET " + Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWID + " = " +
+					"CASE (SELECT " + Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER + " FROM " + Contract.ConversationEntry.TABLE_NAME + " WHERE " + Contract.ConversationEntry.TABLE_NAME + '.' + Contract.ConversationEntry._ID + " = " + chat + ")" +
+					" WHEN " + ServiceHandler.appleBridge + " THEN (SELECT " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + previewCandidates + " ORDER BY " + messageSortOrderDesc + " LIMIT 1)" +
+					" ELSE (SELECT " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + previewCandidates + " ORDER BY " + messageSortOrderDescSimple + " LIMIT 1) END" +
+					" WHERE " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + " = " + chat + ";" +
+				"UPDATE " + Contract.ConversationSummaryEntry.TABLE_NAME + " SET " + Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWDATE + " = " +
+					"(SELECT " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_DATE + " FROM " + Contract.MessageEntry.TABLE_NAME + " WHERE " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + " = " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWID + ")" +
+					" WHERE " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + " = " + chat + ";" +
+				buildSummaryRefreshSortSQL(chat);
+	}
+	
+	/**
+	 * Builds the statement that recalculates a conversation's sort time in the summary table from its preview date and draft
+	 * @param chat An SQL expression that evaluates to the local ID of the conversation
+	 * @return A semicolon-terminated SQL statement
+	 */
+	private static String buildSummaryRefreshSortSQL(String chat) {
+		//Mirrors ConversationInfo.getDynamicPreview(), where a draft only counts if it has a message or files
+		String draftTime = "(SELECT CASE WHEN " + Contract.ConversationEntry.COLUMN_NAME_DRAFTUPDATETIME + " != -1" +
+				" AND (" + Contract.ConversationEntry.COLUMN_NAME_DRAFTMESSAGE + " IS NOT NULL OR EXISTS (SELECT 1 FROM " + Contract.DraftFileEntry.TABLE_NAME + " WHERE " + Contract.DraftFileEntry.TABLE_NAME + '.' + Contract.DraftFileEntry.COLUMN_NAME_CHAT + " = " + Contract.ConversationEntry.TABLE_NAME + '.' + Contract.ConversationEntry._ID + "))" +
+				" THEN " + Contract.ConversationEntry.COLUMN_NAME_DRAFTUPDATETIME + " END" +
+				" FROM " + Contract.ConversationEntry.TABLE_NAME + " WHERE " + Contract.ConversationEntry.TABLE_NAME + '.' + Contract.ConversationEntry._ID + " = " + chat + ")";
+		
+		return "UPDATE " + Contract.ConversationSummaryEntry.TABLE_NAME + " SET " + Contract.ConversationSummaryEntry.COLUMN_NAME_SORTTIME + " = " +
+				"MAX(IFNULL(" + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_PREVIEWDATE + ", 0), IFNULL(" + draftTime + ", 0))" +
+				" WHERE " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + " = " + chat + ";";
+	}
+	
+	/**
+	 * Builds the statement that recalculates a conversation's cached members in the summary table
+	 * @param chat An SQL expression that evaluates to the local ID of the conversation
+	 * @return A semicolon-terminated SQL statement
+	 */
+	private static String buildSummaryRefreshMembersSQL(String chat) {
+		return "UPDATE " + Contract.ConversationSummaryEntry.TABLE_NAME + " SET " + Contract.ConversationSummaryEntry.COLUMN_NAME_MEMBERS + " = " +
+				"(SELECT group_concat(member_entry, char(30)) FROM (SELECT " + Contract.MemberEntry.TABLE_NAME + '.' + Contract.MemberEntry.COLUMN_NAME_MEMBER + " || char(31) || " + Contract.MemberEntry.TABLE_NAME + '.' + Contract.MemberEntry.COLUMN_NAME_COLOR + " AS member_entry" +
+				" FROM " + Contract.MemberEntry.TABLE_NAME + " WHERE " + Contract.MemberEntry.TABLE_NAME + '.' + Contract.MemberEntry.COLUMN_NAME_CHAT + " = " + chat + " ORDER BY " + Contract.MemberEntry.TABLE_NAME + ".rowid))" +
+				" WHERE " + Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT + " = " + chat + ";";
+	}
+	
+	/**
+	 * Decodes a member list cached in the summary table
+	 * @param members The encoded member list, or NULL if the conversation has no members
+	 * @return A list of members
+	 */
+	private static ArrayList<MemberInfo> decodeSummaryMembers(@Nullable String members) {
+		ArrayList<MemberInfo> memberList = new ArrayList<>();
+		if(members == null || members.isEmpty()) return memberList;
+		
+		for(String entry : members.split("\u001E")) {
+			int separatorIndex = entry.lastIndexOf('\u001F');
+			if(separatorIndex == -1) continue;
+			memberList.add(new MemberInfo(entry.substring(0, separatorIndex), Integer.parseInt(entry.substring(separatorIndex + 1))));
+		}
+		
+		return memberList;
+	}
+	
 	public List<ConversationInfo> fetchConversationsWithState(Context context, @ConversationState int conversationState) {
 		//Creating the conversation list
 		List<ConversationInfo> conversationList = new ArrayList<>();
@@ -930,6 +1371,13 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			String draftMessage = cursor.getString(indexDraftMessage);
 			long draftUpdateTime = cursor.getLong(indexDraftUpdateTime);
 			
+			//Using the draft that is waiting to be written, if there is one
+			DraftUpdate pendingDraft = draftWriteBuffer.getPending(chatID);
+			if(pendingDraft != null) {
+				draftMessage = pendingDraft.message;
+				draftUpdateTime = pendingDraft.time;
+			}
+			
 			//Getting the members and drafts
 			ArrayList<MemberInfo> conversationMembers = loadConversationMembers(database, chatID);
 			ArrayList<FileDraft> draftFiles = loadDraftFiles(database, chatID, context);
@@ -968,69 +1416,155 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @return A list of conversations
 	 */
 	public List<ConversationInfo> fetchSummaryConversations(Context context, boolean onlyArchived, int limit) {
+		return fetchSummaryConversationPage(context, onlyArchived, limit, null).getConversations();
+	}
+	
+	/**
+	 * Fetches a page of conversations along with their summary information, sorted by their latest activity
+	 * This function will automatically filter out any server-incomplete conversations
+	 * Pages are bounded by the sort key of the last conversation of the previous page rather than an offset, so conversations that are removed or move to the top in between don't shift the next page
+	 * @param context The context to use
+	 * @param onlyArchived TRUE to only return archived conversations, FALSE to only return non-archived conversations
+	 * @param limit The number of conversations to retrieve, or -1 to retrieve all remaining conversations
+	 * @param after The sort key to continue after, or NULL to start at the latest conversation
+	 * @return A page of conversations
+	 */
+	public ConversationSummaryPage fetchSummaryConversationPage(Context context, boolean onlyArchived, int limit, @Nullable ConversationSortKey after) {
 		//Getting the database
 		SQLiteDatabase database = getReadableDatabase();
 		
 		//Creating the conversation list
 		List<ConversationInfo> conversationList = new ArrayList<>();
+		ConversationSortKey lastKey = null;
+		
+		//Creating the lists of data to fill in afterwards
+		Map<Long, List<AttachmentPreview>> pendingAttachmentPreviews = new HashMap<>();
+		
+		//Building the query
+		String sortTimeColumn = Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_SORTTIME;
+		String chatColumn = Contract.ConversationSummaryEntry.TABLE_NAME + '.' + Contract.ConversationSummaryEntry.COLUMN_NAME_CHAT;
+		String selection = Contract.ConversationEntry.TABLE_NAME + '.' + Contract.ConversationEntry.COLUMN_NAME_STATE + " != ?" +
+				" AND " + Contract.ConversationEntry.TABLE_NAME + '.' + Contract.ConversationEntry.COLUMN_NAME_ARCHIVED + (onlyArchived ? " != " : " = ") + "0";
+		String[] selectionArgs;
+		if(after == null) {
+			selectionArgs = new String[]{Integer.toString(ConversationState.incompleteServer)};
+		} else {
+			selection += " AND (" + sortTimeColumn + " < ? OR (" + sortTimeColumn + " = ? AND " + chatColumn + " < ?))";
+			selectionArgs = new String[]{Integer.toString(ConversationState.incompleteServer), Long.toString(after.sortTime), Long.toString(after.sortTime), Long.toString(after.id)};
+		}
 		
 		//Querying the database
-		Cursor cursor = database.query(Contract.ConversationEntry.TABLE_NAME, sqlQueryConversationData,
-				Contract.ConversationEntry.COLUMN_NAME_STATE + " != ? AND " + Contract.ConversationEntry.COLUMN_NAME_ARCHIVED + (onlyArchived ? " != " : " = ") + "0", new String[]{Integer.toString(ConversationState.incompleteServer)},
-				null, null, null, limit == -1 ? null : Integer.toString(limit));
-		
-		//Getting the indexes
-		int indexChatID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry._ID);
-		int indexChatGUID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_GUID);
-		int indexChatExternalID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_EXTERNALID);
-		int indexChatState = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_STATE);
-		int indexChatServiceHandler = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER);
-		int indexChatService = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_SERVICE);
-		int indexChatName = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_NAME);
-		int indexChatUnreadMessages = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_UNREADMESSAGECOUNT);
-		int indexChatArchived = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_ARCHIVED);
-		int indexChatMuted = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_MUTED);
-		int indexChatColor = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_COLOR);
-		int indexDraftMessage = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_DRAFTMESSAGE);
-		int indexDraftUpdateTime = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_DRAFTUPDATETIME);
-		
-		//Iterating over the results
-		while(cursor.moveToNext()) {
-			//Getting the conversation info
-			long chatID = cursor.getLong(indexChatID);
-			String chatGUID = cursor.getString(indexChatGUID);
-			long externalID = cursor.getLong(indexChatExternalID);
-			@ConversationState int conversationState = cursor.getInt(indexChatState);
-			int serviceHandler = cursor.getInt(indexChatServiceHandler);
-			String service = cursor.getString(indexChatService);
-			String chatName = cursor.getString(indexChatName);
-			int chatUnreadMessages = cursor.getInt(indexChatUnreadMessages);
-			boolean chatArchived = cursor.getInt(indexChatArchived) != 0;
-			boolean chatMuted = cursor.getInt(indexChatMuted) != 0;
-			int chatColor = cursor.getInt(indexChatColor);
-			String draftMessage = cursor.getString(indexDraftMessage);
-			long draftUpdateTime = cursor.getLong(indexDraftUpdateTime);
-
-			//Getting the members and drafts
-			ArrayList<MemberInfo> conversationMembers = loadConversationMembers(database, chatID);
-			ArrayList<FileDraft> draftFiles = loadDraftFiles(database, chatID, context);
-			
-			//Getting the preview
-			ConversationPreview conversationPreview = getConversationPreview(chatID, serviceHandler);
-			
-			//Creating the conversation
-			ConversationInfo conversationInfo = new ConversationInfo(chatID, chatGUID, externalID, conversationState, serviceHandler, service, chatColor, conversationMembers, chatName, chatUnreadMessages, chatArchived, chatMuted, conversationPreview, draftMessage, draftFiles, draftUpdateTime);
+		try(Cursor cursor = database.rawQuery(SQL_FETCH_SUMMARY_CONVERSATIONS +
+				" WHERE " + selection +
+				" ORDER BY " + sortTimeColumn + " DESC, " + chatColumn + " DESC" +
+				" LIMIT " + limit, selectionArgs)) {
+			//Getting the indexes
+			int indexSortTime = cursor.getColumnIndexOrThrow("summary_sort_time");
+			int indexChatID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry._ID);
+			int indexChatGUID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_GUID);
+			int indexChatExternalID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_EXTERNALID);
+			int indexChatState = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_STATE);
+			int indexChatServiceHandler = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER);
+			int indexChatService = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_SERVICE);
+			int indexChatName = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_NAME);
+			int indexChatUnreadMessages = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_UNREADMESSAGECOUNT);
+			int indexChatArchived = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_ARCHIVED);
+			int indexChatMuted = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_MUTED);
+			int indexChatColor = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_COLOR);
+			int indexDraftMessage = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_DRAFTMESSAGE);
+			int indexDraftUpdateTime = cursor.getColumnIndexOrThrow(Contract.ConversationEntry.COLUMN_NAME_DRAFTUPDATETIME);
+			int indexMembers = cursor.getColumnIndexOrThrow("summary_members");
+			int indexPreviewID = cursor.getColumnIndexOrThrow("preview_id");
+			int indexPreviewItemType = cursor.getColumnIndexOrThrow("preview_item_type");
+			int indexPreviewDate = cursor.getColumnIndexOrThrow("preview_date");
+			int indexPreviewSender = cursor.getColumnIndexOrThrow("preview_sender");
+			int indexPreviewText = cursor.getColumnIndexOrThrow("preview_text");
+			int indexPreviewSubject = cursor.getColumnIndexOrThrow("preview_subject");
+			int indexPreviewSendStyle = cursor.getColumnIndexOrThrow("preview_send_style");
+			int indexPreviewError = cursor.getColumnIndexOrThrow("preview_error");
 			
-			//Adding the conversation to the list
-			conversationList.add(conversationInfo);
+			//Iterating over the results
+			while(cursor.moveToNext()) {
+				//Getting the conversation info
+				long chatID = cursor.getLong(indexChatID);
+				String chatGUID = cursor.getString(indexChatGUID);
+				long externalID = cursor.getLong(indexChatExternalID);
+				@ConversationState int conversationState = cursor.getInt(indexChatState);
+				int serviceHandler = cursor.getInt(indexChatServiceHandler);
+				String service = cursor.getString(indexChatService);
+				String chatName = cursor.getString(indexChatName);
+				int chatUnreadMessages = cursor.getInt(indexChatUnreadMessages);
+				boolean chatArchived = cursor.getInt(indexChatArchived) != 0;
+				boolean chatMuted = cursor.getInt(indexChatMuted) != 0;
+				int chatColor = cursor.getInt(indexChatColor);
+				String draftMessage = cursor.getString(indexDraftMessage);
+				long draftUpdateTime = cursor.getLong(indexDraftUpdateTime);
+				ArrayList<MemberInfo> conversationMembers = decodeSummaryMembers(cursor.getString(indexMembers));
+				
+				//Using the draft that is waiting to be written, if there is one
+				DraftUpdate pendingDraft = draftWriteBuffer.getPending(chatID);
+				if(pendingDraft != null) {
+					draftMessage = pendingDraft.message;
+					draftUpdateTime = pendingDraft.time;
+				}
+				
+				//Getting the preview
+				ConversationPreview conversationPreview = null;
+				if(!cursor.isNull(indexPreviewID) && !cursor.isNull(indexPreviewItemType)) {
+					long previewDate = cursor.getLong(indexPreviewDate);
+					int previewItemType = cursor.getInt(indexPreviewItemType);
+					
+					if(previewItemType == ConversationItemType.message) {
+						boolean isOutgoing = cursor.isNull(indexPreviewSender);
+						String message = cursor.getString(indexPreviewText);
+						String subject = cursor.isNull(indexPreviewSubject) ? null : MMSSMSHelper.cleanMMSSubject(cursor.getString(indexPreviewSubject));
+						String sendStyle = cursor.getString(indexPreviewSendStyle);
+						boolean hasError = cursor.getInt(indexPreviewError) != MessageSendErrorCode.none;
+						
+						//Only load attachments for messages without text, filling them in later with a single query
+						List<AttachmentPreview> attachments = new ArrayList<>();
+						if(message == null) pendingAttachmentPreviews.put(cursor.getLong(indexPreviewID), attachments);
+						
+						conversationPreview = new ConversationPreview.Message(previewDate, isOutgoing, message, subject, attachments, sendStyle, hasError);
+					} else if(previewItemType == ConversationItemType.chatCreate) {
+						conversationPreview = new ConversationPreview.ChatCreation(previewDate);
+					}
+				}
+				
+				//Creating the conversation
+				ConversationInfo conversationInfo = new ConversationInfo(chatID, chatGUID, externalID, conversationState, serviceHandler, service, chatColor, conversationMembers, chatName, chatUnreadMessages, chatArchived, chatMuted, conversationPreview, draftMessage, new ArrayList<>(), draftUpdateTime);
+				
+				//Adding the conversation to the list
+				conversationList.add(conversationInfo);
+				lastKey = new ConversationSortKey(cursor.getLong(indexSortTime), chatID);
+			}
 		}
 		
-		//Closing the cursor
-		cursor.close();
+		//Filling in the draft files and preview attachments
+		if(!conversationList.isEmpty()) {
+			Map<Long, ArrayList<FileDraft>> draftFiles = loadDraftFiles(database, conversationList.stream().map(ConversationInfo::getLocalID).collect(Collectors.toList()), context);
+			for(ConversationInfo conversationInfo : conversationList) {
+				ArrayList<FileDraft> conversationDraftFiles = draftFiles.get(conversationInfo.getLocalID());
+				if(conversationDraftFiles != null) conversationInfo.getDraftFiles().addAll(conversationDraftFiles);
+			}
+		}
+		if(!pendingAttachmentPreviews.isEmpty()) {
+			try(Cursor attachmentCursor = database.query(Contract.AttachmentEntry.TABLE_NAME,
+					new String[]{Contract.AttachmentEntry.COLUMN_NAME_MESSAGE, Contract.AttachmentEntry.COLUMN_NAME_FILETYPE, Contract.AttachmentEntry.COLUMN_NAME_FILENAME},
+					Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " IN (" + pendingAttachmentPreviews.keySet().stream().map(value -> Long.toString(value)).collect(Collectors.joining(",")) + ")", null,
+					null, null, null)) {
+				int indexMessage = attachmentCursor.getColumnIndexOrThrow(Contract.AttachmentEntry.COLUMN_NAME_MESSAGE);
+				int indexType = attachmentCursor.getColumnIndexOrThrow(Contract.AttachmentEntry.COLUMN_NAME_FILETYPE);
+				int indexName = attachmentCursor.getColumnIndexOrThrow(Contract.AttachmentEntry.COLUMN_NAME_FILENAME);
+				while(attachmentCursor.moveToNext()) {
+					List<AttachmentPreview> attachments = pendingAttachmentPreviews.get(attachmentCursor.getLong(indexMessage));
+					if(attachments != null) attachments.add(new AttachmentPreview(attachmentCursor.getString(indexName), attachmentCursor.getString(indexType)));
+				}
+			}
+		}
 		
-		//Sorting and returning the conversation list
-		Collections.sort(conversationList, ConversationHelper.conversationComparator);
-		return conversationList;
+		//Returning the page
+		return new ConversationSummaryPage(conversationList, lastKey);
 	}
 	
 	/* void switchMessageOwnership(long identifierFrom, long identifierTo) {
@@ -1152,6 +1686,14 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			int errorCode = cursor.getInt(indices.iError);
 			boolean errorDetailsAvailable = !cursor.isNull(indices.iErrorDetails);
 			long dateRead = cursor.getLong(indices.iDateRead);
+			
+			//Using the state that is waiting to be written, if there is one
+			MessageStateUpdate pendingState = messageStateWriteBuffer.getPending(localID);
+			if(pendingState != null) {
+				stateCode = pendingState.state;
+				if(pendingState.dateRead != -1) dateRead = pendingState.dateRead;
+			}
+			
 			String sendStyle = cursor.getString(indices.iSendStyle);
 			boolean sendStyleViewed = cursor.getInt(indices.iSendStyleViewed) != 0;
 			String messageText = cursor.getString(indices.iMessageText);
@@ -1438,6 +1980,184 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		getWritableDatabase().update(Contract.AttachmentEntry.TABLE_NAME, contentValues, Contract.AttachmentEntry._ID + " = ?", new String[]{Long.toString(localID)});
 	}
 	
+	/**
+	 * Removes an attachment's file, and deletes it from disk if no other attachments share it
+	 * @param context The context to use
+	 * @param localID The ID of the attachment
+	 */
+	public void deleteAttachmentFile(Context context, long localID) {
+		//Getting the attachment's file
+		String path;
+		try(Cursor cursor = getReadableDatabase().query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry.COLUMN_NAME_FILEPATH},
+				Contract.AttachmentEntry._ID + " = ?", new String[]{Long.toString(localID)}, null, null, null, "1")) {
+			if(!cursor.moveToFirst()) return;
+			path = cursor.getString(0);
+		}
+		
+		//Invalidating the attachment
+		invalidateAttachment(localID);
+		
+		//Deleting the file
+		if(path != null) releaseAttachmentFile(context, path);
+	}
+	
+	/**
+	 * Deletes an attachment file from disk, unless it is still shared by another attachment
+	 * @param context The context to use
+	 * @param path The relative path of the file
+	 */
+	private void releaseAttachmentFile(Context context, String path) {
+		//Checking if the file is still referenced
+		try(Cursor cursor = getReadableDatabase().query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry._ID},
+				Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " = ?", new String[]{path}, null, null, null, "1")) {
+			if(cursor.moveToFirst()) return;
+		}
+		
+		//Deleting the file
+		AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameAttachment, AttachmentStorageHelper.getAbsolutePath(context, path));
+	}
+	
+	/**
+	 * Finds a saved attachment file with the provided contents, so that it can be shared instead of being downloaded again
+	 * @param context The context to use
+	 * @param checksum The checksum of the attachment's contents
+	 * @param fileSize The size of the attachment, or -1 if unknown
+	 * @return The saved attachment file, or NULL if no matching file has been saved
+	 */
+	@Nullable
+	private StoredAttachmentFile findStoredAttachmentFile(Context context, byte[] checksum, long fileSize) {
+		try(Cursor cursor = getReadableDatabase().query(Contract.AttachmentEntry.TABLE_NAME,
+				new String[]{Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, Contract.AttachmentEntry.COLUMN_NAME_FILESIZE, Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME, Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE},
+				Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH + " = ? AND " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL",
+				new String[]{Long.toString(GhostMatchHelper.hashChecksum(checksum))}, null, null, null)) {
+			while(cursor.moveToNext()) {
+				//Checking the full checksum, which may be stored as Base64 text or as raw bytes
+				byte[] storedChecksum = cursor.getType(0) == Cursor.FIELD_TYPE_BLOB ? cursor.getBlob(0) : Base64.decode(cursor.getString(0), Base64.NO_WRAP);
+				if(!Arrays.equals(checksum, storedChecksum)) continue;
+				
+				//Checking the file size
+				long storedFileSize = cursor.isNull(2) ? -1 : cursor.getLong(2);
+				if(fileSize != -1 && storedFileSize != -1 && fileSize != storedFileSize) continue;
+				
+				//Checking that the file is still on disk
+				File file = AttachmentStorageHelper.getAbsolutePath(context, cursor.getString(1));
+				if(!file.exists()) continue;
+				
+				return new StoredAttachmentFile(file, file.length(), cursor.getString(3), cursor.getString(4));
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Points an attachment that hasn't been downloaded to a saved file with the same contents
+	 * @param context The context to use
+	 * @param localID The ID of the attachment
+	 * @return The file the attachment now uses, or NULL if there is no saved file to share
+	 */
+	@Nullable
+	public StoredAttachmentFile linkStoredAttachmentFile(Context context, long localID) {
+		if(!Preferences.getPreferenceShareAttachmentFiles(context)) return null;
+		
+		//Getting the attachment's checksum
+		byte[] checksum;
+		long fileSize;
+		try(Cursor cursor = getReadableDatabase().query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, Contract.AttachmentEntry.COLUMN_NAME_FILESIZE},
+				Contract.AttachmentEntry._ID + " = ? AND " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NULL", new String[]{Long.toString(localID)}, null, null, null, "1")) {
+			if(!cursor.moveToFirst() || cursor.isNull(0)) return null;
+			checksum = cursor.getType(0) == Cursor.FIELD_TYPE_BLOB ? cursor.getBlob(0) : Base64.decode(cursor.getString(0), Base64.NO_WRAP);
+			fileSize = cursor.isNull(1) ? -1 : cursor.getLong(1);
+		}
+		
+		//Finding a matching file
+		StoredAttachmentFile storedFile = findStoredAttachmentFile(context, checksum, fileSize);
+		if(storedFile == null) return null;
+		
+		//Sharing the file
+		updateAttachmentFile(localID, context, storedFile.getFile(), storedFile.getDownloadFileName(), storedFile.getDownloadFileType());
+		SharedPreferencesManager.addAttachmentTransferBytesAvoided(context, storedFile.getFileSize());
+		return storedFile;
+	}
+	
+	/**
+	 * Calculates how much disk space is saved by attachments sharing files
+	 * @return The amount of bytes that would be used if each attachment had its own file, minus the amount of bytes actually used
+	 */
+	public long fetchAttachmentBytesSaved() {
+		try(Cursor cursor = getReadableDatabase().rawQuery("SELECT TOTAL(" + Contract.AttachmentEntry.COLUMN_NAME_FILESIZE + " * (file_references - 1)) FROM " +
+				"(SELECT MAX(" + Contract.AttachmentEntry.COLUMN_NAME_FILESIZE + ") AS " + Contract.AttachmentEntry.COLUMN_NAME_FILESIZE + ", COUNT(*) AS file_references FROM " + Contract.AttachmentEntry.TABLE_NAME +
+				" WHERE " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL GROUP BY " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + ")", null)) {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		}
+	}
+	
+	/**
+	 * Records that an attachment was shown to the user
+	 * @param localID The ID of the attachment
+	 * @param time The time the attachment was shown
+	 */
+	public void updateAttachmentViewed(long localID, long time) {
+		attachmentViewWriteBuffer.put(localID, time);
+	}
+	
+	/**
+	 * Fetches all attachments with a downloaded file, for deciding which files to remove when attachments use too much storage
+	 * @return A list of all attachments with a file
+	 */
+	public List<AttachmentCacheHelper.CachedAttachment> fetchCachedAttachments() {
+		//Writing pending view times
+		attachmentViewWriteBuffer.flush();
+		
+		//Only incoming attachments that have been synced with the server can be downloaded again
+		List<AttachmentCacheHelper.CachedAttachment> attachmentList = new ArrayList<>();
+		try(Cursor cursor = getReadableDatabase().rawQuery("SELECT a." + Contract.AttachmentEntry._ID + ", a." + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + ", a." + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + ", " +
+				"COALESCE(a." + Contract.AttachmentEntry.COLUMN_NAME_LASTVIEWED + ", m." + Contract.MessageEntry.COLUMN_NAME_DATE + "), " +
+				"(m." + Contract.MessageEntry.COLUMN_NAME_SENDER + " IS NOT NULL AND m." + Contract.MessageEntry.COLUMN_NAME_SERVERID + " IS NOT NULL AND a." + Contract.AttachmentEntry.COLUMN_NAME_GUID + " IS NOT NULL AND c." + Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER + " = " + ServiceHandler.appleBridge + ")" +
+				" FROM " + Contract.AttachmentEntry.TABLE_NAME + " a" +
+				" JOIN " + Contract.MessageEntry.TABLE_NAME + " m ON a." + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = m." + Contract.MessageEntry._ID +
+				" JOIN " + Contract.ConversationEntry.TABLE_NAME + " c ON m." + Contract.MessageEntry.COLUMN_NAME_CHAT + " = c." + Contract.ConversationEntry._ID +
+				" WHERE a." + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL", null)) {
+			while(cursor.moveToNext()) {
+				attachmentList.add(new AttachmentCacheHelper.CachedAttachment(cursor.getLong(0), cursor.getLong(1), cursor.getString(2), cursor.getLong(3), cursor.getInt(4) != 0));
+			}
+		}
+		
+		return attachmentList;
+	}
+	
+	/**
+	 * Removes an attachment file from disk, and reverts all attachments using it to their undownloaded state
+	 * @param context The context to use
+	 * @param path The relative path of the file
+	 * @return A list of pairs of the message ID and attachment ID of each reverted attachment
+	 */
+	public List<Pair<Long, Long>> evictAttachmentFile(Context context, String path) {
+		SQLiteDatabase database = getWritableDatabase();
+		List<Pair<Long, Long>> attachmentList = new ArrayList<>();
+		
+		database.beginTransaction();
+		try {
+			//Finding the attachments using the file
+			try(Cursor cursor = database.query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry.COLUMN_NAME_MESSAGE, Contract.AttachmentEntry._ID},
+					Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " = ?", new String[]{path}, null, null, null)) {
+				while(cursor.moveToNext()) attachmentList.add(new Pair<>(cursor.getLong(0), cursor.getLong(1)));
+			}
+			
+			//Reverting the attachments
+			for(Pair<Long, Long> attachment : attachmentList) invalidateAttachment(attachment.getSecond());
+			
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+		
+		//Deleting the file
+		AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameAttachment, AttachmentStorageHelper.getAbsolutePath(context, path));
+		
+		return attachmentList;
+	}
+	
 	/**
 	 * Removes all attachment files saved to disk under iMessage conversations
 	 */
@@ -1459,45 +2179,48 @@ public class DatabaseManager extends SQLiteOpenHelper {
 				long localID = cursor.getLong(iLocalID);
 				String path = cursor.getString(iPath);
 				
-				//Getting the attachment file
-				File attachmentFile = path == null ? null : AttachmentStorageHelper.getAbsolutePath(context, path);
-				if(attachmentFile != null) {
-					//Deleting the file
-					attachmentFile.delete();
-					
+				if(path != null) {
 					//Invalidating the attachment
 					invalidateAttachment(localID);
+					
+					//Deleting the file
+					releaseAttachmentFile(context, path);
 				}
 			}
 		}
 	}
 	
 	public void updateAttachmentFile(long localID, Context context, File file, @Nullable String downloadedFileName, @Nullable String downloadedFileType) {
-		//Creating the content values variable
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, file));
-		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME, downloadedFileName);
-		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE, downloadedFileType);
-		
 		//Updating the data
-		getWritableDatabase().update(Contract.AttachmentEntry.TABLE_NAME, contentValues, Contract.AttachmentEntry._ID + " = ?", new String[]{Long.toString(localID)});
+		SQLiteStatement statement = getStatementCache().acquire(SQL_UPDATE_ATTACHMENT_FILE_BY_ID);
+		synchronized(statement) {
+			statement.clearBindings();
+			StatementCache.bindNullableString(statement, 1, AttachmentStorageHelper.getRelativePath(context, file));
+			StatementCache.bindNullableString(statement, 2, downloadedFileName);
+			StatementCache.bindNullableString(statement, 3, downloadedFileType);
+			statement.bindLong(4, localID);
+			statement.executeUpdateDelete();
+		}
 	}
 	
 	public void updateAttachmentFile(String guid, Context context, File file, @Nullable String downloadedFileName, @Nullable String downloadedFileType) {
-		//Creating the content values variable
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, file));
-		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME, downloadedFileName);
-		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE, downloadedFileType);
-		
 		//Updating the data
-		getWritableDatabase().update(Contract.AttachmentEntry.TABLE_NAME, contentValues, Contract.AttachmentEntry.COLUMN_NAME_GUID + " = ?", new String[]{guid});
+		SQLiteStatement statement = getStatementCache().acquire(SQL_UPDATE_ATTACHMENT_FILE_BY_GUID);
+		synchronized(statement) {
+			statement.clearBindings();
+			StatementCache.bindNullableString(statement, 1, AttachmentStorageHelper.getRelativePath(context, file));
+			StatementCache.bindNullableString(statement, 2, downloadedFileName);
+			StatementCache.bindNullableString(statement, 3, downloadedFileType);
+			statement.bindString(4, guid);
+			statement.executeUpdateDelete();
+		}
 	}
 	
 	public void updateAttachmentChecksum(long localID, byte[] checksum) {
 		//Creating the content values variable
 		ContentValues contentValues = new ContentValues();
 		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, Base64.encodeToString(checksum, Base64.NO_WRAP));
+		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH, GhostMatchHelper.hashChecksum(checksum));
 		
 		//Updating the data
 		getWritableDatabase().update(Contract.AttachmentEntry.TABLE_NAME, contentValues, Contract.AttachmentEntry._ID + " = ?", new String[]{Long.toString(localID)});
@@ -2058,6 +2781,87 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		}
 	}
 	
+	/**
+	 * Fetches the details of a conversation's messages needed to match them with system messages
+	 * @param conversationID The ID of the conversation
+	 * @param threadID The system thread ID of the conversation
+	 * @param fromDate The earliest message date to include
+	 * @param toDate The latest message date to include
+	 * @return A list of messages, ordered by date
+	 */
+	public List<SystemMessageSyncHelper.SyncMessage> fetchSyncMessages(long conversationID, long threadID, long fromDate, long toDate) {
+		List<SystemMessageSyncHelper.SyncMessage> messageList = new ArrayList<>();
+		try(Cursor cursor = getReadableDatabase().query(Contract.MessageEntry.TABLE_NAME,
+				new String[]{Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_GUID, Contract.MessageEntry.COLUMN_NAME_DATE, Contract.MessageEntry.COLUMN_NAME_SENDER, Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT, Contract.MessageEntry.COLUMN_NAME_STATE, Contract.MessageEntry.COLUMN_NAME_ERROR},
+				Contract.MessageEntry.COLUMN_NAME_CHAT + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " = " + ConversationItemType.message + " AND " + Contract.MessageEntry.COLUMN_NAME_DATE + " BETWEEN ? AND ?",
+				new String[]{Long.toString(conversationID), Long.toString(fromDate), Long.toString(toDate)},
+				null, null, Contract.MessageEntry.COLUMN_NAME_DATE)) {
+			int iID = cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID);
+			int iGuid = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_GUID);
+			int iDate = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_DATE);
+			int iSender = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_SENDER);
+			int iText = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT);
+			int iState = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_STATE);
+			int iError = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_ERROR);
+			
+			while(cursor.moveToNext()) {
+				//Reading the system message ID recorded when the message was imported
+				String guid = cursor.getString(iGuid);
+				boolean isMMS = false;
+				long systemID = -1;
+				if(guid != null && (guid.startsWith(MMSSMSHelper.guidPrefixSMS) || guid.startsWith(MMSSMSHelper.guidPrefixMMS))) {
+					isMMS = guid.startsWith(MMSSMSHelper.guidPrefixMMS);
+					try {
+						systemID = Long.parseLong(guid.substring(MMSSMSHelper.guidPrefixSMS.length()));
+					} catch(NumberFormatException exception) {
+						exception.printStackTrace();
+					}
+				}
+				
+				//Checking if the message is still sending or failed to send
+				boolean isOutgoing = cursor.isNull(iSender);
+				boolean isUnsent = isOutgoing && (cursor.getInt(iState) == MessageState.ghost || cursor.getInt(iState) == MessageState.idle || cursor.getInt(iError) != MessageSendErrorCode.none);
+				
+				messageList.add(new SystemMessageSyncHelper.SyncMessage(cursor.getLong(iID), threadID, isMMS, cursor.getLong(iDate), isOutgoing, cursor.getString(iText), systemID, isUnsent));
+			}
+		}
+		
+		return messageList;
+	}
+	
+	/**
+	 * Fetches a page of text messages across all conversations, from newest to oldest
+	 * @param after The backfill checkpoint to continue after, or NULL to start from the newest message
+	 * @param limit The maximum number of messages to fetch
+	 * @return A list of messages with enough text to extract memories from
+	 */
+	public List<MemoryBackfill.BackfillMessage> fetchMemoryBackfillPage(@Nullable MemoryBackfill.Checkpoint after, int limit) {
+		//Building the selection, continuing after the last message of the previous page
+		String selection = Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " = " + ConversationItemType.message + " AND length(" + Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT + ") >= " + MemoryBackfill.minMessageLength;
+		String[] selectionArgs = null;
+		if(after != null) {
+			selection += " AND (" + Contract.MessageEntry.COLUMN_NAME_DATE + " < ? OR (" + Contract.MessageEntry.COLUMN_NAME_DATE + " = ? AND " + Contract.MessageEntry._ID + " < ?))";
+			selectionArgs = new String[]{Long.toString(after.getDate()), Long.toString(after.getDate()), Long.toString(after.getMessageID())};
+		}
+		
+		List<MemoryBackfill.BackfillMessage> messageList = new ArrayList<>();
+		try(Cursor cursor = getReadableDatabase().query(Contract.MessageEntry.TABLE_NAME,
+				new String[]{Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_CHAT, Contract.MessageEntry.COLUMN_NAME_DATE, Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT},
+				selection, selectionArgs,
+				null, null, Contract.MessageEntry.COLUMN_NAME_DATE + " DESC, " + Contract.MessageEntry._ID + " DESC", Integer.toString(limit))) {
+			int iID = cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID);
+			int iChat = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_CHAT);
+			int iDate = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_DATE);
+			int iText = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT);
+			
+			while(cursor.moveToNext()) {
+				messageList.add(new MemoryBackfill.BackfillMessage(cursor.getLong(iID), cursor.getLong(iChat), cursor.getLong(iDate), cursor.getString(iText)));
+			}
+		}
+		
+		return messageList;
+	}
+	
 	public ConversationInfo fetchConversationInfo(Context context, String conversationGUID, int serviceHandler) {
 		//Getting the database
 		SQLiteDatabase database = getReadableDatabase();
@@ -2169,6 +2973,40 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		return draftFiles;
 	}
 	
+	/**
+	 * Fetches the draft files for a set of conversations with a single query
+	 * @param database The database to use for this query
+	 * @param conversationIDs The IDs of the conversations of which to load the draft files
+	 * @param context The context to use
+	 * @return A map of conversation IDs to their draft files; conversations without draft files are omitted
+	 */
+	private Map<Long, ArrayList<FileDraft>> loadDraftFiles(SQLiteDatabase database, Collection<Long> conversationIDs, Context context) {
+		Map<Long, ArrayList<FileDraft>> draftFiles = new HashMap<>();
+		try(Cursor cursor = database.query(Contract.DraftFileEntry.TABLE_NAME, new String[]{Contract.DraftFileEntry._ID, Contract.DraftFileEntry.COLUMN_NAME_CHAT, Contract.DraftFileEntry.COLUMN_NAME_FILE, Contract.DraftFileEntry.COLUMN_NAME_FILENAME, Contract.DraftFileEntry.COLUMN_NAME_FILESIZE, Contract.DraftFileEntry.COLUMN_NAME_FILETYPE, Contract.DraftFileEntry.COLUMN_NAME_MEDIASTOREID, Contract.DraftFileEntry.COLUMN_NAME_MODIFICATIONDATE},
+				Contract.DraftFileEntry.COLUMN_NAME_CHAT + " IN (" + conversationIDs.stream().map(value -> Long.toString(value)).collect(Collectors.joining(",")) + ")", null, null, null, null)) {
+			int indexIdentifier = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry._ID);
+			int indexChat = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_CHAT);
+			int indexFile = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_FILE);
+			int indexFileName = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_FILENAME);
+			int indexFileSize = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_FILESIZE);
+			int indexFileType = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_FILETYPE);
+			int indexMediaStoreID = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_MEDIASTOREID);
+			int indexModificationDate = cursor.getColumnIndexOrThrow(Contract.DraftFileEntry.COLUMN_NAME_MODIFICATIONDATE);
+			while(cursor.moveToNext()) {
+				draftFiles.computeIfAbsent(cursor.getLong(indexChat), key -> new ArrayList<>()).add(new FileDraft(
+						cursor.getLong(indexIdentifier),
+						AttachmentStorageHelper.getAbsolutePath(context, cursor.getString(indexFile)),
+						cursor.getString(indexFileName),
+						cursor.getLong(indexFileSize),
+						cursor.getString(indexFileType),
+						cursor.isNull(indexMediaStoreID) ? -1 : cursor.getLong(indexMediaStoreID),
+						cursor.isNull(indexModificationDate) ? -1 : cursor.getLong(indexModificationDate)
+				));
+			}
+		}
+		return draftFiles;
+	}
+	
 	/**
 	 * Determines what changes need to be made to merge an outgoing completed text message into a ghost message from the conversation.
 	 * Does not perform any modifications to the database.
@@ -2183,20 +3021,25 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
-		//Finding a message with matching text
-		try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, new String[]{Contract.MessageEntry._ID},
-				Contract.MessageEntry.COLUMN_NAME_STATE + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_SENDER + " IS NULL AND " + Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?",
-				new String[]{Integer.toString(MessageState.ghost), messageText, Long.toString(conversationID)},
-				null, null, messageSortOrderDesc, "1")) {
-			//Checking if there are any results
-			if(!cursor.moveToFirst()) return null;
-			
-			//Getting the message identifier
-			long matchedMessageID = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID));
-			
-			//Returning the result
-			return new GhostMergeResult<>(matchedMessageID, Collections.emptyList(), null, Collections.emptyList(), Collections.emptyList());
+		//Finding messages with a matching text hash
+		String normalizedText = GhostMatchHelper.normalizeText(messageText);
+		try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, new String[]{Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT},
+				Contract.MessageEntry.COLUMN_NAME_CHAT + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_GHOSTHASH + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_STATE + " = " + MessageState.ghost + " AND " + Contract.MessageEntry.COLUMN_NAME_SENDER + " IS NULL",
+				new String[]{Long.toString(conversationID), Long.toString(GhostMatchHelper.hashText(messageText))},
+				null, null, messageSortOrderDesc)) {
+			//Finding the most recent message whose text actually matches, in case of a hash collision
+			int indexID = cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID);
+			int indexText = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT);
+			while(cursor.moveToNext()) {
+				String candidateText = cursor.getString(indexText);
+				if(candidateText == null || !GhostMatchHelper.normalizeText(candidateText).equals(normalizedText)) continue;
+				
+				//Returning the result
+				return new GhostMergeResult<>(cursor.getLong(indexID), Collections.emptyList(), null, Collections.emptyList(), Collections.emptyList());
+			}
 		}
+		
+		return null;
 	}
 	
 	/**
@@ -2211,63 +3054,31 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
-		/*
-		 * AirMessage must send multiple attachment files as separate messages, though the Apple Messages app will sometimes merge these outgoing messages into one.
-		 * To account for this, we find the first message with a matching attachment checksum, apply the new server-provided message to that local message,
-		 * and then delete any subsequent messages with matching attachment checksums.
-		 */
-		
-		//Creating the matching values
-		long matchedMessageID = -1;
-		List<Long> deletedMessageIDs = new ArrayList<>(); //Messages that should be deleted
-		Pair<Long, A> persistingAttachment = null;
-		List<Pair<Long, A>> matchedAttachments = new ArrayList<>(); //Attachments transferred from subsequently matched messages
-		List<A> unmatchedAttachments = new ArrayList<>(); //Attachments that were delivered as a part of the source message, but couldn't be matched in the database
-		
-		//Iterating over the attachments
-		for(Pair<byte[], A> pair : attachments) {
-			//Ignoring if the attachment has no checksum
-			if(pair.getFirst() == null) {
-				unmatchedAttachments.add(pair.getSecond());
-				continue;
-			}
-			
-			//Finding a matching row
-			try(Cursor cursor = database.rawQuery("SELECT " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry._ID + ", " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " FROM " + Contract.AttachmentEntry.TABLE_NAME +
+		return GhostMatchHelper.planAttachmentMerge(attachments, (checksum, excludedMessageIDs) -> {
+			//Finding the most recent ghost attachment with a matching checksum
+			try(Cursor cursor = database.rawQuery("SELECT " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry._ID + ", " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + ", " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM + " FROM " + Contract.AttachmentEntry.TABLE_NAME +
 							" JOIN " + Contract.MessageEntry.TABLE_NAME + " ON " + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + //Query for message + its attachment
-							" WHERE " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_STATE + " = " + MessageState.ghost + //Only select ghost messages
+							" WHERE " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH + " = " + GhostMatchHelper.hashChecksum(checksum) + //Only select attachments with a matching checksum
+							" AND " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_STATE + " = " + MessageState.ghost + //Only select ghost messages
 							" AND " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_SENDER + " IS NULL" + //Only select outgoing messages
-							" AND " + Contract.AttachmentEntry.TABLE_NAME + '.' + Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM + " = '" + Base64.encodeToString(pair.getFirst(), Base64.NO_WRAP) + "'" + //Only select attachments with a matching checksum
 							" AND " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry.COLUMN_NAME_CHAT + " = " + conversationID + //Only select messages in the current conversation
-							(matchedMessageID == -1 ? "" : " AND " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + " != " + matchedMessageID) + //Don't match the target message, if we have one
-							" ORDER BY " + messageSortOrderDesc + //Find the most recent item
-							" LIMIT 1;",
+							(excludedMessageIDs.isEmpty() ? "" : " AND " + Contract.MessageEntry.TABLE_NAME + '.' + Contract.MessageEntry._ID + " NOT IN (" + excludedMessageIDs.stream().map(value -> Long.toString(value)).collect(Collectors.joining(",")) + ")") + //Don't match messages that were already matched
+							" ORDER BY " + messageSortOrderDesc + ";", //Find the most recent item
 					null)) {
-				//Ignoring if there are no results
-				if(!cursor.moveToFirst()) {
-					unmatchedAttachments.add(pair.getSecond());
-					continue;
+				while(cursor.moveToNext()) {
+					//Checking the full checksum, since different checksums can share a hash
+					if(cursor.isNull(2)) continue;
+					byte[] storedChecksum = cursor.getType(2) == Cursor.FIELD_TYPE_BLOB ? cursor.getBlob(2) : Base64.decode(cursor.getString(2), Base64.NO_WRAP);
+					if(!Arrays.equals(checksum, storedChecksum)) continue;
+					
+					//Returning the attachment and message IDs
+					return new Pair<>(cursor.getLong(0), cursor.getLong(1));
 				}
 				
-				//Getting the result data
-				long attachmentID = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.AttachmentEntry._ID));
-				long messageID = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.AttachmentEntry.COLUMN_NAME_MESSAGE));
-				
-				//Checking if we already have a target message
-				if(matchedMessageID != -1) {
-					//Transferring the attachment to the target message and deleting the message
-					matchedAttachments.add(new Pair<>(attachmentID, pair.getSecond()));
-					deletedMessageIDs.add(messageID);
-				} else {
-					//Setting the target message
-					matchedMessageID = messageID;
-					persistingAttachment = new Pair<>(attachmentID, pair.getSecond());
-				}
+				//No matching attachments
+				return null;
 			}
-		}
-		
-		if(matchedMessageID == -1) return null;
-		else return new GhostMergeResult<>(matchedMessageID, deletedMessageIDs, persistingAttachment, matchedAttachments, unmatchedAttachments);
+		});
 	}
 	
 	/**
@@ -2280,6 +3091,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 */
 	@Nullable
 	public ReplaceInsertResult mergeOrWriteConversationItem(Context context, long conversationID, Blocks.ConversationItem conversationItem, boolean isHistory) {
+		//Writing pending updates, so that they can't overwrite the merged message later
+		flushPendingWrites();
+		
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
@@ -2307,6 +3121,7 @@ public class DatabaseManager extends SQLiteOpenHelper {
 					//Deleting discarded messages
 					if(!result.getDiscardedMessageIDs().isEmpty()) {
 						database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " IN (" + result.getDiscardedMessageIDs().stream().map(value -> Long.toString(value)).collect(Collectors.joining(",")) + ")", null);
+						SemanticRetrieval.removeMessages(context, result.getDiscardedMessageIDs());
 					}
 					
 					//Creating the content values
@@ -2411,6 +3226,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @return A result containing created, updated and deleted messages
 	 */
 	public ReplaceInsertResult transferConversationItemReplaceGhost(Context context, long conversationID, ConversationItem conversationItem) {
+		//Writing pending updates, so that they can't overwrite the merged message later
+		flushPendingWrites();
+		
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
@@ -2447,6 +3265,7 @@ public class DatabaseManager extends SQLiteOpenHelper {
 					//Deleting discarded messages
 					if(!result.getDiscardedMessageIDs().isEmpty()) {
 						database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " IN (" + result.getDiscardedMessageIDs().stream().map(value -> Long.toString(value)).collect(Collectors.joining(",")) + ")", null);
+						SemanticRetrieval.removeMessages(context, result.getDiscardedMessageIDs());
 					}
 					
 					//Creating the content values
@@ -2542,6 +3361,7 @@ public class DatabaseManager extends SQLiteOpenHelper {
 					
 					//Deleting the original message from the old conversation
 					database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " = ?", new String[]{Long.toString(messageItem.getLocalID())});
+					SemanticRetrieval.removeMessages(context, Collections.singletonList(messageItem.getLocalID()));
 					
 					//Creating the final message
 					MessageInfo messageInfo = new MessageInfo(result.getTargetMessageID(), messageItem.getServerID(), messageItem.getGuid(), messageItem.getDate(), null, messageItem.getMessageTextComponent(), messageAttachments, messageItem.getSendStyle(), sendStyleViewed, messageItem.getDateRead(), messageItem.getMessageState(), messageItem.getErrorCode(), messageItem.isErrorDetailsAvailable(), null);
@@ -2562,6 +3382,79 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		return new ReplaceInsertResult(conversationItem, Collections.singletonList(conversationItem), Collections.emptyList(), Collections.emptyList());
 	}
 	
+	/**
+	 * The position of a conversation in the conversation list, to continue loading conversations after it
+	 */
+	public static class ConversationSortKey {
+		private final long sortTime;
+		private final long id;
+		
+		public ConversationSortKey(long sortTime, long id) {
+			this.sortTime = sortTime;
+			this.id = id;
+		}
+	}
+	
+	/**
+	 * A page of conversations, along with the sort key to load the next page after
+	 */
+	public static class ConversationSummaryPage {
+		private final List<ConversationInfo> conversations;
+		@Nullable private final ConversationSortKey lastKey;
+		
+		public ConversationSummaryPage(List<ConversationInfo> conversations, @Nullable ConversationSortKey lastKey) {
+			this.conversations = conversations;
+			this.lastKey = lastKey;
+		}
+		
+		public List<ConversationInfo> getConversations() {
+			return conversations;
+		}
+		
+		/**
+		 * Gets the sort key of the last conversation in this page, or NULL if the page is empty
+		 */
+		@Nullable
+		public ConversationSortKey getLastKey() {
+			return lastKey;
+		}
+	}
+	
+	/**
+	 * Represents a saved attachment file that can be shared with other attachments of the same contents
+	 */
+	public static class StoredAttachmentFile {
+		private final File file;
+		private final long fileSize;
+		@Nullable private final String downloadFileName;
+		@Nullable private final String downloadFileType;
+		
+		public StoredAttachmentFile(File file, long fileSize, @Nullable String downloadFileName, @Nullable String downloadFileType) {
+			this.file = file;
+			this.fileSize = fileSize;
+			this.downloadFileName = downloadFileName;
+			this.downloadFileType = downloadFileType;
+		}
+		
+		public File getFile() {
+			return file;
+		}
+		
+		public long getFileSize() {
+			return fileSize;
+		}
+		
+		@Nullable
+		public String getDownloadFileName() {
+			return downloadFileName;
+		}
+		
+		@Nullable
+		public String getDownloadFileType() {
+			return downloadFileType;
+		}
+	}
+	
 	/**
 	 * Represents the result of a 'smart insert' where updated messages are merged into an existing conversation thread
 	 * @param <A> The attachment data as represented in memory, used to apply ghost merge changes in response to this result
@@ -2800,51 +3693,69 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			//Casting the item
 			MessageInfo messageInfo = (MessageInfo) conversationItem;
 			
-			//Putting the content values
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_SENDER, messageInfo.getSender());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_ITEMTYPE, messageInfo.getItemType());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT, messageInfo.getMessageText());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_MESSAGESUBJECT, messageInfo.getMessageSubject());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_STATE, messageInfo.getMessageState());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_ERROR, messageInfo.getErrorCode());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_ERRORDETAILS, messageInfo.getErrorDetails());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_DATEREAD, messageInfo.getDateRead());
-			contentValues.put(Contract.MessageEntry.COLUMN_NAME_SENDSTYLE, messageInfo.getSendStyle());
-			
-			//Inserting the conversation into the database
-			try {
-				itemLocalID = database.insertOrThrow(Contract.MessageEntry.TABLE_NAME, null, contentValues);
-			} catch(SQLiteConstraintException exception) {
-				//Printing the stack trace
-				exception.printStackTrace();
+			//Inserting the message into the database
+			SQLiteStatement messageStatement = getStatementCache().acquire(SQL_INSERT_MESSAGE);
+			synchronized(messageStatement) {
+				messageStatement.clearBindings();
+				bindContentValue(messageStatement, 1, contentValues.get(Contract.MessageEntry.COLUMN_NAME_SERVERID));
+				bindContentValue(messageStatement, 2, contentValues.get(Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED));
+				bindContentValue(messageStatement, 3, contentValues.get(Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET));
+				StatementCache.bindNullableString(messageStatement, 4, conversationItem.getGuid());
+				messageStatement.bindLong(5, conversationItem.getDate());
+				messageStatement.bindLong(6, conversationID);
+				StatementCache.bindNullableString(messageStatement, 7, messageInfo.getSender());
+				messageStatement.bindLong(8, messageInfo.getItemType());
+				StatementCache.bindNullableString(messageStatement, 9, messageInfo.getMessageText());
+				StatementCache.bindNullableString(messageStatement, 10, messageInfo.getMessageSubject());
+				messageStatement.bindLong(11, messageInfo.getMessageState());
+				messageStatement.bindLong(12, messageInfo.getErrorCode());
+				StatementCache.bindNullableString(messageStatement, 13, messageInfo.getErrorDetails());
+				messageStatement.bindLong(14, messageInfo.getDateRead());
+				StatementCache.bindNullableString(messageStatement, 15, messageInfo.getSendStyle());
+				if(messageInfo.getMessageState() == MessageState.ghost && messageInfo.isOutgoing() && messageInfo.getMessageText() != null) {
+					messageStatement.bindLong(16, GhostMatchHelper.hashText(messageInfo.getMessageText()));
+				} else {
+					messageStatement.bindNull(16);
+				}
 				
-				//Returning
-				return -1;
+				try {
+					itemLocalID = messageStatement.executeInsert();
+				} catch(SQLiteConstraintException exception) {
+					//Printing the stack trace
+					exception.printStackTrace();
+					
+					//Returning
+					return -1;
+				}
 			}
 			
 			//Iterating over the attachments
+			SQLiteStatement attachmentStatement = getStatementCache().acquire(SQL_INSERT_ATTACHMENT);
 			for(AttachmentInfo attachment : messageInfo.getAttachments()) {
-				//Creating the content values
-				contentValues.clear();
-				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_GUID, attachment.getGUID());
-				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_MESSAGE, itemLocalID);
-				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILENAME, attachment.getFileName());
-				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILETYPE, attachment.getContentType());
-				if(attachment.getFileSize() != -1) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILESIZE, attachment.getFileSize());
-				if(attachment.getFile() != null) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(MainApplication.getInstance(), attachment.getFile()));
-				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, attachment.getFileChecksum());
-				if(attachment.getSort() != -1) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_SORT, attachment.getSort());
-				
 				//Inserting the attachment into the database
 				long attachmentLocalID;
-				try {
-					attachmentLocalID = database.insertOrThrow(Contract.AttachmentEntry.TABLE_NAME, null, contentValues);
-				} catch(SQLiteConstraintException exception) {
-					//Printing the stack trace
-					exception.printStackTrace();
+				synchronized(attachmentStatement) {
+					attachmentStatement.clearBindings();
+					StatementCache.bindNullableString(attachmentStatement, 1, attachment.getGUID());
+					attachmentStatement.bindLong(2, itemLocalID);
+					StatementCache.bindNullableString(attachmentStatement, 3, attachment.getFileName());
+					StatementCache.bindNullableString(attachmentStatement, 4, attachment.getContentType());
+					StatementCache.bindOptionalLong(attachmentStatement, 5, attachment.getFileSize(), -1);
+					StatementCache.bindNullableString(attachmentStatement, 6, attachment.getFile() == null ? null : AttachmentStorageHelper.getRelativePath(MainApplication.getInstance(), attachment.getFile()));
+					StatementCache.bindNullableBlob(attachmentStatement, 7, attachment.getFileChecksum());
+					StatementCache.bindOptionalLong(attachmentStatement, 8, attachment.getSort(), -1);
+					if(attachment.getFileChecksum() != null) attachmentStatement.bindLong(9, GhostMatchHelper.hashChecksum(attachment.getFileChecksum()));
+					else attachmentStatement.bindNull(9);
 					
-					//Skipping the remainder of the iteration
-					continue;
+					try {
+						attachmentLocalID = attachmentStatement.executeInsert();
+					} catch(SQLiteConstraintException exception) {
+						//Printing the stack trace
+						exception.printStackTrace();
+						
+						//Skipping the remainder of the iteration
+						continue;
+					}
 				}
 				
 				//Setting the local ID
@@ -2898,6 +3809,25 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		return itemLocalID;
 	}
 	
+	/**
+	 * Adds a batch of conversation items to a conversation in a single transaction, and updates their local IDs
+	 * @param conversationID The ID of the conversation
+	 * @param conversationItems The conversation items to add
+	 * @param offsetRequired Whether to use offsets conversation items' server IDs
+	 */
+	public void addConversationItems(long conversationID, List<? extends ConversationItem> conversationItems, boolean offsetRequired) {
+		SQLiteDatabase database = getWritableDatabase();
+		database.beginTransaction();
+		try {
+			for(ConversationItem conversationItem : conversationItems) {
+				conversationItem.setLocalID(addConversationItem(conversationID, conversationItem, offsetRequired));
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
 	/**
 	 * Writes a message attachment block to the database
 	 * @param context The context to use
@@ -2914,11 +3844,25 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILENAME, attachmentStruct.name);
 		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILETYPE, attachmentStruct.type);
 		if(attachmentStruct.size != -1) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILESIZE, attachmentStruct.size);
-		if(attachmentStruct.checksum != null) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, Base64.encodeToString(attachmentStruct.checksum, Base64.NO_WRAP));
+		if(attachmentStruct.checksum != null) {
+			contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, Base64.encodeToString(attachmentStruct.checksum, Base64.NO_WRAP));
+			contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH, GhostMatchHelper.hashChecksum(attachmentStruct.checksum));
+		}
 		if(attachmentStruct.sort != -1) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_SORT, attachmentStruct.sort);
 		boolean shouldAutoDownload = !isHistory && Preferences.getPreferenceAutoDownloadAttachments(context); //Don't auto-download historical attachments
 		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_SHOULDAUTODOWNLOAD, shouldAutoDownload);
 		
+		//Sharing a saved file with the same contents, instead of downloading it again
+		StoredAttachmentFile storedFile = null;
+		if(attachmentStruct.checksum != null && Preferences.getPreferenceShareAttachmentFiles(context)) {
+			storedFile = findStoredAttachmentFile(context, attachmentStruct.checksum, attachmentStruct.size);
+			if(storedFile != null) {
+				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, storedFile.getFile()));
+				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILENAME, storedFile.getDownloadFileName());
+				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_DOWNLOADFILETYPE, storedFile.getDownloadFileType());
+			}
+		}
+		
 		//Inserting the attachment into the database
 		long localID;
 		try {
@@ -2931,8 +3875,15 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			return null;
 		}
 		
+		//Recording the avoided download
+		if(storedFile != null) SharedPreferencesManager.addAttachmentTransferBytesAvoided(context, storedFile.getFileSize());
+		
 		//Creating and returning the attachment
-		return new AttachmentInfo(localID, attachmentStruct.guid, attachmentStruct.name, attachmentStruct.type, attachmentStruct.size, attachmentStruct.sort, null, attachmentStruct.checksum, null, null, shouldAutoDownload);
+		if(storedFile != null) {
+			return new AttachmentInfo(localID, attachmentStruct.guid, attachmentStruct.name, attachmentStruct.type, attachmentStruct.size, attachmentStruct.sort, storedFile.getFile(), attachmentStruct.checksum, storedFile.getDownloadFileName(), storedFile.getDownloadFileType(), shouldAutoDownload);
+		} else {
+			return new AttachmentInfo(localID, attachmentStruct.guid, attachmentStruct.name, attachmentStruct.type, attachmentStruct.size, attachmentStruct.sort, null, attachmentStruct.checksum, null, null, shouldAutoDownload);
+		}
 	}
 	
 	/**
@@ -2952,6 +3903,7 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		if(attachment.getFileSize() != -1) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILESIZE, attachment.getFileSize());
 		if(attachment.getFile() != null) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, attachment.getFile()));
 		contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_FILECHECKSUM, attachment.getFileChecksum());
+		if(attachment.getFileChecksum() != null) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_CHECKSUMHASH, GhostMatchHelper.hashChecksum(attachment.getFileChecksum()));
 		if(attachment.getSort() != -1) contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_SORT, attachment.getSort());
 		
 		//Inserting the attachment into the database
@@ -3035,24 +3987,22 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @return A pair of sticker's complete object and its positioning metadata
 	 */
 	public Pair<StickerInfo, ModifierMetadata> addMessageSticker(Context context, long messageID, Blocks.StickerModifierInfo sticker) {
-		//Getting the database
-		SQLiteDatabase database = getWritableDatabase();
-		
-		//Creating the content values
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_GUID, sticker.fileGuid);
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_MESSAGE, messageID);
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_MESSAGEINDEX, sticker.messageIndex);
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_SENDER, sticker.sender);
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_DATE, sticker.date);
-		
 		//Inserting the entry
 		long stickerID;
-		try {
-			stickerID = database.insert(Contract.StickerEntry.TABLE_NAME, null, contentValues);
-		} catch(SQLiteConstraintException exception) {
-			exception.printStackTrace();
-			return null;
+		SQLiteStatement insertStatement = getStatementCache().acquire(SQL_INSERT_STICKER);
+		synchronized(insertStatement) {
+			insertStatement.clearBindings();
+			StatementCache.bindNullableString(insertStatement, 1, sticker.fileGuid);
+			insertStatement.bindLong(2, messageID);
+			insertStatement.bindLong(3, sticker.messageIndex);
+			StatementCache.bindNullableString(insertStatement, 4, sticker.sender);
+			insertStatement.bindLong(5, sticker.date);
+			try {
+				stickerID = insertStatement.executeInsert();
+			} catch(SQLiteConstraintException exception) {
+				exception.printStackTrace();
+				return null;
+			}
 		}
 		
 		//Saving the sticker data to disk
@@ -3068,9 +4018,13 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		}
 		
 		//Updating the sticker's file path
-		contentValues = new ContentValues();
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, targetFile));
-		database.update(Contract.StickerEntry.TABLE_NAME, contentValues, Contract.StickerEntry._ID + " = ?", new String[]{Long.toString(stickerID)});
+		SQLiteStatement updateStatement = getStatementCache().acquire(SQL_UPDATE_STICKER_FILE);
+		synchronized(updateStatement) {
+			updateStatement.clearBindings();
+			StatementCache.bindNullableString(updateStatement, 1, AttachmentStorageHelper.getRelativePath(context, targetFile));
+			updateStatement.bindLong(2, stickerID);
+			updateStatement.executeUpdateDelete();
+		}
 		
 		//Returning the sticker
 		return new Pair<>(new StickerInfo(stickerID, sticker.fileGuid, sticker.sender, sticker.date, targetFile), new ModifierMetadata(messageID, sticker.messageIndex));
@@ -3129,21 +4083,30 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			}
 		}
 		
-		//Creating the content values with the code
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(Contract.TapbackEntry.COLUMN_NAME_CODE, tapback.tapbackType);
-		
 		if(tapbackID != -1) {
 			//Updating the matching entry
-			database.update(Contract.TapbackEntry.TABLE_NAME, contentValues, Contract.TapbackEntry._ID + " = ?", new String[]{Long.toString(tapbackID)});
+			SQLiteStatement statement = getStatementCache().acquire(SQL_UPDATE_TAPBACK_CODE);
+			synchronized(statement) {
+				statement.clearBindings();
+				statement.bindLong(1, tapback.tapbackType);
+				statement.bindLong(2, tapbackID);
+				statement.executeUpdateDelete();
+			}
 		} else {
-			//Completing the content values
-			contentValues.put(Contract.TapbackEntry.COLUMN_NAME_MESSAGE, messageID);
-			contentValues.put(Contract.TapbackEntry.COLUMN_NAME_MESSAGEINDEX, tapback.messageIndex);
-			contentValues.put(Contract.TapbackEntry.COLUMN_NAME_SENDER, tapback.sender);
-			
 			//Inserting the entry
-			tapbackID = database.insert(Contract.TapbackEntry.TABLE_NAME, null, contentValues);
+			SQLiteStatement statement = getStatementCache().acquire(SQL_INSERT_TAPBACK);
+			synchronized(statement) {
+				statement.clearBindings();
+				statement.bindLong(1, tapback.tapbackType);
+				statement.bindLong(2, messageID);
+				statement.bindLong(3, tapback.messageIndex);
+				StatementCache.bindNullableString(statement, 4, tapback.sender);
+				try {
+					tapbackID = statement.executeInsert();
+				} catch(SQLException exception) {
+					exception.printStackTrace();
+				}
+			}
 		}
 		
 		//Returning the tapback
@@ -3340,20 +4303,7 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @param conversationID The ID of the conversation to delete
 	 */
 	public void deleteConversation(Context context, long conversationID) {
-		//Getting the database
-		SQLiteDatabase database = getWritableDatabase();
-		
-		//Deleting the conversation
-		database.delete(Contract.ConversationEntry.TABLE_NAME, Contract.ConversationEntry._ID + " = ?", new String[]{Long.toString(conversationID)});
-		
-		//Deleting all related messages
-		try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, new String[]{Contract.MessageEntry._ID}, Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?", new String[]{Long.toString(conversationID)}, null, null, null)) {
-			int columnIndexID = cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID);
-			while(cursor.moveToNext()) deleteMessage(context, cursor.getLong(columnIndexID));
-		}
-		
-		//Deleting all related members
-		database.delete(Contract.MemberEntry.TABLE_NAME, Contract.MemberEntry.COLUMN_NAME_CHAT + " = ?", new String[]{Long.toString(conversationID)});
+		deleteConversations(context, new long[]{conversationID});
 	}
 	
 	/**
@@ -3363,10 +4313,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @return An array of the local IDs of all deleted conversations
 	 */
 	public long[] deleteConversationsByServiceHandler(Context context, @ServiceHandler int serviceHandler) {
-		//Deleting all conversations meeting the selection
-		SQLiteDatabase database = getReadableDatabase();
+		//Finding all conversations meeting the selection
 		long[] deletedConversations;
-		try(Cursor cursor = database.query(Contract.ConversationEntry.TABLE_NAME, new String[]{Contract.ConversationEntry._ID},
+		try(Cursor cursor = getReadableDatabase().query(Contract.ConversationEntry.TABLE_NAME, new String[]{Contract.ConversationEntry._ID},
 				Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER + " = ?", new String[]{Integer.toString(serviceHandler)},
 				null, null, null)) {
 			int columnIndexID = cursor.getColumnIndexOrThrow(Contract.ConversationEntry._ID);
@@ -3374,75 +4323,274 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			deletedConversations = new long[cursor.getCount()];
 			
 			int i = 0;
-			while(cursor.moveToNext()) {
-				long conversationID = cursor.getLong(columnIndexID);
-				deletedConversations[i++] = conversationID;
-				deleteConversation(context, conversationID);
-			}
+			while(cursor.moveToNext()) deletedConversations[i++] = cursor.getLong(columnIndexID);
 		}
 		
+		//Deleting the conversations
+		deleteConversations(context, deletedConversations);
+		
 		return deletedConversations;
 	}
 	
 	/**
-	 * Deletes a message from the database, as well as any associated data saved on disk
+	 * Deletes a set of conversations from the database in a single transaction.
+	 * Files saved on disk for the conversations are queued in the file trash, and removed afterwards by {@link FileSweepWorker}.
 	 * @param context The context to use
-	 * @param messageID The ID of the message to delete
+	 * @param conversationIDs The IDs of the conversations to delete
 	 */
-	public void deleteMessage(Context context, long messageID) {
-		//Getting the database
-		SQLiteDatabase database = getWritableDatabase();
+	public void deleteConversations(Context context, long[] conversationIDs) {
+		if(conversationIDs.length == 0) return;
 		
-		//Deleting the message entries
-		database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " = ?", new String[]{Long.toString(messageID)});
+		//Building the selections
+		String conversationList = Arrays.stream(conversationIDs).mapToObj(Long::toString).collect(Collectors.joining(","));
+		String messageSelection = "SELECT " + Contract.MessageEntry._ID + " FROM " + Contract.MessageEntry.TABLE_NAME + " WHERE " + Contract.MessageEntry.COLUMN_NAME_CHAT + " IN (" + conversationList + ")";
 		
-		//Deleting associated attachment files
-		try(Cursor cursor = database.query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry.COLUMN_NAME_FILEPATH},
-				Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)},
-				null, null, null, null)) {
-			int iPath = cursor.getColumnIndexOrThrow(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH);
-			
-			while(cursor.moveToNext()) {
-				String path = cursor.getString(iPath);
-				if(path != null) {
-					AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameAttachment, AttachmentStorageHelper.getAbsolutePath(context, path));
-				}
+		SQLiteDatabase database = getWritableDatabase();
+		List<Long> messageIDs = new ArrayList<>();
+		database.beginTransaction();
+		try {
+			//Collecting the conversations' messages, so that their embeddings can be removed afterwards
+			try(Cursor cursor = database.rawQuery(messageSelection, null)) {
+				while(cursor.moveToNext()) messageIDs.add(cursor.getLong(0));
 			}
-		}
-		//Deleting associated attachment entries
-		database.delete(Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)});
-		
-		//Deleting associated sticker files
-		try(Cursor cursor = database.query(Contract.StickerEntry.TABLE_NAME, new String[]{Contract.StickerEntry.COLUMN_NAME_FILEPATH},
-				Contract.StickerEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)},
-				null, null, null, null)) {
-			int iPath = cursor.getColumnIndexOrThrow(Contract.StickerEntry.COLUMN_NAME_FILEPATH);
 			
-			while(cursor.moveToNext()) {
-				String path = cursor.getString(iPath);
-				if(path == null) continue;
-				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, AttachmentStorageHelper.getAbsolutePath(context, path));
-			}
+			//Deleting the conversations first, so that the summary triggers have nothing left to refresh as the messages are deleted
+			database.delete(Contract.ConversationEntry.TABLE_NAME, Contract.ConversationEntry._ID + " IN (" + conversationList + ")", null);
+			
+			//Moving associated attachment and sticker files to the trash
+			database.execSQL("INSERT INTO " + Contract.FileTrashEntry.TABLE_NAME + " (" + Contract.FileTrashEntry.COLUMN_NAME_DIRECTORY + ", " + Contract.FileTrashEntry.COLUMN_NAME_PATH + ")" +
+					" SELECT DISTINCT ?, " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " FROM " + Contract.AttachmentEntry.TABLE_NAME +
+					" WHERE " + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL AND " + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " IN (" + messageSelection + ")",
+					new Object[]{AttachmentStorageHelper.dirNameAttachment});
+			database.execSQL("INSERT INTO " + Contract.FileTrashEntry.TABLE_NAME + " (" + Contract.FileTrashEntry.COLUMN_NAME_DIRECTORY + ", " + Contract.FileTrashEntry.COLUMN_NAME_PATH + ")" +
+					" SELECT ?, " + Contract.StickerEntry.COLUMN_NAME_FILEPATH + " FROM " + Contract.StickerEntry.TABLE_NAME +
+					" WHERE " + Contract.StickerEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL AND " + Contract.StickerEntry.COLUMN_NAME_MESSAGE + " IN (" + messageSelection + ")",
+					new Object[]{AttachmentStorageHelper.dirNameSticker});
+			
+			//Deleting associated modifier and attachment entries
+			database.delete(Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " IN (" + messageSelection + ")", null);
+			database.delete(Contract.StickerEntry.TABLE_NAME, Contract.StickerEntry.COLUMN_NAME_MESSAGE + " IN (" + messageSelection + ")", null);
+			database.delete(Contract.TapbackEntry.TABLE_NAME, Contract.TapbackEntry.COLUMN_NAME_MESSAGE + " IN (" + messageSelection + ")", null);
+			
+			//Deleting all related messages, members and archived items
+			database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry.COLUMN_NAME_CHAT + " IN (" + conversationList + ")", null);
+			database.delete(Contract.MemberEntry.TABLE_NAME, Contract.MemberEntry.COLUMN_NAME_CHAT + " IN (" + conversationList + ")", null);
+			database.delete(Contract.MessageArchiveEntry.TABLE_NAME, Contract.MessageArchiveEntry.COLUMN_NAME_CHAT + " IN (" + conversationList + ")", null);
+			
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
 		}
-		//Deleting associated sticker entries
-		database.delete(Contract.StickerEntry.TABLE_NAME, Contract.StickerEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)});
 		
-		//Deleting associated tapback entries
-		database.delete(Contract.TapbackEntry.TABLE_NAME, Contract.TapbackEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)});
+		//Removing the trashed files and message embeddings in the background
+		FileSweepWorker.enqueue(context);
+		SemanticRetrieval.removeMessages(context, messageIDs);
 	}
 	
 	/**
-	 * Sets the muted state of a conversation
+	 * Deletes files that have been moved to the trash.
+	 * Each entry is only removed once its file has been deleted, so an interrupted sweep can safely be run again.
+	 * @param context The context to use
+	 * @return The number of trash entries processed
 	 */
-	public void updateConversationMuted(long conversationID, boolean muted) {
-		//Creating the content values
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(DatabaseManager.Contract.ConversationEntry.COLUMN_NAME_MUTED, muted);
-		
-		//Updating the conversation
-		getWritableDatabase().update(Contract.ConversationEntry.TABLE_NAME, contentValues, Contract.ConversationEntry._ID + " = ?", new String[]{Long.toString(conversationID)});
-	}
-	
+	public int sweepTrashedFiles(Context context) {
+		SQLiteDatabase database = getWritableDatabase();
+		int sweptCount = 0;
+		
+		while(true) {
+			//Fetching the next batch of files
+			List<Long> entryIDs = new ArrayList<>();
+			try(Cursor cursor = database.query(Contract.FileTrashEntry.TABLE_NAME,
+					new String[]{Contract.FileTrashEntry._ID, Contract.FileTrashEntry.COLUMN_NAME_DIRECTORY, Contract.FileTrashEntry.COLUMN_NAME_PATH},
+					null, null, null, null, Contract.FileTrashEntry._ID, Integer.toString(fileSweepBatchSize))) {
+				while(cursor.moveToNext()) {
+					String directory = cursor.getString(1);
+					String path = cursor.getString(2);
+					
+					//Keeping attachment files that have since been shared with another attachment
+					boolean isReferenced = false;
+					if(directory.equals(AttachmentStorageHelper.dirNameAttachment)) {
+						try(Cursor referenceCursor = database.query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry._ID},
+								Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " = ?", new String[]{path}, null, null, null, "1")) {
+							isReferenced = referenceCursor.moveToFirst();
+						}
+					}
+					
+					//Deleting the file (this does nothing if the file was already deleted)
+					if(!isReferenced) AttachmentStorageHelper.deleteContentFile(directory, AttachmentStorageHelper.getAbsolutePath(context, path));
+					
+					entryIDs.add(cursor.getLong(0));
+				}
+			}
+			if(entryIDs.isEmpty()) break;
+			
+			//Removing the processed entries
+			database.delete(Contract.FileTrashEntry.TABLE_NAME,
+					Contract.FileTrashEntry._ID + " IN (" + entryIDs.stream().map(Object::toString).collect(Collectors.joining(",")) + ")", null);
+			sweptCount += entryIDs.size();
+		}
+		
+		return sweptCount;
+	}
+	
+	/**
+	 * Adds conversation memories in a single transaction, and removes the oldest memories beyond the limit.
+	 * Memories extracted from a message that already has a memory in the same conversation are skipped.
+	 * @param memoryItems The memories to add
+	 * @param limit The maximum number of memories to keep
+	 * @return The number of memories added
+	 */
+	public int addMemoryItems(List<ConversationMemoryManager.MemoryItem> memoryItems, int limit) {
+		SQLiteDatabase database = getWritableDatabase();
+		int addedCount = 0;
+		
+		database.beginTransaction();
+		try {
+			for(ConversationMemoryManager.MemoryItem memoryItem : memoryItems) {
+				ContentValues contentValues = new ContentValues();
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_MEMORYID, memoryItem.getId());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONGUID, memoryItem.getConversationGuid());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONTITLE, memoryItem.getConversationTitle());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_EXTRACTEDINFO, memoryItem.getExtractedInfo());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_ORIGINALMESSAGE, memoryItem.getOriginalMessage());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_SENDERNAME, memoryItem.getSenderName());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP, memoryItem.getTimestamp());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_CATEGORY, memoryItem.getCategory());
+				contentValues.put(Contract.ConversationMemoryEntry.COLUMN_NAME_CONFIDENCE, memoryItem.getConfidence());
+				
+				if(database.insertWithOnConflict(Contract.ConversationMemoryEntry.TABLE_NAME, null, contentValues, SQLiteDatabase.CONFLICT_IGNORE) != -1) addedCount++;
+			}
+			
+			if(addedCount > 0) trimMemoryItems(database, limit);
+			
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+		
+		return addedCount;
+	}
+	
+	/**
+	 * Fetches all conversation memories
+	 * @return A list of memories, from newest to oldest
+	 */
+	public List<ConversationMemoryManager.MemoryItem> fetchMemoryItems() {
+		List<ConversationMemoryManager.MemoryItem> memoryList = new ArrayList<>();
+		try(Cursor cursor = getReadableDatabase().query(Contract.ConversationMemoryEntry.TABLE_NAME,
+				new String[]{Contract.ConversationMemoryEntry.COLUMN_NAME_MEMORYID, Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONGUID, Contract.ConversationMemoryEntry.COLUMN_NAME_CONVERSATIONTITLE,
+						Contract.ConversationMemoryEntry.COLUMN_NAME_EXTRACTEDINFO, Contract.ConversationMemoryEntry.COLUMN_NAME_ORIGINALMESSAGE, Contract.ConversationMemoryEntry.COLUMN_NAME_SENDERNAME,
+						Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP, Contract.ConversationMemoryEntry.COLUMN_NAME_CATEGORY, Contract.ConversationMemoryEntry.COLUMN_NAME_CONFIDENCE},
+				null, null, null, null, Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP + " DESC, " + Contract.ConversationMemoryEntry._ID + " DESC")) {
+			while(cursor.moveToNext()) {
+				memoryList.add(new ConversationMemoryManager.MemoryItem(
+						cursor.getString(0), cursor.getString(1), cursor.getString(2),
+						cursor.getString(3), cursor.getString(4), cursor.getString(5),
+						cursor.getLong(6), cursor.getString(7), cursor.getFloat(8)
+				));
+			}
+		}
+		
+		return memoryList;
+	}
+	
+	/**
+	 * Removes the oldest conversation memories beyond a limit
+	 * @param limit The maximum number of memories to keep
+	 * @return The number of memories removed
+	 */
+	public int trimMemoryItems(int limit) {
+		return trimMemoryItems(getWritableDatabase(), limit);
+	}
+	
+	private static int trimMemoryItems(SQLiteDatabase database, int limit) {
+		//Finding the newest memory beyond the limit, which only walks the timestamp index as far as the limit
+		String timestamp, id;
+		try(Cursor cursor = database.query(Contract.ConversationMemoryEntry.TABLE_NAME, new String[]{Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP, Contract.ConversationMemoryEntry._ID},
+				null, null, null, null,
+				Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP + " DESC, " + Contract.ConversationMemoryEntry._ID + " DESC", limit + ",1")) {
+			//Returning if the limit hasn't been exceeded
+			if(!cursor.moveToFirst()) return 0;
+			
+			timestamp = Long.toString(cursor.getLong(0));
+			id = Long.toString(cursor.getLong(1));
+		}
+		
+		//Removing that memory and every older one
+		return database.delete(Contract.ConversationMemoryEntry.TABLE_NAME,
+				Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP + " < ? OR (" + Contract.ConversationMemoryEntry.COLUMN_NAME_TIMESTAMP + " = ? AND " + Contract.ConversationMemoryEntry._ID + " <= ?)",
+				new String[]{timestamp, timestamp, id});
+	}
+	
+	/**
+	 * Removes all conversation memories
+	 */
+	public void deleteMemoryItems() {
+		getWritableDatabase().delete(Contract.ConversationMemoryEntry.TABLE_NAME, null, null);
+	}
+	
+	/**
+	 * Deletes a message from the database, as well as any associated data saved on disk
+	 * @param context The context to use
+	 * @param messageID The ID of the message to delete
+	 */
+	public void deleteMessage(Context context, long messageID) {
+		//Getting the database
+		SQLiteDatabase database = getWritableDatabase();
+		
+		//Deleting the message entries
+		database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " = ?", new String[]{Long.toString(messageID)});
+		SemanticRetrieval.removeMessages(context, Collections.singletonList(messageID));
+		
+		//Collecting associated attachment files
+		List<String> attachmentPaths = new ArrayList<>();
+		try(Cursor cursor = database.query(Contract.AttachmentEntry.TABLE_NAME, new String[]{Contract.AttachmentEntry.COLUMN_NAME_FILEPATH},
+				Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)},
+				null, null, null, null)) {
+			int iPath = cursor.getColumnIndexOrThrow(Contract.AttachmentEntry.COLUMN_NAME_FILEPATH);
+			
+			while(cursor.moveToNext()) {
+				String path = cursor.getString(iPath);
+				if(path != null) attachmentPaths.add(path);
+			}
+		}
+		//Deleting associated attachment entries
+		database.delete(Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)});
+		
+		//Deleting associated attachment files that aren't shared with other attachments
+		for(String path : attachmentPaths) releaseAttachmentFile(context, path);
+		
+		//Deleting associated sticker files
+		try(Cursor cursor = database.query(Contract.StickerEntry.TABLE_NAME, new String[]{Contract.StickerEntry.COLUMN_NAME_FILEPATH},
+				Contract.StickerEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)},
+				null, null, null, null)) {
+			int iPath = cursor.getColumnIndexOrThrow(Contract.StickerEntry.COLUMN_NAME_FILEPATH);
+			
+			while(cursor.moveToNext()) {
+				String path = cursor.getString(iPath);
+				if(path == null) continue;
+				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, AttachmentStorageHelper.getAbsolutePath(context, path));
+			}
+		}
+		//Deleting associated sticker entries
+		database.delete(Contract.StickerEntry.TABLE_NAME, Contract.StickerEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)});
+		
+		//Deleting associated tapback entries
+		database.delete(Contract.TapbackEntry.TABLE_NAME, Contract.TapbackEntry.COLUMN_NAME_MESSAGE + " = ?", new String[]{Long.toString(messageID)});
+	}
+	
+	/**
+	 * Sets the muted state of a conversation
+	 */
+	public void updateConversationMuted(long conversationID, boolean muted) {
+		//Creating the content values
+		ContentValues contentValues = new ContentValues();
+		contentValues.put(DatabaseManager.Contract.ConversationEntry.COLUMN_NAME_MUTED, muted);
+		
+		//Updating the conversation
+		getWritableDatabase().update(Contract.ConversationEntry.TABLE_NAME, contentValues, Contract.ConversationEntry._ID + " = ?", new String[]{Long.toString(conversationID)});
+	}
+	
 	/**
 	 * Sets the archived state of a conversation
 	 */
@@ -3456,11 +4604,84 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	}
 	
 	/**
-	 * Sets the draft message of a conversation
-	 * @param conversationID The ID of the conversation to update
-	 * @param value The draft message's text value
-	 * @param time The time this update was made
+	 * Queues an update to a conversation's draft message, to be written with other pending updates after a short delay
+	 * @param conversationID The ID of the conversation
+	 * @param value The draft message, or NULL to clear it
+	 * @param time The time the draft was updated, or -1 if the draft was cleared
 	 */
+	public void queueConversationDraftMessage(long conversationID, @Nullable String value, long time) {
+		draftWriteBuffer.put(conversationID, new DraftUpdate(value, time));
+	}
+	
+	/**
+	 * Writes all queued draft message and message state updates immediately
+	 */
+	public void flushPendingWrites() {
+		draftWriteBuffer.flush();
+		messageStateWriteBuffer.flush();
+		attachmentViewWriteBuffer.flush();
+	}
+	
+	/**
+	 * Runs a task in a single transaction, so that all of its writes are committed together
+	 * @param task The task to run
+	 * @return The result of the task
+	 */
+	public <T> T runInTransaction(Callable<T> task) throws Exception {
+		SQLiteDatabase database = getWritableDatabase();
+		database.beginTransaction();
+		try {
+			T result = task.call();
+			database.setTransactionSuccessful();
+			return result;
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	private void writeDraftUpdates(Map<Long, DraftUpdate> updates) {
+		SQLiteDatabase database = getWritableDatabase();
+		database.beginTransaction();
+		try {
+			for(Map.Entry<Long, DraftUpdate> entry : updates.entrySet()) {
+				updateConversationDraftMessage(entry.getKey(), entry.getValue().message, entry.getValue().time);
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	private void writeAttachmentViewUpdates(Map<Long, Long> updates) {
+		SQLiteDatabase database = getWritableDatabase();
+		database.beginTransaction();
+		try {
+			ContentValues contentValues = new ContentValues();
+			for(Map.Entry<Long, Long> entry : updates.entrySet()) {
+				contentValues.put(Contract.AttachmentEntry.COLUMN_NAME_LASTVIEWED, entry.getValue());
+				database.update(Contract.AttachmentEntry.TABLE_NAME, contentValues, Contract.AttachmentEntry._ID + " = ?", new String[]{Long.toString(entry.getKey())});
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	private void writeMessageStateUpdates(Map<Long, MessageStateUpdate> updates) {
+		SQLiteDatabase database = getWritableDatabase();
+		database.beginTransaction();
+		try {
+			for(Map.Entry<Long, MessageStateUpdate> entry : updates.entrySet()) {
+				MessageStateUpdate update = entry.getValue();
+				if(update.dateRead == -1) updateMessageState(entry.getKey(), update.state);
+				else updateMessageState(entry.getKey(), update.state, update.dateRead);
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
 	public void updateConversationDraftMessage(long conversationID, String value, long time) {
 		//Creating the content values
 		ContentValues contentValues = new ContentValues();
@@ -3500,18 +4721,39 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		}
 	}
 	
+	/**
+	 * Queues an update to the state of a message, to be written with other pending updates after a short delay
+	 * @param localID The local ID of the message
+	 * @param state The state code of the message
+	 */
+	public void queueMessageState(long localID, int state) {
+		messageStateWriteBuffer.put(localID, new MessageStateUpdate(state, -1));
+	}
+	
+	/**
+	 * Queues an update to the state of a message, to be written with other pending updates after a short delay
+	 * @param localID The local ID of the message
+	 * @param state The state code of the message
+	 * @param dateRead The date the message was read by its recipient
+	 */
+	public void queueMessageState(long localID, int state, long dateRead) {
+		messageStateWriteBuffer.put(localID, new MessageStateUpdate(state, dateRead));
+	}
+	
 	/**
 	 * Updates the state of a message
 	 * @param localID The local ID of the message
 	 * @param state The state code of the message
 	 */
 	public void updateMessageState(long localID, int state) {
-		//Creating the content values
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(Contract.MessageEntry.COLUMN_NAME_STATE, state);
-		
 		//Updating the entry
-		getWritableDatabase().update(Contract.MessageEntry.TABLE_NAME, contentValues, Contract.MessageEntry._ID + " = ?", new String[]{Long.toString(localID)});
+		SQLiteStatement statement = getStatementCache().acquire(SQL_UPDATE_MESSAGE_STATE);
+		synchronized(statement) {
+			statement.clearBindings();
+			statement.bindLong(1, state);
+			statement.bindLong(2, localID);
+			statement.executeUpdateDelete();
+		}
 	}
 	
 	/**
@@ -3521,13 +4763,15 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @param dateRead The date the message was read by its recipient
 	 */
 	public void updateMessageState(long localID, int state, long dateRead) {
-		//Creating the content values
-		ContentValues contentValues = new ContentValues();
-		contentValues.put(Contract.MessageEntry.COLUMN_NAME_STATE, state);
-		contentValues.put(Contract.MessageEntry.COLUMN_NAME_DATEREAD, dateRead);
-		
 		//Updating the entry
-		getWritableDatabase().update(Contract.MessageEntry.TABLE_NAME, contentValues, Contract.MessageEntry._ID + " = ?", new String[]{Long.toString(localID)});
+		SQLiteStatement statement = getStatementCache().acquire(SQL_UPDATE_MESSAGE_STATE_READ);
+		synchronized(statement) {
+			statement.clearBindings();
+			statement.bindLong(1, state);
+			statement.bindLong(2, dateRead);
+			statement.bindLong(3, localID);
+			statement.executeUpdateDelete();
+		}
 	}
 	
 	/**
@@ -3658,58 +4902,535 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		return list;
 	} */
 	
-	public static abstract class LazyLoader<T> {
-		SQLiteDatabase database;
-		Cursor cursor;
+	/**
+	 * Moves old items of all conversations into compressed archive blocks
+	 * @return The amount of items archived
+	 */
+	public int archiveOldConversationItems() {
+		//Writing pending updates so that they aren't applied to archived items
+		flushPendingWrites();
+		
+		//Getting the conversations
+		List<Pair<Long, Integer>> conversationList = new ArrayList<>();
+		try(Cursor cursor = getReadableDatabase().query(Contract.ConversationEntry.TABLE_NAME, new String[]{Contract.ConversationEntry._ID, Contract.ConversationEntry.COLUMN_NAME_SERVICEHANDLER}, null, null, null, null, null)) {
+			while(cursor.moveToNext()) conversationList.add(new Pair<>(cursor.getLong(0), cursor.getInt(1)));
+		}
 		
-		public void initialize(SQLiteDatabase database, Cursor cursor) {
-			this.database = database;
-			this.cursor = cursor;
+		//Archiving each conversation
+		long cutoffDate = System.currentTimeMillis() - MessageArchiveHelper.archiveAgeMillis;
+		int archivedCount = 0;
+		for(Pair<Long, Integer> conversation : conversationList) {
+			archivedCount += archiveConversationItems(conversation.getFirst(), conversation.getSecond() == ServiceHandler.appleBridge, cutoffDate);
 		}
 		
-		public void setCursorPosition(int cursorPosition) {
-			cursor.moveToPosition(cursorPosition);
+		return archivedCount;
+	}
+	
+	/**
+	 * Moves a conversation's old items into compressed archive blocks.
+	 * A conversation's latest items are always kept, as well as any items with files or stickers, since their files are tracked by their rows.
+	 * @param conversationID The ID of the conversation
+	 * @param sortLinked Whether the conversation's items are sorted by their linked sort ID instead of their date
+	 * @param cutoffDate Only items older than this date are archived
+	 * @return The amount of items archived
+	 */
+	private int archiveConversationItems(long conversationID, boolean sortLinked, long cutoffDate) {
+		SQLiteDatabase database = getWritableDatabase();
+		String sortColumn = sortLinked ? Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED : Contract.MessageEntry.COLUMN_NAME_DATE;
+		
+		//Finding the oldest of the latest items, which are always kept
+		long hotBoundary;
+		try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, new String[]{sortColumn},
+				Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?", new String[]{Long.toString(conversationID)},
+				null, null, sortColumn + " DESC", (MessageArchiveHelper.minimumHotItems - 1) + ", 1")) {
+			if(!cursor.moveToFirst()) return 0;
+			hotBoundary = cursor.getLong(0);
+		}
+		
+		//Finding the items to archive
+		List<Long> itemIDs = new ArrayList<>();
+		List<Long> itemSortKeys = new ArrayList<>();
+		try(Cursor cursor = database.rawQuery("SELECT m." + Contract.MessageEntry._ID + ", m." + sortColumn + " FROM " + Contract.MessageEntry.TABLE_NAME + " m" +
+				" WHERE m." + Contract.MessageEntry.COLUMN_NAME_CHAT + " = ? AND m." + sortColumn + " < ? AND m." + Contract.MessageEntry.COLUMN_NAME_DATE + " < ?" +
+				" AND NOT EXISTS (SELECT 1 FROM " + Contract.AttachmentEntry.TABLE_NAME + " a WHERE a." + Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " = m." + Contract.MessageEntry._ID + " AND a." + Contract.AttachmentEntry.COLUMN_NAME_FILEPATH + " IS NOT NULL)" +
+				" AND NOT EXISTS (SELECT 1 FROM " + Contract.StickerEntry.TABLE_NAME + " s WHERE s." + Contract.StickerEntry.COLUMN_NAME_MESSAGE + " = m." + Contract.MessageEntry._ID + ")" +
+				" ORDER BY m." + sortColumn + " ASC, m." + Contract.MessageEntry._ID + " ASC",
+				new String[]{Long.toString(conversationID), Long.toString(hotBoundary), Long.toString(cutoffDate)})) {
+			while(cursor.moveToNext()) {
+				itemIDs.add(cursor.getLong(0));
+				itemSortKeys.add(cursor.getLong(1));
+			}
+		}
+		
+		//Writing the items in blocks
+		int archivedCount = 0;
+		for(int i = 0; i < itemIDs.size(); i += MessageArchiveHelper.blockItemCount) {
+			int blockEnd = Math.min(i + MessageArchiveHelper.blockItemCount, itemIDs.size());
+			String idList = itemIDs.subList(i, blockEnd).stream().map(value -> Long.toString(value)).collect(Collectors.joining(","));
+			
+			database.beginTransaction();
+			try {
+				//Reading the rows (messages must come first, so that they are restored before the rows that reference them)
+				List<MessageArchiveHelper.ArchiveTable> tables = Arrays.asList(
+						readArchiveTable(database, Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " IN (" + idList + ")"),
+						readArchiveTable(database, Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " IN (" + idList + ")"),
+						readArchiveTable(database, Contract.TapbackEntry.TABLE_NAME, Contract.TapbackEntry.COLUMN_NAME_MESSAGE + " IN (" + idList + ")")
+				);
+				
+				//Writing the block
+				ContentValues contentValues = new ContentValues();
+				contentValues.put(Contract.MessageArchiveEntry.COLUMN_NAME_CHAT, conversationID);
+				contentValues.put(Contract.MessageArchiveEntry.COLUMN_NAME_NEWESTSORT, itemSortKeys.get(blockEnd - 1));
+				contentValues.put(Contract.MessageArchiveEntry.COLUMN_NAME_ITEMCOUNT, blockEnd - i);
+				contentValues.put(Contract.MessageArchiveEntry.COLUMN_NAME_DATA, MessageArchiveHelper.encodeBlock(tables));
+				database.insertOrThrow(Contract.MessageArchiveEntry.TABLE_NAME, null, contentValues);
+				
+				//Removing the rows from the main tables
+				database.delete(Contract.TapbackEntry.TABLE_NAME, Contract.TapbackEntry.COLUMN_NAME_MESSAGE + " IN (" + idList + ")", null);
+				database.delete(Contract.AttachmentEntry.TABLE_NAME, Contract.AttachmentEntry.COLUMN_NAME_MESSAGE + " IN (" + idList + ")", null);
+				database.delete(Contract.MessageEntry.TABLE_NAME, Contract.MessageEntry._ID + " IN (" + idList + ")", null);
+				
+				database.setTransactionSuccessful();
+			} catch(IOException exception) {
+				exception.printStackTrace();
+				CrashlyticsBridge.recordException(exception);
+				return archivedCount;
+			} finally {
+				database.endTransaction();
+			}
+			
+			archivedCount += blockEnd - i;
+		}
+		
+		return archivedCount;
+	}
+	
+	/**
+	 * Reads the raw rows of a table for archiving
+	 */
+	private static MessageArchiveHelper.ArchiveTable readArchiveTable(SQLiteDatabase database, String tableName, String selection) {
+		try(Cursor cursor = database.query(tableName, null, selection, null, null, null, null)) {
+			List<String> columns = Arrays.asList(cursor.getColumnNames());
+			List<Object[]> rows = new ArrayList<>(cursor.getCount());
+			while(cursor.moveToNext()) {
+				Object[] row = new Object[columns.size()];
+				for(int i = 0; i < row.length; i++) {
+					switch(cursor.getType(i)) {
+						case Cursor.FIELD_TYPE_INTEGER:
+							row[i] = cursor.getLong(i);
+							break;
+						case Cursor.FIELD_TYPE_FLOAT:
+							row[i] = cursor.getDouble(i);
+							break;
+						case Cursor.FIELD_TYPE_STRING:
+							row[i] = cursor.getString(i);
+							break;
+						case Cursor.FIELD_TYPE_BLOB:
+							row[i] = cursor.getBlob(i);
+							break;
+					}
+				}
+				rows.add(row);
+			}
+			
+			return new MessageArchiveHelper.ArchiveTable(tableName, columns, rows);
+		}
+	}
+	
+	/**
+	 * Gets the sort key of the newest archived item of a conversation
+	 * @param conversationID The ID of the conversation
+	 * @return The linked sort ID or date of the newest archived item, or NULL if the conversation has no archived items
+	 */
+	@Nullable
+	private Long fetchNewestArchivedSortKey(long conversationID) {
+		try(Cursor cursor = getReadableDatabase().query(Contract.MessageArchiveEntry.TABLE_NAME, new String[]{Contract.MessageArchiveEntry.COLUMN_NAME_NEWESTSORT},
+				Contract.MessageArchiveEntry.COLUMN_NAME_CHAT + " = ? AND " + Contract.MessageArchiveEntry.COLUMN_NAME_RESTOREFAILED + " = 0", new String[]{Long.toString(conversationID)},
+				null, null, Contract.MessageArchiveEntry.COLUMN_NAME_NEWESTSORT + " DESC", "1")) {
+			return cursor.moveToFirst() ? cursor.getLong(0) : null;
+		}
+	}
+	
+	/**
+	 * Moves a conversation's newest archive block back into the main tables.
+	 * A block that can't be restored is marked as failed and skipped from then on, so that the older blocks behind it can still be restored.
+	 * @param conversationID The ID of the conversation
+	 * @return Whether there was a block to restore, even if it couldn't be restored
+	 */
+	private boolean restoreNewestArchiveBlock(long conversationID) {
+		SQLiteDatabase database = getWritableDatabase();
+		long blockID = -1;
+		database.beginTransaction();
+		try {
+			//Reading the block
+			byte[] data;
+			try(Cursor cursor = database.query(Contract.MessageArchiveEntry.TABLE_NAME, new String[]{Contract.MessageArchiveEntry._ID, Contract.MessageArchiveEntry.COLUMN_NAME_DATA},
+					Contract.MessageArchiveEntry.COLUMN_NAME_CHAT + " = ? AND " + Contract.MessageArchiveEntry.COLUMN_NAME_RESTOREFAILED + " = 0", new String[]{Long.toString(conversationID)},
+					null, null, Contract.MessageArchiveEntry.COLUMN_NAME_NEWESTSORT + " DESC", "1")) {
+				if(!cursor.moveToFirst()) return false;
+				blockID = cursor.getLong(0);
+				data = cursor.getBlob(1);
+			}
+			
+			//Writing the rows back, keeping their original IDs unless they have been reused
+			Map<Long, Long> messageIDMap = new HashMap<>();
+			for(MessageArchiveHelper.ArchiveTable table : MessageArchiveHelper.decodeBlock(data)) {
+				boolean isMessageTable = table.getName().equals(Contract.MessageEntry.TABLE_NAME);
+				for(Object[] row : table.getRows()) {
+					ContentValues contentValues = new ContentValues();
+					long originalID = -1;
+					for(int i = 0; i < row.length; i++) {
+						String column = table.getColumns().get(i);
+						Object value = row[i];
+						if(column.equals(BaseColumns._ID)) {
+							if(value != null) originalID = (Long) value;
+							continue;
+						}
+						
+						//Pointing attachments and tapbacks at their restored message
+						if(!isMessageTable && column.equals(Contract.AttachmentEntry.COLUMN_NAME_MESSAGE) && value != null) value = messageIDMap.get((Long) value);
+						
+						if(value == null) contentValues.putNull(column);
+						else if(value instanceof Long) contentValues.put(column, (Long) value);
+						else if(value instanceof Double) contentValues.put(column, (Double) value);
+						else if(value instanceof String) contentValues.put(column, (String) value);
+						else contentValues.put(column, (byte[]) value);
+					}
+					
+					long newID = -1;
+					if(originalID != -1) {
+						ContentValues idContentValues = new ContentValues(contentValues);
+						idContentValues.put(BaseColumns._ID, originalID);
+						newID = database.insertWithOnConflict(table.getName(), null, idContentValues, SQLiteDatabase.CONFLICT_IGNORE);
+					}
+					if(newID == -1) newID = database.insertOrThrow(table.getName(), null, contentValues);
+					if(isMessageTable) messageIDMap.put(originalID, newID);
+				}
+			}
+			
+			//Removing the block
+			database.delete(Contract.MessageArchiveEntry.TABLE_NAME, Contract.MessageArchiveEntry._ID + " = ?", new String[]{Long.toString(blockID)});
+			
+			database.setTransactionSuccessful();
+			return true;
+		} catch(IOException | RuntimeException exception) {
+			exception.printStackTrace();
+			CrashlyticsBridge.recordException(exception);
+		} finally {
+			database.endTransaction();
 		}
 		
+		//Setting the block aside, since trying it again would fail the same way
+		if(blockID == -1) return false;
+		ContentValues contentValues = new ContentValues();
+		contentValues.put(Contract.MessageArchiveEntry.COLUMN_NAME_RESTOREFAILED, 1);
+		database.update(Contract.MessageArchiveEntry.TABLE_NAME, contentValues, Contract.MessageArchiveEntry._ID + " = ?", new String[]{Long.toString(blockID)});
+		return true;
+	}
+	
+	/**
+	 * A queued update to a conversation's draft message
+	 */
+	private static class DraftUpdate {
+		@Nullable final String message;
+		final long time;
+		
+		DraftUpdate(@Nullable String message, long time) {
+			this.message = message;
+			this.time = time;
+		}
+	}
+	
+	/**
+	 * A queued update to a message's state
+	 */
+	private static class MessageStateUpdate {
+		final int state;
+		final long dateRead; //-1 if unchanged
+		
+		MessageStateUpdate(int state, long dateRead) {
+			this.state = state;
+			this.dateRead = dateRead;
+		}
+		
+		/**
+		 * Merges a pending update with a newer one, keeping the pending read date if the newer update doesn't have one
+		 */
+		static MessageStateUpdate merge(MessageStateUpdate pending, MessageStateUpdate update) {
+			if(update.dateRead == -1 && pending.dateRead != -1) return new MessageStateUpdate(update.state, pending.dateRead);
+			else return update;
+		}
+	}
+	
+	public static abstract class LazyLoader<T> {
 		public abstract List<T> loadNextChunk(Context context);
 	}
 	
+	/**
+	 * Loads a conversation's items page by page, starting from the latest item or from an anchor item.
+	 * Each page is fetched with its own short query bounded by the sort key of the last loaded item, so no cursor is kept open between pages.
+	 */
 	public static class ConversationLazyLoader extends LazyLoader<ConversationItem> {
 		private final DatabaseManager databaseManager;
-		private final ConversationItemIndices conversationItemIndices;
+		private final long conversationID;
+		private final boolean sortLinked; //Whether items are sorted by their linked sort ID instead of their date
+		private final long anchorID;
+		
+		//The sort keys of the oldest and newest loaded items
+		private SortKey olderBound = null, newerBound = null;
+		private boolean initialLoadComplete = false;
+		private boolean reachedNewest;
+		private boolean archiveExhausted = false; //Whether there are no more archived items to restore
 		
+		/**
+		 * Creates a loader that starts at the latest item of the conversation
+		 */
 		public ConversationLazyLoader(DatabaseManager databaseManager, ConversationInfo conversationInfo) {
+			this(databaseManager, conversationInfo, -1);
+		}
+		
+		/**
+		 * Creates a loader that starts around a certain item of the conversation
+		 * @param anchorID The local ID of the item to start around, or -1 to start at the latest item
+		 */
+		public ConversationLazyLoader(DatabaseManager databaseManager, ConversationInfo conversationInfo, long anchorID) {
 			this.databaseManager = databaseManager;
+			this.conversationID = conversationInfo.getLocalID();
+			this.sortLinked = conversationInfo.getServiceHandler() == ServiceHandler.appleBridge;
+			this.anchorID = anchorID;
+			this.reachedNewest = anchorID == -1;
+		}
+		
+		/**
+		 * Loads the next group of older items, in chronological order.
+		 * When the loader has an anchor, the first call returns the items surrounding the anchor.
+		 * Archived items are only included once {@link #restoreNextChunk()} has restored them.
+		 */
+		@Override
+		public List<ConversationItem> loadNextChunk(Context context) {
+			//Loading the initial page
+			if(!initialLoadComplete) {
+				initialLoadComplete = true;
+				return loadInitialChunk(context);
+			}
 			
-			//Building the query
-			SQLiteDatabase database = databaseManager.getReadableDatabase();
-			Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, null,
-					Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?", new String[]{Long.toString(conversationInfo.getLocalID())},
-					null, null, getConversationSortByDesc(conversationInfo), null);
+			//Returning if there are no loaded items to continue from
+			if(olderBound == null) return new ArrayList<>();
 			
-			//Getting the indices
-			conversationItemIndices = ConversationItemIndices.fromCursor(cursor);
+			return loadPage(context, olderBound, true, false, Messaging.messageChunkSize);
+		}
+		
+		/**
+		 * Restores the archived items that the next call to {@link #loadNextChunk(Context)} will return.
+		 * This writes to the database, so it should be run on {@link DatabaseSchedulers#write} before loading the chunk.
+		 */
+		public void restoreNextChunk() {
+			//Getting the bound of the next page
+			SortKey bound;
+			boolean inclusive;
+			if(!initialLoadComplete) {
+				bound = anchorID == -1 ? null : loadSortKey(anchorID);
+				inclusive = bound != null;
+			} else {
+				//Returning if there are no loaded items to continue from
+				if(olderBound == null) return;
+				
+				bound = olderBound;
+				inclusive = false;
+			}
 			
-			//Initializing the loader
-			super.initialize(database, cursor);
+			restoreArchivedItems(bound, inclusive, Messaging.messageChunkSize);
 		}
 		
-		@Override
-		public List<ConversationItem> loadNextChunk(Context context) {
-			//Creating the message list
-			List<ConversationItem> conversationItems = new ArrayList<>();
+		/**
+		 * Loads the next group of newer items, in chronological order.
+		 * This only returns results for loaders that were started around an anchor.
+		 */
+		public List<ConversationItem> loadNewerChunk(Context context) {
+			//Returning if there are no newer items to load
+			if(reachedNewest || newerBound == null) return new ArrayList<>();
 			
-			//Loading the messages
-			for(int i = 0; i < Messaging.messageChunkSize; i++) {
-				if(!super.cursor.moveToNext()) break;
-				conversationItems.add(databaseManager.loadConversationItem(context, conversationItemIndices, super.cursor, super.database));
+			List<ConversationItem> conversationItems = loadPage(context, newerBound, false, false, Messaging.messageChunkSize);
+			if(conversationItems.size() < Messaging.messageChunkSize) reachedNewest = true;
+			return conversationItems;
+		}
+		
+		/**
+		 * Gets whether there are items newer than the ones loaded by this loader
+		 */
+		public boolean hasNewerItems() {
+			return !reachedNewest;
+		}
+		
+		private List<ConversationItem> loadInitialChunk(Context context) {
+			//Loading the latest items if there is no anchor
+			SortKey anchorKey = anchorID == -1 ? null : loadSortKey(anchorID);
+			if(anchorKey == null) {
+				reachedNewest = true;
+				return loadPage(context, null, true, false, Messaging.messageChunkSize);
 			}
 			
-			//Reversing the list
-			Collections.reverse(conversationItems);
+			//Loading the anchor item and the items before it
+			List<ConversationItem> conversationItems = loadPage(context, anchorKey, true, true, Messaging.messageChunkSize);
+			newerBound = anchorKey;
+			
+			//Loading the items after the anchor
+			List<ConversationItem> newerItems = loadPage(context, anchorKey, false, false, Messaging.messageChunkSize);
+			if(newerItems.size() < Messaging.messageChunkSize) reachedNewest = true;
+			conversationItems.addAll(newerItems);
 			
-			//Returning the list
 			return conversationItems;
 		}
+		
+		/**
+		 * Loads the sort key of a single item in this conversation
+		 * @return The item's sort key, or NULL if the item couldn't be found
+		 */
+		@Nullable
+		private SortKey loadSortKey(long itemID) {
+			SQLiteDatabase database = databaseManager.getReadableDatabase();
+			try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME,
+					new String[]{Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_DATE, Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED, Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET},
+					Contract.MessageEntry._ID + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?", new String[]{Long.toString(itemID), Long.toString(conversationID)},
+					null, null, null)) {
+				if(!cursor.moveToFirst()) return null;
+				return readSortKey(cursor);
+			}
+		}
+		
+		/**
+		 * Loads a page of items next to a sort key
+		 * @param bound The sort key to page from, or NULL to start from the latest item
+		 * @param older TRUE to load items older than the bound, FALSE to load items newer than the bound
+		 * @param inclusive Whether to include the item at the bound
+		 * @param limit The maximum amount of items to load
+		 * @return The loaded items, in chronological order
+		 */
+		private List<ConversationItem> loadPage(Context context, @Nullable SortKey bound, boolean older, boolean inclusive, int limit) {
+			SQLiteDatabase database = databaseManager.getReadableDatabase();
+			
+			//Building the selection
+			List<String> selectionArgs = new ArrayList<>();
+			String selection = buildPageSelection(bound, older, inclusive, selectionArgs);
+			
+			//Building the sort order, with the item ID as a tiebreaker so that every item has a unique position
+			String direction = older ? " DESC" : " ASC";
+			String sortOrder = sortLinked ?
+					Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED + direction + ", " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + direction + ", " + Contract.MessageEntry._ID + direction :
+					Contract.MessageEntry.COLUMN_NAME_DATE + direction + ", " + Contract.MessageEntry._ID + direction;
+			
+			//Loading the items
+			List<ConversationItem> conversationItems = new ArrayList<>();
+			SortKey lastKey = null;
+			try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, null,
+					selection, selectionArgs.toArray(new String[0]),
+					null, null, sortOrder, Integer.toString(limit))) {
+				ConversationItemIndices indices = ConversationItemIndices.fromCursor(cursor);
+				while(cursor.moveToNext()) {
+					conversationItems.add(databaseManager.loadConversationItem(context, indices, cursor, database));
+					lastKey = readSortKey(cursor);
+				}
+			}
+			
+			//Updating the bounds
+			if(older) {
+				if(lastKey != null) olderBound = lastKey;
+				
+				//Reversing the list to chronological order
+				Collections.reverse(conversationItems);
+			} else {
+				if(lastKey != null) newerBound = lastKey;
+			}
+			
+			return conversationItems;
+		}
+		
+		/**
+		 * Restores archived items until there are enough items newer than the remaining archive to fill a page of older items
+		 * @param bound The sort key to page from, or NULL to start from the latest item
+		 * @param inclusive Whether the page includes the item at the bound
+		 * @param limit The size of the page
+		 */
+		private void restoreArchivedItems(@Nullable SortKey bound, boolean inclusive, int limit) {
+			while(!archiveExhausted) {
+				//Checking if there are any archived items left
+				Long archivedSortKey = databaseManager.fetchNewestArchivedSortKey(conversationID);
+				if(archivedSortKey == null) {
+					archiveExhausted = true;
+					return;
+				}
+				
+				//Counting the items on this page that are newer than all archived items
+				List<String> selectionArgs = new ArrayList<>();
+				String selection = buildPageSelection(bound, true, inclusive, selectionArgs) +
+						" AND " + (sortLinked ? Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED : Contract.MessageEntry.COLUMN_NAME_DATE) + " > ?";
+				selectionArgs.add(Long.toString(archivedSortKey));
+				long itemCount = DatabaseUtils.longForQuery(databaseManager.getReadableDatabase(),
+						"SELECT COUNT(*) FROM (SELECT 1 FROM " + Contract.MessageEntry.TABLE_NAME + " WHERE " + selection + " LIMIT " + limit + ")",
+						selectionArgs.toArray(new String[0]));
+				if(itemCount >= limit) return;
+				
+				//Restoring the newest archive block
+				if(!databaseManager.restoreNewestArchiveBlock(conversationID)) {
+					archiveExhausted = true;
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * Builds the selection for items of this conversation next to a sort key
+		 * @param bound The sort key to page from, or NULL to select all items
+		 * @param older TRUE to select items older than the bound, FALSE to select items newer than the bound
+		 * @param inclusive Whether to include the item at the bound
+		 * @param selectionArgs The list to add the selection's arguments to
+		 * @return The selection
+		 */
+		private String buildPageSelection(@Nullable SortKey bound, boolean older, boolean inclusive, List<String> selectionArgs) {
+			String selection = Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?";
+			selectionArgs.add(Long.toString(conversationID));
+			if(bound != null) {
+				String comparison = older ? "<" : ">";
+				String idComparison = comparison + (inclusive ? "=" : "");
+				if(sortLinked) {
+					selection += " AND " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED + ' ' + comparison + "= ?" + //Lets the index narrow down the range
+							" AND (" + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED + ' ' + comparison + " ?" +
+							" OR " + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + ' ' + comparison + " ?" +
+							" OR (" + Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET + " = ? AND " + Contract.MessageEntry._ID + ' ' + idComparison + " ?))";
+					Collections.addAll(selectionArgs, Long.toString(bound.primary), Long.toString(bound.primary), Long.toString(bound.secondary), Long.toString(bound.secondary), Long.toString(bound.id));
+				} else {
+					selection += " AND " + Contract.MessageEntry.COLUMN_NAME_DATE + ' ' + comparison + "= ?" +
+							" AND (" + Contract.MessageEntry.COLUMN_NAME_DATE + ' ' + comparison + " ?" +
+							" OR " + Contract.MessageEntry._ID + ' ' + idComparison + " ?)";
+					Collections.addAll(selectionArgs, Long.toString(bound.primary), Long.toString(bound.primary), Long.toString(bound.id));
+				}
+			}
+			
+			return selection;
+		}
+		
+		private SortKey readSortKey(Cursor cursor) {
+			long id = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID));
+			if(sortLinked) {
+				return new SortKey(cursor.getLong(cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_SORTID_LINKED)), cursor.getLong(cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_SORTID_LINKEDOFFSET)), id);
+			} else {
+				return new SortKey(cursor.getLong(cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_DATE)), 0, id);
+			}
+		}
+		
+		/**
+		 * The position of an item in a conversation's sort order
+		 */
+		private static class SortKey {
+			final long primary; //The linked sort ID or the date
+			final long secondary; //The linked sort offset, if applicable
+			final long id;
+			
+			SortKey(long primary, long secondary, long id) {
+				this.primary = primary;
+				this.secondary = secondary;
+				this.id = id;
+			}
+		}
 	}
-}
\ No newline at end of file
+}
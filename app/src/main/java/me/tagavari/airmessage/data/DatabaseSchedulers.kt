@@ -0,0 +1,37 @@
+package me.tagavari.airmessage.data
+
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Schedulers for database access
+ *
+ * All writes go through a single writer thread, so they are applied in the order they were submitted and never wait on each other's locks.
+ * Reads use a small pool of their own, so that loading a conversation doesn't queue behind a long sync.
+ * This relies on write-ahead logging, which lets reads run alongside a write transaction.
+ */
+object DatabaseSchedulers {
+	private const val readerThreadCount = 3
+
+	/**
+	 * The scheduler for database work that writes, or that must be ordered with writes
+	 */
+	@JvmField
+	val write: Scheduler = Schedulers.from(Executors.newSingleThreadExecutor(createThreadFactory("db-write")))
+
+	/**
+	 * The scheduler for database work that only reads
+	 */
+	@JvmField
+	val read: Scheduler = Schedulers.from(Executors.newFixedThreadPool(readerThreadCount, createThreadFactory("db-read")))
+
+	private fun createThreadFactory(name: String): ThreadFactory {
+		val threadCount = AtomicInteger()
+		return ThreadFactory { runnable ->
+			Thread(runnable, "$name-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+		}
+	}
+}
@@ -4,7 +4,6 @@ import android.content.Context
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Single
-import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.enums.ServiceHandler
 import me.tagavari.airmessage.redux.ReduxEmitterNetwork
 import me.tagavari.airmessage.redux.ReduxEventMessaging.ConversationServiceHandlerDelete
@@ -19,7 +18,7 @@ object MessagesDataHelper {
 	fun deleteAMBAttachments(context: Context): Completable {
 		//Clearing the attachment files from AM bridge
 		return Completable.fromAction { DatabaseManager.getInstance().clearDeleteAttachmentFilesAMBridge(context) }
-			.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread())
+			.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread())
 	}
 	
 	/**
@@ -31,7 +30,7 @@ object MessagesDataHelper {
 		return Single.fromCallable {
 			DatabaseManager.getInstance().deleteConversationsByServiceHandler(context, ServiceHandler.appleBridge)
 		}
-			.subscribeOn(Schedulers.single())
+			.subscribeOn(DatabaseSchedulers.write)
 			.observeOn(AndroidSchedulers.mainThread())
 			.doOnSuccess { deletedIDs: LongArray ->
 				//Emitting an update
@@ -0,0 +1,146 @@
+package me.tagavari.airmessage.data
+
+import java.util.concurrent.Callable
+
+/**
+ * Collects statistics about the queries run by [DatabaseManager], to find slow queries and methods that run too many of them
+ *
+ * Queries are grouped by the [DatabaseManager] method that ran them, and are only recorded while tracing is enabled.
+ */
+object QueryTracer {
+	//Queries that take at least this long are logged along with their query plan
+	const val slowQueryThresholdMillis = 50L
+
+	//The operation name used for queries that weren't run by the database manager
+	const val unknownOperation = "other"
+
+	/**
+	 * Whether queries are recorded globally
+	 */
+	@JvmStatic
+	@Volatile
+	var isEnabled = false
+
+	private val accumulatorMap = HashMap<String, Accumulator>()
+	private val traceAccumulatorMap = ThreadLocal<HashMap<String, Accumulator>?>()
+
+	/**
+	 * The queries recorded for an operation
+	 * @param operation The name of the method that ran the queries
+	 * @param queryCount The number of queries run
+	 * @param rowCount The total number of rows read
+	 * @param totalNanos The total wall time of the queries
+	 * @param maxNanos The wall time of the slowest query
+	 */
+	class OperationStats(val operation: String, val queryCount: Int, val rowCount: Long, val totalNanos: Long, val maxNanos: Long)
+
+	/**
+	 * The result of a traced task
+	 * @param result The value returned by the task
+	 * @param stats The queries the task ran
+	 */
+	class Trace<T>(val result: T, val stats: List<OperationStats>) {
+		/**
+		 * The number of queries run by the task
+		 */
+		val queryCount: Int
+			get() = stats.sumOf { it.queryCount }
+
+		/**
+		 * Gets the number of queries run by a certain operation
+		 */
+		fun getQueryCount(operation: String): Int = stats.firstOrNull { it.operation == operation }?.queryCount ?: 0
+	}
+
+	private class Accumulator {
+		var queryCount = 0
+		var rowCount = 0L
+		var totalNanos = 0L
+		var maxNanos = 0L
+
+		fun add(rowCount: Int, durationNanos: Long) {
+			queryCount++
+			this.rowCount += rowCount
+			totalNanos += durationNanos
+			maxNanos = maxOf(maxNanos, durationNanos)
+		}
+
+		fun toStats(operation: String) = OperationStats(operation, queryCount, rowCount, totalNanos, maxNanos)
+	}
+
+	/**
+	 * Gets whether queries run on the current thread should be recorded
+	 */
+	@JvmStatic
+	fun isTracing(): Boolean = isEnabled || traceAccumulatorMap.get() != null
+
+	/**
+	 * Records a completed query
+	 * @param operation The name of the method that ran the query
+	 * @param rowCount The number of rows read
+	 * @param durationNanos The wall time of the query
+	 */
+	@JvmStatic
+	fun record(operation: String, rowCount: Int, durationNanos: Long) {
+		traceAccumulatorMap.get()?.getOrPut(operation) { Accumulator() }?.add(rowCount, durationNanos)
+
+		if(isEnabled) {
+			synchronized(accumulatorMap) {
+				accumulatorMap.getOrPut(operation) { Accumulator() }.add(rowCount, durationNanos)
+			}
+		}
+	}
+
+	/**
+	 * Gets the queries recorded so far, with the operations that spent the most time first
+	 */
+	@JvmStatic
+	fun getStats(): List<OperationStats> {
+		return synchronized(accumulatorMap) {
+			toSortedStats(accumulatorMap)
+		}
+	}
+
+	/**
+	 * Clears all recorded queries
+	 */
+	@JvmStatic
+	fun reset() {
+		synchronized(accumulatorMap) {
+			accumulatorMap.clear()
+		}
+	}
+
+	/**
+	 * Runs a task on the current thread and records the queries it runs, regardless of whether tracing is enabled.
+	 * This can be used to check that an operation stays within its query budget.
+	 */
+	@JvmStatic
+	fun <T> trace(task: Callable<T>): Trace<T> {
+		val previousMap = traceAccumulatorMap.get()
+		val map = HashMap<String, Accumulator>()
+		traceAccumulatorMap.set(map)
+		try {
+			val result = task.call()
+			return Trace(result, toSortedStats(map))
+		} finally {
+			traceAccumulatorMap.set(previousMap)
+		}
+	}
+
+	/**
+	 * Finds the name of the [DatabaseManager] method that is running a query
+	 * @param stackTrace The stack trace of the thread running the query
+	 * @return The class and method name, or [unknownOperation] if the query isn't being run by the database manager
+	 */
+	@JvmStatic
+	fun getOperationName(stackTrace: Array<StackTraceElement>): String {
+		val className = DatabaseManager::class.java.name
+		val element = stackTrace.firstOrNull { it.className == className || it.className.startsWith("$className$") } ?: return unknownOperation
+		return element.className.substringAfterLast('.') + '.' + element.methodName
+	}
+
+	private fun toSortedStats(map: Map<String, Accumulator>): List<OperationStats> {
+		return map.map { (operation, accumulator) -> accumulator.toStats(operation) }.sortedByDescending { it.totalNanos }
+	}
+}
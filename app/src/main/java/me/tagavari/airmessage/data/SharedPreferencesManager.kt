@@ -8,6 +8,7 @@ import androidx.security.crypto.EncryptedSharedPreferences
 import androidx.security.crypto.MasterKeys
 import me.tagavari.airmessage.enums.ProxyType
 import me.tagavari.airmessage.helper.StringHelper
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper
 import me.tagavari.airmessage.util.ConnectionParams
 import me.tagavari.airmessage.util.DirectConnectionDetails
 import java.io.IOException
@@ -23,6 +24,7 @@ object SharedPreferencesManager {
 
 	private const val sharedPreferencesDefaultUserName = "user_name" //A cached value of the server's user name
 	private const val sharedPreferencesDefaultServerSupportsFaceTime = "server_supports_facetime" //A cached value of whether the server supports FaceTime
+	private const val sharedPreferencesDefaultAttachmentBytesAvoided = "attachment_bytes_avoided" //The total size of attachment downloads skipped by sharing an existing file
 	
 	private const val sharedPreferencesConnectivityFile = "connectivity"
 	private const val sharedPreferencesConnectivityKeyProxyType = "account_type" //The proxy type to use (direct connection or AM Connect)
@@ -35,6 +37,13 @@ object SharedPreferencesManager {
 	private const val sharedPreferencesConnectivityKeyLastConnectionInstallationID = "last_connection_installation_id" //The installation ID of the server from the last conversation, used for tracking server changes immediately when connecting
 	private const val sharedPreferencesConnectivityKeyTextMessageConversationsInstalled = "text_message_conversations_installed" //Whether text message conversations are currently imported into the app's database
 
+	private const val sharedPreferencesTextSyncFile = "text_sync"
+	private const val sharedPreferencesTextSyncKeySMSMark = "sms_mark" //The ID and date of the newest SMS message seen by the last sync
+	private const val sharedPreferencesTextSyncKeyMMSMark = "mms_mark" //The ID and date of the newest MMS message seen by the last sync
+	private const val sharedPreferencesTextSyncKeyThreads = "threads" //The fingerprints of all system message threads as of the last sync
+	private const val sharedPreferencesTextSyncKeySkippedSMS = "skipped_sms" //The IDs of system SMS messages that were kept out of the app, such as 2FA codes
+	private const val textSyncSkippedSMSLimit = 500
+	
 	private const val sharedPreferencesSecureFile = "secure"
 	private const val sharedPreferencesSecureKeyAddress = "hostname"
 	private const val sharedPreferencesSecureKeyAddressFallback = "hostname_fallback"
@@ -54,6 +63,13 @@ object SharedPreferencesManager {
 		return context.getSharedPreferences(sharedPreferencesConnectivityFile, Context.MODE_PRIVATE)
 	}
 	
+	/**
+	 * Gets the shared preferences instance for text message sync state
+	 */
+	private fun getTextSyncSharedPrefs(context: Context): SharedPreferences {
+		return context.getSharedPreferences(sharedPreferencesTextSyncFile, Context.MODE_PRIVATE)
+	}
+	
 	/**
 	 * Gets the shared preferences instance for sensitive information
 	 */
@@ -317,6 +333,23 @@ object SharedPreferencesManager {
 		getInstallationSharedPrefs(context).edit().putBoolean(sharedPreferencesDefaultServerSupportsFaceTime, supportsFaceTime).apply()
 	}
 	
+	/**
+	 * Fetches the total size of attachment downloads skipped by sharing an existing file
+	 */
+	@JvmStatic
+	fun getAttachmentTransferBytesAvoided(context: Context): Long {
+		return getInstallationSharedPrefs(context).getLong(sharedPreferencesDefaultAttachmentBytesAvoided, 0)
+	}
+	
+	/**
+	 * Records an attachment download skipped by sharing an existing file
+	 */
+	@JvmStatic
+	fun addAttachmentTransferBytesAvoided(context: Context, bytes: Long) {
+		val sharedPrefs = getInstallationSharedPrefs(context)
+		sharedPrefs.edit().putLong(sharedPreferencesDefaultAttachmentBytesAvoided, sharedPrefs.getLong(sharedPreferencesDefaultAttachmentBytesAvoided, 0) + bytes).apply()
+	}
+	
 	/**
 	 * Fetches the time this client last connected to the server, or -1 if unavailable
 	 */
@@ -420,4 +453,77 @@ object SharedPreferencesManager {
 	fun setTextMessageConversationsInstalled(context: Context, value: Boolean) {
 		getConnectivitySharedPrefs(context).edit().putBoolean(sharedPreferencesConnectivityKeyTextMessageConversationsInstalled, value).apply()
 	}
+	
+	/**
+	 * Fetches the state of the system message database recorded by the last text message sync, or NULL if text messages haven't been synced
+	 */
+	@JvmStatic
+	fun getTextSyncState(context: Context): SystemMessageSyncHelper.SyncState? {
+		val sharedPrefs = getTextSyncSharedPrefs(context)
+		val smsMark = sharedPrefs.getString(sharedPreferencesTextSyncKeySMSMark, null) ?: return null
+		val mmsMark = sharedPrefs.getString(sharedPreferencesTextSyncKeyMMSMark, null) ?: return null
+		val threads = sharedPrefs.getString(sharedPreferencesTextSyncKeyThreads, null) ?: return null
+		
+		return try {
+			SystemMessageSyncHelper.SyncState(
+				decodeHighWaterMark(smsMark),
+				decodeHighWaterMark(mmsMark),
+				threads.split(';').filter { it.isNotEmpty() }.associate { entry ->
+					val (threadID, messageCount, latestDate) = entry.split(',')
+					threadID.toLong() to SystemMessageSyncHelper.ThreadFingerprint(messageCount.toInt(), latestDate.toLong())
+				}
+			)
+		} catch(exception: RuntimeException) {
+			exception.printStackTrace()
+			null
+		}
+	}
+	
+	/**
+	 * Sets the state of the system message database recorded by the last text message sync, or NULL to clear it
+	 */
+	@JvmStatic
+	fun setTextSyncState(context: Context, state: SystemMessageSyncHelper.SyncState?) {
+		val editor = getTextSyncSharedPrefs(context).edit()
+		if(state == null) {
+			editor.clear()
+		} else {
+			editor.putString(sharedPreferencesTextSyncKeySMSMark, encodeHighWaterMark(state.smsMark))
+			editor.putString(sharedPreferencesTextSyncKeyMMSMark, encodeHighWaterMark(state.mmsMark))
+			editor.putString(sharedPreferencesTextSyncKeyThreads, state.threads.entries.joinToString(";") { (threadID, fingerprint) ->
+				"$threadID,${fingerprint.messageCount},${fingerprint.latestDate}"
+			})
+		}
+		editor.apply()
+	}
+	
+	/**
+	 * Fetches the IDs of system SMS messages that text message syncs shouldn't add to the app
+	 */
+	@JvmStatic
+	fun getTextSyncSkippedSMS(context: Context): Set<Long> {
+		val value = getTextSyncSharedPrefs(context).getString(sharedPreferencesTextSyncKeySkippedSMS, null) ?: return emptySet()
+		return value.split(',').mapNotNull { it.toLongOrNull() }.toSet()
+	}
+	
+	/**
+	 * Records a system SMS message that text message syncs shouldn't add to the app, because it was handled without being saved to a conversation.
+	 * Only the newest [textSyncSkippedSMSLimit] IDs are kept.
+	 */
+	@JvmStatic
+	@Synchronized
+	fun addTextSyncSkippedSMS(context: Context, systemID: Long) {
+		val skippedIDs = getTextSyncSkippedSMS(context).toSortedSet()
+		skippedIDs.add(systemID)
+		while(skippedIDs.size > textSyncSkippedSMSLimit) skippedIDs.remove(skippedIDs.first())
+		
+		getTextSyncSharedPrefs(context).edit().putString(sharedPreferencesTextSyncKeySkippedSMS, skippedIDs.joinToString(",")).apply()
+	}
+	
+	private fun encodeHighWaterMark(mark: SystemMessageSyncHelper.HighWaterMark) = "${mark.id},${mark.date}"
+	
+	private fun decodeHighWaterMark(value: String): SystemMessageSyncHelper.HighWaterMark {
+		val (id, date) = value.split(',')
+		return SystemMessageSyncHelper.HighWaterMark(id.toLong(), date.toLong())
+	}
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package me.tagavari.airmessage.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds compiled statements for frequently executed SQL, so that hot write paths don't re-parse their SQL on every call.
+ * Statements are tied to the database they were compiled against, so a new cache must be created if the database is reopened.
+ * Statements share their bindings between callers, so callers must synchronize on a statement while clearing its bindings,
+ * binding and executing it.
+ */
+class StatementCache implements Closeable {
+	private final SQLiteDatabase database;
+	private final Map<String, SQLiteStatement> statementMap = new HashMap<>();
+
+	StatementCache(SQLiteDatabase database) {
+		this.database = database;
+	}
+
+	/**
+	 * Gets the database this cache compiles statements against
+	 */
+	SQLiteDatabase getDatabase() {
+		return database;
+	}
+
+	/**
+	 * Gets a compiled statement for the provided SQL, compiling it if it isn't in the cache yet
+	 * @param sql The SQL of the statement
+	 * @return The compiled statement, whose bindings may still be set by its last caller
+	 */
+	synchronized SQLiteStatement acquire(String sql) {
+		SQLiteStatement statement = statementMap.get(sql);
+		if(statement == null) {
+			statement = database.compileStatement(sql);
+			statementMap.put(sql, statement);
+		}
+
+		return statement;
+	}
+
+	@Override
+	public synchronized void close() {
+		for(SQLiteStatement statement : statementMap.values()) statement.close();
+		statementMap.clear();
+	}
+
+	/**
+	 * Binds a string or NULL value to a statement
+	 */
+	static void bindNullableString(SQLiteStatement statement, int index, @Nullable String value) {
+		if(value == null) statement.bindNull(index);
+		else statement.bindString(index, value);
+	}
+
+	/**
+	 * Binds a blob or NULL value to a statement
+	 */
+	static void bindNullableBlob(SQLiteStatement statement, int index, @Nullable byte[] value) {
+		if(value == null) statement.bindNull(index);
+		else statement.bindBlob(index, value);
+	}
+
+	/**
+	 * Binds a long value to a statement, or NULL if the value matches the unset value
+	 */
+	static void bindOptionalLong(SQLiteStatement statement, int index, long value, long unsetValue) {
+		if(value == unsetValue) statement.bindNull(index);
+		else statement.bindLong(index, value);
+	}
+}
@@ -0,0 +1,81 @@
+package me.tagavari.airmessage.data
+
+import android.database.Cursor
+import android.database.SQLException
+import android.database.sqlite.SQLiteCursor
+import android.database.sqlite.SQLiteCursorDriver
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteQuery
+import android.util.Log
+import java.util.concurrent.TimeUnit
+
+/**
+ * Creates cursors that report their queries to [QueryTracer] when they are first read from, while tracing is enabled
+ *
+ * The query itself runs the first time a cursor's row count is needed, which any move or read triggers, so only that
+ * call is timed. Cursors that are never read from run no query, and aren't recorded. Statements that don't create a
+ * cursor, such as inserts, updates, deletes, [SQLiteDatabase.execSQL] and single-value queries, aren't recorded either.
+ */
+class TracingCursorFactory : SQLiteDatabase.CursorFactory {
+	//Whether the current thread is looking up a query plan, which shouldn't be traced itself
+	private val isExplaining = ThreadLocal<Boolean>()
+
+	override fun newCursor(db: SQLiteDatabase, masterQuery: SQLiteCursorDriver, editTable: String?, query: SQLiteQuery): Cursor {
+		return if(!QueryTracer.isTracing() || isExplaining.get() == true) {
+			SQLiteCursor(masterQuery, editTable, query)
+		} else {
+			TracedCursor(db, masterQuery, editTable, query, QueryTracer.getOperationName(Thread.currentThread().stackTrace))
+		}
+	}
+
+	private inner class TracedCursor(
+		private val database: SQLiteDatabase,
+		masterQuery: SQLiteCursorDriver,
+		editTable: String?,
+		private val query: SQLiteQuery,
+		private val operation: String
+	) : SQLiteCursor(masterQuery, editTable, query) {
+		private var isRecorded = false
+
+		override fun getCount(): Int {
+			if(isRecorded) return super.getCount()
+			isRecorded = true
+
+			//The first call to getCount runs the query and counts its rows, so time just that call
+			val startTime = System.nanoTime()
+			val count = super.getCount()
+			val durationNanos = System.nanoTime() - startTime
+			QueryTracer.record(operation, count, durationNanos)
+
+			//Logging slow queries
+			if(TimeUnit.NANOSECONDS.toMillis(durationNanos) >= QueryTracer.slowQueryThresholdMillis) {
+				val sql = query.toString().removePrefix("SQLiteQuery: ")
+				Log.w(TAG, "Slow query in $operation took ${TimeUnit.NANOSECONDS.toMillis(durationNanos)} ms and read $count rows: $sql\n" +
+						"Query plan:\n" + explainQueryPlan(sql))
+			}
+
+			return count
+		}
+
+		/**
+		 * Gets the query plan of a query, with unbound arguments treated as NULL
+		 */
+		private fun explainQueryPlan(sql: String): String {
+			isExplaining.set(true)
+			try {
+				database.rawQuery("EXPLAIN QUERY PLAN $sql", null).use { cursor ->
+					val iDetail = cursor.getColumnIndexOrThrow("detail")
+					return generateSequence { if(cursor.moveToNext()) cursor.getString(iDetail) else null }.joinToString("\n")
+				}
+			} catch(exception: SQLException) {
+				return "Unavailable (${exception.message})"
+			} finally {
+				isExplaining.set(false)
+			}
+		}
+	}
+
+	companion object {
+		private val TAG = TracingCursorFactory::class.java.simpleName
+	}
+}
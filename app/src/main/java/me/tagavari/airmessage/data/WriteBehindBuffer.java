@@ -0,0 +1,97 @@
+package me.tagavari.airmessage.data;
+
+import androidx.annotation.Nullable;
+
+import io.reactivex.rxjava3.core.Scheduler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Holds updates in memory and writes them in batches after a short delay.
+ * Updates to the same key within the delay are merged, so each key is only written once per batch.
+ * @param <K> The type of key that identifies the updated record
+ * @param <V> The type of update
+ */
+public class WriteBehindBuffer<K, V> {
+	private final long delayMillis;
+	private final Scheduler scheduler;
+	private final BinaryOperator<V> merger;
+	private final Consumer<Map<K, V>> writer;
+
+	//Held while writing, so that batches are written in order
+	private final Object writeLock = new Object();
+
+	private Map<K, V> pendingMap = new LinkedHashMap<>();
+	private boolean flushScheduled = false;
+
+	/**
+	 * Creates a new write-behind buffer
+	 * @param delayMillis How long to wait after the first update before writing a batch
+	 * @param scheduler The scheduler to write batches on
+	 * @param merger A function that merges a pending update with a newer update for the same key
+	 * @param writer A function that writes a batch of updates
+	 */
+	public WriteBehindBuffer(long delayMillis, Scheduler scheduler, BinaryOperator<V> merger, Consumer<Map<K, V>> writer) {
+		this.delayMillis = delayMillis;
+		this.scheduler = scheduler;
+		this.merger = merger;
+		this.writer = writer;
+	}
+
+	/**
+	 * Queues an update to be written
+	 * @param key The key of the updated record
+	 * @param value The update
+	 */
+	public void put(K key, V value) {
+		synchronized(this) {
+			pendingMap.merge(key, value, merger);
+
+			//Scheduling a flush if one isn't scheduled yet
+			if(flushScheduled) return;
+			flushScheduled = true;
+		}
+
+		scheduler.scheduleDirect(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes all pending updates immediately, on the calling thread
+	 */
+	public void flush() {
+		synchronized(writeLock) {
+			//Taking the pending updates
+			Map<K, V> batch;
+			synchronized(this) {
+				flushScheduled = false;
+				if(pendingMap.isEmpty()) return;
+				batch = pendingMap;
+				pendingMap = new LinkedHashMap<>();
+			}
+
+			//Writing the updates
+			writer.accept(batch);
+		}
+	}
+
+	/**
+	 * Gets the update pending for a key
+	 * @param key The key of the record
+	 * @return The pending update, or NULL if there is none
+	 */
+	@Nullable
+	public synchronized V getPending(K key) {
+		return pendingMap.get(key);
+	}
+
+	/**
+	 * Gets whether there are any updates that haven't been written yet
+	 */
+	public synchronized boolean hasPending() {
+		return !pendingMap.isEmpty();
+	}
+}
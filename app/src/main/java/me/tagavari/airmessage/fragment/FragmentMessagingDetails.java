@@ -218,7 +218,7 @@ public class FragmentMessagingDetails extends BottomSheetDialogFragment {
 		}
 		
 		//Subscribing to conversation updates
-		fragmentCD.add(ReduxEmitterNetwork.getMessageUpdateSubject().subscribe(this::handleUpdate));
+		fragmentCD.add(ReduxEmitterNetwork.getMessageUpdateSubject().flatMapIterable(ReduxEventMessaging::unbatch).subscribe(this::handleUpdate));
 	}
 	
 	@Override
@@ -20,11 +20,11 @@ import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.R;
 import me.tagavari.airmessage.connection.ConnectionManager;
 import me.tagavari.airmessage.connection.ConnectionTaskManager;
 import me.tagavari.airmessage.connection.MassRetrievalParams;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.data.MessagesDataHelper;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.helper.ResourceHelper;
@@ -198,7 +198,7 @@ public class FragmentSync extends BottomSheetDialogFragment {
 		ConnectionTaskManager.clearDownloads();
 		
 		//Deleting the messages
-		MessagesDataHelper.deleteAMBMessages(getContext()).subscribeOn(Schedulers.single()).subscribe(() -> {
+		MessagesDataHelper.deleteAMBMessages(getContext()).subscribeOn(DatabaseSchedulers.write).subscribe(() -> {
 			//Requesting a re-sync
 			ConnectionManager connectionManager = ConnectionService.getConnectionManager();
 			if(connectionManager != null) {
@@ -220,7 +220,7 @@ public class FragmentSync extends BottomSheetDialogFragment {
 		ConnectionTaskManager.clearDownloads();
 		
 		//Deleting the messages
-		MessagesDataHelper.deleteAMBMessages(getContext()).subscribeOn(Schedulers.single()).subscribe();
+		MessagesDataHelper.deleteAMBMessages(getContext()).subscribeOn(DatabaseSchedulers.write).subscribe();
 		
 		//Closing the dialog
 		dismiss();
@@ -0,0 +1,315 @@
+package me.tagavari.airmessage.helper
+
+import java.io.InterruptedIOException
+import java.util.PriorityQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Decides when AI requests run, so the requests a user is waiting for aren't held up by background work
+ *
+ * Each provider has its own queue, ordered by priority and then by arrival. A request starts once it reaches the front of
+ * its provider's queue, the provider has a free slot and its rate limiter has a token to spare. When a foreground request
+ * arrives and every slot is taken, the most recently started background request is cancelled and queued again, to be
+ * retried once there is room.
+ *
+ * After a provider reports that it is rate limiting us, its requests are held back with an exponential backoff until a
+ * request succeeds.
+ *
+ * @param limits The limits of each provider
+ * @param defaultLimits The limits of providers not in [limits]
+ * @param clock Gets the current time in nanoseconds, used for rate limits, backoffs and latencies
+ */
+class AIRequestScheduler @JvmOverloads constructor(
+    private val limits: Map<String, ProviderLimits>,
+    private val defaultLimits: ProviderLimits = ProviderLimits(1, 0.0, 1),
+    private val clock: () -> Long = System::nanoTime
+) {
+    enum class Priority {
+        // Requests whose results the user is waiting for, such as smart replies
+        FOREGROUND,
+        // Requests that run without the user's involvement, such as memory extraction
+        BACKGROUND
+    }
+
+    /**
+     * The limits to apply to a provider
+     * @param maxConcurrentRequests The maximum number of requests to the provider that can run at once
+     * @param requestsPerMinute The sustained rate of requests to allow, or 0 to not limit the rate
+     * @param burstSize The number of requests that can be started back to back before the rate applies
+     */
+    data class ProviderLimits(val maxConcurrentRequests: Int, val requestsPerMinute: Double, val burstSize: Int)
+
+    /**
+     * How long requests of a priority took, from being scheduled to completing, over the most recent requests
+     * @param priority The priority of the requests
+     * @param requestCount The number of requests completed
+     * @param preemptedCount The number of times a request was cancelled to make room for a foreground request
+     */
+    class LatencyStats(val priority: Priority, val requestCount: Int, val preemptedCount: Int, val p50Millis: Long, val p90Millis: Long, val p99Millis: Long)
+
+    /**
+     * A rate limiter that holds up to [capacity] tokens, refilled at a constant rate
+     */
+    class TokenBucket(private val capacity: Int, requestsPerMinute: Double, startNanos: Long) {
+        private val nanosPerToken = if (requestsPerMinute > 0) (TimeUnit.MINUTES.toNanos(1) / requestsPerMinute).toLong() else 0L
+        private var tokens = capacity.toDouble()
+        private var lastRefillNanos = startNanos
+
+        /**
+         * Takes a token if one is available
+         * @param nowNanos The current time
+         * @return 0 if a token was taken, otherwise how long to wait until one will be available
+         */
+        fun tryAcquire(nowNanos: Long): Long {
+            if (nanosPerToken == 0L) return 0
+
+            refill(nowNanos)
+            if (tokens >= 1) {
+                tokens--
+                return 0
+            }
+            return maxOf(((1 - tokens) * nanosPerToken).toLong(), 1)
+        }
+
+        /**
+         * Removes all tokens, so requests resume at the sustained rate
+         */
+        fun drain(nowNanos: Long) {
+            refill(nowNanos)
+            tokens = 0.0
+        }
+
+        private fun refill(nowNanos: Long) {
+            tokens = minOf(capacity.toDouble(), tokens + (nowNanos - lastRefillNanos).toDouble() / nanosPerToken)
+            lastRefillNanos = nowNanos
+        }
+    }
+
+    private class Job(val priority: Priority, val sequence: Long, val scheduledNanos: Long) {
+        var canceller = RequestCanceller()
+        var startedNanos = 0L
+        var isPreempted = false
+    }
+
+    private class ProviderState(val limits: ProviderLimits, startNanos: Long) {
+        val queue = PriorityQueue<Job>(compareBy<Job> { it.priority }.thenBy { it.sequence })
+        val runningJobs = ArrayList<Job>()
+        val bucket = TokenBucket(limits.burstSize, limits.requestsPerMinute, startNanos)
+        var backoffCount = 0
+        var backoffUntilNanos = 0L
+    }
+
+    private class LatencyRecorder {
+        val samples = LongArray(latencySampleCount)
+        var requestCount = 0
+        var preemptedCount = 0
+    }
+
+    private val lock = ReentrantLock()
+    private val stateChanged = lock.newCondition()
+    private val providerMap = HashMap<String, ProviderState>()
+    private var nextSequence = 0L
+    private val latencyMap = Priority.values().associateWith { LatencyRecorder() }
+
+    /**
+     * Runs a request once its provider has room for it, waiting on the calling thread
+     * @param provider The name of the provider the request is made to
+     * @param priority The priority of the request
+     * @param task The request to run, which should attach its HTTP call to the given canceller. A preempted request
+     * is run again with a new canceller, so the task should be safe to repeat.
+     * @return The result of the task
+     * @throws InterruptedIOException If the thread is interrupted while waiting for the request to start
+     */
+    @Throws(InterruptedIOException::class)
+    fun <T> execute(provider: String, priority: Priority, task: (RequestCanceller) -> T): T {
+        val job: Job
+        val state: ProviderState
+        lock.withLock {
+            state = getState(provider)
+            job = Job(priority, nextSequence++, clock())
+            state.queue.add(job)
+            if (priority == Priority.FOREGROUND) preemptBackgroundJob(state)
+        }
+
+        while (true) {
+            awaitStart(state, job)
+
+            val result = try {
+                Result.success(task(job.canceller))
+            } catch (e: Throwable) {
+                Result.failure(e)
+            }
+
+            val isRequeued = lock.withLock {
+                state.runningJobs.remove(job)
+                stateChanged.signalAll()
+
+                // Discarding the outcome of a preempted attempt, and waiting for another turn
+                val isPreempted = job.isPreempted
+                if (isPreempted) {
+                    job.isPreempted = false
+                    job.canceller = RequestCanceller()
+                    state.queue.add(job)
+                }
+                isPreempted
+            }
+            if (!isRequeued) {
+                recordLatency(priority, TimeUnit.NANOSECONDS.toMillis(clock() - job.scheduledNanos))
+                return result.getOrThrow()
+            }
+        }
+    }
+
+    /**
+     * Holds back requests to a provider after it rejected a request for exceeding its rate limit. Each consecutive
+     * report doubles the delay.
+     */
+    fun reportRateLimited(provider: String) {
+        lock.withLock {
+            val state = getState(provider)
+            val now = clock()
+            val delayMillis = minOf(minBackoffMillis shl minOf(state.backoffCount, 5), maxBackoffMillis)
+            state.backoffCount++
+            state.backoffUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(delayMillis)
+            state.bucket.drain(now)
+        }
+    }
+
+    /**
+     * Clears any backoff applied to a provider after a request to it succeeds
+     */
+    fun reportSuccess(provider: String) {
+        lock.withLock {
+            val state = providerMap[provider] ?: return
+            if (state.backoffCount == 0) return
+            state.backoffCount = 0
+            state.backoffUntilNanos = 0
+            stateChanged.signalAll()
+        }
+    }
+
+    /**
+     * Gets the latency of each priority class
+     */
+    fun getLatencyStats(): List<LatencyStats> {
+        return lock.withLock {
+            latencyMap.map { (priority, recorder) ->
+                val samples = recorder.samples.copyOf(minOf(recorder.requestCount, latencySampleCount))
+                samples.sort()
+                LatencyStats(priority, recorder.requestCount, recorder.preemptedCount,
+                    percentile(samples, 50), percentile(samples, 90), percentile(samples, 99))
+            }
+        }
+    }
+
+    /**
+     * Clears all recorded latencies
+     */
+    fun resetLatencyStats() {
+        lock.withLock {
+            for (recorder in latencyMap.values) {
+                recorder.requestCount = 0
+                recorder.preemptedCount = 0
+            }
+        }
+    }
+
+    private fun getState(provider: String): ProviderState {
+        return providerMap.getOrPut(provider) { ProviderState(limits[provider] ?: defaultLimits, clock()) }
+    }
+
+    /**
+     * Waits until a job can start, then moves it from its provider's queue to the running jobs
+     */
+    private fun awaitStart(state: ProviderState, job: Job) {
+        lock.withLock {
+            try {
+                while (true) {
+                    val waitNanos = tryStart(state, job)
+                    if (waitNanos == 0L) return
+                    if (waitNanos < 0) stateChanged.await() else stateChanged.awaitNanos(waitNanos)
+                }
+            } catch (e: InterruptedException) {
+                state.queue.remove(job)
+                stateChanged.signalAll()
+                Thread.currentThread().interrupt()
+                throw InterruptedIOException("Interrupted while waiting for an AI request to start")
+            }
+        }
+    }
+
+    /**
+     * Starts a job if it is allowed to run
+     * @return 0 if the job was started, the time to wait before trying again, or -1 to wait until something changes
+     */
+    private fun tryStart(state: ProviderState, job: Job): Long {
+        if (state.queue.peek() !== job || state.runningJobs.size >= state.limits.maxConcurrentRequests) return -1
+
+        val now = clock()
+        if (now < state.backoffUntilNanos) return state.backoffUntilNanos - now
+
+        val waitNanos = state.bucket.tryAcquire(now)
+        if (waitNanos > 0) return waitNanos
+
+        state.queue.poll()
+        job.startedNanos = now
+        state.runningJobs.add(job)
+
+        // Letting the next job in line check whether it can start too
+        stateChanged.signalAll()
+        return 0
+    }
+
+    /**
+     * Cancels the most recently started background job of a provider if it has no free slots
+     */
+    private fun preemptBackgroundJob(state: ProviderState) {
+        if (state.runningJobs.size < state.limits.maxConcurrentRequests) return
+
+        val job = state.runningJobs
+            .filter { it.priority == Priority.BACKGROUND && !it.isPreempted }
+            .maxByOrNull { it.startedNanos } ?: return
+        job.isPreempted = true
+        job.canceller.cancel()
+        latencyMap.getValue(Priority.BACKGROUND).preemptedCount++
+    }
+
+    private fun recordLatency(priority: Priority, durationMillis: Long) {
+        lock.withLock {
+            val recorder = latencyMap.getValue(priority)
+            recorder.samples[recorder.requestCount % latencySampleCount] = durationMillis
+            recorder.requestCount++
+        }
+    }
+
+    companion object {
+        // The number of recent requests of each priority to compute percentiles from
+        private const val latencySampleCount = 512
+
+        private const val minBackoffMillis = 3000L
+        private const val maxBackoffMillis = 60000L
+
+        /**
+         * The scheduler shared by all AI features
+         */
+        @JvmStatic
+        val shared = AIRequestScheduler(mapOf(
+            // A local server has little capacity to generate several responses at once
+            AITransport.providerOllama to ProviderLimits(2, 0.0, 1),
+            AITransport.providerOllamaTurbo to ProviderLimits(2, 60.0, 5),
+            // The free tier of the Gemini API allows 15 requests per minute
+            AITransport.providerGemini to ProviderLimits(2, 15.0, 3)
+        ))
+
+        /**
+         * Gets a percentile of sorted samples with the nearest-rank method
+         */
+        private fun percentile(sortedSamples: LongArray, percent: Int): Long {
+            if (sortedSamples.isEmpty()) return 0
+            val rank = (percent * sortedSamples.size + 99) / 100
+            return sortedSamples[maxOf(rank, 1) - 1]
+        }
+    }
+}
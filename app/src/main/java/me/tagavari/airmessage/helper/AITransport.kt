@@ -0,0 +1,189 @@
+package me.tagavari.airmessage.helper
+
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+/**
+ * The HTTP transport shared by all AI features
+ *
+ * Every AI backend uses clients derived from [client], so they share one connection pool and dispatcher, and connections
+ * to a server are kept alive and reused across features. The number of AI requests in flight at once to each provider is
+ * limited, and the latency of each provider is recorded. Responses that report a rate limit are passed on to
+ * [AIRequestScheduler]. Probes and keep-alives marked with [asProbe] skip the limit, so they are never stuck behind a
+ * slow generation.
+ */
+object AITransport {
+    // The maximum number of AI requests that can be waiting for a response from a provider at once
+    const val maxConcurrentRequests = 4
+
+    // How often a request waiting for a slot checks whether it was canceled
+    private const val slotPollMillis = 100L
+
+    // How many idle connections are kept open, and for how long
+    private const val maxIdleConnections = 5
+    private const val keepAliveMinutes = 5L
+
+    const val providerOllama = "ollama"
+    const val providerOllamaTurbo = "ollama_turbo"
+    const val providerGemini = "gemini"
+
+    private val semaphoreMap = ConcurrentHashMap<String, Semaphore>()
+    private val latencyMap = HashMap<String, Accumulator>()
+
+    /**
+     * The latency of requests to a provider
+     * @param provider The name of the provider
+     * @param requestCount The number of requests made
+     * @param failureCount The number of requests that failed without a response
+     * @param totalMillis The total time spent waiting for responses
+     * @param maxMillis The longest time spent waiting for a response
+     */
+    class LatencyStats(val provider: String, val requestCount: Int, val failureCount: Int, val totalMillis: Long, val maxMillis: Long) {
+        /**
+         * The average time spent waiting for a response
+         */
+        val averageMillis: Long
+            get() = if (requestCount == 0) 0 else totalMillis / requestCount
+    }
+
+    // Marks requests that are sent without waiting for a request slot
+    private object Probe
+
+    private class Accumulator {
+        var requestCount = 0
+        var failureCount = 0
+        var totalMillis = 0L
+        var maxMillis = 0L
+    }
+
+    /**
+     * The shared client. Features that need different timeouts should derive their client with [OkHttpClient.newBuilder],
+     * which keeps the shared connection pool and dispatcher.
+     */
+    @JvmStatic
+    val client: OkHttpClient = OkHttpClient.Builder()
+        .connectionPool(ConnectionPool(maxIdleConnections, keepAliveMinutes, TimeUnit.MINUTES))
+        .dispatcher(Dispatcher().apply {
+            maxRequests = maxConcurrentRequests
+            maxRequestsPerHost = maxConcurrentRequests
+        })
+        .addInterceptor(Interceptor { chain -> proceedTracked(chain) })
+        .build()
+
+    /**
+     * Creates a client with different timeouts that shares the connection pool and dispatcher of [client]
+     */
+    @JvmStatic
+    fun newClient(connectTimeoutSeconds: Long, readTimeoutSeconds: Long): OkHttpClient {
+        return client.newBuilder()
+            .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+            .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+            .writeTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+            .build()
+    }
+
+    /**
+     * Marks a request as a probe or keep-alive, which is sent right away instead of waiting for a request slot, and
+     * isn't counted towards its provider's latency
+     */
+    @JvmStatic
+    fun asProbe(builder: Request.Builder): Request.Builder = builder.tag(Probe::class.java, Probe)
+
+    /**
+     * Gets the name of the provider that serves a host
+     */
+    @JvmStatic
+    fun getProvider(host: String): String {
+        return when (host) {
+            "generativelanguage.googleapis.com" -> providerGemini
+            "ollama.com" -> providerOllamaTurbo
+            else -> providerOllama
+        }
+    }
+
+    /**
+     * Gets the latency of each provider that has been used, with the slowest providers first
+     */
+    @JvmStatic
+    fun getLatencyStats(): List<LatencyStats> {
+        return synchronized(latencyMap) {
+            latencyMap.map { (provider, accumulator) ->
+                LatencyStats(provider, accumulator.requestCount, accumulator.failureCount, accumulator.totalMillis, accumulator.maxMillis)
+            }.sortedByDescending { it.averageMillis }
+        }
+    }
+
+    /**
+     * Clears all recorded latencies
+     */
+    @JvmStatic
+    fun resetLatencyStats() {
+        synchronized(latencyMap) {
+            latencyMap.clear()
+        }
+    }
+
+    /**
+     * Runs a request once there is room for it, and records how long its provider took to respond
+     */
+    private fun proceedTracked(chain: Interceptor.Chain): Response {
+        if (chain.request().tag(Probe::class.java) != null) return chain.proceed(chain.request())
+
+        val provider = getProvider(chain.request().url.host)
+        val semaphore = semaphoreMap.computeIfAbsent(provider) { Semaphore(maxConcurrentRequests, true) }
+        acquireSlot(chain, semaphore)
+
+        val startTime = System.nanoTime()
+        var isSuccessful = false
+        try {
+            val response = chain.proceed(chain.request())
+            isSuccessful = true
+
+            // Letting the scheduler hold back requests to providers that are rate limiting us
+            if (response.code == 429) AIRequestScheduler.shared.reportRateLimited(provider)
+            else if (response.isSuccessful) AIRequestScheduler.shared.reportSuccess(provider)
+            return response
+        } finally {
+            semaphore.release()
+            recordLatency(provider, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), isSuccessful)
+        }
+    }
+
+    /**
+     * Waits for a request slot, giving up once the call is canceled or has waited for longer than its call timeout, or
+     * its connect timeout if it has none
+     */
+    private fun acquireSlot(chain: Interceptor.Chain, semaphore: Semaphore) {
+        val timeoutNanos = chain.call().timeout().timeoutNanos().takeIf { it > 0 }
+            ?: TimeUnit.MILLISECONDS.toNanos(chain.connectTimeoutMillis().toLong())
+        val deadline = System.nanoTime() + timeoutNanos
+
+        try {
+            while (!semaphore.tryAcquire(slotPollMillis, TimeUnit.MILLISECONDS)) {
+                if (chain.call().isCanceled()) throw IOException("Canceled")
+                if (System.nanoTime() - deadline >= 0) throw InterruptedIOException("Timed out waiting to send request")
+            }
+        } catch (e: InterruptedException) {
+            throw InterruptedIOException("Interrupted while waiting to send request")
+        }
+    }
+
+    private fun recordLatency(provider: String, durationMillis: Long, isSuccessful: Boolean) {
+        synchronized(latencyMap) {
+            val accumulator = latencyMap.getOrPut(provider) { Accumulator() }
+            accumulator.requestCount++
+            if (!isSuccessful) accumulator.failureCount++
+            accumulator.totalMillis += durationMillis
+            accumulator.maxMillis = maxOf(accumulator.maxMillis, durationMillis)
+        }
+    }
+}
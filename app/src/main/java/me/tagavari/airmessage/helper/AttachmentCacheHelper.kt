@@ -0,0 +1,73 @@
+package me.tagavari.airmessage.helper
+
+/**
+ * Decides which downloaded attachment files to remove when they use more storage than the user allows
+ *
+ * Files are removed in order of when they were last viewed, and only if every attachment using the file can be downloaded from the server again.
+ */
+object AttachmentCacheHelper {
+	//How long a file is always kept after it was last viewed, regardless of the quota
+	const val minimumRetentionMillis = 24 * 60 * 60 * 1000L
+
+	/**
+	 * An attachment with a downloaded file
+	 * @param localID The ID of the attachment
+	 * @param messageID The ID of the attachment's message
+	 * @param path The relative path of the attachment's file
+	 * @param lastViewed The last time the attachment was viewed
+	 * @param isEvictable Whether the attachment's file can be downloaded from the server again
+	 */
+	data class CachedAttachment(val localID: Long, val messageID: Long, val path: String, val lastViewed: Long, val isEvictable: Boolean)
+
+	/**
+	 * Reads the sizes of attachment files
+	 */
+	fun interface FileSizeSource {
+		/**
+		 * Gets the size of a file, or -1 if it doesn't exist
+		 */
+		fun getSize(path: String): Long
+	}
+
+	/**
+	 * Plans which attachment files to remove to bring storage use under the quota
+	 * @param attachments All attachments with a downloaded file
+	 * @param files The file system to read file sizes from
+	 * @param quotaBytes The maximum amount of bytes attachment files should use
+	 * @param currentTime The current time
+	 * @return The paths of the files to remove, least recently viewed first
+	 */
+	@JvmStatic
+	fun planEviction(attachments: List<CachedAttachment>, files: FileSizeSource, quotaBytes: Long, currentTime: Long): List<String> {
+		var usedBytes = 0L
+		val fileSizeMap = HashMap<String, Long>()
+		val candidates = mutableListOf<Pair<String, Long>>()
+
+		//Files may be shared by multiple attachments, so they are evaluated together
+		for((path, fileAttachments) in attachments.groupBy { it.path }) {
+			val fileSize = files.getSize(path)
+			if(fileSize < 0) continue
+			usedBytes += fileSize
+			fileSizeMap[path] = fileSize
+
+			//Keeping files that can't be downloaded again, or that were viewed recently
+			if(!fileAttachments.all { it.isEvictable }) continue
+			val lastViewed = fileAttachments.maxOf { it.lastViewed }
+			if(currentTime - lastViewed < minimumRetentionMillis) continue
+
+			candidates.add(Pair(path, lastViewed))
+		}
+
+		if(usedBytes <= quotaBytes) return emptyList()
+
+		//Removing the least recently viewed files until we're under the quota
+		val evictedPaths = mutableListOf<String>()
+		for((path, _) in candidates.sortedBy { it.second }) {
+			if(usedBytes <= quotaBytes) break
+			evictedPaths.add(path)
+			usedBytes -= fileSizeMap.getValue(path)
+		}
+
+		return evictedPaths
+	}
+}
@@ -10,6 +10,8 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.schedulers.Schedulers
+import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.messaging.MessageInfo
 import me.tagavari.airmessage.messaging.ConversationInfo
 import okhttp3.*
@@ -17,7 +19,6 @@ import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.RequestBody.Companion.toRequestBody
 import java.io.File
 import java.io.IOException
-import java.util.concurrent.TimeUnit
 
 /**
  * Manages contextual conversation memory for enhanced smart replies.
@@ -25,23 +26,32 @@ import java.util.concurrent.TimeUnit
  */
 object ConversationMemoryManager {
     private const val TAG = "ConversationMemory"
-    private const val MEMORY_FILE_NAME = "conversation_memory.json"
+    private const val MEMORY_FILE_NAME = "conversation_memory.json" // Only read to migrate memories saved by older versions
+    private const val CORRUPT_MEMORY_FILE_NAME = "conversation_memory.corrupt.json" // Where an unreadable legacy file is kept
     private const val PREF_MEMORY_MESSAGE_LIMIT = "conversation_memory_message_limit"
     private const val DEFAULT_MESSAGE_LIMIT = 50
     
-    // Rate limiting for Gemini API to avoid 429 errors
-    private var lastGeminiRequestTime: Long = 0
-    private var consecutiveFailures: Int = 0
-    private const val BASE_DELAY_MS = 3000L  // Start with 3 seconds between requests
-    private const val MAX_DELAY_MS = 60000L  // Cap at 60 seconds
+    // Progress of the existing message backfill
+    private const val PREF_BACKFILL_DATE = "conversation_memory_backfill_date"
+    private const val PREF_BACKFILL_MESSAGE_ID = "conversation_memory_backfill_message_id"
+    private const val PREF_BACKFILL_PROCESSED_COUNT = "conversation_memory_backfill_processed_count"
+    
     private const val OLLAMA_TIMEOUT_SECONDS = 15L
     
+    // Whether memories from the legacy JSON file have been moved to the database
+    @Volatile
+    private var isLegacyFileMigrated = false
+    
+    // Searchable copy of the stored memories, loaded on first use
+    @Volatile
+    private var memoryIndex: MemoryIndex? = null
+    
+    // New messages waiting to have information extracted from them
+    @Volatile
+    private var extractionQueue: MemoryExtractionQueue? = null
+    
     // Using JSON objects instead of Gson for Android compatibility
-    private val httpClient = OkHttpClient.Builder()
-        .connectTimeout(OLLAMA_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-        .readTimeout(OLLAMA_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-        .writeTimeout(OLLAMA_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-        .build()
+    private val httpClient = AITransport.newClient(OLLAMA_TIMEOUT_SECONDS, OLLAMA_TIMEOUT_SECONDS)
     
     /**
      * Data class representing a memory item extracted from messages
@@ -58,14 +68,6 @@ object ConversationMemoryManager {
         val confidence: Float = 1.0f
     )
     
-    /**
-     * Data class representing the complete memory store
-     */
-    data class ConversationMemoryStore(
-        val items: MutableList<MemoryItem> = mutableListOf(),
-        var lastUpdated: Long = System.currentTimeMillis()
-    )
-    
     /**
      * Gets the configured message limit from preferences
      */
@@ -87,139 +89,18 @@ object ConversationMemoryManager {
     }
     
     /**
-     * Extracts contextual information from a message and adds it to memory
+     * Queues a new message to have contextual information extracted from it in the background, together with other
+     * recent messages. This returns immediately, so it can be called from any thread.
+     * @return Whether the message was queued
      */
     @JvmStatic
-    fun processMessage(context: Context, message: MessageInfo, conversation: ConversationInfo): Completable {
-        // Skip messages without text or that are too short
-        val messageText = message.messageText
-        if (messageText.isNullOrBlank() || messageText.length < 10) {
-            return Completable.complete()
-        }
-        
-        return Completable.fromAction {
-            // Extract information using selected AI provider
-            val extractedInfo = extractInformationFromMessage(context, messageText, conversation)
-            
-            if (extractedInfo != null) {
-                // Add to memory synchronously since we're already on IO thread
-                val memoryFile = getMemoryFile(context)
-                val memoryStore = loadMemoryStore(context)
-                
-                // Check for duplicates based on original message content and conversation
-                val isDuplicate = memoryStore.items.any { item ->
-                    item.conversationGuid == extractedInfo.conversationGuid && 
-                    item.originalMessage == extractedInfo.originalMessage
-                }
-                
-                if (!isDuplicate) {
-                    // Add the new item
-                    memoryStore.items.add(extractedInfo)
-                    
-                    // Enforce message limit by removing oldest items
-                    val messageLimit = getMessageLimit(context)
-                    while (memoryStore.items.size > messageLimit) {
-                        memoryStore.items.removeAt(0) // Remove oldest
-                    }
-                    
-                    // Update timestamp
-                    memoryStore.lastUpdated = System.currentTimeMillis()
-                    
-                    // Save to file
-                    saveMemoryStore(memoryFile, memoryStore)
-                    
-                    Log.d(TAG, "Added new memory item for conversation: ${extractedInfo.conversationGuid}")
-                } else {
-                    Log.d(TAG, "Skipping duplicate memory item for message: ${messageText.take(50)}")
-                }
-                
-                Log.d(TAG, "Added memory item: ${extractedInfo.extractedInfo}")
-            }
-        }
-        .subscribeOn(Schedulers.io())
-        .onErrorComplete { error ->
-            Log.w(TAG, "Failed to process message for memory", error)
-            true // Continue silently on error
-        }
-    }
-    
-    /**
-     * Extracts information from message text using the selected AI provider
-     */
-    private fun extractInformationFromMessage(context: Context, messageText: String, conversation: ConversationInfo): MemoryItem? {
-        try {
-            Log.d(TAG, "Extracting info from message: ${messageText.take(50)}...")
-            val prompt = buildExtractionPrompt(messageText)
-            
-            Log.d(TAG, "AI extraction prompt: ${prompt.take(200)}...")
-            val response = callSelectedAI(context, prompt)
-            Log.d(TAG, "AI response received: ${response?.take(300) ?: "NULL"}")
-            
-            val result = parseExtractionResponse(response, messageText, conversation)
-            
-            if (result != null) {
-                Log.i(TAG, "Successfully extracted memory item: ${result.extractedInfo}")
-            } else {
-                Log.w(TAG, "No memory item extracted from: '${messageText.take(100)}'")
-            }
-            
-            return result
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to extract information from message: '${messageText.take(50)}'", e)
-            return null
-        }
+    fun queueMessage(context: Context, message: MessageInfo, conversation: ConversationInfo): Boolean {
+        val messageText = message.messageText ?: return false
+        return getExtractionQueue(context).offer(MemoryBackfill.BackfillMessage(message.localID, conversation.localID, message.date, messageText))
     }
     
     /**
-     * Builds the prompt for information extraction
-     */
-    private fun buildExtractionPrompt(messageText: String): String {
-        return """
-Extract useful information from this message that could help generate better smart replies in future conversations. Look for:
-
-**High Priority (extract these):**
-- Codes/credentials (2FA codes, access codes, passwords, PINs, confirmation numbers)
-- Events with times/dates (meetings, parties, appointments, deadlines)
-- Locations and addresses
-- Important decisions or plans
-- Commitments and availability
-
-**Medium Priority (extract if relevant):**
-- Names of people, places, or companies
-- Preferences and interests mentioned
-- Problems or issues discussed
-- Future activities or plans
-- Important facts or information shared
-
-**Low Priority (skip routine messages):**
-- Basic greetings ("hi", "hello", "thanks")
-- Simple confirmations ("ok", "yes", "sounds good")
-- Very short responses
-
-Message: "$messageText"
-
-Respond in JSON format:
-{
-  "hasInfo": true/false,
-  "info": "concise but complete extracted information",
-  "category": "code|event|location|person|plan|interest|fact|general",
-  "confidence": 0.0-1.0
-}
-
-Examples:
-- "Your verification code is 123456" → {"hasInfo": true, "info": "Verification code: 123456", "category": "code", "confidence": 1.0}
-- "Meeting at 3pm tomorrow at Starbucks" → {"hasInfo": true, "info": "Meeting at 3pm tomorrow at Starbucks", "category": "event", "confidence": 0.95}
-- "I love hiking in the mountains" → {"hasInfo": true, "info": "Enjoys hiking in mountains", "category": "interest", "confidence": 0.8}
-- "My favorite restaurant is Giuseppe's on Main Street" → {"hasInfo": true, "info": "Favorite restaurant: Giuseppe's on Main Street", "category": "fact", "confidence": 0.85}
-- "Just arrived at the airport" → {"hasInfo": true, "info": "Currently at airport", "category": "location", "confidence": 0.9}
-- "ok" → {"hasInfo": false}
-
-Be generous in extracting information - when in doubt, include it if it might be useful later.
-        """.trimIndent()
-    }
-    
-    /**
-     * Calls the selected AI provider for information extraction
+     * Calls the selected AI provider for information extraction, as background work that gives way to foreground AI requests
      */
     private fun callSelectedAI(context: Context, prompt: String): String? {
         return try {
@@ -240,19 +121,26 @@ Be generous in extracting information - when in doubt, include it if it might be
             val rawValue = rawPrefs.getString(context.getResources().getString(me.tagavari.airmessage.R.string.preference_features_aiprovider_key), "DEFAULT_NOT_SET")
             Log.d(TAG, "Raw AI provider preference: '$rawValue'")
             
+            val scheduler = AIRequestScheduler.shared
             when (aiProvider) {
                 "disabled" -> {
                     Log.d(TAG, "AI features are disabled")
                     null
                 }
                 "ollama" -> {
-                    callOllamaAI(context, prompt)
+                    scheduler.execute(AITransport.providerOllama, AIRequestScheduler.Priority.BACKGROUND) { canceller ->
+                        callOllamaAI(context, prompt, canceller)
+                    }
                 }
                 "ollama_turbo" -> {
-                    callOllamaTurboAI(context, prompt)
+                    scheduler.execute(AITransport.providerOllamaTurbo, AIRequestScheduler.Priority.BACKGROUND) { canceller ->
+                        callOllamaTurboAI(context, prompt, canceller)
+                    }
                 }
                 "gemini" -> {
-                    callGeminiAI(context, prompt)
+                    scheduler.execute(AITransport.providerGemini, AIRequestScheduler.Priority.BACKGROUND) { canceller ->
+                        callGeminiAI(context, prompt, canceller)
+                    }
                 }
                 else -> {
                     Log.w(TAG, "Unknown AI provider: $aiProvider")
@@ -268,7 +156,7 @@ Be generous in extracting information - when in doubt, include it if it might be
     /**
      * Calls Ollama AI using user-configured settings
      */
-    private fun callOllamaAI(context: Context, prompt: String): String? {
+    private fun callOllamaAI(context: Context, prompt: String, canceller: RequestCanceller): String? {
         val hostname = me.tagavari.airmessage.activity.Preferences.getPreferenceOllamaHostname(context)
         val port = me.tagavari.airmessage.activity.Preferences.getPreferenceOllamaPort(context)
         val model = me.tagavari.airmessage.activity.Preferences.getPreferenceOllamaModel(context)
@@ -280,6 +168,13 @@ Be generous in extracting information - when in doubt, include it if it might be
             return null
         }
         
+        // Skip the call while the server is known to be down, rather than waiting for it to time out
+        val baseUrl = "http://$hostname:$port"
+        if (ProviderHealthTracker.ollama.isOpen(baseUrl)) {
+            Log.d(TAG, "Ollama server at $baseUrl is unavailable - skipping AI call")
+            return null
+        }
+        
         val requestJson = JSONObject()
         requestJson.put("model", if (model.isEmpty()) "llama3.2" else model)
         requestJson.put("prompt", prompt)
@@ -292,14 +187,17 @@ Be generous in extracting information - when in doubt, include it if it might be
         val requestBody = requestJson.toString().toRequestBody("application/json".toMediaType())
         
         val request = Request.Builder()
-            .url("http://$hostname:$port/api/generate")
+            .url("$baseUrl/api/generate")
             .post(requestBody)
             .build()
         
+        val call = httpClient.newCall(request)
+        canceller.attach(call)
         return try {
             Log.d(TAG, "Calling Ollama API at $hostname:$port...")
-            httpClient.newCall(request).execute().use { response ->
+            call.execute().use { response ->
                 if (response.isSuccessful) {
+                    ProviderHealthTracker.ollama.recordSuccess(baseUrl)
                     val responseBody = response.body?.string()
                     if (responseBody != null) {
                         Log.d(TAG, "Ollama API response received")
@@ -318,14 +216,15 @@ Be generous in extracting information - when in doubt, include it if it might be
             }
         } catch (e: IOException) {
             Log.w(TAG, "Network error calling Ollama API", e)
+            if (!call.isCanceled()) ProviderHealthTracker.ollama.recordFailure(baseUrl)
             null
         }
     }
     
     /**
-     * Calls Google Gemini API using user-configured API key with aggressive rate limiting
+     * Calls Google Gemini API using user-configured API key. Requests are paced by [AIRequestScheduler].
      */
-    private fun callGeminiAI(context: Context, prompt: String): String? {
+    private fun callGeminiAI(context: Context, prompt: String, canceller: RequestCanceller): String? {
         val apiKey = me.tagavari.airmessage.activity.Preferences.getPreferenceGeminiApiKey(context)
         
         Log.d(TAG, "Gemini API key configured: ${if (apiKey.isEmpty()) "NO" else "YES (${apiKey.length} chars)"}")
@@ -335,30 +234,6 @@ Be generous in extracting information - when in doubt, include it if it might be
             return null
         }
         
-        // Implement aggressive rate limiting with exponential backoff
-        val currentTime = System.currentTimeMillis()
-        val timeSinceLastRequest = currentTime - lastGeminiRequestTime
-        
-        // Calculate delay based on consecutive failures (exponential backoff)
-        val baseDelay = if (consecutiveFailures > 0) {
-            minOf(BASE_DELAY_MS * (1L shl minOf(consecutiveFailures, 4)), MAX_DELAY_MS)
-        } else {
-            BASE_DELAY_MS
-        }
-        
-        if (timeSinceLastRequest < baseDelay) {
-            val waitTime = baseDelay - timeSinceLastRequest
-            Log.d(TAG, "Rate limiting: waiting ${waitTime}ms (consecutive failures: $consecutiveFailures)")
-            try {
-                Thread.sleep(waitTime)
-            } catch (e: InterruptedException) {
-                Thread.currentThread().interrupt()
-                return null
-            }
-        }
-        
-        lastGeminiRequestTime = System.currentTimeMillis()
-        
         val json = JSONObject().apply {
             put("contents", JSONArray().apply {
                 put(JSONObject().apply {
@@ -371,7 +246,8 @@ Be generous in extracting information - when in doubt, include it if it might be
             })
             put("generationConfig", JSONObject().apply {
                 put("temperature", 0.1)
-                put("maxOutputTokens", 512)
+                // Leave room for batched extraction responses, which cover many messages at once
+                put("maxOutputTokens", 2048)
             })
         }
         
@@ -381,14 +257,15 @@ Be generous in extracting information - when in doubt, include it if it might be
             .post(requestBody)
             .build()
         
+        val call = httpClient.newCall(request)
+        canceller.attach(call)
         return try {
-            Log.d(TAG, "Calling Gemini API (attempt after $consecutiveFailures consecutive failures)...")
-            httpClient.newCall(request).execute().use { response ->
+            Log.d(TAG, "Calling Gemini API...")
+            call.execute().use { response ->
                 if (response.isSuccessful) {
                     val responseBody = response.body?.string()
                     if (responseBody != null) {
-                        Log.d(TAG, "Gemini API response received - resetting failure count")
-                        consecutiveFailures = 0  // Reset on success
+                        Log.d(TAG, "Gemini API response received")
                         val responseJson = JSONObject(responseBody)
                         val aiResponse = responseJson
                             .getJSONArray("candidates")
@@ -401,26 +278,16 @@ Be generous in extracting information - when in doubt, include it if it might be
                         aiResponse
                     } else {
                         Log.w(TAG, "Gemini API response body is null")
-                        consecutiveFailures++
-                        Log.w(TAG, "Incremented consecutive failures to: $consecutiveFailures")
                         null
                     }
                 } else {
+                    // Rate limit responses are reported to the scheduler by AITransport
                     Log.w(TAG, "Gemini API call failed: ${response.code} - ${response.message}")
-                    if (response.code == 429) {
-                        consecutiveFailures++
-                        Log.w(TAG, "Rate limited (429) - consecutive failures now: $consecutiveFailures, next delay will be ~${minOf(BASE_DELAY_MS * (1L shl minOf(consecutiveFailures, 4)), MAX_DELAY_MS)}ms")
-                    } else if (response.code in 400..499) {
-                        consecutiveFailures++
-                        Log.w(TAG, "Client error (${response.code}) - consecutive failures now: $consecutiveFailures")
-                    }
                     null
                 }
             }
         } catch (e: Exception) {
             Log.e(TAG, "Failed to call Gemini API", e)
-            consecutiveFailures++
-            Log.w(TAG, "Exception occurred - consecutive failures now: $consecutiveFailures")
             null
         }
     }
@@ -428,7 +295,7 @@ Be generous in extracting information - when in doubt, include it if it might be
     /**
      * Calls Ollama Turbo API using API key
      */
-    private fun callOllamaTurboAI(context: Context, prompt: String): String? {
+    private fun callOllamaTurboAI(context: Context, prompt: String, canceller: RequestCanceller): String? {
         val apiKey = me.tagavari.airmessage.activity.Preferences.getPreferenceOllamaTurboApiKey(context)
         val model = me.tagavari.airmessage.activity.Preferences.getPreferenceOllamaTurboModel(context)
         
@@ -458,9 +325,11 @@ Be generous in extracting information - when in doubt, include it if it might be
             .addHeader("Authorization", apiKey) // Use API key directly (not Bearer format based on docs)
             .build()
         
+        val call = httpClient.newCall(request)
+        canceller.attach(call)
         return try {
             Log.d(TAG, "Calling Ollama Turbo API...")
-            httpClient.newCall(request).execute().use { response ->
+            call.execute().use { response ->
                 if (response.isSuccessful) {
                     val responseBody = response.body?.string()
                     if (responseBody != null) {
@@ -484,172 +353,28 @@ Be generous in extracting information - when in doubt, include it if it might be
         }
     }
     
-    /**
-     * Parses the extraction response from AI provider
-     */
-    private fun parseExtractionResponse(response: String?, messageText: String, conversation: ConversationInfo): MemoryItem? {
-        if (response.isNullOrBlank()) {
-            Log.w(TAG, "Empty or null response from AI provider")
-            return null
-        }
-        
-        Log.d(TAG, "Parsing AI response (length: ${response.length}): ${response.take(200)}...")
-        
-        // Clean up the response - remove markdown code block formatting if present
-        val cleanedResponse = response
-            .replace("```json", "")
-            .replace("```", "")
-            .trim()
-        
-        Log.d(TAG, "Cleaned response: ${cleanedResponse.take(100)}...")
-        
-        return try {
-            // Try to parse the cleaned response as JSON first
-            val extracted = JSONObject(cleanedResponse)
-            val hasInfo = extracted.optBoolean("hasInfo", false)
-            
-            Log.d(TAG, "Parsed JSON hasInfo: $hasInfo")
-            
-            if (hasInfo) {
-                val extractedInfo = extracted.optString("info", "")
-                Log.d(TAG, "Extracted info: $extractedInfo")
-                
-                if (extractedInfo.isNotBlank()) {
-                    MemoryItem(
-                        id = "${conversation.guid ?: "unknown"}_${messageText.hashCode()}",
-                        conversationGuid = conversation.guid ?: "",
-                        conversationTitle = conversation.title,
-                        extractedInfo = extractedInfo,
-                        originalMessage = messageText,
-                        senderName = null, // Will be set by caller if available
-                        timestamp = System.currentTimeMillis(),
-                        category = extracted.optString("category", "general"),
-                        confidence = extracted.optDouble("confidence", 1.0).toFloat()
-                    )
-                } else {
-                    Log.d(TAG, "Extracted info is blank")
-                    null
-                }
-            } else {
-                Log.d(TAG, "No useful info found in message")
-                null
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Failed to parse extraction response as JSON: ${e.message}")
-            Log.d(TAG, "Raw response for fallback parsing: ${cleanedResponse.take(200)}")
-            
-            // Enhanced fallback: try to extract JSON from within text response
-            val jsonMatch = Regex("\\{[^}]*\"hasInfo\"[^}]*\\}").find(cleanedResponse)
-            if (jsonMatch != null) {
-                try {
-                    val jsonPart = jsonMatch.value
-                    Log.d(TAG, "Found JSON in response: $jsonPart")
-                    val extracted = JSONObject(jsonPart)
-                    val hasInfo = extracted.optBoolean("hasInfo", false)
-                    
-                    if (hasInfo) {
-                        val extractedInfo = extracted.optString("info", "")
-                        if (extractedInfo.isNotBlank()) {
-                            Log.d(TAG, "Fallback JSON extracted info: $extractedInfo")
-                            return MemoryItem(
-                                id = "${conversation.guid ?: "unknown"}_${System.currentTimeMillis()}",
-                                conversationGuid = conversation.guid ?: "",
-                                conversationTitle = conversation.title,
-                                extractedInfo = extractedInfo,
-                                originalMessage = messageText,
-                                senderName = null,
-                                timestamp = System.currentTimeMillis(),
-                                category = extracted.optString("category", "general"),
-                                confidence = extracted.optDouble("confidence", 0.7).toFloat()
-                            )
-                        }
-                    }
-                } catch (e2: Exception) {
-                    Log.w(TAG, "Fallback JSON parsing also failed: ${e2.message}")
-                }
-            }
-            
-            // Final fallback: simple regex extraction
-            if (response.contains("hasInfo") && (response.contains("true") || response.contains(": true"))) {
-                Log.d(TAG, "Attempting regex fallback extraction")
-                val infoMatch = Regex("\"info\"\\s*:?\\s*\"([^\"]+)\"").find(response)
-                val categoryMatch = Regex("\"category\"\\s*:?\\s*\"([^\"]+)\"").find(response)
-                
-                if (infoMatch != null) {
-                    val extractedInfo = infoMatch.groupValues[1]
-                    Log.d(TAG, "Regex extracted info: $extractedInfo")
-                    
-                    return MemoryItem(
-                        id = "${conversation.guid ?: "unknown"}_${System.currentTimeMillis()}",
-                        conversationGuid = conversation.guid ?: "",
-                        conversationTitle = conversation.title,
-                        extractedInfo = extractedInfo,
-                        originalMessage = messageText,
-                        senderName = null,
-                        timestamp = System.currentTimeMillis(),
-                        category = categoryMatch?.groupValues?.get(1) ?: "general",
-                        confidence = 0.5f
-                    )
-                }
-            }
-            
-            // Ultra-aggressive fallback: if response contains useful patterns, extract them
-            Log.d(TAG, "Attempting ultra-aggressive fallback parsing")
-            val usefulPatterns = listOf(
-                Regex("\\b\\d{4,6}\\b"), // Codes (4-6 digits)
-                Regex("\\b(?:monday|tuesday|wednesday|thursday|friday|saturday|sunday)\\b", RegexOption.IGNORE_CASE), // Days
-                Regex("\\b(?:january|february|march|april|may|june|july|august|september|october|november|december)\\b", RegexOption.IGNORE_CASE), // Months
-                Regex("\\b\\d{1,2}:\\d{2}\\s*(?:am|pm)?\\b", RegexOption.IGNORE_CASE), // Times
-                Regex("\\b(?:meeting|appointment|event|party|dinner|lunch)\\b", RegexOption.IGNORE_CASE) // Event words
-            )
-            
-            for (pattern in usefulPatterns) {
-                val matches = pattern.findAll(response).toList()
-                if (matches.isNotEmpty()) {
-                    val extractedInfo = "Response contains: ${matches.joinToString(", ") { it.value }}"
-                    Log.d(TAG, "Ultra-aggressive extraction: $extractedInfo")
-                    
-                    return MemoryItem(
-                        id = "${conversation.guid ?: "unknown"}_${System.currentTimeMillis()}",
-                        conversationGuid = conversation.guid ?: "",
-                        conversationTitle = conversation.title,
-                        extractedInfo = extractedInfo,
-                        originalMessage = messageText,
-                        senderName = null,
-                        timestamp = System.currentTimeMillis(),
-                        category = "extracted",
-                        confidence = 0.3f
-                    )
-                }
-            }
-            
-            Log.w(TAG, "All extraction methods failed for response: ${response.take(100)}")
-            null
-        }
-    }
-    
     /**
      * Retrieves contextual memories that could be relevant for generating smart replies
      */
     @JvmStatic
     fun getContextualMemories(context: Context, currentConversation: ConversationInfo, query: String? = null): Single<List<MemoryItem>> {
         return Single.fromCallable {
-            val memoryStore = loadMemoryStore(context)
-            var relevantItems = memoryStore.items
-                .filter { it.conversationGuid != currentConversation.guid } // Exclude current conversation
-                .sortedByDescending { it.timestamp } // Most recent first
+            val index = getMemoryIndex(context)
             
-            // If query provided, filter by relevance
-            if (!query.isNullOrBlank()) {
-                relevantItems = relevantItems.filter { item ->
-                    item.extractedInfo.contains(query, ignoreCase = true) ||
-                    item.originalMessage.contains(query, ignoreCase = true) ||
-                    item.category.contains(query, ignoreCase = true)
-                }
-            }
+            // Exclude current conversation
+            val filter = { item: MemoryItem -> item.conversationGuid != currentConversation.guid }
             
-            // Return top 10 most relevant items
-            relevantItems.take(10)
+            if (query.isNullOrBlank()) {
+                // Return the most recent items if no query is provided
+                synchronized(index) { index.getRecent(10, filter) }
+            } else {
+                // Return top 10 most relevant items, combining keyword matches with matches by meaning when embeddings are available
+                val keywordItems = synchronized(index) { index.search(query, 10, filter) }
+                val semanticItems = SemanticRetrieval.findMemories(context, query, 10,
+                    lookup = { id -> synchronized(index) { index.getByEmbeddingID(id) }?.takeIf(filter) },
+                    candidates = { synchronized(index) { index.getRecent(Int.MAX_VALUE) } })
+                if (semanticItems == null) keywordItems else SemanticRetrieval.fuseRankings(listOf(semanticItems, keywordItems), 10)
+            }
         }
         .subscribeOn(Schedulers.io())
         .observeOn(AndroidSchedulers.mainThread())
@@ -661,7 +386,8 @@ Be generous in extracting information - when in doubt, include it if it might be
     @JvmStatic
     fun getAllMemories(context: Context): Single<List<MemoryItem>> {
         return Single.fromCallable {
-            loadMemoryStore(context).items.sortedByDescending { it.timestamp }
+            val index = getMemoryIndex(context)
+            synchronized(index) { index.getRecent(Int.MAX_VALUE) }
         }
         .subscribeOn(Schedulers.io())
         .observeOn(AndroidSchedulers.mainThread())
@@ -673,9 +399,13 @@ Be generous in extracting information - when in doubt, include it if it might be
     @JvmStatic
     fun clearAllMemories(context: Context): Completable {
         return Completable.fromAction {
-            val memoryFile = getMemoryFile(context)
-            val emptyStore = ConversationMemoryStore()
-            saveMemoryStore(memoryFile, emptyStore)
+            val index = getMemoryIndex(context)
+            synchronized(index) {
+                val databaseManager = getMemoryDatabase(context)
+                runWrite { databaseManager.deleteMemoryItems() }
+                index.clear()
+            }
+            SemanticRetrieval.clearMemories(context)
             Log.d(TAG, "Cleared all conversation memories")
         }
         .subscribeOn(Schedulers.io())
@@ -687,27 +417,19 @@ Be generous in extracting information - when in doubt, include it if it might be
     @JvmStatic
     fun clearOldMemories(context: Context): Completable {
         return Completable.fromAction {
-            val memoryFile = getMemoryFile(context)
-            val memoryStore = loadMemoryStore(context)
             val messageLimit = getMessageLimit(context)
+            val index = getMemoryIndex(context)
+            val (removedCount, removedItems) = synchronized(index) {
+                val removedItems = index.trimTo(messageLimit)
+                val databaseManager = getMemoryDatabase(context)
+                runWrite { databaseManager.trimMemoryItems(messageLimit) } to removedItems
+            }
+            SemanticRetrieval.removeMemories(context, removedItems)
             
-            if (memoryStore.items.size > messageLimit) {
-                // Sort by timestamp (newest first) and keep only the newest ones
-                val sortedItems = memoryStore.items.sortedByDescending { it.timestamp }
-                val itemsToKeep = sortedItems.take(messageLimit)
-                val removedCount = memoryStore.items.size - itemsToKeep.size
-                
-                // Clear the list and add back only the newest items
-                memoryStore.items.clear()
-                memoryStore.items.addAll(itemsToKeep)
-                memoryStore.lastUpdated = System.currentTimeMillis()
-                
-                // Save the updated store
-                saveMemoryStore(memoryFile, memoryStore)
-                
-                Log.d(TAG, "Cleared $removedCount old conversation memories, kept ${itemsToKeep.size}")
+            if (removedCount > 0) {
+                Log.d(TAG, "Cleared $removedCount old conversation memories, kept up to $messageLimit")
             } else {
-                Log.d(TAG, "No old memories to clear. Current count: ${memoryStore.items.size}, limit: $messageLimit")
+                Log.d(TAG, "No old memories to clear. Limit: $messageLimit")
             }
         }
         .subscribeOn(Schedulers.io())
@@ -724,7 +446,9 @@ Be generous in extracting information - when in doubt, include it if it might be
     )
     
     /**
-     * Processes existing messages from all conversations to build memory store
+     * Processes existing messages from all conversations to build memory store.
+     * Messages are paged from the database newest first and extracted in batches, and progress is checkpointed so
+     * an interrupted run continues where it left off.
      */
     @JvmStatic
     fun processExistingMessages(context: Context): io.reactivex.rxjava3.core.Single<ProcessingResult> {
@@ -732,159 +456,31 @@ Be generous in extracting information - when in doubt, include it if it might be
             try {
                 val startTime = System.currentTimeMillis()
                 val messageLimit = getMessageLimit(context)
-                var totalProcessed = 0
-                var totalExtracted = 0
-                var consecutiveFailures: Int // Track consecutive failures per batch
+                val databaseManager = DatabaseManager.getInstance()
                 
                 Log.d(TAG, "Starting to process existing messages with global limit: $messageLimit")
                 
-                // Get all conversations from the database
-                val conversations = me.tagavari.airmessage.data.DatabaseManager.getInstance()
-                    .fetchSummaryConversations(context, false)
-                
-                Log.d(TAG, "Found ${conversations.size} conversations to process")
-                
-                // Collect ALL messages from ALL conversations first, then apply global limit
-                val allMessages = mutableListOf<Pair<MessageInfo, ConversationInfo>>()
-                
-                for (conversation in conversations) {
-                    try {
-                        // Get conversation items (which includes messages)
-                        val conversationItems = me.tagavari.airmessage.data.DatabaseManager.getInstance()
-                            .loadConversationItems(context, conversation.localID)
-                        
-                        // Filter to get only MessageInfo items
-                        val messages = conversationItems
-                            .filterIsInstance<MessageInfo>()
-                            .filter { !it.messageText.isNullOrBlank() && it.messageText!!.length >= 10 }
-                        
-                        // Add to global list with conversation info
-                        messages.forEach { message ->
-                            allMessages.add(Pair(message, conversation))
-                        }
-                        
-                    } catch (e: Exception) {
-                        Log.w(TAG, "Failed to load messages from conversation ${conversation.title}", e)
-                    }
-                }
-                
-                // Sort all messages by date and take the most recent ones up to the limit
-                // Then reverse so we process newest messages first
-                val messagesToProcess = allMessages
-                    .sortedBy { it.first.date }
-                    .takeLast(messageLimit)
-                    .reversed() // Process newest messages first
-                
-                Log.d(TAG, "Processing ${messagesToProcess.size} messages total (from ${allMessages.size} available messages)")
-                if (messagesToProcess.isNotEmpty()) {
-                    val firstDate = java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(java.util.Date(messagesToProcess.first().first.date))
-                    val lastDate = java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(java.util.Date(messagesToProcess.last().first.date))
-                    Log.d(TAG, "Processing messages from $firstDate (newest) to $lastDate (oldest)")
-                }
-                
-                val processedConversations = mutableSetOf<String>()
-                
-                // Process messages in batches to improve success rate and performance
-                val batchSize = if (messageLimit > 500) 50 else 25 // Larger batches for big jobs
-                val batches = messagesToProcess.chunked(batchSize)
-                
-                Log.d(TAG, "Processing in ${batches.size} batches of up to $batchSize messages each")
-                
-                for ((batchIndex, batch) in batches.withIndex()) {
-                    Log.d(TAG, "Processing batch ${batchIndex + 1}/${batches.size} (${batch.size} messages)")
-                    
-                    // Reset consecutive failures for each batch to avoid early termination
-                    consecutiveFailures = 0
-                    var batchSuccesses = 0
-                    
-                    for ((messageIndex, messageWithConversation) in batch.withIndex()) {
-                        val (message, conversation) = messageWithConversation
-                        processedConversations.add(conversation.guid ?: conversation.localID.toString())
-                        
-                        // Stop current batch if too many consecutive failures, but continue to next batch
-                        if (consecutiveFailures >= 8) { // Slightly more permissive within batch
-                            Log.w(TAG, "Too many consecutive failures in batch ${batchIndex + 1}, moving to next batch")
-                            break
-                        }
-                        
-                        try {
-                            // Conservative rate limiting within batch to avoid 429 errors
-                            if (messageIndex > 0) {
-                                Thread.sleep(500) // Slower but more reliable
-                            }
-                            
-                            val globalIndex = batchIndex * batchSize + messageIndex + 1
-                            Log.d(TAG, "Processing message $globalIndex/${messagesToProcess.size} from ${conversation.title}")
-                            
-                            val messageText = message.messageText!!
-                            val extractedInfo = extractInformationFromMessage(context, messageText, conversation)
-                            if (extractedInfo != null) {
-                                consecutiveFailures = 0 // Reset failure counter on success
-                                batchSuccesses++
-                                
-                                // Add to memory synchronously since we're already on IO thread
-                                val memoryFile = getMemoryFile(context)
-                                val memoryStore = loadMemoryStore(context)
-                                
-                                // Check for duplicates based on original message content and conversation
-                                val isDuplicate = memoryStore.items.any { item ->
-                                    item.conversationGuid == extractedInfo.conversationGuid && 
-                                    item.originalMessage == extractedInfo.originalMessage
-                                }
-                                
-                                if (!isDuplicate) {
-                                    // Add the new item
-                                    memoryStore.items.add(extractedInfo)
-                                    totalExtracted++
-                                    
-                                    // Enforce global message limit by removing oldest items
-                                    val globalLimit = getMessageLimit(context)
-                                    while (memoryStore.items.size > globalLimit) {
-                                        memoryStore.items.removeAt(0) // Remove oldest
-                                    }
-                                    
-                                    // Update timestamp
-                                    memoryStore.lastUpdated = System.currentTimeMillis()
-                                    
-                                    // Save to file
-                                    saveMemoryStore(memoryFile, memoryStore)
-                                } else {
-                                    Log.d(TAG, "Skipping duplicate memory item in bulk processing")
-                                }
-                                
-                                Log.v(TAG, "Extracted memory: ${extractedInfo.extractedInfo}")
-                            } else {
-                                consecutiveFailures++
-                                Log.d(TAG, "No memory extracted from message $globalIndex: '${messageText.take(50)}...' (consecutive failures: $consecutiveFailures)")
-                            }
-                            totalProcessed++
-                            
-                        } catch (e: Exception) {
-                            Log.w(TAG, "Failed to process message ${batchIndex * batchSize + messageIndex + 1}", e)
-                            consecutiveFailures++
-                            totalProcessed++ // Still count as processed even if failed
-                        }
-                    }
-                    
-                    Log.d(TAG, "Batch ${batchIndex + 1} completed: ${batchSuccesses}/${batch.size} successful extractions")
-                    
-                    // Longer pause between batches to respect Gemini rate limits
-                    if (batchIndex < batches.size - 1) {
-                        Log.d(TAG, "Pausing 5 seconds between batches to respect API rate limits")
-                        Thread.sleep(5000) // 5 second pause between batches
-                    }
-                }
+                // Conversations are looked up once, however many of their messages are processed
+                val conversationLookup = newConversationLookup(context)
                 
-                val endTime = System.currentTimeMillis()
-                val processingTimeMs = endTime - startTime
+                val backfill = MemoryBackfill(
+                    pager = { after, limit -> databaseManager.fetchMemoryBackfillPage(after, limit) },
+                    checkpointStore = BackfillCheckpointStore(context),
+                    extractor = { prompt -> callSelectedAI(context, prompt) },
+                    sink = { extractions -> saveExtractions(context, extractions, conversationLookup) }
+                )
+                val result = backfill.run(messageLimit)
                 
-                val extractionRate = if (totalProcessed > 0) (totalExtracted * 100f / totalProcessed) else 0f
-                Log.d(TAG, "Finished processing existing messages. Processed: $totalProcessed, Extracted: $totalExtracted (${String.format("%.1f", extractionRate)}%), Time: ${processingTimeMs}ms")
+                val processingTimeMs = System.currentTimeMillis() - startTime
+                val extractionRate = if (result.processedCount > 0) (result.extractedCount * 100f / result.processedCount) else 0f
+                Log.d(TAG, "Finished processing existing messages. Processed: ${result.processedCount} in ${result.requestCount} requests, " +
+                        "Extracted: ${result.extractedCount} (${String.format("%.1f", extractionRate)}%), Time: ${processingTimeMs}ms" +
+                        if (result.isComplete) "" else " - stopped early, will resume from checkpoint")
                 
                 ProcessingResult(
-                    conversationsProcessed = processedConversations.size,
-                    messagesProcessed = totalProcessed,
-                    memoriesExtracted = totalExtracted,
+                    conversationsProcessed = result.conversationCount,
+                    messagesProcessed = result.processedCount,
+                    memoriesExtracted = result.extractedCount,
                     processingTimeMs = processingTimeMs
                 )
                 
@@ -897,37 +493,183 @@ Be generous in extracting information - when in doubt, include it if it might be
     }
     
     /**
-     * Gets the memory file
+     * Creates a lookup of conversations by ID that reads each conversation from the database once
      */
-    private fun getMemoryFile(context: Context): File {
-        return File(context.filesDir, MEMORY_FILE_NAME)
+    private fun newConversationLookup(context: Context): (Long) -> ConversationInfo? {
+        val databaseManager = DatabaseManager.getInstance()
+        val conversationCache = HashMap<Long, ConversationInfo?>()
+        return { conversationID -> conversationCache.getOrPut(conversationID) { databaseManager.fetchConversationInfo(context, conversationID) } }
     }
     
     /**
-     * Loads the memory store from file
+     * Saves memories extracted from messages
+     * @param conversationLookup Gets the conversation of a message by its ID, or NULL if it no longer exists
+     * @return The number of new memories saved
      */
-    private fun loadMemoryStore(context: Context): ConversationMemoryStore {
-        val memoryFile = getMemoryFile(context)
-        return try {
-            if (memoryFile.exists()) {
-                val json = memoryFile.readText()
-                parseMemoryStoreFromJson(json)
+    private fun saveExtractions(context: Context, extractions: List<Pair<MemoryBackfill.BackfillMessage, MemoryBackfill.Extraction>>, conversationLookup: (Long) -> ConversationInfo?): Int {
+        val memoryItems = extractions.mapNotNull { (message, extraction) ->
+            val conversation = conversationLookup(message.conversationID) ?: return@mapNotNull null
+            
+            MemoryItem(
+                id = "${conversation.guid ?: "unknown"}_${message.text.hashCode()}",
+                conversationGuid = conversation.guid ?: "",
+                conversationTitle = conversation.title,
+                extractedInfo = extraction.info,
+                originalMessage = message.text,
+                senderName = null,
+                timestamp = System.currentTimeMillis(),
+                category = extraction.category,
+                confidence = extraction.confidence
+            )
+        }
+        return addMemoryItems(context, memoryItems)
+    }
+    
+    /**
+     * Adds memory items to the memory store in a single transaction, skipping duplicates
+     * @return The number of items added
+     */
+    private fun addMemoryItems(context: Context, memoryItems: List<MemoryItem>): Int {
+        if (memoryItems.isEmpty()) return 0
+        
+        val index = getMemoryIndex(context)
+        val (addedCount, removedItems) = synchronized(index) {
+            // Skip memories that are already stored without going to the database
+            val newItems = memoryItems
+                .filter { !index.contains(it.conversationGuid, it.originalMessage) }
+                .distinctBy { it.conversationGuid to it.originalMessage }
+            if (newItems.isEmpty()) return 0
+            
+            val messageLimit = getMessageLimit(context)
+            val databaseManager = getMemoryDatabase(context)
+            val addedCount = runWrite { databaseManager.addMemoryItems(newItems, messageLimit) }
+            newItems.forEach { index.add(it) }
+            addedCount to index.trimTo(messageLimit)
+        }
+        
+        // Removing the embeddings of trimmed memories outside of the index lock, which retrievals take after the embedding lock
+        SemanticRetrieval.removeMemories(context, removedItems)
+        
+        return addedCount
+    }
+    
+    /**
+     * Gets the search index of stored memories, loading it from the database the first time it is used
+     */
+    private fun getMemoryIndex(context: Context): MemoryIndex {
+        memoryIndex?.let { return it }
+        
+        return synchronized(this) {
+            memoryIndex ?: MemoryIndex().also { index ->
+                // Memories are fetched newest first, and indexed oldest first to match the order they were added in
+                getMemoryDatabase(context).fetchMemoryItems().asReversed().forEach { index.add(it) }
+                memoryIndex = index
+            }
+        }
+    }
+    
+    /**
+     * Gets the queue of new messages waiting for extraction, creating it the first time it is used
+     */
+    private fun getExtractionQueue(context: Context): MemoryExtractionQueue {
+        extractionQueue?.let { return it }
+        
+        return synchronized(this) {
+            extractionQueue ?: run {
+                val applicationContext = context.applicationContext
+                MemoryExtractionQueue(
+                    extractor = { prompt -> callSelectedAI(applicationContext, prompt) },
+                    // Conversations are read when each batch is saved, so their current title is used
+                    sink = { extractions -> saveExtractions(applicationContext, extractions, newConversationLookup(applicationContext)) }
+                ).also { extractionQueue = it }
+            }
+        }
+    }
+    
+    /**
+     * Stores the progress of [processExistingMessages] in preferences
+     */
+    private class BackfillCheckpointStore(context: Context) : MemoryBackfill.CheckpointStore {
+        private val preferences = PreferenceManager.getDefaultSharedPreferences(context)
+        
+        override fun load(): MemoryBackfill.Checkpoint? {
+            if (!preferences.contains(PREF_BACKFILL_DATE)) return null
+            return MemoryBackfill.Checkpoint(
+                preferences.getLong(PREF_BACKFILL_DATE, 0),
+                preferences.getLong(PREF_BACKFILL_MESSAGE_ID, 0),
+                preferences.getInt(PREF_BACKFILL_PROCESSED_COUNT, 0)
+            )
+        }
+        
+        override fun save(checkpoint: MemoryBackfill.Checkpoint?) {
+            val editor = preferences.edit()
+            if (checkpoint == null) {
+                editor.remove(PREF_BACKFILL_DATE)
+                    .remove(PREF_BACKFILL_MESSAGE_ID)
+                    .remove(PREF_BACKFILL_PROCESSED_COUNT)
             } else {
-                ConversationMemoryStore()
+                editor.putLong(PREF_BACKFILL_DATE, checkpoint.date)
+                    .putLong(PREF_BACKFILL_MESSAGE_ID, checkpoint.messageID)
+                    .putInt(PREF_BACKFILL_PROCESSED_COUNT, checkpoint.processedCount)
+            }
+            editor.apply()
+        }
+    }
+    
+    /**
+     * Gets the database that stores memories, first moving any memories saved by older versions of the app into it
+     */
+    private fun getMemoryDatabase(context: Context): DatabaseManager {
+        val databaseManager = DatabaseManager.getInstance()
+        if (!isLegacyFileMigrated) {
+            synchronized(this) {
+                if (!isLegacyFileMigrated) {
+                    migrateLegacyMemoryFile(context, databaseManager)
+                    isLegacyFileMigrated = true
+                }
             }
+        }
+        return databaseManager
+    }
+    
+    /**
+     * Imports memories from the JSON file used by older versions of the app, and deletes the file once they are saved.
+     * A file that can't be read is moved aside instead, so its memories aren't lost and it isn't read again.
+     */
+    private fun migrateLegacyMemoryFile(context: Context, databaseManager: DatabaseManager) {
+        val memoryFile = File(context.filesDir, MEMORY_FILE_NAME)
+        if (!memoryFile.exists()) return
+        
+        val memoryItems = try {
+            parseLegacyMemoryFile(memoryFile.readText())
         } catch (e: Exception) {
-            Log.w(TAG, "Failed to load memory store, creating new one", e)
-            ConversationMemoryStore()
+            Log.w(TAG, "Failed to read legacy memory file, moving it to $CORRUPT_MEMORY_FILE_NAME", e)
+            memoryFile.renameTo(File(context.filesDir, CORRUPT_MEMORY_FILE_NAME))
+            return
         }
+        
+        val messageLimit = getMessageLimit(context)
+        val addedCount = runWrite { databaseManager.addMemoryItems(memoryItems, messageLimit) }
+        memoryFile.delete()
+        Log.i(TAG, "Migrated $addedCount of ${memoryItems.size} memories from $MEMORY_FILE_NAME")
     }
     
     /**
-     * Parses ConversationMemoryStore from JSON string
+     * Runs a database write on the database's writer thread, and waits for it to finish. This must not be called from
+     * the writer thread itself, or while holding a lock that work on the writer thread needs.
      */
-    private fun parseMemoryStoreFromJson(json: String): ConversationMemoryStore {
+    private fun <T : Any> runWrite(write: () -> T): T {
+        return Single.fromCallable { write() }
+            .subscribeOn(DatabaseSchedulers.write)
+            .blockingGet()
+    }
+    
+    /**
+     * Parses memory items from the JSON file used by older versions of the app, oldest first
+     */
+    private fun parseLegacyMemoryFile(json: String): List<MemoryItem> {
         val jsonObject = JSONObject(json)
         val itemsArray = jsonObject.optJSONArray("items") ?: JSONArray()
-        val lastUpdated = jsonObject.optLong("lastUpdated", System.currentTimeMillis())
         
         val items = mutableListOf<MemoryItem>()
         for (i in 0 until itemsArray.length()) {
@@ -946,44 +688,6 @@ Be generous in extracting information - when in doubt, include it if it might be
             items.add(memoryItem)
         }
         
-        return ConversationMemoryStore(items, lastUpdated)
-    }
-    
-    /**
-     * Saves the memory store to file
-     */
-    private fun saveMemoryStore(memoryFile: File, memoryStore: ConversationMemoryStore) {
-        try {
-            val json = convertMemoryStoreToJson(memoryStore)
-            memoryFile.writeText(json)
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to save memory store", e)
-        }
-    }
-    
-    /**
-     * Converts ConversationMemoryStore to JSON string
-     */
-    private fun convertMemoryStoreToJson(memoryStore: ConversationMemoryStore): String {
-        val jsonObject = JSONObject()
-        jsonObject.put("lastUpdated", memoryStore.lastUpdated)
-        
-        val itemsArray = JSONArray()
-        for (item in memoryStore.items) {
-            val itemJson = JSONObject()
-            itemJson.put("id", item.id)
-            itemJson.put("conversationGuid", item.conversationGuid)
-            itemJson.put("conversationTitle", item.conversationTitle)
-            itemJson.put("extractedInfo", item.extractedInfo)
-            itemJson.put("originalMessage", item.originalMessage)
-            itemJson.put("senderName", item.senderName)
-            itemJson.put("timestamp", item.timestamp)
-            itemJson.put("category", item.category)
-            itemJson.put("confidence", item.confidence)
-            itemsArray.put(itemJson)
-        }
-        jsonObject.put("items", itemsArray)
-        
-        return jsonObject.toString()
+        return items
     }
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+package me.tagavari.airmessage.helper
+
+import java.io.*
+import java.util.function.LongPredicate
+import kotlin.math.abs
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+/**
+ * A vector index of text embeddings, searched by cosine similarity
+ *
+ * Vectors are normalized and quantized to one signed byte per dimension with a scale per vector, and are kept in flat
+ * primitive arrays that are scanned in full for each query. Changes are appended to a log file as they are made, which
+ * is compacted once it holds more removed entries than live ones.
+ *
+ * This class is not thread-safe.
+ *
+ * @param file The file to persist the index to, or NULL to only keep it in memory
+ */
+class EmbeddingIndex(private val file: File?) {
+    /**
+     * The number of dimensions of the indexed vectors, or 0 if no vectors have been added
+     */
+    var dimensions = 0
+        private set
+
+    /**
+     * The number of indexed vectors
+     */
+    var size = 0
+        private set
+
+    private var ids = LongArray(initialCapacity)
+    private var scales = FloatArray(initialCapacity)
+    private var vectors = ByteArray(0)
+    private val slotMap = HashMap<Long, Int>()
+
+    private var logRecordCount = 0
+    private var logStream: DataOutputStream? = null
+
+    /**
+     * A search result
+     * @param id The ID of the matching vector
+     * @param similarity The cosine similarity of the vector to the query, from -1 to 1
+     */
+    data class Match(val id: Long, val similarity: Float)
+
+    /**
+     * Loads the index from its file, replacing any vectors in memory. A file that can't be read is discarded.
+     */
+    fun load() {
+        clearMemory()
+        val file = file ?: return
+        if (!file.exists()) return
+
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { stream ->
+                if (stream.readInt() != fileSignature) throw IOException("Invalid embedding index file")
+                dimensions = stream.readInt()
+
+                val vector = ByteArray(dimensions)
+                while (true) {
+                    val operation = try {
+                        stream.readByte()
+                    } catch (e: EOFException) {
+                        break
+                    }
+                    val id = stream.readLong()
+                    if (operation == operationAdd) {
+                        val scale = stream.readFloat()
+                        stream.readFully(vector)
+                        putQuantized(id, scale, vector)
+                    } else {
+                        removeSlot(id)
+                    }
+                    logRecordCount++
+                }
+            }
+        } catch (e: IOException) {
+            // Keep whatever was read before the log was cut off, and rewrite the file without the damaged record
+            if (size == 0) clear() else compact()
+        }
+    }
+
+    /**
+     * Closes the index's file. The index will reopen it if it is changed again.
+     */
+    fun close() {
+        logStream?.close()
+        logStream = null
+    }
+
+    /**
+     * Gets whether a vector is indexed
+     */
+    fun contains(id: Long): Boolean = slotMap.containsKey(id)
+
+    /**
+     * Adds a vector to the index, replacing any vector with the same ID.
+     * If the vector's dimensions don't match the indexed vectors, for example because the embedding model changed, the
+     * index is cleared first.
+     */
+    fun add(id: Long, vector: FloatArray) {
+        if (vector.isEmpty()) return
+        if (dimensions != vector.size) {
+            clear()
+            dimensions = vector.size
+        }
+
+        val quantized = ByteArray(dimensions)
+        val scale = quantize(vector, quantized)
+        putQuantized(id, scale, quantized)
+
+        appendRecord { stream ->
+            stream.writeByte(operationAdd.toInt())
+            stream.writeLong(id)
+            stream.writeFloat(scale)
+            stream.write(quantized)
+        }
+    }
+
+    /**
+     * Removes a vector from the index
+     * @return Whether the vector was indexed
+     */
+    fun remove(id: Long): Boolean {
+        if (!removeSlot(id)) return false
+
+        appendRecord { stream ->
+            stream.writeByte(operationRemove.toInt())
+            stream.writeLong(id)
+        }
+        return true
+    }
+
+    /**
+     * Removes all vectors from the index and its file
+     */
+    fun clear() {
+        close()
+        clearMemory()
+        file?.delete()
+    }
+
+    /**
+     * Finds the vectors most similar to a query
+     * @param query The query vector, which doesn't need to be normalized
+     * @param limit The maximum number of results to return
+     * @param filter Selects which vector IDs to include, or NULL to include all vectors
+     * @return A list of matches, most similar first
+     */
+    fun search(query: FloatArray, limit: Int, filter: LongPredicate? = null): List<Match> {
+        if (query.size != dimensions || size == 0 || limit <= 0) return emptyList()
+
+        // Normalizing the query, so that scores are cosine similarities
+        val norm = sqrt(query.fold(0.0) { sum, value -> sum + value * value }).toFloat()
+        if (norm == 0F) return emptyList()
+        val normalizedQuery = FloatArray(dimensions) { query[it] / norm }
+
+        // Keeping the best matches in descending order
+        val topSlots = IntArray(limit)
+        val topScores = FloatArray(limit)
+        var topCount = 0
+
+        for (slot in 0 until size) {
+            if (filter != null && !filter.test(ids[slot])) continue
+
+            var dot = 0F
+            val offset = slot * dimensions
+            for (i in 0 until dimensions) {
+                dot += vectors[offset + i] * normalizedQuery[i]
+            }
+            val score = dot * scales[slot]
+
+            if (topCount == limit && score <= topScores[limit - 1]) continue
+
+            var position = if (topCount < limit) topCount++ else limit - 1
+            while (position > 0 && topScores[position - 1] < score) {
+                topScores[position] = topScores[position - 1]
+                topSlots[position] = topSlots[position - 1]
+                position--
+            }
+            topScores[position] = score
+            topSlots[position] = slot
+        }
+
+        return List(topCount) { Match(ids[topSlots[it]], topScores[it]) }
+    }
+
+    private fun putQuantized(id: Long, scale: Float, quantized: ByteArray) {
+        val slot = slotMap[id] ?: run {
+            ensureCapacity(size + 1)
+            slotMap[id] = size
+            size++
+            size - 1
+        }
+
+        ids[slot] = id
+        scales[slot] = scale
+        System.arraycopy(quantized, 0, vectors, slot * dimensions, dimensions)
+    }
+
+    /**
+     * Removes a vector from memory by moving the last vector into its slot
+     */
+    private fun removeSlot(id: Long): Boolean {
+        val slot = slotMap.remove(id) ?: return false
+        val lastSlot = size - 1
+        if (slot != lastSlot) {
+            ids[slot] = ids[lastSlot]
+            scales[slot] = scales[lastSlot]
+            System.arraycopy(vectors, lastSlot * dimensions, vectors, slot * dimensions, dimensions)
+            slotMap[ids[slot]] = slot
+        }
+        size--
+        return true
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity <= ids.size && capacity * dimensions <= vectors.size) return
+
+        val newCapacity = maxOf(capacity, ids.size * 2)
+        ids = ids.copyOf(newCapacity)
+        scales = scales.copyOf(newCapacity)
+        vectors = vectors.copyOf(newCapacity * dimensions)
+    }
+
+    private fun clearMemory() {
+        slotMap.clear()
+        size = 0
+        dimensions = 0
+        ids = LongArray(initialCapacity)
+        scales = FloatArray(initialCapacity)
+        vectors = ByteArray(0)
+        logRecordCount = 0
+    }
+
+    private inline fun appendRecord(write: (DataOutputStream) -> Unit) {
+        val file = file ?: return
+
+        try {
+            val stream = logStream ?: run {
+                val isNewFile = !file.exists() || file.length() == 0L
+                file.parentFile?.mkdirs()
+                DataOutputStream(BufferedOutputStream(FileOutputStream(file, true))).also { stream ->
+                    if (isNewFile) {
+                        stream.writeInt(fileSignature)
+                        stream.writeInt(dimensions)
+                    }
+                    logStream = stream
+                }
+            }
+            write(stream)
+            stream.flush()
+            logRecordCount++
+        } catch (e: IOException) {
+            close()
+            return
+        }
+
+        // Rewriting the file once most of its records are obsolete
+        if (logRecordCount > size * 2 + minCompactionRecords) compact()
+    }
+
+    /**
+     * Rewrites the index's file with only its current vectors
+     */
+    private fun compact() {
+        val file = file ?: return
+        close()
+
+        val temporaryFile = File(file.path + ".tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temporaryFile))).use { stream ->
+                stream.writeInt(fileSignature)
+                stream.writeInt(dimensions)
+                for (slot in 0 until size) {
+                    stream.writeByte(operationAdd.toInt())
+                    stream.writeLong(ids[slot])
+                    stream.writeFloat(scales[slot])
+                    stream.write(vectors, slot * dimensions, dimensions)
+                }
+            }
+            if (!temporaryFile.renameTo(file)) throw IOException("Failed to replace embedding index file")
+            logRecordCount = size
+        } catch (e: IOException) {
+            temporaryFile.delete()
+        }
+    }
+
+    companion object {
+        private const val fileSignature = 0x454D4231 // "EMB1"
+        private const val operationAdd: Byte = 1
+        private const val operationRemove: Byte = 0
+
+        private const val initialCapacity = 16
+
+        // The number of obsolete records the log file can build up before it is compacted
+        private const val minCompactionRecords = 256
+
+        /**
+         * Normalizes a vector and quantizes it to signed bytes
+         * @param vector The vector to quantize
+         * @param output The array to write the quantized vector to
+         * @return The scale to multiply the quantized values by to get the normalized vector
+         */
+        @JvmStatic
+        fun quantize(vector: FloatArray, output: ByteArray): Float {
+            val norm = sqrt(vector.fold(0.0) { sum, value -> sum + value * value }).toFloat()
+            val maxValue = vector.maxOf { abs(it) } / norm
+            if (norm == 0F || maxValue == 0F) {
+                output.fill(0)
+                return 0F
+            }
+
+            val scale = maxValue / 127F
+            for (i in vector.indices) {
+                output[i] = (vector[i] / norm / scale).roundToInt().coerceIn(-127, 127).toByte()
+            }
+            return scale
+        }
+
+        /**
+         * Gets a stable 64-bit ID for a piece of text, using FNV-1a
+         */
+        @JvmStatic
+        fun hashID(text: String): Long {
+            var hash = -0x340d631b7bdddcdbL
+            for (char in text) {
+                hash = (hash xor char.code.toLong()) * 0x100000001b3L
+            }
+            return hash
+        }
+    }
+}
@@ -8,6 +8,7 @@ import kotlinx.coroutines.rx3.rxSingle
 import me.tagavari.airmessage.messaging.MessageInfo
 import me.tagavari.airmessage.messaging.ConversationInfo
 import me.tagavari.airmessage.activity.Preferences
+import me.tagavari.airmessage.data.AIResponseCache
 import okhttp3.*
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.RequestBody.Companion.toRequestBody
@@ -31,6 +32,8 @@ abstract class GeminiHelper protected constructor() {
     companion object {
         private const val MAX_CONVERSATION_CONTEXT = 10
         private const val MAX_SMART_REPLY_CONTEXT = 5  // Reduced context for smart replies
+        private const val MAX_RELATED_MESSAGES = 3  // Earlier messages found by meaning, added to smart reply context
+        private const val MAX_RELATED_MESSAGE_CANDIDATES = 200
         private const val MAX_SMART_REPLIES = 3
         
         @Volatile
@@ -67,31 +70,15 @@ abstract class GeminiHelper protected constructor() {
     }
     
     private val ollamaClient: OkHttpClient by lazy {
-        OkHttpClient.Builder()
-            .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-            .readTimeout(60, java.util.concurrent.TimeUnit.SECONDS)
-            .writeTimeout(60, java.util.concurrent.TimeUnit.SECONDS)
-            .build()
+        AITransport.newClient(30, 60)
     }
     
     private fun isOllamaAvailable(context: Context): Boolean {
-        return try {
-            val baseUrl = Preferences.getOllamaBaseUrl(context)
-            if (baseUrl.isEmpty()) return false
-            
-            // Check if Ollama server is accessible by making a quick ping
-            val request = Request.Builder()
-                .url("$baseUrl/api/tags")
-                .get()
-                .build()
-            
-            ollamaClient.newCall(request).execute().use { response ->
-                response.isSuccessful
-            }
-        } catch (e: Exception) {
-            // If Ollama is not available, fall back to checking Google authentication for Gemini
-            isUserAuthenticated()
-        }
+        val baseUrl = Preferences.getOllamaBaseUrl(context)
+        if (baseUrl.isEmpty()) return false
+        
+        // Use the shared health state, falling back to checking Google authentication for Gemini if Ollama is unavailable
+        return ProviderHealthTracker.ollama.isAvailable(baseUrl) || isUserAuthenticated()
     }
     
     /**
@@ -114,13 +101,7 @@ abstract class GeminiHelper protected constructor() {
                         throw IllegalStateException("Ollama hostname not configured. Please set server details in settings.")
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         throw IllegalStateException("Ollama server not available at $baseUrl")
@@ -135,7 +116,7 @@ abstract class GeminiHelper protected constructor() {
                 else -> throw IllegalStateException("Unknown AI provider: $aiProvider")
             }
             
-            val conversationContext = buildSmartReplyContext(conversationMessages, conversationInfo)
+            val conversationContext = buildSmartReplyContext(context, conversationMessages, conversationInfo)
             
             // Disable contextual memories for smart replies to avoid overly strong context influence
             // Smart replies should focus on the current conversation only
@@ -143,28 +124,46 @@ abstract class GeminiHelper protected constructor() {
             
             val prompt = buildSmartReplyPrompt(conversationContext, conversationInfo.isGroupChat, contextualMemories)
             
-            val response = callAIAPI(context, prompt)
+            val response = callAIAPICached(context, prompt, "smart_reply", conversationInfo.localID)
             parseSmartReplies(response)
         }.subscribeOn(Schedulers.io())
     }
     
     /**
-     * Make API call to the selected AI provider
+     * Make API call to the selected AI provider, ahead of any background AI work
      */
-    private fun callAIAPI(context: Context, prompt: String): String {
+    private fun callAIAPI(context: Context, prompt: String, canceller: RequestCanceller? = null): String {
         val aiProvider = Preferences.getPreferenceAIProvider(context)
+        val scheduler = AIRequestScheduler.shared
         
         return when (aiProvider) {
-            "ollama" -> callOllamaAPI(context, prompt)
-            "gemini" -> callGeminiAPI(context, prompt)
+            "ollama" -> scheduler.execute(AITransport.providerOllama, AIRequestScheduler.Priority.FOREGROUND) { callOllamaAPI(context, prompt, canceller) }
+            "gemini" -> scheduler.execute(AITransport.providerGemini, AIRequestScheduler.Priority.FOREGROUND) { callGeminiAPI(context, prompt, canceller) }
             else -> throw IllegalStateException("Unknown AI provider: $aiProvider")
         }
     }
     
+    /**
+     * Make API call to the selected AI provider, reusing the response to an identical earlier request if it is cached
+     * @param feature The name of the feature making the request
+     * @param conversationID The ID of the conversation the request is for, or -1 if it isn't tied to a conversation
+     * @param canceller Cancels the underlying HTTP call if the request is no longer needed
+     */
+    private fun callAIAPICached(context: Context, prompt: String, feature: String, conversationID: Long = -1, canceller: RequestCanceller? = null): String {
+        val aiProvider = Preferences.getPreferenceAIProvider(context)
+        val model = when (aiProvider) {
+            "ollama" -> "ollama:" + Preferences.getPreferenceOllamaModel(context).ifEmpty { "llama3.2" }
+            "gemini" -> "gemini:gemini-1.5-flash"
+            else -> aiProvider
+        }
+        
+        return AIResponseCache.getInstance(context).getOrCompute(feature, model, conversationID, prompt) { callAIAPI(context, prompt, canceller) }
+    }
+    
     /**
      * Make API call to Ollama server
      */
-    private fun callOllamaAPI(context: Context, prompt: String): String {
+    private fun callOllamaAPI(context: Context, prompt: String, canceller: RequestCanceller? = null): String {
         val baseUrl = Preferences.getOllamaBaseUrl(context)
         val model = Preferences.getPreferenceOllamaModel(context)
         
@@ -191,21 +190,30 @@ abstract class GeminiHelper protected constructor() {
             .post(requestBody)
             .build()
             
-        ollamaClient.newCall(request).execute().use { response ->
-            if (!response.isSuccessful) {
-                throw IOException("Ollama API call failed: ${response.code}")
+        val call = ollamaClient.newCall(request)
+        canceller?.attach(call)
+        try {
+            call.execute().use { response ->
+                if (!response.isSuccessful) {
+                    throw IOException("Ollama API call failed: ${response.code}")
+                }
+                
+                val responseBody = response.body?.string() ?: ""
+                val responseJson = JSONObject(responseBody)
+                ProviderHealthTracker.ollama.recordSuccess(baseUrl)
+                return responseJson.optString("response", "")
             }
-            
-            val responseBody = response.body?.string() ?: ""
-            val responseJson = JSONObject(responseBody)
-            return responseJson.optString("response", "")
+        } catch (e: IOException) {
+            // Count the failure towards the server's circuit breaker, so later calls fail fast
+            if (!call.isCanceled()) ProviderHealthTracker.ollama.recordFailure(baseUrl)
+            throw e
         }
     }
     
     /**
      * Make API call to Google Gemini API using REST API
      */
-    private fun callGeminiAPI(context: Context, prompt: String): String {
+    private fun callGeminiAPI(context: Context, prompt: String, canceller: RequestCanceller? = null): String {
         val apiKey = getGeminiApiKey(context)
         if (apiKey.isEmpty()) {
             throw IllegalStateException("Gemini API key not configured. Please set your API key in Settings > AI Provider")
@@ -234,8 +242,10 @@ abstract class GeminiHelper protected constructor() {
             .url("https://generativelanguage.googleapis.com/v1beta/models/gemini-1.5-flash:generateContent?key=$apiKey")
             .post(requestBody)
             .build()
-            
-        ollamaClient.newCall(request).execute().use { response ->
+        
+        val call = ollamaClient.newCall(request)
+        canceller?.attach(call)
+        call.execute().use { response ->
             if (!response.isSuccessful) {
                 throw IOException("Gemini API call failed: ${response.code} ${response.message}")
             }
@@ -285,13 +295,7 @@ abstract class GeminiHelper protected constructor() {
                         throw IllegalStateException("Ollama hostname not configured. Please set server details in settings.")
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         throw IllegalStateException("Ollama server not available at $baseUrl")
@@ -353,13 +357,7 @@ abstract class GeminiHelper protected constructor() {
                         throw IllegalStateException("Ollama hostname not configured. Please set server details in settings.")
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         throw IllegalStateException("Ollama server not available at $baseUrl")
@@ -418,13 +416,7 @@ abstract class GeminiHelper protected constructor() {
                         throw IllegalStateException("Ollama hostname not configured. Please set server details in settings.")
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         throw IllegalStateException("Ollama server not available at $baseUrl")
@@ -440,7 +432,7 @@ abstract class GeminiHelper protected constructor() {
             }
             
             val prompt = buildGrammarCheckPrompt(originalMessage)
-            val response = callAIAPI(context, prompt)
+            val response = callAIAPICached(context, prompt, "grammar_check")
             
             val cleanedResponse = cleanEnhancedMessageResponse(response)
             cleanedResponse.takeIf { it.isNotEmpty() } ?: originalMessage
@@ -466,13 +458,7 @@ abstract class GeminiHelper protected constructor() {
                         throw IllegalStateException("Ollama hostname not configured. Please set server details in settings.")
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         throw IllegalStateException("Ollama server not available at $baseUrl")
@@ -490,15 +476,18 @@ abstract class GeminiHelper protected constructor() {
             val conversationContext = buildConversationContext(messages, conversationInfo)
             val prompt = buildSummarizationPrompt(conversationContext, conversationInfo.isGroupChat)
             
-            val response = callAIAPI(context, prompt)
+            val response = callAIAPICached(context, prompt, "summary", conversationInfo.localID)
             response.trim().takeIf { it.isNotEmpty() } ?: "Unable to generate summary"
         }.subscribeOn(Schedulers.io())
     }
     
     /**
      * Analyze message content for potential issues (spam, inappropriate content, etc.)
+     * Disposing the returned single cancels the request to the AI provider, if it has already been sent.
      */
     fun analyzeMessageContent(context: Context, message: String): Single<ContentAnalysis> {
+        val canceller = RequestCanceller()
+        
         return rxSingle {
             val aiProvider = Preferences.getPreferenceAIProvider(context)
             
@@ -525,13 +514,7 @@ abstract class GeminiHelper protected constructor() {
                         )
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         return@rxSingle ContentAnalysis(
@@ -559,10 +542,11 @@ abstract class GeminiHelper protected constructor() {
             }
             
             val prompt = buildContentAnalysisPrompt(message)
-            val response = callAIAPI(context, prompt)
+            val response = callAIAPICached(context, prompt, "content_analysis", canceller = canceller)
             
             parseContentAnalysis(response)
-        }.subscribeOn(Schedulers.io())
+        }.doOnDispose(canceller::cancel)
+            .subscribeOn(Schedulers.io())
     }
     
     /**
@@ -584,13 +568,7 @@ abstract class GeminiHelper protected constructor() {
                         return@rxSingle emptyList<ActionItem>()
                     }
                     
-                    val ollamaAvailable = try {
-                        val request = Request.Builder()
-                            .url("$baseUrl/api/tags")
-                            .get()
-                            .build()
-                        ollamaClient.newCall(request).execute().use { it.isSuccessful }
-                    } catch (e: Exception) { false }
+                    val ollamaAvailable = ProviderHealthTracker.ollama.isAvailable(baseUrl)
                     
                     if (!ollamaAvailable) {
                         return@rxSingle emptyList<ActionItem>()
@@ -608,7 +586,7 @@ abstract class GeminiHelper protected constructor() {
             val conversationContext = buildConversationContext(messages, conversationInfo)
             val prompt = buildActionItemsPrompt(conversationContext)
             
-            val response = callAIAPI(context, prompt)
+            val response = callAIAPICached(context, prompt, "action_items", conversationInfo.localID)
             parseActionItems(response)
         }.subscribeOn(Schedulers.io())
     }
@@ -643,26 +621,43 @@ abstract class GeminiHelper protected constructor() {
      * to avoid overly strong context influence
      */
     private fun buildSmartReplyContext(
+        context: Context,
         messages: List<MessageInfo>,
         conversationInfo: ConversationInfo
     ): String {
         val recentMessages = messages.takeLast(MAX_SMART_REPLY_CONTEXT)
-        val context = StringBuilder()
+        val contextBuilder = StringBuilder()
         
-        context.append("Current conversation (respond to the most recent message):\n")
-        context.append("Type: ${if (conversationInfo.isGroupChat) "Group Chat" else "Direct Message"}\n")
+        contextBuilder.append("Current conversation (respond to the most recent message):\n")
+        contextBuilder.append("Type: ${if (conversationInfo.isGroupChat) "Group Chat" else "Direct Message"}\n")
         conversationInfo.title?.let { 
-            context.append("Title: $it\n")
+            contextBuilder.append("Title: $it\n")
         }
-        context.append("\nRecent Messages:\n")
+        
+        // Include earlier messages related in meaning to the most recent one, if embeddings are available
+        val latestText = recentMessages.lastOrNull()?.messageText
+        val olderMessages = messages.dropLast(MAX_SMART_REPLY_CONTEXT).takeLast(MAX_RELATED_MESSAGE_CANDIDATES)
+        val relatedMessages = if (latestText.isNullOrBlank() || olderMessages.isEmpty()) {
+            emptyList()
+        } else {
+            SemanticRetrieval.findMessages(context, latestText, olderMessages, MAX_RELATED_MESSAGES).orEmpty()
+        }
+        if (relatedMessages.isNotEmpty()) {
+            contextBuilder.append("\nEarlier Related Messages:\n")
+            relatedMessages.sortedBy { it.date }.forEach { message ->
+                contextBuilder.append("${message.sender ?: "Unknown"}: ${message.messageText}\n")
+            }
+        }
+        
+        contextBuilder.append("\nRecent Messages:\n")
         
         recentMessages.forEach { message ->
             val sender = message.sender ?: "Unknown"
             val text = message.messageText ?: ""
-            context.append("$sender: $text\n")
+            contextBuilder.append("$sender: $text\n")
         }
         
-        return context.toString()
+        return contextBuilder.toString()
     }
     
     private fun buildSmartReplyPrompt(context: String, isGroupChat: Boolean, contextualMemories: List<ConversationMemoryManager.MemoryItem> = emptyList()): String {
@@ -0,0 +1,103 @@
+package me.tagavari.airmessage.helper
+
+import me.tagavari.airmessage.data.DatabaseManager.GhostMergeResult
+import java.text.Normalizer
+
+/**
+ * Computes the lookup keys used to match messages sent back by the server to local ghost messages
+ */
+object GhostMatchHelper {
+	//64-bit FNV-1a parameters
+	private const val hashOffsetBasis = -0x340d631b7bdddcdbL //0xcbf29ce484222325
+	private const val hashPrime = 0x100000001b3L
+
+	/**
+	 * Normalizes message text so that formatting differences introduced in transit don't prevent a match
+	 */
+	@JvmStatic
+	fun normalizeText(text: String): String {
+		return Normalizer.normalize(text, Normalizer.Form.NFC)
+			.replace("\r\n", "\n")
+			.trim()
+	}
+
+	/**
+	 * Computes the lookup hash of a message's text
+	 */
+	@JvmStatic
+	fun hashText(text: String): Long = hashBytes(normalizeText(text).toByteArray(Charsets.UTF_8))
+
+	/**
+	 * Computes the lookup hash of an attachment's checksum
+	 */
+	@JvmStatic
+	fun hashChecksum(checksum: ByteArray): Long = hashBytes(checksum)
+
+	private fun hashBytes(bytes: ByteArray): Long {
+		var hash = hashOffsetBasis
+		for(byte in bytes) {
+			hash = hash xor (byte.toLong() and 0xFF)
+			hash *= hashPrime
+		}
+		return hash
+	}
+
+	/**
+	 * Finds the most recent ghost attachment with a matching checksum
+	 */
+	fun interface AttachmentLookup {
+		/**
+		 * @param checksum The checksum to match
+		 * @param excludedMessageIDs Messages that have already been matched, and should be skipped
+		 * @return A pair of the matched attachment ID and its message ID, or NULL if there is no match
+		 */
+		fun find(checksum: ByteArray, excludedMessageIDs: Collection<Long>): Pair<Long, Long>?
+	}
+
+	/**
+	 * Plans how to merge a completed outgoing attachment message into ghost messages.
+	 *
+	 * AirMessage must send multiple attachment files as separate messages, though the Apple Messages app will sometimes merge these outgoing messages into one.
+	 * To account for this, the first message with a matching attachment checksum becomes the target message,
+	 * and any other messages matched by the remaining attachments are discarded and have their attachments transferred to the target.
+	 * @param attachments A list of pairs of attachment checksums and attachments
+	 * @param lookup The lookup to find matching ghost attachments with
+	 * @return The merge result, or NULL if no attachments could be matched
+	 */
+	@JvmStatic
+	fun <A> planAttachmentMerge(attachments: List<Pair<ByteArray?, A>>, lookup: AttachmentLookup): GhostMergeResult<A>? {
+		var targetMessageID = -1L
+		val matchedMessageIDs = mutableListOf<Long>() //Includes the target message
+		val discardedMessageIDs = mutableListOf<Long>()
+		var persistingAttachment: Pair<Long, A>? = null
+		val transferAttachments = mutableListOf<Pair<Long, A>>()
+		val newAttachments = mutableListOf<A>()
+
+		for((checksum, attachment) in attachments) {
+			//Attachments without a checksum can't be matched
+			if(checksum == null) {
+				newAttachments.add(attachment)
+				continue
+			}
+
+			val match = lookup.find(checksum, matchedMessageIDs)
+			if(match == null) {
+				newAttachments.add(attachment)
+				continue
+			}
+
+			val (attachmentID, messageID) = match
+			matchedMessageIDs.add(messageID)
+			if(targetMessageID == -1L) {
+				targetMessageID = messageID
+				persistingAttachment = Pair(attachmentID, attachment)
+			} else {
+				discardedMessageIDs.add(messageID)
+				transferAttachments.add(Pair(attachmentID, attachment))
+			}
+		}
+
+		return if(targetMessageID == -1L) null
+		else GhostMergeResult(targetMessageID, discardedMessageIDs, persistingAttachment, transferAttachments, newAttachments)
+	}
+}
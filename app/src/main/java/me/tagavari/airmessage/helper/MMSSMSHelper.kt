@@ -21,6 +21,7 @@ import me.tagavari.airmessage.activity.Messaging
 import me.tagavari.airmessage.activity.Preferences
 import me.tagavari.airmessage.constants.SMSReceiverConstants
 import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.enums.*
 import me.tagavari.airmessage.helper.AddressHelper.normalizeAddress
 import me.tagavari.airmessage.helper.AttachmentStorageHelper.deleteContentFile
@@ -51,7 +52,14 @@ object MMSSMSHelper {
 	val smsColumnProjection = arrayOf(Telephony.Sms._ID, Telephony.Sms.TYPE, Telephony.Sms.ADDRESS, Telephony.Sms.BODY, Telephony.Sms.DATE, Telephony.Sms.ERROR_CODE, Telephony.Sms.STATUS)
 	@JvmField
 	val mmsColumnProjection = arrayOf(Telephony.Mms._ID, Telephony.Mms.DATE, Telephony.Mms.MESSAGE_BOX, Telephony.Mms.SUBJECT)
-	val mmsPartColumnProjection = arrayOf(Telephony.Mms.Part._ID, Telephony.Mms.Part.CONTENT_TYPE, Telephony.Mms.Part.NAME, Telephony.Mms.Part._DATA, Telephony.Mms.Part.TEXT)
+	val mmsPartColumnProjection = arrayOf(Telephony.Mms.Part._ID, Telephony.Mms.Part.MSG_ID, Telephony.Mms.Part.CONTENT_TYPE, Telephony.Mms.Part.NAME, Telephony.Mms.Part._DATA, Telephony.Mms.Part.TEXT)
+	
+	//The maximum amount of IDs to include in a single IN (...) query
+	private const val bulkQueryChunkSize = 500
+	
+	//The GUID prefixes of messages imported from the system message database, followed by their system message ID
+	const val guidPrefixSMS = "sms:"
+	const val guidPrefixMMS = "mms:"
 	
 	/**
 	 * Get the maximum size for an attachment to be sent over MMS
@@ -170,7 +178,7 @@ object MMSSMSHelper {
 	fun updateTextConversationMessage(context: Context, participants: List<String>, newMessage: MessageInfo): Single<Pair<ConversationInfo, MessageInfo>> {
 		return Single.fromCallable {
 			getOrCreateTextConversation(context, participants) ?: throw RuntimeException("Failed to create conversation")
-		}.subscribeOn(Schedulers.single()).flatMap { (conversation, isNew) ->
+		}.subscribeOn(DatabaseSchedulers.write).flatMap { (conversation, isNew) ->
 			updateTextConversationMessage(context, conversation, isNew, newMessage).map { message ->
 				Pair(conversation, message)
 			}
@@ -188,7 +196,7 @@ object MMSSMSHelper {
 	fun updateTextConversationMessage(context: Context, threadID: Long, newMessage: MessageInfo): Single<Pair<ConversationInfo, MessageInfo>> {
 		return Single.fromCallable {
 			getOrCreateTextConversation(context, threadID) ?: throw RuntimeException("Failed to create conversation")
-		}.subscribeOn(Schedulers.single()).flatMap { (conversation, isNew) ->
+		}.subscribeOn(DatabaseSchedulers.write).flatMap { (conversation, isNew) ->
 			updateTextConversationMessage(context, conversation, isNew, newMessage).map { message ->
 				Pair(conversation, message)
 			}
@@ -213,7 +221,7 @@ object MMSSMSHelper {
 			val localMessage = newMessage.clone()
 			localMessage.localID = messageID
 			localMessage
-		}.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()).flatMap { messageInfo ->
+		}.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread()).flatMap { messageInfo ->
 			// Process message for 2FA codes (non-blocking)
 			if (!messageInfo.isOutgoing) {
 				TwoFACodeManager.processMessage(context, messageInfo)
@@ -236,7 +244,7 @@ object MMSSMSHelper {
 			//Updating the conversation values in response to the added message
 			val foregroundConversations = Messaging.getForegroundConversations()
 			return@flatMap Single.fromCallable { updateConversationValues(foregroundConversations, conversationInfo, if(messageInfo.isOutgoing) 0 else 1) }
-					.subscribeOn(Schedulers.single())
+					.subscribeOn(DatabaseSchedulers.write)
 					.observeOn(AndroidSchedulers.mainThread())
 					.doOnSuccess { it.emitUpdate(conversationInfo) }
 					.ignoreElement().andThen(Single.just(messageInfo))
@@ -247,10 +255,12 @@ object MMSSMSHelper {
 	 * Saves an MMS message to disk using its cursor, and returns a complete [MessageInfo]
 	 * @param context The context to use
 	 * @param cursorMMS The cursor to retrieve the data from
+	 * @param partList The message's parts, if they have already been loaded with [readMMSParts]
 	 * @return The complete message information
 	 */
 	@JvmStatic
-	fun readMMSMessage(context: Context, cursorMMS: Cursor): MessageInfo? {
+	@JvmOverloads
+	fun readMMSMessage(context: Context, cursorMMS: Cursor, partList: List<MMSPartInfo>? = null): MessageInfo? {
 		//Getting the message type
 		val messageBox = cursorMMS.getInt(cursorMMS.getColumnIndexOrThrow(Telephony.Mms.MESSAGE_BOX))
 		
@@ -280,62 +290,59 @@ object MMSSMSHelper {
 		//long threadID = cursorMMS.getLong(cursorMMS.getColumnIndexOrThrow(Telephony.Mms.THREAD_ID));
 		val messageTextSB = StringBuilder()
 		val messageAttachments = ArrayList<AttachmentInfo>()
-		context.contentResolver.query(Uri.parse("content://mms/part"), mmsPartColumnProjection, Telephony.Mms.Part.MSG_ID + " = ?", arrayOf(java.lang.Long.toString(messageID)), null).use { cursorMMSData ->
-			if(cursorMMSData == null || !cursorMMSData.moveToFirst()) return null
-			do {
-				//Reading the part data
-				val partID = cursorMMSData.getLong(cursorMMSData.getColumnIndex(Telephony.Mms.Part._ID))
-				val contentType = cursorMMSData.getString(cursorMMSData.getColumnIndex(Telephony.Mms.Part.CONTENT_TYPE))
-				var fileName = cursorMMSData.getString(cursorMMSData.getColumnIndex(Telephony.Mms.Part.NAME))
-				fileName = if(fileName == null) "unnamed_attachment" else cleanFileName(fileName)
-				
-				//Checking if the part is text
-				if("text/plain" == contentType) {
-					//Reading the text
-					val data = cursorMMSData.getString(cursorMMSData.getColumnIndex(Telephony.Mms.Part._DATA))
-					val body: String? = if(data != null) {
-						try {
-							getMMSTextContent(context, partID)
-						} catch(exception: IOException) {
-							exception.printStackTrace()
-							null
-						}
-					} else {
-						cursorMMSData.getString(cursorMMSData.getColumnIndex(Telephony.Mms.Part.TEXT))
-					}
-					
-					//Appending the text
-					if(body != null) messageTextSB.append(body)
-				} else if("application/smil" != contentType) {
-					//Finding a target file
-					val targetFile = prepareContentFile(context, AttachmentStorageHelper.dirNameAttachment, fileName)
-					
-					//Writing to the file
-					var totalSize: Long
+		val parts = partList ?: readMMSParts(context, listOf(messageID))[messageID]
+		if(parts.isNullOrEmpty()) return null
+		for(part in parts) {
+			//Reading the part data
+			val partID = part.partID
+			val contentType = part.contentType
+			val fileName = if(part.name == null) "unnamed_attachment" else cleanFileName(part.name)
+			
+			//Checking if the part is text
+			if("text/plain" == contentType) {
+				//Reading the text
+				val body: String? = if(part.hasData) {
 					try {
-						context.contentResolver.openInputStream(ContentUris.withAppendedId(Uri.parse("content://mms/part/"), partID)).use { inputStream ->
-							FileOutputStream(targetFile).use { outputStream ->
-								if(inputStream == null) throw IOException("Input stream is null")
-								totalSize = copyStream(inputStream, outputStream)
-							}
-						}
+						getMMSTextContent(context, partID)
 					} catch(exception: IOException) {
 						exception.printStackTrace()
-						deleteContentFile(AttachmentStorageHelper.dirNameAttachment, targetFile)
-						continue
+						null
 					}
-					
-					//Adding the attachment to the list
-					messageAttachments.add(AttachmentInfo(-1, null, cleanFileName(fileName), contentType, totalSize, -1, targetFile, shouldAutoDownload = false))
+				} else {
+					part.text
+				}
+				
+				//Appending the text
+				if(body != null) messageTextSB.append(body)
+			} else if("application/smil" != contentType) {
+				//Finding a target file
+				val targetFile = prepareContentFile(context, AttachmentStorageHelper.dirNameAttachment, fileName)
+				
+				//Writing to the file
+				var totalSize: Long
+				try {
+					context.contentResolver.openInputStream(ContentUris.withAppendedId(Uri.parse("content://mms/part/"), partID)).use { inputStream ->
+						FileOutputStream(targetFile).use { outputStream ->
+							if(inputStream == null) throw IOException("Input stream is null")
+							totalSize = copyStream(inputStream, outputStream)
+						}
+					}
+				} catch(exception: IOException) {
+					exception.printStackTrace()
+					deleteContentFile(AttachmentStorageHelper.dirNameAttachment, targetFile)
+					continue
 				}
-			} while(cursorMMSData.moveToNext())
+				
+				//Adding the attachment to the list
+				messageAttachments.add(AttachmentInfo(-1, null, cleanFileName(fileName), contentType, totalSize, -1, targetFile, shouldAutoDownload = false))
+			}
 		}
 		
 		//Getting the message text
 		val messageText = if(messageTextSB.isNotEmpty()) messageTextSB.toString() else null
 		
 		//Returning the message
-		return MessageInfo(-1, -1, null, date, sender, messageText, messageSubject, messageAttachments, null, false, -1, messageState, messageErrorCode, false, null)
+		return MessageInfo(-1, -1, guidPrefixMMS + messageID, date, sender, messageText, messageSubject, messageAttachments, null, false, -1, messageState, messageErrorCode, false, null)
 	}
 	
 	/**
@@ -371,6 +378,7 @@ object MMSSMSHelper {
 			}
 		}
 		val sender = if(isOutgoing) null else normalizeAddress(cursorSMS.getString(cursorSMS.getColumnIndexOrThrow(Telephony.Sms.ADDRESS)))
+		val messageID = cursorSMS.getLong(cursorSMS.getColumnIndexOrThrow(Telephony.Sms._ID))
 		val message = cursorSMS.getString(cursorSMS.getColumnIndexOrThrow(Telephony.Sms.BODY))
 		val date = cursorSMS.getLong(cursorSMS.getColumnIndexOrThrow(Telephony.Sms.DATE))
 		val errorCode = cursorSMS.getInt(cursorSMS.getColumnIndexOrThrow(Telephony.Sms.ERROR_CODE))
@@ -382,7 +390,7 @@ object MMSSMSHelper {
 		}
 		
 		//Creating the message
-		val messageInfo = MessageInfo(-1, -1, null, date, sender, message, null, mutableListOf(), null, false, -1, messageState, messageErrorCode, false, null)
+		val messageInfo = MessageInfo(-1, -1, guidPrefixSMS + messageID, date, sender, message, null, mutableListOf(), null, false, -1, messageState, messageErrorCode, false, null)
 		if(messageErrorCode != MessageSendErrorCode.none) {
 			messageInfo.errorDetails = "SMS error code $errorCode"
 		}
@@ -431,36 +439,138 @@ object MMSSMSHelper {
 		}
 	}
 	
+	/**
+	 * Loads the parts of multiple MMS messages, using as few queries as possible
+	 * @param context The context to use
+	 * @param messageIDs The database IDs of the messages to load the parts of
+	 * @return A map of message IDs to their parts, in database order. Messages without any parts are not included.
+	 */
+	@JvmStatic
+	fun readMMSParts(context: Context, messageIDs: Collection<Long>): Map<Long, List<MMSPartInfo>> {
+		val partMap = HashMap<Long, MutableList<MMSPartInfo>>()
+		
+		for(chunk in messageIDs.chunked(bulkQueryChunkSize)) {
+			context.contentResolver.query(Uri.parse("content://mms/part"), mmsPartColumnProjection,
+					Telephony.Mms.Part.MSG_ID + " IN (" + chunk.joinToString(",") + ")", null,
+					Telephony.Mms.Part._ID).use { cursor ->
+				if(cursor == null) return@use
+				
+				val iID = cursor.getColumnIndexOrThrow(Telephony.Mms.Part._ID)
+				val iMessageID = cursor.getColumnIndexOrThrow(Telephony.Mms.Part.MSG_ID)
+				val iContentType = cursor.getColumnIndexOrThrow(Telephony.Mms.Part.CONTENT_TYPE)
+				val iName = cursor.getColumnIndexOrThrow(Telephony.Mms.Part.NAME)
+				val iData = cursor.getColumnIndexOrThrow(Telephony.Mms.Part._DATA)
+				val iText = cursor.getColumnIndexOrThrow(Telephony.Mms.Part.TEXT)
+				
+				while(cursor.moveToNext()) {
+					val part = MMSPartInfo(
+						cursor.getLong(iID),
+						cursor.getString(iContentType),
+						cursor.getString(iName),
+						cursor.getString(iData) != null,
+						cursor.getString(iText)
+					)
+					partMap.getOrPut(cursor.getLong(iMessageID)) { mutableListOf() }.add(part)
+				}
+			}
+		}
+		
+		return partMap
+	}
+	
+	/**
+	 * Loads the text of multiple MMS messages, without saving any of their attachments
+	 * @param context The context to use
+	 * @param messageIDs The database IDs of the messages to load the text of
+	 * @return A map of message IDs to their text. Messages without any text are not included.
+	 */
+	@JvmStatic
+	fun readMMSTexts(context: Context, messageIDs: Collection<Long>): Map<Long, String> {
+		val textMap = HashMap<Long, String>()
+		for((messageID, parts) in readMMSParts(context, messageIDs)) {
+			val messageTextSB = StringBuilder()
+			for(part in parts) {
+				if("text/plain" != part.contentType) continue
+				
+				val body: String? = if(part.hasData) {
+					try {
+						getMMSTextContent(context, part.partID)
+					} catch(exception: IOException) {
+						exception.printStackTrace()
+						null
+					}
+				} else {
+					part.text
+				}
+				if(body != null) messageTextSB.append(body)
+			}
+			
+			if(messageTextSB.isNotEmpty()) textMap[messageID] = messageTextSB.toString()
+		}
+		
+		return textMap
+	}
+	
+	/**
+	 * The details of a part of an MMS message, excluding its data
+	 * @param partID The database ID of the part
+	 * @param contentType The MIME type of the part
+	 * @param name The file name of the part
+	 * @param hasData Whether this part's content is stored in a file, rather than in [text]
+	 * @param text The inline text content of this part
+	 */
+	data class MMSPartInfo(val partID: Long, val contentType: String?, val name: String?, val hasData: Boolean, val text: String?)
+	
 	/**
 	 * Fetches an array of addresses from a recipient ID string
 	 * @param context The context to use
 	 * @param recipientIDs The Android recipient ID string
+	 * @param addressCache A map of recipient IDs to addresses that have already been resolved, to be read from and added to
 	 * @return An array of addresses from the string
 	 */
 	@JvmStatic
-	fun getAddressFromRecipientID(context: Context, recipientIDs: String): List<String> {
-		//Getting the target URI
-		val addressUri = Uri.parse("content://mms-sms/canonical-address")
+	@JvmOverloads
+	fun getAddressFromRecipientID(context: Context, recipientIDs: String, addressCache: MutableMap<Long, String?>? = null): List<String> {
+		//Parsing the recipient IDs
+		val recipientIDList = recipientIDs.split(" ".toRegex()).mapNotNull { it.toLongOrNull() }
 		
-		//Splitting the recipient IDs
-		val recipientIDList = recipientIDs.split(" ".toRegex())
+		//Resolving any recipient IDs that haven't been resolved yet
+		val resolvedMap = addressCache ?: HashMap()
+		loadCanonicalAddresses(context, recipientIDList.filter { !resolvedMap.containsKey(it) }, resolvedMap)
 		
-		return recipientIDList.mapNotNull { recipientID ->
-			//Querying for the recipient data
+		return recipientIDList.mapNotNull { resolvedMap[it] }
+	}
+	
+	/**
+	 * Loads the addresses of multiple recipient IDs, using as few queries as possible
+	 * @param context The context to use
+	 * @param recipientIDs The Android recipient IDs to resolve
+	 * @param addressMap The map to save recipient IDs and their addresses to, or NULL if the recipient couldn't be found
+	 */
+	@JvmStatic
+	fun loadCanonicalAddresses(context: Context, recipientIDs: Collection<Long>, addressMap: MutableMap<Long, String?>) {
+		for(chunk in recipientIDs.distinct().chunked(bulkQueryChunkSize)) {
 			try {
-				context.contentResolver.query(ContentUris.withAppendedId(addressUri, recipientID.toLong()), arrayOf(Telephony.CanonicalAddressesColumns.ADDRESS), null, null, null).use { cursor ->
-					//Ignoring invalid or empty results
-					if(cursor == null || !cursor.moveToNext()) {
-						return@mapNotNull null
-					}
+				context.contentResolver.query(Uri.parse("content://mms-sms/canonical-addresses"), arrayOf(Telephony.CanonicalAddressesColumns._ID, Telephony.CanonicalAddressesColumns.ADDRESS),
+						Telephony.CanonicalAddressesColumns._ID + " IN (" + chunk.joinToString(",") + ")", null, null).use { cursor ->
+					//Ignoring invalid results
+					if(cursor == null) return@use
 					
-					//Adding the address to the array
-					val address = cursor.getString(cursor.getColumnIndexOrThrow(Telephony.CanonicalAddressesColumns.ADDRESS))
-					return@mapNotNull normalizeAddress(address)
+					val iID = cursor.getColumnIndexOrThrow(Telephony.CanonicalAddressesColumns._ID)
+					val iAddress = cursor.getColumnIndexOrThrow(Telephony.CanonicalAddressesColumns.ADDRESS)
+					while(cursor.moveToNext()) {
+						val address = cursor.getString(iAddress)
+						addressMap[cursor.getLong(iID)] = if(address == null) null else normalizeAddress(address)
+					}
 				}
 			} catch(exception: RuntimeException) {
 				exception.printStackTrace()
-				return@mapNotNull null
+				continue
+			}
+			
+			//Recording recipients that couldn't be found, so they aren't queried again
+			for(recipientID in chunk) {
+				if(!addressMap.containsKey(recipientID)) addressMap[recipientID] = null
 			}
 		}
 	}
@@ -0,0 +1,235 @@
+package me.tagavari.airmessage.helper
+
+import io.reactivex.rxjava3.core.Flowable
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.schedulers.Schedulers
+import org.json.JSONArray
+import java.io.IOException
+
+/**
+ * Extracts conversation memories from existing message history
+ *
+ * Messages are read from newest to oldest one page at a time, so the history is never held in memory all at once.
+ * Each page is packed into as few extraction prompts as its token budget allows, and the prompts are sent with a bounded
+ * number of concurrent requests. Progress is checkpointed after every page, so an interrupted backfill resumes where it
+ * left off.
+ *
+ * @param pager Loads pages of messages
+ * @param checkpointStore Saves the backfill's progress
+ * @param extractor Sends an extraction prompt to the AI provider, and returns its response or NULL if the request failed
+ * @param sink Saves extracted memories, and returns the number of new memories saved
+ * @param pageSize The number of messages to load at a time
+ * @param tokenBudget The estimated number of tokens of message text to include in each prompt
+ * @param maxConcurrentRequests The maximum number of extraction prompts to send at once
+ */
+class MemoryBackfill @JvmOverloads constructor(
+    private val pager: MessagePager,
+    private val checkpointStore: CheckpointStore,
+    private val extractor: (String) -> String?,
+    private val sink: (List<Pair<BackfillMessage, Extraction>>) -> Int,
+    private val pageSize: Int = defaultPageSize,
+    private val tokenBudget: Int = defaultTokenBudget,
+    private val maxConcurrentRequests: Int = defaultMaxConcurrentRequests
+) {
+    /**
+     * A message to extract memories from
+     * @param messageID The ID of the message
+     * @param conversationID The ID of the message's conversation
+     * @param date The date the message was sent
+     * @param text The text of the message
+     */
+    data class BackfillMessage(val messageID: Long, val conversationID: Long, val date: Long, val text: String)
+
+    /**
+     * The progress of a backfill
+     * @param date The date of the last processed message
+     * @param messageID The ID of the last processed message
+     * @param processedCount The number of messages processed so far
+     */
+    data class Checkpoint(val date: Long, val messageID: Long, val processedCount: Int)
+
+    /**
+     * Information extracted from a message
+     */
+    data class Extraction(val info: String, val category: String, val confidence: Float)
+
+    /**
+     * The result of running a backfill
+     * @param isComplete Whether every message was processed, or FALSE if the backfill stopped early and can be resumed
+     * @param conversationCount The number of conversations whose messages were processed in this run
+     * @param processedCount The number of messages processed in this run
+     * @param extractedCount The number of new memories saved in this run
+     * @param requestCount The number of extraction prompts sent in this run
+     */
+    data class Result(val isComplete: Boolean, val conversationCount: Int, val processedCount: Int, val extractedCount: Int, val requestCount: Int)
+
+    fun interface MessagePager {
+        /**
+         * Loads the next messages to process, from newest to oldest
+         * @param after The checkpoint to continue after, or NULL to start from the newest message
+         * @param limit The maximum number of messages to load
+         */
+        fun loadPage(after: Checkpoint?, limit: Int): List<BackfillMessage>
+    }
+
+    interface CheckpointStore {
+        fun load(): Checkpoint?
+        fun save(checkpoint: Checkpoint?)
+    }
+
+    /**
+     * Processes messages until the message limit is reached or there are no more messages, continuing from the last checkpoint
+     * @param messageLimit The maximum number of messages to process in total, including those processed by earlier runs
+     */
+    fun run(messageLimit: Int): Result {
+        var checkpoint = checkpointStore.load()
+        var totalProcessed = checkpoint?.processedCount ?: 0
+        val conversationIDs = HashSet<Long>()
+        var processedCount = 0
+        var extractedCount = 0
+        var requestCount = 0
+
+        while (totalProcessed < messageLimit) {
+            val page = pager.loadPage(checkpoint, minOf(pageSize, messageLimit - totalProcessed))
+            if (page.isEmpty()) break
+
+            // Extract memories from the page's batches, and stop without moving the checkpoint if any of them fail
+            val batches = packBatches(page, tokenBudget)
+            val extractions = try {
+                Flowable.fromIterable(batches)
+                    .flatMapSingle({ batch ->
+                        Single.fromCallable { extractBatch(batch) }.subscribeOn(Schedulers.io())
+                    }, false, maxConcurrentRequests)
+                    .toList()
+                    .blockingGet()
+                    .flatten()
+            } catch (e: RuntimeException) {
+                return Result(false, conversationIDs.size, processedCount, extractedCount, requestCount + batches.size)
+            }
+            requestCount += batches.size
+            extractedCount += sink(extractions)
+
+            // Saving the progress
+            page.mapTo(conversationIDs) { it.conversationID }
+            processedCount += page.size
+            totalProcessed += page.size
+            checkpoint = Checkpoint(page.last().date, page.last().messageID, totalProcessed)
+            checkpointStore.save(checkpoint)
+        }
+
+        // Clearing the checkpoint, so the next backfill starts from the newest messages again
+        checkpointStore.save(null)
+        return Result(true, conversationIDs.size, processedCount, extractedCount, requestCount)
+    }
+
+    private fun extractBatch(batch: List<BackfillMessage>): List<Pair<BackfillMessage, Extraction>> {
+        val response = extractor(buildBatchPrompt(batch)) ?: throw IOException("Extraction request failed")
+        return parseBatchResponse(response, batch.size).map { (index, extraction) -> batch[index] to extraction }
+    }
+
+    companion object {
+        const val defaultPageSize = 200
+        const val defaultTokenBudget = 1500
+        const val defaultMaxConcurrentRequests = 2
+
+        // Messages shorter than this are skipped, as they rarely contain anything worth remembering
+        const val minMessageLength = 10
+
+        // The most messages to include in a single prompt, so the response stays within the provider's output limit
+        const val maxBatchMessages = 25
+
+        // The estimated tokens of a single message are capped, so a long message doesn't take up a whole prompt
+        const val maxMessageTokens = 300
+
+        private const val charsPerToken = 4
+
+        /**
+         * Estimates the number of tokens in a piece of text
+         */
+        @JvmStatic
+        fun estimateTokens(text: String): Int = (text.length + charsPerToken - 1) / charsPerToken
+
+        /**
+         * Splits messages into batches that fit within a prompt's token budget, keeping their order
+         */
+        @JvmStatic
+        fun packBatches(messages: List<BackfillMessage>, tokenBudget: Int): List<List<BackfillMessage>> {
+            val batches = mutableListOf<List<BackfillMessage>>()
+            var currentBatch = mutableListOf<BackfillMessage>()
+            var currentTokens = 0
+
+            for (message in messages) {
+                val tokens = minOf(estimateTokens(message.text), maxMessageTokens)
+                if (currentBatch.isNotEmpty() && (currentTokens + tokens > tokenBudget || currentBatch.size >= maxBatchMessages)) {
+                    batches.add(currentBatch)
+                    currentBatch = mutableListOf()
+                    currentTokens = 0
+                }
+                currentBatch.add(message)
+                currentTokens += tokens
+            }
+            if (currentBatch.isNotEmpty()) batches.add(currentBatch)
+
+            return batches
+        }
+
+        /**
+         * Builds a prompt that extracts information from several messages at once
+         */
+        @JvmStatic
+        fun buildBatchPrompt(messages: List<BackfillMessage>): String {
+            val messageList = messages.withIndex().joinToString("\n") { (index, message) ->
+                val text = message.text.take(maxMessageTokens * charsPerToken).replace('\n', ' ')
+                "[${index + 1}] $text"
+            }
+
+            return """
+Extract useful information from each of these messages that could help generate better smart replies in future conversations.
+Look for codes and credentials, events with times or dates, locations and addresses, plans and commitments, names, preferences, and important facts.
+Skip routine messages like greetings, simple confirmations and very short responses.
+
+Messages:
+$messageList
+
+Respond with a JSON array containing an entry only for each message that has useful information:
+[
+  {"index": message number, "info": "concise but complete extracted information", "category": "code|event|location|person|plan|interest|fact|general", "confidence": 0.0-1.0}
+]
+
+Respond with [] if none of the messages have useful information.
+            """.trimIndent()
+        }
+
+        /**
+         * Parses the response to a batch extraction prompt
+         * @param response The response from the AI provider
+         * @param batchSize The number of messages in the prompt
+         * @return A map of the index of each message in the batch to the information extracted from it
+         */
+        @JvmStatic
+        fun parseBatchResponse(response: String, batchSize: Int): Map<Int, Extraction> {
+            // Find the JSON array, ignoring any text or code block formatting around it
+            val start = response.indexOf('[')
+            val end = response.lastIndexOf(']')
+            if (start == -1 || end < start) return emptyMap()
+
+            val array = try {
+                JSONArray(response.substring(start, end + 1))
+            } catch (e: Exception) {
+                return emptyMap()
+            }
+
+            val extractions = HashMap<Int, Extraction>()
+            for (i in 0 until array.length()) {
+                val item = array.optJSONObject(i) ?: continue
+                val index = item.optInt("index", 0) - 1
+                val info = item.optString("info", "")
+                if (index !in 0 until batchSize || info.isBlank()) continue
+
+                extractions[index] = Extraction(info, item.optString("category", "general"), item.optDouble("confidence", 1.0).toFloat())
+            }
+
+            return extractions
+        }
+    }
+}
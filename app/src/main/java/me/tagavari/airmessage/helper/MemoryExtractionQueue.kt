@@ -0,0 +1,136 @@
+package me.tagavari.airmessage.helper
+
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Extracts conversation memories from new messages in the background
+ *
+ * Messages are offered to the queue as they arrive, which only records them, so it is safe to do from any thread. Shortly
+ * after the first message arrives, the queue is drained on a background scheduler: the waiting messages are grouped by
+ * conversation and packed into as few extraction prompts as their token budget allows, so a burst of messages during a
+ * sync costs a handful of requests rather than one per message.
+ *
+ * The queue holds at most [capacity] messages. When it is full, the oldest waiting messages are dropped to make room, as
+ * are the messages of prompts that fail. Dropped messages are still in the message history, where
+ * [ConversationMemoryManager.processExistingMessages] can pick them up later.
+ *
+ * @param extractor Sends an extraction prompt to the AI provider, and returns its response or NULL if the request failed
+ * @param sink Saves extracted memories, and returns the number of new memories saved
+ * @param scheduler The scheduler to drain the queue on
+ * @param capacity The maximum number of messages to hold
+ * @param batchDelayMillis How long to wait after the first message arrives before draining the queue, to collect a batch
+ * @param tokenBudget The estimated number of tokens of message text to include in each prompt
+ */
+class MemoryExtractionQueue @JvmOverloads constructor(
+    private val extractor: (String) -> String?,
+    private val sink: (List<Pair<MemoryBackfill.BackfillMessage, MemoryBackfill.Extraction>>) -> Int,
+    private val scheduler: Scheduler = Schedulers.io(),
+    private val capacity: Int = defaultCapacity,
+    private val batchDelayMillis: Long = defaultBatchDelayMillis,
+    private val tokenBudget: Int = MemoryBackfill.defaultTokenBudget
+) {
+    /**
+     * The totals of a queue since it was created
+     * @param queuedCount The number of messages accepted into the queue
+     * @param droppedCount The number of messages dropped because the queue was full or their prompt failed
+     * @param processedCount The number of messages whose prompt completed
+     * @param requestCount The number of extraction prompts sent
+     * @param extractedCount The number of new memories saved
+     */
+    data class Stats(val queuedCount: Int, val droppedCount: Int, val processedCount: Int, val requestCount: Int, val extractedCount: Int)
+
+    // Messages waiting to be drained, oldest first
+    private val pendingMessages = ArrayDeque<MemoryBackfill.BackfillMessage>()
+    private var isDrainScheduled = false
+
+    private var queuedCount = 0
+    private var droppedCount = 0
+    private var processedCount = 0
+    private var requestCount = 0
+    private var extractedCount = 0
+
+    /**
+     * Adds a message to the queue, dropping the oldest waiting message if the queue is full. Messages too short to hold
+     * useful information are ignored.
+     * @return Whether the message was accepted
+     */
+    @Synchronized
+    fun offer(message: MemoryBackfill.BackfillMessage): Boolean {
+        if (message.text.isBlank() || message.text.length < MemoryBackfill.minMessageLength) return false
+
+        if (pendingMessages.size >= capacity) {
+            pendingMessages.removeFirst()
+            droppedCount++
+        }
+        pendingMessages.addLast(message)
+        queuedCount++
+
+        if (!isDrainScheduled) {
+            isDrainScheduled = true
+            scheduler.scheduleDirect(::drain, batchDelayMillis, TimeUnit.MILLISECONDS)
+        }
+        return true
+    }
+
+    /**
+     * Removes all waiting messages
+     */
+    @Synchronized
+    fun clear() {
+        pendingMessages.clear()
+    }
+
+    /**
+     * Gets the totals of this queue
+     */
+    @Synchronized
+    fun getStats(): Stats = Stats(queuedCount, droppedCount, processedCount, requestCount, extractedCount)
+
+    /**
+     * Sends extraction prompts for all waiting messages, then schedules another drain if more messages arrived meanwhile
+     */
+    private fun drain() {
+        val messages = synchronized(this) {
+            pendingMessages.toList().also { pendingMessages.clear() }
+        }
+
+        for (conversationMessages in messages.groupBy { it.conversationID }.values) {
+            for (batch in MemoryBackfill.packBatches(conversationMessages, tokenBudget)) {
+                // Getting the number of memories saved from the batch, or NULL if the batch failed
+                val savedCount = try {
+                    val response = extractor(MemoryBackfill.buildBatchPrompt(batch)) ?: throw IOException("Extraction request failed")
+                    val extractions = MemoryBackfill.parseBatchResponse(response, batch.size).map { (index, extraction) -> batch[index] to extraction }
+                    if (extractions.isEmpty()) 0 else sink(extractions)
+                } catch (e: Exception) {
+                    null
+                }
+
+                synchronized(this) {
+                    requestCount++
+                    if (savedCount == null) {
+                        droppedCount += batch.size
+                    } else {
+                        processedCount += batch.size
+                        extractedCount += savedCount
+                    }
+                }
+            }
+        }
+
+        synchronized(this) {
+            if (pendingMessages.isEmpty()) {
+                isDrainScheduled = false
+            } else {
+                scheduler.scheduleDirect(::drain, batchDelayMillis, TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    companion object {
+        const val defaultCapacity = 500
+        const val defaultBatchDelayMillis = 2000L
+    }
+}
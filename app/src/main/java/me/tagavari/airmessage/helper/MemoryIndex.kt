@@ -0,0 +1,177 @@
+package me.tagavari.airmessage.helper
+
+import java.util.TreeSet
+import kotlin.math.ln
+
+/**
+ * An in-memory inverted index of conversation memories, ranked with BM25
+ *
+ * Memories are indexed by the terms of their extracted information, original message and category, and the index is
+ * updated incrementally as memories are added and removed. Memories are also keyed by their conversation and original
+ * message, so duplicates can be found with a hashed lookup, and by their ID in the [SemanticRetrieval] memory index.
+ *
+ * This class is not thread-safe.
+ */
+class MemoryIndex {
+    private class Document(val id: Int, val item: ConversationMemoryManager.MemoryItem, val termFrequencies: Map<String, Int>, val length: Int)
+
+    private val documents = HashMap<Int, Document>()
+    private val keyMap = HashMap<String, Document>()
+    private val embeddingIDMap = HashMap<Long, Document>()
+    private val postings = HashMap<String, HashMap<Int, Int>>()
+    private val ageOrder = TreeSet(compareBy<Document>({ it.item.timestamp }, { it.id }))
+    private var nextID = 0
+    private var totalLength = 0L
+
+    /**
+     * The number of indexed memories
+     */
+    val size: Int
+        get() = documents.size
+
+    /**
+     * Adds a memory to the index
+     * @return FALSE if a memory for the same message is already indexed
+     */
+    fun add(item: ConversationMemoryManager.MemoryItem): Boolean {
+        val key = getKey(item.conversationGuid, item.originalMessage)
+        if (keyMap.containsKey(key)) return false
+
+        val terms = tokenize("${item.extractedInfo} ${item.originalMessage} ${item.category}")
+        val termFrequencies = terms.groupingBy { it }.eachCount()
+        val document = Document(nextID++, item, termFrequencies, terms.size)
+
+        documents[document.id] = document
+        keyMap[key] = document
+        embeddingIDMap[SemanticRetrieval.getMemoryID(item)] = document
+        ageOrder.add(document)
+        totalLength += document.length
+        for ((term, frequency) in termFrequencies) {
+            postings.getOrPut(term) { HashMap() }[document.id] = frequency
+        }
+
+        return true
+    }
+
+    /**
+     * Gets whether a memory for a message is already indexed
+     */
+    fun contains(conversationGuid: String, originalMessage: String): Boolean = keyMap.containsKey(getKey(conversationGuid, originalMessage))
+
+    /**
+     * Gets a memory by its ID in the semantic memory index, see [SemanticRetrieval.getMemoryID]
+     */
+    fun getByEmbeddingID(id: Long): ConversationMemoryManager.MemoryItem? = embeddingIDMap[id]?.item
+
+    /**
+     * Removes the oldest memories until at most [limit] remain, matching the order the memory store removes them in
+     * @return The memories removed
+     */
+    fun trimTo(limit: Int): List<ConversationMemoryManager.MemoryItem> {
+        val removedItems = ArrayList<ConversationMemoryManager.MemoryItem>()
+        while (documents.size > limit) {
+            val document = ageOrder.first()
+            remove(document)
+            removedItems.add(document.item)
+        }
+        return removedItems
+    }
+
+    /**
+     * Removes all memories from the index
+     */
+    fun clear() {
+        documents.clear()
+        keyMap.clear()
+        embeddingIDMap.clear()
+        postings.clear()
+        ageOrder.clear()
+        totalLength = 0
+    }
+
+    /**
+     * Gets indexed memories from newest to oldest
+     * @param limit The maximum number of memories to return
+     * @param filter Selects which memories to include
+     */
+    fun getRecent(limit: Int, filter: (ConversationMemoryManager.MemoryItem) -> Boolean = { true }): List<ConversationMemoryManager.MemoryItem> {
+        return ageOrder.descendingIterator().asSequence()
+            .map { it.item }
+            .filter(filter)
+            .take(limit)
+            .toList()
+    }
+
+    /**
+     * Finds the memories most relevant to a query, ranked by BM25 with newer memories first among equal scores
+     * @param query The text to match memories against
+     * @param limit The maximum number of memories to return
+     * @param filter Selects which memories to include
+     * @return A list of matching memories, most relevant first
+     */
+    fun search(query: String, limit: Int, filter: (ConversationMemoryManager.MemoryItem) -> Boolean = { true }): List<ConversationMemoryManager.MemoryItem> {
+        if (documents.isEmpty()) return emptyList()
+
+        val averageLength = totalLength.toDouble() / documents.size
+        val scores = HashMap<Int, Double>()
+        for (term in tokenize(query).distinct()) {
+            val termPostings = postings[term] ?: continue
+            val idf = ln(1 + (documents.size - termPostings.size + 0.5) / (termPostings.size + 0.5))
+
+            for ((documentID, frequency) in termPostings) {
+                val length = documents.getValue(documentID).length
+                val termScore = idf * frequency * (k1 + 1) / (frequency + k1 * (1 - b + b * length / averageLength))
+                scores[documentID] = (scores[documentID] ?: 0.0) + termScore
+            }
+        }
+
+        return scores.entries
+            .asSequence()
+            .map { documents.getValue(it.key) to it.value }
+            .filter { filter(it.first.item) }
+            .sortedWith(compareByDescending<Pair<Document, Double>> { it.second }.thenByDescending { it.first.item.timestamp })
+            .take(limit)
+            .map { it.first.item }
+            .toList()
+    }
+
+    private fun remove(document: Document) {
+        documents.remove(document.id)
+        keyMap.remove(getKey(document.item.conversationGuid, document.item.originalMessage))
+        embeddingIDMap.remove(SemanticRetrieval.getMemoryID(document.item))
+        ageOrder.remove(document)
+        totalLength -= document.length
+        for (term in document.termFrequencies.keys) {
+            val termPostings = postings[term] ?: continue
+            termPostings.remove(document.id)
+            if (termPostings.isEmpty()) postings.remove(term)
+        }
+    }
+
+    companion object {
+        // BM25 term frequency saturation and length normalization
+        private const val k1 = 1.2
+        private const val b = 0.75
+
+        // Common words that don't help tell memories apart
+        private val stopWords = setOf(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it", "its", "me", "my",
+            "no", "not", "of", "on", "or", "so", "that", "the", "their", "then", "there", "these", "they", "this", "to",
+            "was", "we", "were", "will", "with", "you", "your", "i", "im", "just", "have", "has", "do", "does", "can"
+        )
+
+        private val tokenSeparator = Regex("[^\\p{L}\\p{N}]+")
+
+        /**
+         * Splits text into lowercase index terms, skipping stop words
+         */
+        @JvmStatic
+        fun tokenize(text: String): List<String> {
+            return text.lowercase()
+                .split(tokenSeparator)
+                .filter { it.isNotEmpty() && it !in stopWords }
+        }
+
+        private fun getKey(conversationGuid: String, originalMessage: String) = "$conversationGuid\u0000$originalMessage"
+    }
+}
@@ -0,0 +1,125 @@
+package me.tagavari.airmessage.helper
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Encodes old conversation items into compressed blocks, so that they can be moved out of the main database tables
+ *
+ * A block holds the raw rows of a group of items from several tables, so that the rows can be written back exactly as they were when the block is restored.
+ */
+object MessageArchiveHelper {
+	//The version of the block format
+	private const val blockVersion = 1
+
+	//Value type markers
+	private const val typeNull: Byte = 0
+	private const val typeLong: Byte = 1
+	private const val typeDouble: Byte = 2
+	private const val typeString: Byte = 3
+	private const val typeBlob: Byte = 4
+
+	//How long items are kept in the main tables before they can be archived
+	const val archiveAgeMillis = 365 * 24 * 60 * 60 * 1000L
+
+	//How many of a conversation's latest items are always kept in the main tables
+	const val minimumHotItems = 1000
+
+	//The maximum amount of items stored in a single block
+	const val blockItemCount = 250
+
+	/**
+	 * The rows of a database table
+	 * @param name The name of the table
+	 * @param columns The names of the table's columns
+	 * @param rows The rows of the table, with values ordered to match the columns. Values must be NULL, or a [Long], [Double], [String] or [ByteArray].
+	 */
+	class ArchiveTable(val name: String, val columns: List<String>, val rows: List<Array<Any?>>)
+
+	/**
+	 * Encodes and compresses a block of table rows
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun encodeBlock(tables: List<ArchiveTable>): ByteArray {
+		val byteStream = ByteArrayOutputStream()
+		DataOutputStream(byteStream).use { out ->
+			out.writeInt(blockVersion)
+			out.writeInt(tables.size)
+			for(table in tables) {
+				out.writeUTF(table.name)
+				out.writeInt(table.columns.size)
+				for(column in table.columns) out.writeUTF(column)
+
+				out.writeInt(table.rows.size)
+				for(row in table.rows) {
+					for(value in row) writeValue(out, value)
+				}
+			}
+		}
+
+		return StandardCompressionHelper.compressDeflate(byteStream.toByteArray())
+	}
+
+	/**
+	 * Decompresses and decodes a block of table rows
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun decodeBlock(data: ByteArray): List<ArchiveTable> {
+		DataInputStream(ByteArrayInputStream(StandardCompressionHelper.decompressDeflate(data))).use { input ->
+			val version = input.readInt()
+			if(version != blockVersion) throw IOException("Unsupported archive block version $version")
+
+			return List(input.readInt()) {
+				val name = input.readUTF()
+				val columns = List(input.readInt()) { input.readUTF() }
+				val rows = List(input.readInt()) {
+					Array(columns.size) { readValue(input) }
+				}
+				ArchiveTable(name, columns, rows)
+			}
+		}
+	}
+
+	private fun writeValue(out: DataOutputStream, value: Any?) {
+		when(value) {
+			null -> out.writeByte(typeNull.toInt())
+			is Long -> {
+				out.writeByte(typeLong.toInt())
+				out.writeLong(value)
+			}
+			is Double -> {
+				out.writeByte(typeDouble.toInt())
+				out.writeDouble(value)
+			}
+			is String -> {
+				//Message text may exceed the length limit of writeUTF
+				val bytes = value.toByteArray(Charsets.UTF_8)
+				out.writeByte(typeString.toInt())
+				out.writeInt(bytes.size)
+				out.write(bytes)
+			}
+			is ByteArray -> {
+				out.writeByte(typeBlob.toInt())
+				out.writeInt(value.size)
+				out.write(value)
+			}
+			else -> throw IllegalArgumentException("Unsupported value type ${value.javaClass.name}")
+		}
+	}
+
+	private fun readValue(input: DataInputStream): Any? {
+		return when(val type = input.readByte()) {
+			typeNull -> null
+			typeLong -> input.readLong()
+			typeDouble -> input.readDouble()
+			typeString -> ByteArray(input.readInt()).also { input.readFully(it) }.toString(Charsets.UTF_8)
+			typeBlob -> ByteArray(input.readInt()).also { input.readFully(it) }
+			else -> throw IOException("Unknown value type $type")
+		}
+	}
+}
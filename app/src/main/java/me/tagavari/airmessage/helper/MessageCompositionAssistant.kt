@@ -7,6 +7,7 @@ import android.widget.EditText
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.disposables.CompositeDisposable
+import io.reactivex.rxjava3.disposables.Disposable
 import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.messaging.ConversationInfo
 import me.tagavari.airmessage.messaging.MessageInfo
@@ -37,6 +38,14 @@ class MessageCompositionAssistant(
     var isContentAnalysisEnabled = true
     var enhancementTone = MessageTone.NEUTRAL
     
+    // The text whose analysis is waiting or in progress
+    private var pendingText: String? = null
+    private var analysisDisposable: Disposable? = null
+    
+    // The last text that was analyzed, and its analysis
+    private var lastAnalyzedText: String? = null
+    private var lastAnalysis: ContentAnalysis? = null
+    
     private val textWatcher = object : TextWatcher {
         override fun beforeTextChanged(s: CharSequence?, start: Int, count: Int, after: Int) {}
         override fun onTextChanged(s: CharSequence?, start: Int, before: Int, count: Int) {}
@@ -45,6 +54,8 @@ class MessageCompositionAssistant(
             val text = s?.toString() ?: ""
             if (text.isNotEmpty() && text.length > 10) { // Only analyze meaningful text
                 scheduleAnalysis(text)
+            } else {
+                cancelAnalysis()
             }
         }
     }
@@ -55,34 +66,66 @@ class MessageCompositionAssistant(
     
     fun detachFromMessageField() {
         messageField.removeTextChangedListener(textWatcher)
+        cancelAnalysis()
         compositeDisposable.clear()
     }
     
     /**
      * Schedule content analysis with debouncing to avoid too many API calls
+     * Any analysis for older text is cancelled, including its request to the AI provider.
      */
     private fun scheduleAnalysis(text: String) {
-        compositeDisposable.clear()
+        // Keep the pending analysis if it is already for this text
+        if (text == pendingText) return
         
-        val analysisDisposable = Single.timer(1, TimeUnit.SECONDS)
-            .flatMap { 
-                if (isContentAnalysisEnabled) {
-                    geminiHelper.analyzeMessageContent(context, text)
-                } else {
-                    Single.just(ContentAnalysis(false, false, false, RiskLevel.LOW, emptyList()))
-                }
+        cancelAnalysis()
+        pendingText = text
+        
+        // If the text was only appended to, only analyze what was added
+        val previousText = lastAnalyzedText
+        val previousAnalysis = lastAnalysis
+        val analysisSingle = if (!isContentAnalysisEnabled) {
+            Single.just(ContentAnalysis(false, false, false, RiskLevel.LOW, emptyList()))
+        } else if (previousText != null && previousAnalysis != null && text.startsWith(previousText)) {
+            val appendedInput = getAppendedInput(previousText, text)
+            if (appendedInput == null) {
+                Single.just(previousAnalysis)
+            } else {
+                geminiHelper.analyzeMessageContent(context, appendedInput)
+                    .map { mergeAnalyses(previousAnalysis, it) }
             }
+        } else {
+            geminiHelper.analyzeMessageContent(context, text)
+        }
+        
+        analysisDisposable = Single.timer(1, TimeUnit.SECONDS)
+            .flatMap { analysisSingle }
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe(
-                { analysis -> onContentAnalysis?.invoke(analysis) },
+                { analysis ->
+                    pendingText = null
+                    if (isContentAnalysisEnabled) {
+                        lastAnalyzedText = text
+                        lastAnalysis = analysis
+                    }
+                    onContentAnalysis?.invoke(analysis)
+                },
                 { error -> 
+                    pendingText = null
                     // Handle error silently in production
                     android.util.Log.w("MessageCompositionAssistant", "Content analysis failed", error)
                 }
             )
-        
-        compositeDisposable.add(analysisDisposable)
+    }
+    
+    /**
+     * Cancel any waiting or in-progress content analysis
+     */
+    private fun cancelAnalysis() {
+        analysisDisposable?.dispose()
+        analysisDisposable = null
+        pendingText = null
     }
     
     /**
@@ -202,8 +245,41 @@ class MessageCompositionAssistant(
     
     
     fun dispose() {
+        cancelAnalysis()
         compositeDisposable.dispose()
     }
+    
+    companion object {
+        /**
+         * Get the input to analyze for text that was appended to already analyzed text
+         * The sentence that the appended text continues is included, so the appended text is analyzed in context.
+         * @param previousText The text that was already analyzed
+         * @param text The new text, which starts with the previous text
+         * @return The input to analyze, or NULL if the appended text contains no words and the previous analysis can be reused
+         */
+        @JvmStatic
+        fun getAppendedInput(previousText: String, text: String): String? {
+            val appendedText = text.substring(previousText.length)
+            if (appendedText.none { it.isLetterOrDigit() }) return null
+            
+            val sentenceStart = previousText.indexOfLast { it == '.' || it == '!' || it == '?' || it == '\n' } + 1
+            return text.substring(sentenceStart).trim()
+        }
+        
+        /**
+         * Combine the analysis of previously analyzed text with the analysis of text appended to it
+         */
+        @JvmStatic
+        fun mergeAnalyses(previous: ContentAnalysis, appended: ContentAnalysis): ContentAnalysis {
+            return ContentAnalysis(
+                isSpam = previous.isSpam || appended.isSpam,
+                hasInappropriateContent = previous.hasInappropriateContent || appended.hasInappropriateContent,
+                containsSensitiveInfo = previous.containsSensitiveInfo || appended.containsSensitiveInfo,
+                riskLevel = maxOf(previous.riskLevel, appended.riskLevel),
+                warnings = (previous.warnings + appended.warnings).distinct()
+            )
+        }
+    }
 }
 
 /**
@@ -14,6 +14,7 @@ import me.tagavari.airmessage.connection.ConnectionManager
 import me.tagavari.airmessage.connection.exception.AMRequestException
 import me.tagavari.airmessage.constants.RegexConstants
 import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.enums.MessageSendErrorCode
 import me.tagavari.airmessage.enums.MessageState
 import me.tagavari.airmessage.enums.ServiceHandler
@@ -213,7 +214,7 @@ object MessageSendHelper {
 								return@flatMap Completable.fromAction {
 									val checksum = event.fileHash
 									DatabaseManager.getInstance().updateAttachmentChecksum(messageInfo.attachments[0].localID, checksum)
-								}.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()).andThen(Observable.empty<Unit>())
+								}.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread()).andThen(Observable.empty<Unit>())
 							} else {
 								return@flatMap Observable.empty<Unit>()
 							}
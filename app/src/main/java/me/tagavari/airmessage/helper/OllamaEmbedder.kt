@@ -0,0 +1,69 @@
+package me.tagavari.airmessage.helper
+
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+
+/**
+ * Computes text embeddings with an Ollama server's embedding endpoint
+ *
+ * @param client The client to make requests with
+ * @param model The embedding model to use
+ */
+class OllamaEmbedder @JvmOverloads constructor(
+    private val client: OkHttpClient,
+    private val model: String = defaultModel
+) {
+    /**
+     * Thrown when the server could be reached, but didn't respond with embeddings
+     */
+    class ResponseException(message: String, cause: Throwable? = null) : IOException(message, cause)
+
+    /**
+     * Computes the embeddings of several pieces of text in a single request
+     * @param baseUrl The base URL of the Ollama server
+     * @param texts The texts to embed
+     * @return The embedding of each text, in the same order
+     * @throws IOException If the request fails, or [ResponseException] if the server's response can't be used
+     */
+    @Throws(IOException::class)
+    fun embed(baseUrl: String, texts: List<String>): List<FloatArray> {
+        if (texts.isEmpty()) return emptyList()
+
+        val requestJson = JSONObject()
+        requestJson.put("model", model)
+        requestJson.put("input", JSONArray(texts))
+
+        val request = Request.Builder()
+            .url("$baseUrl/api/embed")
+            .post(requestJson.toString().toRequestBody("application/json".toMediaType()))
+            .build()
+
+        client.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) throw ResponseException("Embedding request failed: ${response.code}")
+            val responseBody = response.body?.string() ?: throw ResponseException("Embedding response is empty")
+
+            try {
+                val embeddingsArray = JSONObject(responseBody).getJSONArray("embeddings")
+                if (embeddingsArray.length() != texts.size) throw ResponseException("Expected ${texts.size} embeddings, received ${embeddingsArray.length()}")
+
+                return List(embeddingsArray.length()) { i ->
+                    val embeddingArray = embeddingsArray.getJSONArray(i)
+                    FloatArray(embeddingArray.length()) { embeddingArray.getDouble(it).toFloat() }
+                }
+            } catch (e: JSONException) {
+                throw ResponseException("Invalid embedding response", e)
+            }
+        }
+    }
+
+    companion object {
+        // A small embedding model that is quick to run alongside a chat model
+        const val defaultModel = "nomic-embed-text"
+    }
+}
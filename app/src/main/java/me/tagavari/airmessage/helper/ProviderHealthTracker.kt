@@ -0,0 +1,154 @@
+package me.tagavari.airmessage.helper
+
+import android.os.SystemClock
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.schedulers.Schedulers
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tracks whether AI provider servers are reachable, so requests don't have to probe the server first
+ *
+ * Health checks are cached for a short time. After several consecutive failures, the circuit breaker for a server opens:
+ * calls fail immediately instead of waiting for a connection timeout, and the server is re-probed in the background
+ * until it comes back.
+ *
+ * @param probe Checks whether the server at a base URL is reachable
+ * @param clock Gets the current time in milliseconds
+ * @param scheduler The scheduler to run background probes on
+ */
+class ProviderHealthTracker(
+    private val probe: (String) -> Boolean,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+    private val scheduler: Scheduler = Schedulers.io()
+) {
+    private val healthMap = HashMap<String, Health>()
+
+    private class Health {
+        var isAvailable = false
+        var checkTime: Long? = null
+        var failureCount = 0
+        var openDurationMillis = 0L
+        var isOpen = false
+    }
+
+    /**
+     * Gets whether the server at a base URL is available, probing it only if its cached state has expired.
+     * This method returns immediately while the server's circuit breaker is open.
+     */
+    fun isAvailable(baseUrl: String): Boolean {
+        val health = getHealth(baseUrl)
+        synchronized(health) {
+            if (health.isOpen) return false
+            health.checkTime?.let { if (clock() - it < healthTtlMillis) return health.isAvailable }
+        }
+
+        val result = probe(baseUrl)
+        if (result) recordSuccess(baseUrl) else recordFailure(baseUrl)
+        return result
+    }
+
+    /**
+     * Gets whether the circuit breaker for a server is open
+     */
+    fun isOpen(baseUrl: String): Boolean {
+        val health = getHealth(baseUrl)
+        return synchronized(health) { health.isOpen }
+    }
+
+    /**
+     * Records a successful request to a server, closing its circuit breaker
+     */
+    fun recordSuccess(baseUrl: String) {
+        val health = getHealth(baseUrl)
+        synchronized(health) {
+            health.isAvailable = true
+            health.checkTime = clock()
+            health.failureCount = 0
+            health.openDurationMillis = 0
+            health.isOpen = false
+        }
+    }
+
+    /**
+     * Records a failed request to a server, opening its circuit breaker if it has failed too many times in a row
+     */
+    fun recordFailure(baseUrl: String) {
+        val health = getHealth(baseUrl)
+        synchronized(health) {
+            health.isAvailable = false
+            health.checkTime = clock()
+            health.failureCount++
+
+            if (health.isOpen || health.failureCount < failureThreshold) return
+
+            //Opening the circuit breaker, and waiting longer each time the server fails to recover
+            health.isOpen = true
+            health.openDurationMillis = if (health.openDurationMillis == 0L) minOpenMillis else minOf(health.openDurationMillis * 2, maxOpenMillis)
+
+            scheduler.scheduleDirect({ reprobe(baseUrl) }, health.openDurationMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Probes a server whose circuit breaker is open, and closes the breaker if the server is reachable again
+     */
+    private fun reprobe(baseUrl: String) {
+        val result = try {
+            probe(baseUrl)
+        } catch (e: Exception) {
+            false
+        }
+
+        val health = getHealth(baseUrl)
+        synchronized(health) {
+            if (!health.isOpen) return
+            health.isOpen = false
+        }
+
+        if (result) recordSuccess(baseUrl) else recordFailure(baseUrl)
+    }
+
+    private fun getHealth(baseUrl: String): Health {
+        return synchronized(healthMap) {
+            healthMap.getOrPut(baseUrl) { Health() }
+        }
+    }
+
+    companion object {
+        //How long a health check result is reused for
+        const val healthTtlMillis = 30 * 1000L
+
+        //The number of consecutive failures that open the circuit breaker
+        const val failureThreshold = 2
+
+        //How long the circuit breaker stays open before the server is probed again
+        const val minOpenMillis = 10 * 1000L
+        const val maxOpenMillis = 5 * 60 * 1000L
+
+        /**
+         * Creates a probe that checks for an Ollama server by listing its models
+         */
+        @JvmStatic
+        fun createOllamaProbe(client: OkHttpClient): (String) -> Boolean = { baseUrl ->
+            try {
+                val request = AITransport.asProbe(Request.Builder())
+                    .url("$baseUrl/api/tags")
+                    .get()
+                    .build()
+                client.newCall(request).execute().use { it.isSuccessful }
+            } catch (e: Exception) {
+                false
+            }
+        }
+
+        /**
+         * The health of Ollama servers, shared by all AI features
+         */
+        @JvmStatic
+        val ollama by lazy {
+            ProviderHealthTracker(createOllamaProbe(AITransport.newClient(3, 5)))
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package me.tagavari.airmessage.helper
+
+import okhttp3.Call
+
+/**
+ * Cancels the HTTP call made for a request once the request is no longer needed
+ *
+ * A call attached after the request was cancelled is cancelled immediately, so it is never sent.
+ */
+class RequestCanceller {
+    private var call: Call? = null
+    private var isCancelled = false
+    
+    /**
+     * Sets the call being made for this request
+     */
+    @Synchronized
+    fun attach(call: Call) {
+        if (isCancelled) call.cancel() else this.call = call
+    }
+    
+    /**
+     * Cancels the request and its call
+     */
+    @Synchronized
+    fun cancel() {
+        isCancelled = true
+        call?.cancel()
+    }
+}
@@ -0,0 +1,232 @@
+package me.tagavari.airmessage.helper
+
+import android.content.Context
+import android.util.Log
+import io.reactivex.rxjava3.schedulers.Schedulers
+import me.tagavari.airmessage.activity.Preferences
+import me.tagavari.airmessage.messaging.MessageInfo
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Finds memories and messages by meaning rather than by keyword, using embeddings computed by the configured Ollama server
+ *
+ * Embeddings are kept in two [EmbeddingIndex] files in the app's files directory: one for conversation memories, keyed by
+ * the hash of the memory's conversation and original message, and one for messages, keyed by their local ID. A retrieval
+ * only waits for its query to be embedded, and searches the items that are already in the index. Candidates that are
+ * missing from the index are embedded in the background, so the indices fill in incrementally as the AI features are used.
+ *
+ * Semantic retrieval is skipped whenever no Ollama server is reachable, and callers fall back to keyword matching.
+ */
+object SemanticRetrieval {
+    private const val TAG = "SemanticRetrieval"
+    private const val directoryName = "embeddings"
+
+    // The most items to embed in a single request, and in a single background fill
+    private const val embedBatchSize = 64
+    private const val maxEmbedPerCall = 128
+
+    // How long a retrieval waits for its query to be embedded before falling back to keyword matching
+    private const val queryTimeoutSeconds = 3L
+
+    // Dampens the advantage of the very top ranks when rankings are combined
+    private const val fusionRankOffset = 60
+
+    // Matches less similar than this are left out, so unrelated context isn't added to prompts
+    const val minSimilarity = 0.5F
+
+    private val embedder by lazy { OllamaEmbedder(AITransport.newClient(5, 30)) }
+    private val queryEmbedder by lazy { OllamaEmbedder(AITransport.newClient(queryTimeoutSeconds, queryTimeoutSeconds)) }
+
+    // The indices with a background fill in progress
+    private val fillingIndices = ConcurrentHashMap.newKeySet<EmbeddingIndex>()
+
+    private var memoryIndex: EmbeddingIndex? = null
+    private var messageIndex: EmbeddingIndex? = null
+
+    /**
+     * Gets the ID of a memory in the memory embedding index
+     */
+    @JvmStatic
+    fun getMemoryID(memoryItem: ConversationMemoryManager.MemoryItem): Long {
+        return EmbeddingIndex.hashID("${memoryItem.conversationGuid}\u0000${memoryItem.originalMessage}")
+    }
+
+    /**
+     * Finds the memories most similar in meaning to a query
+     * @param context The context to use
+     * @param query The text to match memories against
+     * @param limit The maximum number of memories to return
+     * @param lookup Gets a memory by its ID (see [getMemoryID]), or NULL if the memory doesn't exist or shouldn't be returned
+     * @param candidates Gets all memories, to embed the ones missing from the index in the background
+     * @return A list of matching memories, most similar first, or NULL if semantic retrieval is unavailable
+     */
+    @JvmStatic
+    fun findMemories(context: Context, query: String, limit: Int, lookup: (Long) -> ConversationMemoryManager.MemoryItem?, candidates: () -> List<ConversationMemoryManager.MemoryItem>): List<ConversationMemoryManager.MemoryItem>? {
+        val baseUrl = getBaseUrl(context) ?: return null
+
+        return search(baseUrl, getMemoryIndex(context), query, limit, lookup) {
+            candidates().associate { getMemoryID(it) to it.extractedInfo }
+        }
+    }
+
+    /**
+     * Finds the messages most similar in meaning to a query
+     * @param context The context to use
+     * @param query The text to match messages against
+     * @param candidates The messages to choose from
+     * @param limit The maximum number of messages to return
+     * @return A list of matching messages, most similar first, or NULL if semantic retrieval is unavailable
+     */
+    @JvmStatic
+    fun findMessages(context: Context, query: String, candidates: List<MessageInfo>, limit: Int): List<MessageInfo>? {
+        val textCandidates = candidates.filter { (it.messageText?.length ?: 0) >= MemoryBackfill.minMessageLength }
+        if (textCandidates.isEmpty()) return emptyList()
+        val baseUrl = getBaseUrl(context) ?: return null
+
+        val candidateMap = textCandidates.associateBy { it.localID }
+        return search(baseUrl, getMessageIndex(context), query, limit, candidateMap::get) {
+            candidateMap.mapValues { (_, message) -> message.messageText!! }
+        }
+    }
+
+    /**
+     * Combines several rankings of the same kind of item into one with reciprocal rank fusion, so items ranked highly by
+     * more than one ranking come first
+     * @param rankings The rankings to combine, each ordered from best to worst
+     * @param limit The maximum number of items to return
+     */
+    @JvmStatic
+    fun <T> fuseRankings(rankings: List<List<T>>, limit: Int): List<T> {
+        val scores = LinkedHashMap<T, Double>()
+        for (ranking in rankings) {
+            ranking.forEachIndexed { rank, item ->
+                scores[item] = (scores[item] ?: 0.0) + 1.0 / (fusionRankOffset + rank + 1)
+            }
+        }
+        return scores.entries.sortedByDescending { it.value }.take(limit).map { it.key }
+    }
+
+    /**
+     * Removes the embeddings of memories that were deleted
+     */
+    @JvmStatic
+    fun removeMemories(context: Context, memoryItems: Collection<ConversationMemoryManager.MemoryItem>) {
+        if (memoryItems.isEmpty()) return
+        val index = getMemoryIndex(context)
+        synchronized(index) {
+            memoryItems.forEach { index.remove(getMemoryID(it)) }
+        }
+    }
+
+    /**
+     * Removes all memory embeddings
+     */
+    @JvmStatic
+    fun clearMemories(context: Context) {
+        val index = getMemoryIndex(context)
+        synchronized(index) {
+            index.clear()
+        }
+    }
+
+    /**
+     * Removes the embeddings of messages that were deleted in the background, so they can't be matched to a new message
+     * that reuses their ID
+     */
+    @JvmStatic
+    fun removeMessages(context: Context, messageIDs: Collection<Long>) {
+        if (messageIDs.isEmpty()) return
+        Schedulers.io().scheduleDirect {
+            val index = getMessageIndex(context)
+            synchronized(index) {
+                messageIDs.forEach { index.remove(it) }
+            }
+        }
+    }
+
+    /**
+     * Searches the embedded items of an index for a query, and starts embedding any candidates missing from the index
+     * @param lookup Gets the item for an ID, or NULL if the item shouldn't be returned
+     * @param candidateTexts Gets the texts of the items that should be in the index, by ID
+     * @return The matching items, most similar first, or NULL if the server couldn't be reached
+     */
+    private fun <T : Any> search(baseUrl: String, index: EmbeddingIndex, query: String, limit: Int, lookup: (Long) -> T?, candidateTexts: () -> Map<Long, String>): List<T>? {
+        val queryVector = try {
+            queryEmbedder.embed(baseUrl, listOf(query))[0]
+        } catch (e: IOException) {
+            handleFailure(baseUrl, e)
+            return null
+        }
+        ProviderHealthTracker.ollama.recordSuccess(baseUrl)
+
+        fillInBackground(baseUrl, index, candidateTexts)
+
+        return synchronized(index) {
+            index.search(queryVector, limit) { lookup(it) != null }
+                .filter { it.similarity >= minSimilarity }
+                .mapNotNull { lookup(it.id) }
+        }
+    }
+
+    /**
+     * Embeds candidates missing from an index on a background thread, unless the index is already being filled
+     */
+    private fun fillInBackground(baseUrl: String, index: EmbeddingIndex, candidateTexts: () -> Map<Long, String>) {
+        if (!fillingIndices.add(index)) return
+
+        Schedulers.io().scheduleDirect {
+            try {
+                val texts = candidateTexts()
+                val missingCandidates = synchronized(index) {
+                    texts.entries.filter { !index.contains(it.key) }.take(maxEmbedPerCall)
+                }
+
+                for (batch in missingCandidates.chunked(embedBatchSize)) {
+                    val vectors = embedder.embed(baseUrl, batch.map { it.value })
+                    synchronized(index) {
+                        batch.forEachIndexed { i, entry -> index.add(entry.key, vectors[i]) }
+                    }
+                }
+            } catch (e: IOException) {
+                handleFailure(baseUrl, e)
+            } finally {
+                fillingIndices.remove(index)
+            }
+        }
+    }
+
+    private fun handleFailure(baseUrl: String, exception: IOException) {
+        Log.w(TAG, "Failed to compute embeddings", exception)
+
+        // Only count failures to reach the server, so a missing embedding model doesn't mark the server as down
+        if (exception !is OllamaEmbedder.ResponseException) ProviderHealthTracker.ollama.recordFailure(baseUrl)
+    }
+
+    /**
+     * Gets the base URL of the Ollama server to compute embeddings with, or NULL if it isn't available
+     */
+    private fun getBaseUrl(context: Context): String? {
+        val baseUrl = Preferences.getOllamaBaseUrl(context)
+        if (baseUrl.isEmpty() || ProviderHealthTracker.ollama.isOpen(baseUrl)) return null
+        return baseUrl
+    }
+
+    @Synchronized
+    private fun getMemoryIndex(context: Context): EmbeddingIndex {
+        return memoryIndex ?: loadIndex(context, "memories.bin").also { memoryIndex = it }
+    }
+
+    @Synchronized
+    private fun getMessageIndex(context: Context): EmbeddingIndex {
+        return messageIndex ?: loadIndex(context, "messages.bin").also { messageIndex = it }
+    }
+
+    private fun loadIndex(context: Context, fileName: String): EmbeddingIndex {
+        val index = EmbeddingIndex(File(File(context.filesDir, directoryName), fileName))
+        index.load()
+        Log.d(TAG, "Loaded ${index.size} embeddings from $fileName")
+        return index
+    }
+}
@@ -0,0 +1,185 @@
+package me.tagavari.airmessage.helper
+
+import android.content.ContentResolver
+import android.content.ContentUris
+import android.content.Context
+import android.database.Cursor
+import android.net.Uri
+import android.os.Build
+import android.os.Bundle
+import android.provider.Telephony
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
+import io.reactivex.rxjava3.core.Completable
+import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
+import me.tagavari.airmessage.enums.ServiceHandler
+import me.tagavari.airmessage.enums.ServiceType
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.HighWaterMark
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.SyncMessage
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.ThreadFingerprint
+import me.tagavari.airmessage.messaging.ConversationInfo
+import me.tagavari.airmessage.messaging.MessageInfo
+import me.tagavari.airmessage.redux.ReduxEmitterNetwork
+import me.tagavari.airmessage.redux.ReduxEventMessaging
+import me.tagavari.airmessage.task.MessageActionTask
+
+/**
+ * Reads sync details from the Android system message database
+ */
+class SystemMessageProviderSource(private val context: Context) : SystemMessageSyncHelper.MessageSource {
+	override fun getHighWaterMarks(): Pair<HighWaterMark, HighWaterMark> {
+		return Pair(
+			readHighWaterMark(Telephony.Sms.CONTENT_URI, Telephony.Sms._ID, Telephony.Sms.DATE, 1),
+			readHighWaterMark(Telephony.Mms.CONTENT_URI, Telephony.Mms._ID, Telephony.Mms.DATE, 1000)
+		)
+	}
+
+	private fun readHighWaterMark(uri: Uri, idColumn: String, dateColumn: String, dateMultiplier: Long): HighWaterMark {
+		val projection = arrayOf(idColumn, dateColumn)
+		val queryCursor = if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			val queryArgs = Bundle().apply {
+				putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, "$idColumn DESC")
+				putInt(ContentResolver.QUERY_ARG_LIMIT, 1)
+			}
+			context.contentResolver.query(uri, projection, queryArgs, null)
+		} else {
+			//Older versions can't pass a limit, so only the first row is read
+			context.contentResolver.query(uri, projection, null, null, "$idColumn DESC")
+		}
+
+		queryCursor.use { cursor ->
+			if(cursor == null || !cursor.moveToFirst()) return HighWaterMark.empty
+			return HighWaterMark(cursor.getLong(0), cursor.getLong(1) * dateMultiplier)
+		}
+	}
+
+	override fun getThreadFingerprints(): Map<Long, ThreadFingerprint> {
+		val threadMap = HashMap<Long, ThreadFingerprint>()
+		context.contentResolver.query(
+			Uri.parse("content://mms-sms/conversations?simple=true"),
+			arrayOf(Telephony.Threads._ID, Telephony.Threads.MESSAGE_COUNT, Telephony.Threads.DATE),
+			null, null, null
+		)?.use { cursor ->
+			while(cursor.moveToNext()) {
+				//Ignoring empty threads, as they aren't imported
+				val messageCount = cursor.getInt(1)
+				if(messageCount == 0) continue
+
+				threadMap[cursor.getLong(0)] = ThreadFingerprint(messageCount, cursor.getLong(2))
+			}
+		} ?: throw IllegalStateException("Failed to load conversations from Android database")
+
+		return threadMap
+	}
+
+	override fun getMessagesAfter(smsMark: HighWaterMark, mmsMark: HighWaterMark): List<SyncMessage> {
+		val messageList = mutableListOf<SyncMessage>()
+
+		//Reading new SMS messages
+		context.contentResolver.query(
+			Telephony.Sms.CONTENT_URI,
+			arrayOf(Telephony.Sms._ID, Telephony.Sms.THREAD_ID, Telephony.Sms.DATE, Telephony.Sms.TYPE, Telephony.Sms.BODY),
+			Telephony.Sms._ID + " > ?", arrayOf(smsMark.id.toString()), Telephony.Sms._ID
+		)?.use { cursor ->
+			while(cursor.moveToNext()) {
+				messageList.add(SyncMessage(cursor.getLong(0), cursor.getLong(1), false, cursor.getLong(2), cursor.getInt(3) != Telephony.Sms.MESSAGE_TYPE_INBOX, cursor.getString(4)))
+			}
+		}
+
+		//Reading new MMS messages
+		val mmsList = mutableListOf<SyncMessage>()
+		context.contentResolver.query(
+			Telephony.Mms.CONTENT_URI,
+			arrayOf(Telephony.Mms._ID, Telephony.Mms.THREAD_ID, Telephony.Mms.DATE, Telephony.Mms.MESSAGE_BOX),
+			Telephony.Mms._ID + " > ?", arrayOf(mmsMark.id.toString()), Telephony.Mms._ID
+		)?.use { cursor ->
+			while(cursor.moveToNext()) {
+				mmsList.add(SyncMessage(cursor.getLong(0), cursor.getLong(1), true, cursor.getLong(2) * 1000, cursor.getInt(3) != Telephony.Mms.MESSAGE_BOX_INBOX, null))
+			}
+		}
+		messageList.addAll(withMMSTexts(mmsList))
+
+		return messageList
+	}
+
+	override fun getThreadMessages(threadID: Long): List<SyncMessage> {
+		val messageList = mutableListOf<SyncMessage>()
+		context.contentResolver.query(
+			ContentUris.withAppendedId(Telephony.Threads.CONTENT_URI, threadID),
+			arrayOf(Telephony.BaseMmsColumns._ID, Telephony.Mms.MESSAGE_BOX, Telephony.Sms.TYPE, Telephony.Sms.DATE, Telephony.Sms.BODY),
+			null, null, null
+		)?.use { cursor ->
+			while(cursor.moveToNext()) {
+				val message = if(!cursor.isNull(1)) {
+					SyncMessage(cursor.getLong(0), threadID, true, cursor.getLong(3) * 1000, cursor.getInt(1) != Telephony.Mms.MESSAGE_BOX_INBOX, null)
+				} else {
+					SyncMessage(cursor.getLong(0), threadID, false, cursor.getLong(3), cursor.getInt(2) != Telephony.Sms.MESSAGE_TYPE_INBOX, cursor.getString(4))
+				}
+				messageList.add(message)
+			}
+		}
+
+		return withMMSTexts(messageList)
+	}
+
+	/**
+	 * Fills in the text of MMS messages, which isn't stored with the message itself
+	 */
+	private fun withMMSTexts(messages: List<SyncMessage>): List<SyncMessage> {
+		val mmsIDs = messages.filter { it.isMMS }.map { it.id }
+		if(mmsIDs.isEmpty()) return messages
+
+		val textMap = MMSSMSHelper.readMMSTexts(context, mmsIDs)
+		return messages.map { if(it.isMMS) it.copy(text = textMap[it.id]) else it }
+	}
+}
+
+/**
+ * Applies sync changes to AirMessage's database, and emits updates for them
+ */
+class SystemMessageDatabaseTarget(private val context: Context) : SystemMessageSyncHelper.MessageTarget {
+	private fun findConversation(threadID: Long): ConversationInfo? {
+		return DatabaseManager.getInstance().findConversationByExternalID(context, threadID, ServiceHandler.systemMessaging, ServiceType.systemSMS)
+	}
+
+	override fun getLocalMessages(threadID: Long, fromDate: Long, toDate: Long): List<SyncMessage> {
+		val conversationInfo = findConversation(threadID) ?: return emptyList()
+		return DatabaseManager.getInstance().fetchSyncMessages(conversationInfo.localID, threadID, fromDate, toDate)
+	}
+
+	override fun addMessages(threadID: Long, messages: List<SyncMessage>) {
+		for(message in messages) {
+			//Reading the full message
+			val messageInfo = if(message.isMMS) {
+				readMessage(ContentUris.withAppendedId(Telephony.Mms.CONTENT_URI, message.id), MMSSMSHelper.mmsColumnProjection) { MMSSMSHelper.readMMSMessage(context, it) }
+			} else {
+				readMessage(ContentUris.withAppendedId(Telephony.Sms.CONTENT_URI, message.id), MMSSMSHelper.smsColumnProjection) { MMSSMSHelper.readSMSMessage(it) }
+			} ?: continue
+
+			//Saving the message
+			MMSSMSHelper.updateTextConversationMessage(context, threadID, messageInfo).blockingGet()
+		}
+	}
+
+	private fun readMessage(uri: Uri, projection: Array<String>, reader: (Cursor) -> MessageInfo?): MessageInfo? {
+		context.contentResolver.query(uri, projection, null, null, null).use { cursor ->
+			if(cursor == null || !cursor.moveToFirst()) return null
+			return reader(cursor)
+		}
+	}
+
+	override fun deleteMessages(threadID: Long, localIDs: List<Long>) {
+		val conversationInfo = findConversation(threadID) ?: return
+		val messages = localIDs.mapNotNull { DatabaseManager.getInstance().loadConversationItem(context, it) as? MessageInfo }
+		MessageActionTask.deleteMessages(context, conversationInfo, messages).blockingAwait()
+	}
+
+	override fun deleteThread(threadID: Long) {
+		val conversationInfo = findConversation(threadID) ?: return
+		Completable.fromAction { DatabaseManager.getInstance().deleteConversation(context, conversationInfo.localID) }
+			.subscribeOn(DatabaseSchedulers.write)
+			.observeOn(AndroidSchedulers.mainThread())
+			.doOnComplete { ReduxEmitterNetwork.messageUpdateSubject.onNext(ReduxEventMessaging.ConversationDelete(conversationInfo)) }
+			.blockingAwait()
+	}
+}
@@ -0,0 +1,232 @@
+package me.tagavari.airmessage.helper
+
+/**
+ * Brings imported text message conversations up to date with the system message database, applying only what changed since the last sync
+ *
+ * New messages are found with a high-water mark of the last seen SMS and MMS IDs.
+ * Deletions can't be found that way, so each thread's message count and latest date are recorded as a fingerprint,
+ * and only threads whose fingerprint doesn't account for the new messages are compared in full.
+ */
+object SystemMessageSyncHelper {
+	//How far apart the dates of a system message and its local copy can be while still being considered the same message
+	const val matchWindowMillis = 60 * 1000L
+
+	/**
+	 * The newest message seen in a system message table
+	 */
+	data class HighWaterMark(val id: Long, val date: Long) {
+		companion object {
+			@JvmField
+			val empty = HighWaterMark(-1, -1)
+		}
+	}
+
+	/**
+	 * A cheap summary of a system message thread, used to detect changes other than new messages
+	 */
+	data class ThreadFingerprint(val messageCount: Int, val latestDate: Long)
+
+	/**
+	 * The state of the system message database as of the last sync
+	 */
+	data class SyncState(val smsMark: HighWaterMark, val mmsMark: HighWaterMark, val threads: Map<Long, ThreadFingerprint>)
+
+	/**
+	 * The identifying details of a message, used to match a system message with its local copy
+	 * @param id The ID of the message in the database it was read from
+	 * @param threadID The system thread ID of the message's conversation
+	 * @param isMMS Whether this is an MMS message (only applicable to system messages)
+	 * @param date The date of the message
+	 * @param isOutgoing Whether this message was sent by the user
+	 * @param text The text of the message, or NULL if it has none
+	 * @param systemID The ID of the system message this message was imported from, or -1 if it wasn't recorded (only applicable to local messages)
+	 * @param isUnsent Whether this is an outgoing message that is still sending or failed to send (only applicable to local messages)
+	 */
+	data class SyncMessage @JvmOverloads constructor(val id: Long, val threadID: Long, val isMMS: Boolean, val date: Long, val isOutgoing: Boolean, val text: String?,
+			val systemID: Long = -1, val isUnsent: Boolean = false)
+
+	/**
+	 * Reads from the system message database
+	 */
+	interface MessageSource {
+		/**
+		 * Gets the newest SMS and MMS messages
+		 */
+		fun getHighWaterMarks(): Pair<HighWaterMark, HighWaterMark>
+
+		/**
+		 * Gets the fingerprints of all threads
+		 */
+		fun getThreadFingerprints(): Map<Long, ThreadFingerprint>
+
+		/**
+		 * Gets all messages newer than the provided SMS and MMS marks
+		 */
+		fun getMessagesAfter(smsMark: HighWaterMark, mmsMark: HighWaterMark): List<SyncMessage>
+
+		/**
+		 * Gets all messages in a thread
+		 */
+		fun getThreadMessages(threadID: Long): List<SyncMessage>
+	}
+
+	/**
+	 * Reads from and writes to the app's copy of the system messages
+	 */
+	interface MessageTarget {
+		/**
+		 * Gets the local messages of a thread within a date range
+		 */
+		fun getLocalMessages(threadID: Long, fromDate: Long, toDate: Long): List<SyncMessage>
+
+		/**
+		 * Reads and saves system messages to a thread, creating its conversation if needed
+		 */
+		fun addMessages(threadID: Long, messages: List<SyncMessage>)
+
+		/**
+		 * Deletes local messages from a thread
+		 */
+		fun deleteMessages(threadID: Long, localIDs: List<Long>)
+
+		/**
+		 * Deletes the conversation of a thread
+		 */
+		fun deleteThread(threadID: Long)
+	}
+
+	/**
+	 * Records the current state of the system message database, without applying any changes
+	 */
+	@JvmStatic
+	fun captureState(source: MessageSource): SyncState {
+		val (smsMark, mmsMark) = source.getHighWaterMarks()
+		return SyncState(smsMark, mmsMark, source.getThreadFingerprints())
+	}
+
+	/**
+	 * Applies changes to the system message database since the previous sync
+	 * @param source The system message database
+	 * @param target The app's copy of the system messages
+	 * @param previous The state recorded by the previous sync
+	 * @param skippedSMSIDs The IDs of system SMS messages that were deliberately kept out of the app, which are never added
+	 * @return The state to record for the next sync
+	 */
+	@JvmStatic
+	@JvmOverloads
+	fun sync(source: MessageSource, target: MessageTarget, previous: SyncState, skippedSMSIDs: Set<Long> = emptySet()): SyncState {
+		val (currentSMSMark, currentMMSMark) = source.getHighWaterMarks()
+
+		//If the newest messages are older than the marks, the system database was reset and every thread must be compared
+		val isReset = currentSMSMark.id < previous.smsMark.id || currentMMSMark.id < previous.mmsMark.id ||
+				currentSMSMark.date < previous.smsMark.date || currentMMSMark.date < previous.mmsMark.date
+
+		val newMessages = if(isReset) emptyList() else source.getMessagesAfter(previous.smsMark, previous.mmsMark)
+		val threads = source.getThreadFingerprints()
+		val newMessageMap = newMessages.groupBy { it.threadID }
+
+		//Removing deleted threads
+		for(threadID in previous.threads.keys) {
+			if(!threads.containsKey(threadID)) target.deleteThread(threadID)
+		}
+
+		for((threadID, fingerprint) in threads) {
+			val threadNewMessages = newMessageMap[threadID] ?: emptyList()
+			val previousFingerprint = previous.threads[threadID]
+
+			//Checking if the new messages account for all changes to the thread
+			val expectedCount = (previousFingerprint?.messageCount ?: 0) + threadNewMessages.size
+			val isConsistent = !isReset && fingerprint.messageCount == expectedCount &&
+					(previousFingerprint == null || fingerprint.latestDate >= previousFingerprint.latestDate)
+
+			if(isConsistent) {
+				if(threadNewMessages.isEmpty()) continue
+
+				//Adding new messages that don't already have a local copy
+				val localMessages = target.getLocalMessages(threadID,
+						threadNewMessages.minOf { it.date } - matchWindowMillis,
+						threadNewMessages.maxOf { it.date } + matchWindowMillis)
+				val unmatchedRemote = matchMessages(threadNewMessages, localMessages).first.filter { !isSkipped(it, skippedSMSIDs) }
+				if(unmatchedRemote.isNotEmpty()) target.addMessages(threadID, unmatchedRemote)
+			} else {
+				//Comparing the entire thread
+				val (remoteWithoutCopy, unmatchedLocal) = matchMessages(source.getThreadMessages(threadID), target.getLocalMessages(threadID, Long.MIN_VALUE, Long.MAX_VALUE))
+				val unmatchedRemote = remoteWithoutCopy.filter { !isSkipped(it, skippedSMSIDs) }
+
+				//Only deleting messages known to have been imported from a system message, and never messages that haven't been sent yet
+				val deletedLocal = unmatchedLocal.filter { it.systemID != -1L && !it.isUnsent }
+				if(deletedLocal.isNotEmpty()) target.deleteMessages(threadID, deletedLocal.map { it.id })
+				if(unmatchedRemote.isNotEmpty()) target.addMessages(threadID, unmatchedRemote)
+			}
+		}
+
+		//Advancing the marks
+		val smsMark: HighWaterMark
+		val mmsMark: HighWaterMark
+		if(isReset) {
+			smsMark = currentSMSMark
+			mmsMark = currentMMSMark
+		} else {
+			smsMark = newMessages.filter { !it.isMMS }.maxByOrNull { it.id }?.let { HighWaterMark(it.id, it.date) } ?: previous.smsMark
+			mmsMark = newMessages.filter { it.isMMS }.maxByOrNull { it.id }?.let { HighWaterMark(it.id, it.date) } ?: previous.mmsMark
+		}
+
+		return SyncState(smsMark, mmsMark, threads)
+	}
+
+	/**
+	 * Pairs system messages with their local copies
+	 * @param remote The system messages
+	 * @param local The local messages
+	 * @return A pair of the system messages without a local copy, and the local messages without a system message
+	 */
+	@JvmStatic
+	fun matchMessages(remote: List<SyncMessage>, local: List<SyncMessage>): Pair<List<SyncMessage>, List<SyncMessage>> {
+		val sortedLocal = local.sortedBy { it.date }
+		val localMatched = BooleanArray(sortedLocal.size)
+		val unmatchedRemote = mutableListOf<SyncMessage>()
+
+		//Pairing messages by the system message ID recorded when they were imported
+		val importedLocalMap = sortedLocal.indices.filter { sortedLocal[it].systemID != -1L }
+				.associateBy { Pair(sortedLocal[it].isMMS, sortedLocal[it].systemID) }
+		val remainingRemote = remote.filter { remoteMessage ->
+			val index = importedLocalMap[Pair(remoteMessage.isMMS, remoteMessage.id)]
+			if(index == null) {
+				true
+			} else {
+				localMatched[index] = true
+				false
+			}
+		}
+
+		//Pairing the rest by their contents, leaving out local messages whose system message is known to be different
+		var windowStart = 0
+		for(remoteMessage in remainingRemote.sortedBy { it.date }) {
+			//Skipping local messages that are too old to match this or any later message
+			while(windowStart < sortedLocal.size && sortedLocal[windowStart].date < remoteMessage.date - matchWindowMillis) windowStart++
+
+			//Finding the first unmatched local message in the window
+			var matchIndex = -1
+			for(i in windowStart until sortedLocal.size) {
+				val localMessage = sortedLocal[i]
+				if(localMessage.date > remoteMessage.date + matchWindowMillis) break
+				if(localMatched[i] || localMessage.systemID != -1L || !isSameMessage(remoteMessage, localMessage)) continue
+				matchIndex = i
+				break
+			}
+
+			if(matchIndex == -1) unmatchedRemote.add(remoteMessage)
+			else localMatched[matchIndex] = true
+		}
+
+		return Pair(unmatchedRemote, sortedLocal.filterIndexed { i, _ -> !localMatched[i] })
+	}
+
+	private fun isSkipped(message: SyncMessage, skippedSMSIDs: Set<Long>) = !message.isMMS && message.id in skippedSMSIDs
+
+	private fun isSameMessage(remote: SyncMessage, local: SyncMessage): Boolean {
+		if(remote.isOutgoing != local.isOutgoing) return false
+		if(remote.text == null || local.text == null) return remote.text == local.text
+		return GhostMatchHelper.normalizeText(remote.text) == GhostMatchHelper.normalizeText(local.text)
+	}
+}
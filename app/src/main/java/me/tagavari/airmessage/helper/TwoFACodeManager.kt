@@ -6,6 +6,7 @@ import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.messaging.MessageInfo
 import java.util.regex.Pattern
 
@@ -165,7 +166,7 @@ object TwoFACodeManager {
             }
             
             return@fromCallable true
-        }.subscribeOn(Schedulers.io())
+        }.subscribeOn(DatabaseSchedulers.write)
     }
     
     /**
@@ -322,7 +323,7 @@ object TwoFACodeManager {
                 Log.e(TAG, "Failed to retrieve 2FA codes", e)
                 emptyList<TwoFACode>()
             }
-        }.subscribeOn(Schedulers.io())
+        }.subscribeOn(DatabaseSchedulers.read)
     }
     
     /**
@@ -340,7 +341,7 @@ object TwoFACodeManager {
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to mark 2FA code as used", e)
             }
-        }.subscribeOn(Schedulers.io())
+        }.subscribeOn(DatabaseSchedulers.write)
     }
     
     /**
@@ -355,7 +356,7 @@ object TwoFACodeManager {
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to clear 2FA codes", e)
             }
-        }.subscribeOn(Schedulers.io())
+        }.subscribeOn(DatabaseSchedulers.write)
     }
     
     /**
@@ -14,10 +14,10 @@ import io.reactivex.rxjava3.annotations.CheckReturnValue;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleEmitter;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.connection.ConnectionManager;
 import me.tagavari.airmessage.connection.exception.AMRequestException;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.ServiceHandler;
 import me.tagavari.airmessage.enums.ServiceType;
 import me.tagavari.airmessage.helper.ConnectionServiceLaunchHelper;
@@ -65,7 +65,7 @@ public class MessageNotificationActionReceiver extends BroadcastReceiver {
 		long conversationID = intent.getLongExtra(intentParamConversationID, -1);
 		if(conversationID == -1) return;
 		Single.fromCallable(() -> DatabaseManager.getInstance().fetchConversationInfo(context, conversationID))
-				.subscribeOn(Schedulers.single())
+				.subscribeOn(DatabaseSchedulers.read)
 				.observeOn(AndroidSchedulers.mainThread())
 				.flatMapCompletable(conversationInfo -> {
 					//Getting the response
@@ -113,7 +113,7 @@ public class MessageNotificationActionReceiver extends BroadcastReceiver {
 	private Completable sendMessageAMBridge(Context context, ConversationInfo conversationInfo, String responseMessage) {
 		return MessageActionTask.writeMessages(conversationInfo, Collections.singletonList(MessageInfo.blankFromText(responseMessage)))
 				.map(list -> list.get(0))
-				.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread())
+				.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread())
 				.flatMapCompletable(messageInfo -> {
 					//Getting the connection manager
 					ConnectionManager connectionManager = ConnectionService.getConnectionManager();
@@ -141,7 +141,7 @@ public class MessageNotificationActionReceiver extends BroadcastReceiver {
 		//Creating the message and saving it to disk
 		return MessageActionTask.writeMessages(conversationInfo, Collections.singletonList(MessageInfo.blankFromText(responseMessage)))
 				.map(list -> list.get(0))
-				.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread())
+				.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread())
 				.flatMapCompletable(messageInfo -> MessageSendHelper.sendMessageMMSSMS(context, conversationInfo, messageInfo));
 	}
 	
@@ -166,7 +166,7 @@ public class MessageNotificationActionReceiver extends BroadcastReceiver {
 	private void markConversationRead(Context context, long conversationID) {
 		//Updating the conversation
 		Single.create((SingleEmitter<ConversationInfo> emitter) -> emitter.onSuccess(DatabaseManager.getInstance().fetchConversationInfo(context, conversationID)))
-				.subscribeOn(Schedulers.single()).flatMapCompletable(conversation -> ConversationActionTask.unreadConversations(Collections.singleton(conversation), 0)).subscribe();
+				.subscribeOn(DatabaseSchedulers.write).flatMapCompletable(conversation -> ConversationActionTask.unreadConversations(Collections.singleton(conversation), 0)).subscribe();
 	}
 	
 	/**
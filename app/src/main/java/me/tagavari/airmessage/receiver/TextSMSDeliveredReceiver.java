@@ -7,10 +7,10 @@ import com.klinker.android.send_message.DeliveredReceiver;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleEmitter;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.constants.SMSReceiverConstants;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.MessageSendErrorCode;
 import me.tagavari.airmessage.enums.MessageState;
 import me.tagavari.airmessage.helper.NotificationHelper;
@@ -28,7 +28,7 @@ public class TextSMSDeliveredReceiver extends DeliveredReceiver {
 		//Running on a worker thread
 		Single.create((SingleEmitter<Pair<ConversationItem, ConversationInfo>> emitter) -> {
 			emitter.onSuccess(DatabaseManager.getInstance().loadConversationItemWithChat(context, messageID));
-		}).subscribeOn(Schedulers.single())
+		}).subscribeOn(DatabaseSchedulers.write)
 				.observeOn(AndroidSchedulers.mainThread())
 				.flatMapCompletable(pair -> {
 					ConversationInfo conversationInfo = pair.getSecond();
@@ -1,23 +1,24 @@
 package me.tagavari.airmessage.receiver;
 
 import android.content.BroadcastReceiver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Telephony;
 import android.telephony.SmsMessage;
 import android.util.Log;
-import io.reactivex.rxjava3.core.Single;
-import io.reactivex.rxjava3.core.SingleEmitter;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import kotlin.Triple;
+import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.enums.MessageSendErrorCode;
 import me.tagavari.airmessage.enums.MessageState;
 import me.tagavari.airmessage.helper.AddressHelper;
 import me.tagavari.airmessage.helper.MMSSMSHelper;
 import me.tagavari.airmessage.helper.TwoFACodeManager;
-import me.tagavari.airmessage.messaging.ConversationInfo;
 import me.tagavari.airmessage.messaging.MessageInfo;
 
 import java.util.ArrayList;
@@ -59,18 +60,24 @@ public class TextSMSReceivedReceiver extends BroadcastReceiver {
 		Log.d(TAG, "SMS from: '" + finalMessageSender + "' (length=" + finalMessageSender.length() + ")");
 		Log.d(TAG, "SMS text: '" + messageBody.toString() + "'");
 		
-		//Running on a worker thread
-		Single.create((SingleEmitter<Triple<Boolean, ConversationInfo, MessageInfo>> emitter) -> {
-			//Writing the message to Android's database
-			insertInternalSMS(context, finalMessageSender, messageBody.toString(), timestamp);
-		}).subscribeOn(Schedulers.single()).subscribe();
-		
 		// Check if this should be handled as a 2FA message
 		String messageText = messageBody.toString();
 		boolean senderLengthCheck = finalMessageSender.length() <= 7;
 		boolean contentCheck = TwoFACodeManager.INSTANCE.shouldProcessAs2FA(messageText);
 		boolean shouldHandle2FA = senderLengthCheck && contentCheck;
 		
+		//Running on a worker thread
+		Completable.fromAction(() -> {
+			//Writing the message to Android's database
+			Uri messageUri = insertInternalSMS(context, finalMessageSender, messageText, timestamp);
+			
+			//Keeping 2FA messages out of the next text message sync, so they aren't added to the conversation after all.
+			//If 2FA processing falls back to a regular message, its local copy is added below instead.
+			if(shouldHandle2FA && messageUri != null) {
+				SharedPreferencesManager.addTextSyncSkippedSMS(context, ContentUris.parseId(messageUri));
+			}
+		}).subscribeOn(Schedulers.single()).subscribe();
+		
 		Log.d(TAG, "2FA Analysis:");
 		Log.d(TAG, "  - Sender length check (≤7): " + senderLengthCheck + " (" + finalMessageSender.length() + " chars)");
 		Log.d(TAG, "  - Content check: " + contentCheck);
@@ -109,8 +116,10 @@ public class TextSMSReceivedReceiver extends BroadcastReceiver {
 	 * @param sender The sender of the message
 	 * @param body The text content of the message
 	 * @param timestamp The date the message was sent
+	 * @return The URI of the inserted message, or NULL if it couldn't be inserted
 	 */
-	private static void insertInternalSMS(Context context, String sender, String body, long timestamp) {
+	@Nullable
+	private static Uri insertInternalSMS(Context context, String sender, String body, long timestamp) {
 		ContentValues contentValues = new ContentValues();
 		contentValues.put(Telephony.Sms.ADDRESS, sender);
 		contentValues.put(Telephony.Sms.BODY, body);
@@ -119,9 +128,10 @@ public class TextSMSReceivedReceiver extends BroadcastReceiver {
 		contentValues.put(Telephony.Sms.DATE_SENT, timestamp);
 		
 		try {
-			context.getContentResolver().insert(Telephony.Sms.Inbox.CONTENT_URI, contentValues);
+			return context.getContentResolver().insert(Telephony.Sms.Inbox.CONTENT_URI, contentValues);
 		} catch(Exception exception) {
 			exception.printStackTrace();
+			return null;
 		}
 	}
 }
\ No newline at end of file
@@ -5,10 +5,10 @@ import android.content.Context;
 import android.content.Intent;
 import com.klinker.android.send_message.SentReceiver;
 import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.constants.SMSReceiverConstants;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.MessageSendErrorCode;
 import me.tagavari.airmessage.enums.MessageState;
 import me.tagavari.airmessage.helper.NotificationHelper;
@@ -42,6 +42,6 @@ public class TextSMSSentReceiver extends SentReceiver {
 				//Sending a notification
 				NotificationHelper.sendErrorNotification(context, conversationInfo);
 			}
-		}).subscribeOn(Schedulers.single()).subscribe();
+		}).subscribeOn(DatabaseSchedulers.write).subscribe();
 	}
 }
\ No newline at end of file
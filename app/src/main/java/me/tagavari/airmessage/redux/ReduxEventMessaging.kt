@@ -19,6 +19,20 @@ sealed class ReduxEventMessaging {
 	abstract class ReduxMessageAction(conversationInfo: ConversationInfo, val messageInfo: MessageInfo) :
 		ReduxConversationAction(conversationInfo)
 	
+	/**
+	 * A group of events generated from the same update, which should be handled in order
+	 * @param events The events in this group
+	 */
+	class Batch(val events: List<ReduxEventMessaging>) : ReduxEventMessaging()
+	
+	companion object {
+		/**
+		 * Gets the individual events represented by an event, unwrapping it if it is a batch
+		 */
+		@JvmStatic
+		fun unbatch(event: ReduxEventMessaging): List<ReduxEventMessaging> = if(event is Batch) event.events else listOf(event)
+	}
+	
 	//When new conversation items are received
 	class Message(
 		//Conversation items that were added to an available conversation
@@ -0,0 +1,47 @@
+package me.tagavari.airmessage.redux
+
+import android.content.Context
+import android.util.Log
+import io.reactivex.rxjava3.disposables.CompositeDisposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import me.tagavari.airmessage.data.AIResponseCache
+
+/**
+ * Redux receiver that invalidates cached AI responses for conversations that change
+ */
+object ReduxReceiverAIResponseCache {
+    private const val TAG = "AIResponseCacheReceiver"
+    
+    private val disposables = CompositeDisposable()
+    
+    /**
+     * Initializes the response cache receiver
+     */
+    @JvmStatic
+    fun initialize(context: Context) {
+        val cache = AIResponseCache.getInstance(context)
+        
+        disposables.add(
+            ReduxEmitterNetwork.messageUpdateSubject
+                .flatMapIterable { ReduxEventMessaging.unbatch(it) }
+                .observeOn(Schedulers.io())
+                .subscribe(
+                    { event -> getChangedConversations(event).forEach { cache.invalidateConversation(it) } },
+                    { error -> Log.e(TAG, "Error invalidating cached responses", error) }
+                )
+        )
+    }
+    
+    /**
+     * Gets the IDs of the conversations whose cached responses are no longer valid after an event
+     */
+    private fun getChangedConversations(event: ReduxEventMessaging): List<Long> {
+        return when (event) {
+            is ReduxEventMessaging.Message -> event.conversationItems.map { it.first.localID }
+            is ReduxEventMessaging.MessageDelete -> listOf(event.conversationInfo.localID)
+            is ReduxEventMessaging.ConversationDelete -> listOf(event.conversationInfo.localID)
+            is ReduxEventMessaging.ConversationServiceHandlerDelete -> event.deletedIDs
+            else -> emptyList()
+        }
+    }
+}
@@ -5,14 +5,15 @@ import android.content.SharedPreferences
 import android.util.Log
 import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.disposables.CompositeDisposable
-import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.helper.ConversationMemoryManager
-import me.tagavari.airmessage.messaging.ConversationInfo
 import me.tagavari.airmessage.messaging.MessageInfo
 
 /**
  * Redux receiver that listens for messaging events and extracts contextual information
  * for the conversation memory system.
+ *
+ * Events are delivered on the thread that emitted them, which is often the main thread, so new messages are only
+ * queued here. Extraction runs in batches on a background thread, see [me.tagavari.airmessage.helper.MemoryExtractionQueue].
  */
 object ReduxReceiverConversationMemory {
     private const val TAG = "ConversationMemoryReceiver"
@@ -34,12 +35,12 @@ object ReduxReceiverConversationMemory {
         
         val preferences = PreferenceManager.getDefaultSharedPreferences(context)
         
-        // Listen for new messages and process them for memory extraction
+        // Listen for new messages and queue them for memory extraction
         val disposable = ReduxEmitterNetwork.messageUpdateSubject
-            .subscribeOn(Schedulers.io())
+            .flatMapIterable { ReduxEventMessaging.unbatch(it) }
             .filter { event -> isMemoryEnabled(preferences) }
             .subscribe(
-                { event -> processMessagingEvent(context, event) },
+                { event -> queueMessagingEvent(context, event) },
                 { error -> Log.e(TAG, "Error processing messaging event", error) }
             )
         
@@ -70,17 +71,17 @@ object ReduxReceiverConversationMemory {
     }
     
     /**
-     * Processes messaging events to extract contextual information
+     * Queues the new messages of messaging events to have contextual information extracted from them
      */
-    private fun processMessagingEvent(context: Context, event: ReduxEventMessaging) {
+    private fun queueMessagingEvent(context: Context, event: ReduxEventMessaging) {
         when (event) {
             is ReduxEventMessaging.Message -> {
-                // Process new messages for memory extraction
+                // Queue both incoming and outgoing messages, as our own messages capture commitments and plans
                 for ((conversationInfo, insertResults) in event.conversationItems) {
                     for (insertResult in insertResults) {
                         if (insertResult.targetItem is MessageInfo) {
                             val messageInfo = insertResult.targetItem as MessageInfo
-                            processMessageForMemory(context, messageInfo, conversationInfo)
+                            ConversationMemoryManager.queueMessage(context, messageInfo, conversationInfo)
                         }
                     }
                 }
@@ -91,34 +92,4 @@ object ReduxReceiverConversationMemory {
             }
         }
     }
-    
-    /**
-     * Processes a single message for memory extraction
-     */
-    private fun processMessageForMemory(context: Context, message: MessageInfo, conversation: ConversationInfo) {
-        // Skip if message has no text or is very short
-        val messageText = message.messageText
-        if (messageText.isNullOrBlank() || messageText.length < 10) {
-            return
-        }
-        
-        // Process both incoming and outgoing messages for complete context
-        // Note: Processing outgoing messages helps capture our own commitments, plans, and context
-        
-        Log.d(TAG, "Processing message for memory extraction: conversation=${conversation.guid}")
-        
-        // Process the message asynchronously
-        val disposable = ConversationMemoryManager.processMessage(context, message, conversation)
-            .subscribeOn(Schedulers.io())
-            .subscribe(
-                { 
-                    Log.v(TAG, "Successfully processed message for memory") 
-                },
-                { error -> 
-                    Log.w(TAG, "Failed to process message for memory", error)
-                }
-            )
-        
-        disposables.add(disposable)
-    }
 }
\ No newline at end of file
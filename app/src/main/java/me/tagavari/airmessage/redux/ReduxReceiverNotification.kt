@@ -4,10 +4,10 @@ import android.content.Context
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.disposables.CompositeDisposable
-import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.MainApplication
 import me.tagavari.airmessage.activity.Messaging
 import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.enums.ConversationItemType
 import me.tagavari.airmessage.enums.MessageSendErrorCode
 import me.tagavari.airmessage.helper.LanguageHelper
@@ -22,7 +22,7 @@ class ReduxReceiverNotification(private val context: Context) {
 	private val compositeDisposable = CompositeDisposable()
 	
 	fun initialize() {
-		compositeDisposable.add(ReduxEmitterNetwork.messageUpdateSubject.subscribe { event: ReduxEventMessaging ->
+		compositeDisposable.add(ReduxEmitterNetwork.messageUpdateSubject.flatMapIterable { ReduxEventMessaging.unbatch(it) }.subscribe { event: ReduxEventMessaging ->
 			if(event is ConversationUpdate) {
 				//Loading a list of conversations in the foreground for later filtering
 				val foregroundConversations = Messaging.getForegroundConversations()
@@ -88,7 +88,7 @@ class ReduxReceiverNotification(private val context: Context) {
 					} else {
 						return@fromCallable pair
 					}
-				}.subscribeOn(Schedulers.single())
+				}.subscribeOn(DatabaseSchedulers.read)
 					.observeOn(AndroidSchedulers.mainThread())
 					.onErrorComplete()
 					.flatMapSingle { (item, conversation) ->
@@ -6,8 +6,8 @@ import androidx.annotation.RequiresApi
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.disposables.CompositeDisposable
-import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.helper.ConversationHelper
 import me.tagavari.airmessage.helper.ShortcutHelper
 import me.tagavari.airmessage.messaging.ConversationInfo
@@ -20,7 +20,7 @@ class ReduxReceiverShortcut(private val context: Context) {
 	
 	fun initialize() {
 		compositeDisposable.addAll(
-			ReduxEmitterNetwork.messageUpdateSubject.subscribe(::handleMessaging),
+			ReduxEmitterNetwork.messageUpdateSubject.flatMapIterable { ReduxEventMessaging.unbatch(it) }.subscribe(::handleMessaging),
 			ReduxEmitterNetwork.massRetrievalUpdateSubject.subscribe(::handleMassRetrieval),
 			ReduxEmitterNetwork.textImportUpdateSubject.subscribe(::handleTextImport)
 		)
@@ -68,7 +68,7 @@ class ReduxReceiverShortcut(private val context: Context) {
 		Single.fromCallable {
 			DatabaseManager.getInstance().fetchSummaryConversations(context, false, ShortcutHelper.dynamicShortcutLimit)
 		}
-			.subscribeOn(Schedulers.single())
+			.subscribeOn(DatabaseSchedulers.read)
 			.observeOn(AndroidSchedulers.mainThread())
 			.flatMapCompletable { conversations: List<ConversationInfo> ->
 				ShortcutHelper.assignShortcuts(context, conversations)
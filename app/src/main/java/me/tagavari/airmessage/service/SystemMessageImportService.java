@@ -10,13 +10,19 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.provider.Telephony;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
@@ -25,8 +31,10 @@ import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import me.tagavari.airmessage.MainApplication;
 import me.tagavari.airmessage.R;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.enums.ConversationState;
 import me.tagavari.airmessage.enums.ServiceHandler;
@@ -34,6 +42,8 @@ import me.tagavari.airmessage.enums.ServiceType;
 import me.tagavari.airmessage.helper.ConversationColorHelper;
 import me.tagavari.airmessage.helper.MMSSMSHelper;
 import me.tagavari.airmessage.helper.NotificationHelper;
+import me.tagavari.airmessage.helper.SystemMessageProviderSource;
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper;
 import me.tagavari.airmessage.messaging.ConversationInfo;
 import me.tagavari.airmessage.messaging.ConversationPreview;
 import me.tagavari.airmessage.messaging.MemberInfo;
@@ -45,6 +55,8 @@ public class SystemMessageImportService extends Service {
 	public static final String selfIntentActionImport = "import";
 	
 	private static final long notificationProgressMinUpdateInterval = 1000;
+	private static final long progressEventMinUpdateInterval = 16; //One frame at 60 FPS
+	private static final int messageBatchSize = 250; //The amount of messages to write per transaction
 	
 	private static final int notificationID = NotificationHelper.notificationIDMessageImport;
 	
@@ -99,6 +111,9 @@ public class SystemMessageImportService extends Service {
 		return Single.fromCallable(() -> {
 			List<ConversationInfo> conversationInfoList = new ArrayList<>();
 			
+			//Recording the state of the system database before importing, so that later changes are picked up by the next sync
+			SystemMessageSyncHelper.SyncState syncState = SystemMessageSyncHelper.captureState(new SystemMessageProviderSource(this));
+			
 			//Querying the conversations
 			Cursor cursorConversation = getContentResolver().query(
 					Uri.parse("content://mms-sms/conversations?simple=true"),
@@ -114,6 +129,28 @@ public class SystemMessageImportService extends Service {
 			
 			int conversationCount = cursorConversation.getCount();
 			long lastNotificationUpdateTime = System.currentTimeMillis();
+			long lastProgressEventTime = 0;
+			
+			//Recipient IDs are shared between threads, so all addresses are resolved up front and kept for the duration of the import
+			Map<Long, String> addressCache = new HashMap<>();
+			{
+				Set<Long> recipientIDSet = new HashSet<>();
+				while(cursorConversation.moveToNext()) {
+					String recipientIDs = cursorConversation.getString(iRecipientIDs);
+					if(recipientIDs == null) continue;
+					for(String recipientID : recipientIDs.split(" ")) {
+						try {
+							recipientIDSet.add(Long.parseLong(recipientID));
+						} catch(NumberFormatException exception) {
+							exception.printStackTrace();
+						}
+					}
+				}
+				cursorConversation.moveToPosition(-1);
+				
+				MMSSMSHelper.loadCanonicalAddresses(this, recipientIDSet, addressCache);
+			}
+			List<MessageInfo> messageBatch = new ArrayList<>(messageBatchSize);
 			
 			//Emitting an update
 			Completable.fromAction(() -> ReduxEmitterNetwork.getTextImportUpdateSubject().onNext(new ReduxEventTextImport.Start(conversationCount)))
@@ -130,9 +167,16 @@ public class SystemMessageImportService extends Service {
 						}
 					}
 					
-					//Emitting an update
-					Completable.fromAction(() -> ReduxEmitterNetwork.getTextImportUpdateSubject().onNext(new ReduxEventTextImport.Progress(cursorConversation.getPosition(), conversationCount)))
-							.subscribeOn(AndroidSchedulers.mainThread()).subscribe();
+					//Emitting an update, at most once per frame
+					{
+						long currentTime = SystemClock.uptimeMillis();
+						if(currentTime - lastProgressEventTime >= progressEventMinUpdateInterval) {
+							int position = cursorConversation.getPosition();
+							Completable.fromAction(() -> ReduxEmitterNetwork.getTextImportUpdateSubject().onNext(new ReduxEventTextImport.Progress(position, conversationCount)))
+									.subscribeOn(AndroidSchedulers.mainThread()).subscribe();
+							lastProgressEventTime = currentTime;
+						}
+					}
 					
 					//Ignoring empty conversations
 					if(cursorConversation.getInt(iMessageCount) == 0) continue;
@@ -146,14 +190,15 @@ public class SystemMessageImportService extends Service {
 						//boolean archived = cursorConversation.getInt(iArchived) == 1;
 						String recipientIDs = cursorConversation.getString(iRecipientIDs);
 						int conversationColor = ConversationColorHelper.getDefaultConversationColor(threadID);
-						List<MemberInfo> members = ConversationColorHelper.getColoredMembers(MMSSMSHelper.getAddressFromRecipientID(this, recipientIDs), conversationColor);
+						List<MemberInfo> members = ConversationColorHelper.getColoredMembers(MMSSMSHelper.getAddressFromRecipientID(this, recipientIDs, addressCache), conversationColor);
 						
 						//Creating the conversation
 						conversationInfo = new ConversationInfo(-1, null, threadID, ConversationState.ready, ServiceHandler.systemMessaging, ServiceType.systemSMS, conversationColor, members, null, 0, false, false, null, null, new ArrayList<>(), -1);
 					}
 					
 					//Writing the conversation to disk
-					boolean result = DatabaseManager.getInstance().addConversationInfo(conversationInfo);
+					boolean result = Single.fromCallable(() -> DatabaseManager.getInstance().addConversationInfo(conversationInfo))
+							.subscribeOn(DatabaseSchedulers.write).blockingGet();
 					if(!result) continue;
 					
 					//Adding the conversation to the list
@@ -164,28 +209,51 @@ public class SystemMessageImportService extends Service {
 					if(cursorMessage == null) continue;
 					
 					//Getting the messages columns
+					int mID = cursorMessage.getColumnIndexOrThrow(Telephony.BaseMmsColumns._ID);
 					int mMMSMessageBox = cursorMessage.getColumnIndexOrThrow(Telephony.Mms.MESSAGE_BOX);
 					
+					//Loading the parts of all MMS messages in the thread
+					Map<Long, List<MMSSMSHelper.MMSPartInfo>> mmsPartMap;
+					{
+						List<Long> mmsIDList = new ArrayList<>();
+						while(cursorMessage.moveToNext()) {
+							if(cursorMessage.getString(mMMSMessageBox) != null) mmsIDList.add(cursorMessage.getLong(mID));
+						}
+						cursorMessage.moveToPosition(-1);
+						
+						mmsPartMap = mmsIDList.isEmpty() ? Collections.emptyMap() : MMSSMSHelper.readMMSParts(this, mmsIDList);
+					}
+					
 					MessageInfo lastMessage = null;
 					while(cursorMessage.moveToNext()) {
 						MessageInfo messageInfo;
 						
 						//Used to discern if this is an MMS message or not
 						if(cursorMessage.getString(mMMSMessageBox) != null) { //MMS message
-							messageInfo = MMSSMSHelper.readMMSMessage(this, cursorMessage);
+							List<MMSSMSHelper.MMSPartInfo> partList = mmsPartMap.get(cursorMessage.getLong(mID));
+							messageInfo = MMSSMSHelper.readMMSMessage(this, cursorMessage, partList != null ? partList : Collections.emptyList());
 						} else { //SMS message
 							messageInfo = MMSSMSHelper.readSMSMessage(cursorMessage);
 						}
 						if(messageInfo == null) continue;
 						
-						//Writing the message to disk
-						long messageID = DatabaseManager.getInstance().addConversationItem(conversationInfo.getLocalID(), messageInfo, false);
-						messageInfo.setLocalID(messageID);
+						//Writing the messages to disk in batches
+						messageBatch.add(messageInfo);
+						if(messageBatch.size() >= messageBatchSize) {
+							writeMessageBatch(conversationInfo.getLocalID(), messageBatch);
+							messageBatch.clear();
+						}
 						
 						//Setting the last item
 						lastMessage = messageInfo;
 					}
 					
+					//Writing the remaining messages
+					if(!messageBatch.isEmpty()) {
+						writeMessageBatch(conversationInfo.getLocalID(), messageBatch);
+						messageBatch.clear();
+					}
+					
 					//Setting the conversation's preview
 					if(lastMessage != null) conversationInfo.setMessagePreview(ConversationPreview.Message.fromMessage(lastMessage));
 					
@@ -198,12 +266,17 @@ public class SystemMessageImportService extends Service {
 				exception.printStackTrace();
 			}
 			
+			SharedPreferencesManager.setTextSyncState(this, syncState);
+			
 			return conversationInfoList;
 		}).subscribeOn(requestScheduler)
 				.observeOn(AndroidSchedulers.mainThread()).subscribe(conversationInfoList -> {
 			//Emitting an update
 			ReduxEmitterNetwork.getTextImportUpdateSubject().onNext(new ReduxEventTextImport.Complete(conversationInfoList));
 			
+			//Keeping the imported messages up to date
+			MainApplication.getInstance().registerTextMessageListener();
+			
 			//Finishing the service
 			stopSelf();
 		}, error -> {
@@ -215,6 +288,12 @@ public class SystemMessageImportService extends Service {
 		});
 	}
 	
+	private static void writeMessageBatch(long conversationID, List<MessageInfo> messageBatch) {
+		//Writing on the database writer, and waiting so that the batch can be reused afterwards
+		Completable.fromAction(() -> DatabaseManager.getInstance().addConversationItems(conversationID, messageBatch, false))
+				.subscribeOn(DatabaseSchedulers.write).blockingAwait();
+	}
+	
 	private static void postNotification(Context context, Notification notification) {
 		NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 		notificationManager.notify(notificationID, notification);
@@ -78,10 +78,10 @@ public class ConversationActionTask {
 		List<ConversationInfo> clonedConversations = conversations.stream().map(ConversationInfo::clone).collect(Collectors.toList());
 		
 		return Completable.fromAction(() -> {
+			//Deleting the conversations from AirMessage's database
+			DatabaseManager.getInstance().deleteConversations(context, clonedConversations.stream().mapToLong(ConversationInfo::getLocalID).toArray());
+			
 			for(ConversationInfo conversationInfo : clonedConversations) {
-				//Delete the conversation from AirMessage's database
-				DatabaseManager.getInstance().deleteConversation(context, conversationInfo.getLocalID());
-				
 				//Deleting the conversation from the external database
 				if(conversationInfo.getServiceHandler() == ServiceHandler.systemMessaging && Preferences.isTextMessageIntegrationActive(context)) {
 					MMSSMSHelper.deleteConversation(context, conversationInfo.getExternalID());
@@ -102,7 +102,7 @@ public class ConversationActionTask {
 	@CheckReturnValue
 	public static Completable setConversationDraft(ConversationInfo conversationInfo, @Nullable String draftMessage, long updateTime) {
 		return Completable.fromAction(() -> {
-			DatabaseManager.getInstance().updateConversationDraftMessage(conversationInfo.getLocalID(), draftMessage, updateTime);
+			DatabaseManager.getInstance().queueConversationDraftMessage(conversationInfo.getLocalID(), draftMessage, updateTime);
 		}).observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> {
 			ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.ConversationDraftMessageUpdate(conversationInfo, draftMessage, updateTime));
 		});
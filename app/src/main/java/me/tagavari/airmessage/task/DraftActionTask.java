@@ -8,6 +8,7 @@ import io.reactivex.rxjava3.core.SingleEmitter;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.connection.exception.AMRequestException;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.MessageSendErrorCode;
 import me.tagavari.airmessage.helper.AttachmentStorageHelper;
 import me.tagavari.airmessage.helper.DataCompressionHelper;
@@ -44,7 +45,7 @@ public class DraftActionTask {
 			}
 			
 			emitter.onSuccess(draft);
-		}).subscribeOn(Schedulers.single()).observeOn(Schedulers.io()).doOnSuccess(draft -> {
+		}).subscribeOn(DatabaseSchedulers.write).observeOn(Schedulers.io()).doOnSuccess(draft -> {
 			//Copying and compressing the file
 			if(linkedFile.getFile().isA()) {
 				try(FileInputStream fileInputStream = new FileInputStream(linkedFile.getFile().getA())) {
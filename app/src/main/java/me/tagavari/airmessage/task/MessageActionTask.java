@@ -7,13 +7,12 @@ import io.reactivex.rxjava3.annotations.CheckReturnValue;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
 import me.tagavari.airmessage.enums.MessageSendErrorCode;
 import me.tagavari.airmessage.enums.MessageState;
 import me.tagavari.airmessage.enums.ServiceHandler;
-import me.tagavari.airmessage.helper.AttachmentStorageHelper;
 import me.tagavari.airmessage.messaging.AttachmentInfo;
 import me.tagavari.airmessage.messaging.ConversationInfo;
 import me.tagavari.airmessage.messaging.MessageInfo;
@@ -32,7 +31,7 @@ public class MessageActionTask {
 	@CheckReturnValue
 	public static Single<List<MessageInfo>> writeMessages(ConversationInfo conversationInfo, List<MessageInfo> messages) {
 		return Observable.fromIterable(messages)
-				.observeOn(Schedulers.single()).map(message -> {
+				.observeOn(DatabaseSchedulers.write).map(message -> {
 					//Write the items to the database
 					long messageID = DatabaseManager.getInstance().addConversationItem(conversationInfo.getLocalID(), message, conversationInfo.getServiceHandler() == ServiceHandler.appleBridge);
 					if(messageID == -1) throw new Exception("Failed to add message to database");
@@ -52,8 +51,8 @@ public class MessageActionTask {
 	@CheckReturnValue
 	public static Completable updateMessageState(ConversationInfo conversationInfo, MessageInfo message, @MessageState int state) {
 		return Completable.create(emitter -> {
-			//Write the item to the database
-			DatabaseManager.getInstance().updateMessageState(message.getLocalID(), state);
+			//Queue the update to be written to the database
+			DatabaseManager.getInstance().queueMessageState(message.getLocalID(), state);
 			
 			emitter.onComplete();
 		}).observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> {
@@ -69,7 +68,7 @@ public class MessageActionTask {
 	public static Completable updateMessageErrorCode(ConversationInfo conversationInfo, MessageInfo message, @MessageSendErrorCode int errorCode, @Nullable String errorDetail) {
 		//Write the item to the database
 		return Completable.fromAction(() -> DatabaseManager.getInstance().updateMessageErrorCode(message.getLocalID(), errorCode, errorDetail))
-				.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> {
+				.subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> {
 			//Notify the emitter
 			ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.MessageError(conversationInfo, message, errorCode, errorDetail));
 		});
@@ -81,7 +80,7 @@ public class MessageActionTask {
 	@CheckReturnValue
 	public static Completable deleteMessages(Context context, ConversationInfo conversationInfo, List<MessageInfo> messages) {
 		return Observable.fromIterable(messages)
-				.observeOn(Schedulers.single()).doOnNext(message -> {
+				.observeOn(DatabaseSchedulers.write).doOnNext(message -> {
 					//Write the items to the database
 					DatabaseManager.getInstance().deleteMessage(context, message.getLocalID());
 				}).observeOn(AndroidSchedulers.mainThread()).doOnNext(message -> {
@@ -94,14 +93,11 @@ public class MessageActionTask {
 	 * Deletes the file of an attachment
 	 */
 	@CheckReturnValue
-	public static Completable deleteAttachmentFile(long messageID, AttachmentInfo attachmentInfo) {
+	public static Completable deleteAttachmentFile(Context context, long messageID, AttachmentInfo attachmentInfo) {
 		return Completable.fromAction(() -> {
-			//Deleting the attachment file
-			AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameAttachment, attachmentInfo.getFile());
-			
-			//Updating the attachment's database entry
-			DatabaseManager.getInstance().invalidateAttachment(attachmentInfo.getLocalID());
-		}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> {
+			//Deleting the attachment file, unless it is shared with another attachment
+			DatabaseManager.getInstance().deleteAttachmentFile(context, attachmentInfo.getLocalID());
+		}).subscribeOn(DatabaseSchedulers.write).observeOn(AndroidSchedulers.mainThread()).doOnComplete(() -> {
 			//Notify the emitter
 			ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.AttachmentFile(messageID, attachmentInfo.getLocalID(), null, null, null));
 		});
@@ -0,0 +1,82 @@
+package me.tagavari.airmessage.worker
+
+import android.content.Context
+import android.util.Log
+import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequest
+import androidx.work.PeriodicWorkRequest
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.rxjava3.RxWorker
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
+import io.reactivex.rxjava3.core.Completable
+import io.reactivex.rxjava3.core.Single
+import me.tagavari.airmessage.activity.Preferences
+import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
+import me.tagavari.airmessage.helper.AttachmentCacheHelper
+import me.tagavari.airmessage.helper.AttachmentStorageHelper
+import me.tagavari.airmessage.redux.ReduxEmitterNetwork
+import me.tagavari.airmessage.redux.ReduxEventMessaging
+import java.util.concurrent.TimeUnit
+
+class AttachmentCacheWorker(appContext: Context, workerParams: WorkerParameters): RxWorker(appContext, workerParams) {
+    override fun createWork(): Single<Result> {
+        return Single.fromCallable {
+            //Ignoring if there is no quota
+            val quotaBytes = Preferences.getPreferenceAttachmentQuota(applicationContext)
+            if(quotaBytes <= 0) return@fromCallable Result.success()
+
+            //Finding the files to remove
+            val evictedPaths = AttachmentCacheHelper.planEviction(
+                DatabaseManager.getInstance().fetchCachedAttachments(),
+                { path -> AttachmentStorageHelper.getAbsolutePath(applicationContext, path).let { file -> if(file.exists()) file.length() else -1 } },
+                quotaBytes,
+                System.currentTimeMillis()
+            )
+            if(evictedPaths.isEmpty()) return@fromCallable Result.success()
+            Log.i(TAG, "Removing ${evictedPaths.size} attachment files to stay under the storage quota")
+
+            //Removing the files
+            val evictedAttachments = Single.fromCallable { evictedPaths.flatMap { path -> DatabaseManager.getInstance().evictAttachmentFile(applicationContext, path) } }
+                .subscribeOn(DatabaseSchedulers.write).blockingGet()
+
+            //Returning the attachments to their undownloaded state
+            Completable.fromAction {
+                for((messageID, attachmentID) in evictedAttachments) {
+                    ReduxEmitterNetwork.messageUpdateSubject.onNext(ReduxEventMessaging.AttachmentFile(messageID, attachmentID, null, null, null))
+                }
+            }.subscribeOn(AndroidSchedulers.mainThread()).blockingAwait()
+
+            Result.success()
+        }.onErrorReturn { error ->
+            Log.w(TAG, "Failed to trim attachment files", error)
+            Result.failure()
+        }
+    }
+
+    companion object {
+        private val TAG = AttachmentCacheWorker::class.java.simpleName
+        const val workName = "AttachmentCacheWorker"
+        const val periodicWorkName = "AttachmentCacheWorkerPeriodic"
+
+        /**
+         * Schedules attachment files to be trimmed once a day, if they aren't already scheduled
+         */
+        @JvmStatic
+        fun schedule(context: Context) {
+            val workRequest = PeriodicWorkRequest.Builder(AttachmentCacheWorker::class.java, 1, TimeUnit.DAYS).build()
+            WorkManager.getInstance(context).enqueueUniquePeriodicWork(periodicWorkName, ExistingPeriodicWorkPolicy.KEEP, workRequest)
+        }
+
+        /**
+         * Trims attachment files now, such as after the quota is changed
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val workRequest = OneTimeWorkRequest.Builder(AttachmentCacheWorker::class.java).build()
+            WorkManager.getInstance(context).enqueueUniqueWork(workName, ExistingWorkPolicy.REPLACE, workRequest)
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package me.tagavari.airmessage.worker
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.rxjava3.RxWorker
+import io.reactivex.rxjava3.core.Single
+import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
+
+class FileSweepWorker(appContext: Context, workerParams: WorkerParameters): RxWorker(appContext, workerParams) {
+    override fun createWork(): Single<Result> {
+        return Single.fromCallable {
+            val startTime = SystemClock.elapsedRealtime()
+
+            //Removing trashed files
+            val sweptCount = DatabaseManager.getInstance().sweepTrashedFiles(applicationContext)
+
+            if(sweptCount > 0) Log.i(TAG, "Removed $sweptCount trashed files in ${SystemClock.elapsedRealtime() - startTime} ms")
+            Result.success()
+        }.subscribeOn(DatabaseSchedulers.write).onErrorReturn { error ->
+            Log.w(TAG, "Failed to remove trashed files", error)
+            Result.retry()
+        }
+    }
+
+    companion object {
+        private val TAG = FileSweepWorker::class.java.simpleName
+        const val workName = "FileSweepWorker"
+
+        /**
+         * Removes trashed files in the background, after any sweep that is already running
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val workRequest = OneTimeWorkRequest.Builder(FileSweepWorker::class.java).build()
+            WorkManager.getInstance(context).enqueueUniqueWork(workName, ExistingWorkPolicy.APPEND_OR_REPLACE, workRequest)
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package me.tagavari.airmessage.worker
+
+import android.content.Context
+import android.database.DatabaseUtils
+import android.os.SystemClock
+import android.util.Log
+import androidx.work.Constraints
+import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.PeriodicWorkRequest
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.rxjava3.RxWorker
+import io.reactivex.rxjava3.core.Single
+import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
+import java.util.concurrent.TimeUnit
+
+class MessageArchiveWorker(appContext: Context, workerParams: WorkerParameters): RxWorker(appContext, workerParams) {
+    override fun createWork(): Single<Result> {
+        return Single.fromCallable {
+            val databaseManager = DatabaseManager.getInstance()
+            val usedBytesBefore = getDatabaseUsedBytes(databaseManager)
+            val startTime = SystemClock.elapsedRealtime()
+
+            //Archiving old items
+            val archivedCount = databaseManager.archiveOldConversationItems()
+
+            Log.i(TAG, "Archived $archivedCount items in ${SystemClock.elapsedRealtime() - startTime} ms, " +
+                    "database pages in use went from $usedBytesBefore to ${getDatabaseUsedBytes(databaseManager)} bytes")
+            Result.success()
+        }.subscribeOn(DatabaseSchedulers.write).onErrorReturn { error ->
+            Log.w(TAG, "Failed to archive old messages", error)
+            Result.failure()
+        }
+    }
+
+    /**
+     * Gets the amount of bytes used by the database, not including free pages
+     */
+    private fun getDatabaseUsedBytes(databaseManager: DatabaseManager): Long {
+        val database = databaseManager.readableDatabase
+        val pageCount = DatabaseUtils.longForQuery(database, "PRAGMA page_count", null)
+        val freePageCount = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null)
+        val pageSize = DatabaseUtils.longForQuery(database, "PRAGMA page_size", null)
+        return (pageCount - freePageCount) * pageSize
+    }
+
+    companion object {
+        private val TAG = MessageArchiveWorker::class.java.simpleName
+        const val workName = "MessageArchiveWorker"
+
+        /**
+         * Schedules old messages to be archived once a week while the device is idle, if they aren't already scheduled
+         */
+        @JvmStatic
+        fun schedule(context: Context) {
+            val workRequest = PeriodicWorkRequest.Builder(MessageArchiveWorker::class.java, 7, TimeUnit.DAYS)
+                .setConstraints(Constraints.Builder()
+                    .setRequiresDeviceIdle(true)
+                    .setRequiresBatteryNotLow(true)
+                    .build())
+                .build()
+            WorkManager.getInstance(context).enqueueUniquePeriodicWork(workName, ExistingPeriodicWorkPolicy.KEEP, workRequest)
+        }
+    }
+}
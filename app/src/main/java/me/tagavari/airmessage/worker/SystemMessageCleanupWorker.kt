@@ -1,12 +1,14 @@
 package me.tagavari.airmessage.worker
 
 import android.content.Context
+import android.os.SystemClock
 import android.util.Log
 import androidx.work.WorkerParameters
 import androidx.work.rxjava3.RxWorker
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Single
 import me.tagavari.airmessage.data.DatabaseManager
+import me.tagavari.airmessage.data.DatabaseSchedulers
 import me.tagavari.airmessage.data.SharedPreferencesManager
 import me.tagavari.airmessage.enums.ServiceHandler
 import me.tagavari.airmessage.redux.ReduxEmitterNetwork
@@ -17,8 +19,12 @@ class SystemMessageCleanupWorker(appContext: Context, workerParams: WorkerParame
         Log.i(TAG, "Starting system message cleanup worker")
 
         return Single.fromCallable {
-            DatabaseManager.getInstance().deleteConversationsByServiceHandler(applicationContext, ServiceHandler.systemMessaging)
+            val startTime = SystemClock.elapsedRealtime()
+            DatabaseManager.getInstance().deleteConversationsByServiceHandler(applicationContext, ServiceHandler.systemMessaging).also { deletedIDs ->
+                Log.i(TAG, "Deleted ${deletedIDs.size} conversations in ${SystemClock.elapsedRealtime() - startTime} ms")
+            }
         }
+            .subscribeOn(DatabaseSchedulers.write)
             .observeOn(AndroidSchedulers.mainThread())
             .doOnSuccess { deletedIDs: LongArray ->
                 //Sending an update
@@ -26,6 +32,7 @@ class SystemMessageCleanupWorker(appContext: Context, workerParams: WorkerParame
 
                 //Updating the shared preferences value
                 SharedPreferencesManager.setTextMessageConversationsInstalled(applicationContext, false)
+                SharedPreferencesManager.setTextSyncState(applicationContext, null)
             }
             .map { Result.success() }
     }
@@ -0,0 +1,65 @@
+package me.tagavari.airmessage.worker
+
+import android.content.Context
+import android.util.Log
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.rxjava3.RxWorker
+import io.reactivex.rxjava3.core.Single
+import me.tagavari.airmessage.activity.Preferences
+import me.tagavari.airmessage.data.SharedPreferencesManager
+import me.tagavari.airmessage.helper.SystemMessageDatabaseTarget
+import me.tagavari.airmessage.helper.SystemMessageProviderSource
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper
+import java.util.concurrent.TimeUnit
+
+class SystemMessageSyncWorker(appContext: Context, workerParams: WorkerParameters): RxWorker(appContext, workerParams) {
+    override fun createWork(): Single<Result> {
+        return Single.fromCallable {
+            //Ignoring if text messages aren't imported
+            if(!Preferences.isTextMessageIntegrationActive(applicationContext) || !SharedPreferencesManager.getTextMessageConversationsInstalled(applicationContext)) {
+                return@fromCallable Result.success()
+            }
+
+            val source = SystemMessageProviderSource(applicationContext)
+            val previousState = SharedPreferencesManager.getTextSyncState(applicationContext)
+
+            val state = if(previousState == null) {
+                //Recording a starting point for the next sync
+                Log.i(TAG, "No previous text message sync state, recording current state")
+                SystemMessageSyncHelper.captureState(source)
+            } else {
+                Log.i(TAG, "Starting text message sync")
+                SystemMessageSyncHelper.sync(source, SystemMessageDatabaseTarget(applicationContext), previousState, SharedPreferencesManager.getTextSyncSkippedSMS(applicationContext))
+            }
+
+            SharedPreferencesManager.setTextSyncState(applicationContext, state)
+            Result.success()
+        }.onErrorReturn { error ->
+            Log.w(TAG, "Failed to sync text messages", error)
+            Result.retry()
+        }
+    }
+
+    companion object {
+        private val TAG = SystemMessageSyncWorker::class.java.simpleName
+        const val workName = "SystemMessageSyncWorker"
+
+        //How long to wait for changes to settle before syncing
+        private const val syncDelay = 3L
+
+        /**
+         * Schedules a sync of text messages, unless one is already scheduled. A scheduled sync picks up every change
+         * made before it runs, so it is kept rather than being pushed back by each new change.
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val workRequest = OneTimeWorkRequest.Builder(SystemMessageSyncWorker::class.java)
+                .setInitialDelay(syncDelay, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(workName, ExistingWorkPolicy.KEEP, workRequest)
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package me.tagavari.airmessage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import me.tagavari.airmessage.helper.AIRequestScheduler;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AIRequestSchedulerTest {
+	private static final String provider = "test";
+	
+	private final CountDownLatch releaseLatch = new CountDownLatch(1);
+	private FakeServer server;
+	
+	@After
+	public void tearDown() {
+		releaseLatch.countDown();
+		if(server != null) server.close();
+	}
+	
+	@Test
+	public void testPriorityOrder() throws InterruptedException {
+		AIRequestScheduler scheduler = createScheduler(new AIRequestScheduler.ProviderLimits(1, 0, 1));
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		
+		//Occupying the only slot, then queueing background requests ahead of a foreground request
+		CountDownLatch startedLatch = new CountDownLatch(1);
+		Thread blocker = startJob(scheduler, AIRequestScheduler.Priority.FOREGROUND, () -> {
+			startedLatch.countDown();
+			awaitRelease();
+		});
+		assertThat(startedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+		
+		List<Thread> threads = new ArrayList<>();
+		threads.add(blocker);
+		threads.add(startQueuedJob(scheduler, AIRequestScheduler.Priority.BACKGROUND, () -> order.add("background 1")));
+		threads.add(startQueuedJob(scheduler, AIRequestScheduler.Priority.BACKGROUND, () -> order.add("background 2")));
+		threads.add(startQueuedJob(scheduler, AIRequestScheduler.Priority.FOREGROUND, () -> order.add("foreground")));
+		
+		//The foreground request should overtake the background requests, which keep their order
+		releaseLatch.countDown();
+		for(Thread thread : threads) thread.join(5000);
+		assertThat(order).containsExactly("foreground", "background 1", "background 2").inOrder();
+	}
+	
+	@Test
+	public void testConcurrencyLimit() throws InterruptedException {
+		AIRequestScheduler scheduler = createScheduler(new AIRequestScheduler.ProviderLimits(2, 0, 1));
+		AtomicInteger runningCount = new AtomicInteger();
+		AtomicInteger maxRunningCount = new AtomicInteger();
+		
+		List<Thread> threads = new ArrayList<>();
+		for(int i = 0; i < 8; i++) {
+			threads.add(startJob(scheduler, AIRequestScheduler.Priority.BACKGROUND, () -> {
+				maxRunningCount.accumulateAndGet(runningCount.incrementAndGet(), Math::max);
+				sleep(20);
+				runningCount.decrementAndGet();
+			}));
+		}
+		for(Thread thread : threads) thread.join(5000);
+		
+		//No more than 2 requests should have run at once, and each request's latency should be recorded
+		assertThat(maxRunningCount.get()).isEqualTo(2);
+		AIRequestScheduler.LatencyStats stats = getStats(scheduler, AIRequestScheduler.Priority.BACKGROUND);
+		assertThat(stats.getRequestCount()).isEqualTo(8);
+		assertThat(stats.getP50Millis()).isAtLeast(20L);
+		assertThat(stats.getP90Millis()).isAtLeast(stats.getP50Millis());
+		assertThat(stats.getP99Millis()).isAtLeast(stats.getP90Millis());
+	}
+	
+	@Test
+	public void testRateLimit() throws IOException {
+		//A full bucket should allow a burst, then hand out tokens at the sustained rate
+		long minute = TimeUnit.MINUTES.toNanos(1);
+		AIRequestScheduler.TokenBucket bucket = new AIRequestScheduler.TokenBucket(2, 60, 0);
+		assertThat(bucket.tryAcquire(0)).isEqualTo(0L);
+		assertThat(bucket.tryAcquire(0)).isEqualTo(0L);
+		assertThat(bucket.tryAcquire(0)).isEqualTo(minute / 60);
+		assertThat(bucket.tryAcquire(minute / 120)).isEqualTo(minute / 120);
+		assertThat(bucket.tryAcquire(minute / 60)).isEqualTo(0L);
+		
+		//Tokens shouldn't build up past the bucket's capacity
+		assertThat(bucket.tryAcquire(minute)).isEqualTo(0L);
+		assertThat(bucket.tryAcquire(minute)).isEqualTo(0L);
+		assertThat(bucket.tryAcquire(minute)).isGreaterThan(0L);
+		
+		//The scheduler should pace requests beyond the burst, starting one more each time the clock reaches the next token
+		AtomicLong clock = new AtomicLong();
+		AIRequestScheduler scheduler = new AIRequestScheduler(Map.of(provider, new AIRequestScheduler.ProviderLimits(4, 600, 1)), new AIRequestScheduler.ProviderLimits(1, 0, 1), clock::get);
+		AtomicInteger completedCount = new AtomicInteger();
+		Thread thread = new Thread(() -> {
+			try {
+				for(int i = 0; i < 4; i++) scheduler.execute(provider, AIRequestScheduler.Priority.FOREGROUND, canceller -> completedCount.incrementAndGet());
+			} catch(IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		});
+		thread.start();
+		
+		for(int i = 1; i <= 4; i++) {
+			if(i > 1) clock.addAndGet(minute / 600);
+			int expectedCount = i;
+			assertThat(awaitCondition(() -> completedCount.get() == expectedCount)).isTrue();
+			
+			//The next request should wait for the clock rather than start on its own
+			assertThat(awaitCondition(() -> thread.getState() == Thread.State.TIMED_WAITING || thread.getState() == Thread.State.TERMINATED)).isTrue();
+			assertThat(completedCount.get()).isEqualTo(expectedCount);
+		}
+		thread.join(5000);
+	}
+	
+	@Test
+	public void testPreemption() throws IOException, InterruptedException {
+		//Starting a fake server that holds the first request until the test ends
+		AtomicInteger requestCount = new AtomicInteger();
+		AtomicBoolean isFirstReleased = new AtomicBoolean();
+		server = FakeServer.start().handle("/api/generate", body -> {
+			int request = requestCount.incrementAndGet();
+			if(request == 1) {
+				awaitRelease();
+				isFirstReleased.set(true);
+			}
+			return FakeServer.Reply.ok("response " + request);
+		});
+		
+		OkHttpClient client = new OkHttpClient();
+		Request request = new Request.Builder().url(server.getUrl("/api/generate")).build();
+		AIRequestScheduler scheduler = createScheduler(new AIRequestScheduler.ProviderLimits(1, 0, 1));
+		
+		//Making a background request that the server doesn't answer
+		AtomicReference<String> backgroundResult = new AtomicReference<>();
+		Thread backgroundThread = new Thread(() -> {
+			try {
+				backgroundResult.set(scheduler.execute(provider, AIRequestScheduler.Priority.BACKGROUND, canceller -> {
+					Call call = client.newCall(request);
+					canceller.attach(call);
+					try(Response response = call.execute()) {
+						return response.body().string();
+					} catch(IOException exception) {
+						return null;
+					}
+				}));
+			} catch(IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		});
+		backgroundThread.start();
+		assertThat(awaitCondition(() -> requestCount.get() > 0)).isTrue();
+		
+		//A foreground request should cancel the background request rather than wait for it, so it runs while the server still holds the first request
+		String foregroundResult = scheduler.execute(provider, AIRequestScheduler.Priority.FOREGROUND, canceller -> isFirstReleased.get() ? "waited" : "foreground");
+		assertThat(foregroundResult).isEqualTo("foreground");
+		
+		//The background request should be retried afterwards, rather than failing
+		backgroundThread.join(5000);
+		assertThat(backgroundResult.get()).isEqualTo("response 2");
+		assertThat(getStats(scheduler, AIRequestScheduler.Priority.BACKGROUND).getPreemptedCount()).isEqualTo(1);
+		assertThat(getStats(scheduler, AIRequestScheduler.Priority.FOREGROUND).getRequestCount()).isEqualTo(1);
+	}
+	
+	private static AIRequestScheduler createScheduler(AIRequestScheduler.ProviderLimits limits) {
+		return new AIRequestScheduler(Map.of(provider, limits));
+	}
+	
+	private static AIRequestScheduler.LatencyStats getStats(AIRequestScheduler scheduler, AIRequestScheduler.Priority priority) {
+		return scheduler.getLatencyStats().stream().filter(stats -> stats.getPriority() == priority).findFirst().orElseThrow();
+	}
+	
+	/**
+	 * Runs a request on a new thread
+	 */
+	private static Thread startJob(AIRequestScheduler scheduler, AIRequestScheduler.Priority priority, Runnable action) {
+		Thread thread = new Thread(() -> {
+			try {
+				scheduler.execute(provider, priority, canceller -> {
+					action.run();
+					return null;
+				});
+			} catch(IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+	
+	/**
+	 * Runs a request on a new thread, and waits for it to be queued
+	 */
+	private static Thread startQueuedJob(AIRequestScheduler scheduler, AIRequestScheduler.Priority priority, Runnable action) {
+		Thread thread = startJob(scheduler, priority, action);
+		awaitCondition(() -> thread.getState() == Thread.State.WAITING);
+		return thread;
+	}
+	
+	/**
+	 * Waits up to 5 seconds for a condition to be met
+	 * @return Whether the condition was met
+	 */
+	private static boolean awaitCondition(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!condition.getAsBoolean()) {
+			if(System.currentTimeMillis() > deadline) return false;
+			sleep(1);
+		}
+		return true;
+	}
+	
+	private void awaitRelease() {
+		try {
+			releaseLatch.await(10, TimeUnit.SECONDS);
+		} catch(InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch(InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package me.tagavari.airmessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.tagavari.airmessage.data.AIResponseCache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AIResponseCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final AtomicInteger computeCount = new AtomicInteger();
+	private final AtomicLong time = new AtomicLong();
+	
+	private String compute(AIResponseCache cache, long conversationID, String input) {
+		return cache.getOrCompute("smart_reply", "ollama:llama3.2", conversationID, input, () -> "reply " + computeCount.incrementAndGet());
+	}
+	
+	@Test
+	public void testNormalizedHit() {
+		AIResponseCache cache = new AIResponseCache(null);
+		
+		assertThat(compute(cache, 1, "Alice: hello\nBob: hi")).isEqualTo("reply 1");
+		assertThat(compute(cache, 1, "  Alice: hello \n\n Bob: hi ")).isEqualTo("reply 1");
+		assertThat(compute(cache, 1, "Alice: hello\nBob: hi there")).isEqualTo("reply 2");
+		
+		//Different features and models shouldn't share responses
+		assertThat(AIResponseCache.getKey("summary", "ollama:llama3.2", "input")).isNotEqualTo(AIResponseCache.getKey("smart_reply", "ollama:llama3.2", "input"));
+		assertThat(AIResponseCache.getKey("summary", "ollama:llama3.2", "input")).isNotEqualTo(AIResponseCache.getKey("summary", "gemini:gemini-1.5-flash", "input"));
+		
+		AIResponseCache.Stats stats = cache.getStats();
+		assertThat(stats.getHitCount()).isEqualTo(1);
+		assertThat(stats.getMissCount()).isEqualTo(2);
+	}
+	
+	@Test
+	public void testInvalidation() {
+		AIResponseCache cache = new AIResponseCache(null);
+		
+		compute(cache, 1, "input");
+		compute(cache, 2, "other input");
+		cache.invalidateConversation(1);
+		
+		assertThat(compute(cache, 1, "input")).isEqualTo("reply 3");
+		assertThat(compute(cache, 2, "other input")).isEqualTo("reply 2");
+	}
+	
+	@Test
+	public void testExpiry() {
+		AIResponseCache cache = new AIResponseCache(null, 8, 8, 1000, time::get);
+		
+		compute(cache, 1, "input");
+		time.set(999);
+		assertThat(compute(cache, 1, "input")).isEqualTo("reply 1");
+		time.set(1000);
+		assertThat(compute(cache, 1, "input")).isEqualTo("reply 2");
+	}
+	
+	@Test
+	public void testDiskCache() {
+		File directory = new File(folder.getRoot(), "cache");
+		compute(new AIResponseCache(directory), 1, "input");
+		
+		//A new cache with the same directory should be able to serve the response
+		AIResponseCache cache = new AIResponseCache(directory);
+		assertThat(compute(cache, 1, "input")).isEqualTo("reply 1");
+		assertThat(cache.getStats().getHitCount()).isEqualTo(1);
+		
+		cache.invalidateConversation(1);
+		assertThat(compute(new AIResponseCache(directory), 1, "input")).isEqualTo("reply 2");
+	}
+	
+	@Test
+	public void testInvalidationDuringCompute() {
+		File directory = new File(folder.getRoot(), "cache");
+		AIResponseCache cache = new AIResponseCache(directory);
+		
+		//A response computed from a conversation that changed meanwhile shouldn't be cached
+		assertThat(cache.getOrCompute("smart_reply", "ollama:llama3.2", 1, "input", () -> {
+			cache.invalidateConversation(1);
+			return "stale reply";
+		})).isEqualTo("stale reply");
+		assertThat(compute(cache, 1, "input")).isEqualTo("reply 1");
+		assertThat(compute(new AIResponseCache(directory), 1, "input")).isEqualTo("reply 1");
+	}
+}
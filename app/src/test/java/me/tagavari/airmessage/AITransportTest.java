@@ -0,0 +1,106 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.tagavari.airmessage.helper.AITransport;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class AITransportTest {
+	@Test
+	public void testConnectionReuse() throws IOException {
+		//Starting a loopback server, which records the client port of each request
+		try(FakeServer server = FakeServer.start().handle("/api/generate", body -> FakeServer.Reply.ok("{}"))) {
+			String url = server.getUrl("/api/generate");
+			
+			//Simulating features that use clients with their own timeouts
+			OkHttpClient enhancementClient = AITransport.newClient(30, 60);
+			OkHttpClient memoryClient = AITransport.newClient(15, 15);
+			OkHttpClient probeClient = AITransport.newClient(3, 5);
+			
+			for(OkHttpClient client : new OkHttpClient[]{enhancementClient, memoryClient, probeClient, enhancementClient}) {
+				try(Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+					assertThat(response.isSuccessful()).isTrue();
+					response.body().string();
+				}
+			}
+			
+			//All requests should have been sent over the same connection
+			assertThat(server.getClientPorts()).hasSize(1);
+			assertThat(memoryClient.connectionPool()).isSameInstanceAs(AITransport.getClient().connectionPool());
+			assertThat(memoryClient.dispatcher()).isSameInstanceAs(AITransport.getClient().dispatcher());
+			
+			//The requests should be reported under the Ollama provider
+			AITransport.LatencyStats stats = AITransport.getLatencyStats().stream()
+					.filter(item -> item.getProvider().equals(AITransport.providerOllama))
+					.findFirst().orElseThrow(AssertionError::new);
+			assertThat(stats.getRequestCount()).isAtLeast(4);
+		}
+	}
+	
+	@Test
+	public void testSlotLimit() throws IOException, InterruptedException {
+		//Starting a loopback server that holds generation requests until the test ends
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		AtomicInteger generateCount = new AtomicInteger();
+		FakeServer server = FakeServer.start()
+				.handle("/api/generate", body -> {
+					generateCount.incrementAndGet();
+					releaseLatch.await(10, TimeUnit.SECONDS);
+					return FakeServer.Reply.ok("{}");
+				})
+				.handle("/api/tags", body -> FakeServer.Reply.ok("{}"));
+		
+		List<Thread> threads = new ArrayList<>();
+		try {
+			String baseUrl = server.getBaseUrl();
+			OkHttpClient client = AITransport.newClient(1, 15);
+			
+			//Filling every request slot with a generation that doesn't finish
+			for(int i = 0; i < AITransport.maxConcurrentRequests; i++) {
+				Thread thread = new Thread(() -> {
+					try(Response response = client.newCall(new Request.Builder().url(baseUrl + "/api/generate").build()).execute()) {
+						response.body().string();
+					} catch(IOException exception) {
+						//Ignoring
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while(generateCount.get() < AITransport.maxConcurrentRequests && System.currentTimeMillis() < deadline) Thread.sleep(1);
+			
+			//Another request should give up after its connect timeout instead of waiting forever
+			assertThrows(InterruptedIOException.class, () -> client.newCall(new Request.Builder().url(baseUrl + "/api/generate").build()).execute());
+			
+			//A probe should skip the limit
+			try(Response response = client.newCall(AITransport.asProbe(new Request.Builder()).url(baseUrl + "/api/tags").build()).execute()) {
+				assertThat(response.isSuccessful()).isTrue();
+			}
+		} finally {
+			releaseLatch.countDown();
+			for(Thread thread : threads) thread.join(5000);
+			server.close();
+		}
+	}
+	
+	@Test
+	public void testProvider() {
+		assertThat(AITransport.getProvider("generativelanguage.googleapis.com")).isEqualTo(AITransport.providerGemini);
+		assertThat(AITransport.getProvider("ollama.com")).isEqualTo(AITransport.providerOllamaTurbo);
+		assertThat(AITransport.getProvider("192.168.1.20")).isEqualTo(AITransport.providerOllama);
+	}
+}
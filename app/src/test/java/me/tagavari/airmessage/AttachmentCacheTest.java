@@ -0,0 +1,95 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.tagavari.airmessage.helper.AttachmentCacheHelper;
+import me.tagavari.airmessage.helper.AttachmentCacheHelper.CachedAttachment;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AttachmentCacheTest {
+	private static final long day = 24 * 60 * 60 * 1000L;
+	private static final long now = 100 * day;
+
+	@Test
+	public void testUnderQuota() {
+		FakeFiles files = new FakeFiles();
+		files.add("a", 100);
+		files.add("b", 100);
+
+		assertThat(AttachmentCacheHelper.planEviction(Arrays.asList(
+				new CachedAttachment(1, 1, "a", 0, true),
+				new CachedAttachment(2, 2, "b", 0, true)
+		), files, 200, now)).isEmpty();
+	}
+
+	@Test
+	public void testLeastRecentlyViewed() {
+		FakeFiles files = new FakeFiles();
+		files.add("a", 100);
+		files.add("b", 100);
+		files.add("c", 100);
+
+		//Only enough files to get under the quota should be removed, oldest first
+		assertThat(AttachmentCacheHelper.planEviction(Arrays.asList(
+				new CachedAttachment(1, 1, "a", now - 2 * day, true),
+				new CachedAttachment(2, 2, "b", now - 10 * day, true),
+				new CachedAttachment(3, 3, "c", now - 5 * day, true)
+		), files, 150, now)).containsExactly("b", "c").inOrder();
+	}
+
+	@Test
+	public void testProtectedFiles() {
+		FakeFiles files = new FakeFiles();
+		files.add("outgoing", 100);
+		files.add("recent", 100);
+		files.add("shared", 100);
+		files.add("old", 100);
+
+		List<String> evicted = AttachmentCacheHelper.planEviction(Arrays.asList(
+				new CachedAttachment(1, 1, "outgoing", 0, false),
+				new CachedAttachment(2, 2, "recent", now - 1000, true),
+				new CachedAttachment(3, 3, "shared", 0, true),
+				new CachedAttachment(4, 4, "shared", 0, false),
+				new CachedAttachment(5, 5, "old", 0, true)
+		), files, 0, now);
+
+		//Files that can't be downloaded again or were viewed recently should be kept, even if that means staying over the quota
+		assertThat(evicted).containsExactly("old");
+	}
+
+	@Test
+	public void testMissingFiles() {
+		FakeFiles files = new FakeFiles();
+		files.add("a", 100);
+
+		//Files that no longer exist don't count towards the quota
+		assertThat(AttachmentCacheHelper.planEviction(Arrays.asList(
+				new CachedAttachment(1, 1, "a", 0, true),
+				new CachedAttachment(2, 2, "missing", 0, true)
+		), files, 100, now)).isEqualTo(Collections.emptyList());
+	}
+
+	/**
+	 * An in-memory stand-in for the attachment directory
+	 */
+	private static class FakeFiles implements AttachmentCacheHelper.FileSizeSource {
+		private final Map<String, Long> sizeMap = new HashMap<>();
+
+		void add(String path, long size) {
+			sizeMap.put(path, size);
+		}
+
+		@Override
+		public long getSize(String path) {
+			Long size = sizeMap.get(path);
+			return size == null ? -1 : size;
+		}
+	}
+}
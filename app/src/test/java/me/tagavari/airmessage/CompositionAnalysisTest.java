@@ -0,0 +1,92 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import me.tagavari.airmessage.helper.ContentAnalysis;
+import me.tagavari.airmessage.helper.MessageCompositionAssistant;
+import me.tagavari.airmessage.helper.RequestCanceller;
+import me.tagavari.airmessage.helper.RiskLevel;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class CompositionAnalysisTest {
+	@Test
+	public void testCancelSlowRequest() throws Exception {
+		//Starting a fake server that takes a long time to respond
+		CountDownLatch requestReceived = new CountDownLatch(1);
+		CountDownLatch releaseResponse = new CountDownLatch(1);
+		FakeServer server = FakeServer.start().handle("/api/generate", body -> {
+			requestReceived.countDown();
+			releaseResponse.await(10, TimeUnit.SECONDS);
+			return FakeServer.Reply.ok("");
+		});
+		
+		try {
+			OkHttpClient client = new OkHttpClient.Builder().readTimeout(30, TimeUnit.SECONDS).build();
+			RequestCanceller canceller = new RequestCanceller();
+			Call call = client.newCall(new Request.Builder().url(server.getUrl("/api/generate")).build());
+			canceller.attach(call);
+			
+			AtomicReference<Exception> error = new AtomicReference<>();
+			Thread thread = new Thread(() -> {
+				try(Response ignored = call.execute()) {
+				} catch(IOException exception) {
+					error.set(exception);
+				}
+			});
+			thread.start();
+			assertThat(requestReceived.await(5, TimeUnit.SECONDS)).isTrue();
+			
+			//Cancelling the request should end the call without waiting for the server
+			long startTime = System.nanoTime();
+			canceller.cancel();
+			thread.join(5000);
+			assertThat(thread.isAlive()).isFalse();
+			assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)).isLessThan(2000L);
+			assertThat(error.get()).isNotNull();
+			assertThat(call.isCanceled()).isTrue();
+			
+			//Calls attached after cancellation should never be sent
+			Call lateCall = client.newCall(new Request.Builder().url(server.getUrl("/api/generate")).build());
+			canceller.attach(lateCall);
+			assertThat(lateCall.isCanceled()).isTrue();
+		} finally {
+			releaseResponse.countDown();
+			server.close();
+		}
+	}
+	
+	@Test
+	public void testAppendedInput() {
+		//Appending punctuation or whitespace should reuse the previous analysis
+		assertThat(MessageCompositionAssistant.getAppendedInput("Hello there friend", "Hello there friend!! ")).isNull();
+		
+		//Appended words should be analyzed along with the sentence they continue
+		assertThat(MessageCompositionAssistant.getAppendedInput("See you soon. My password is", "See you soon. My password is hunter2")).isEqualTo("My password is hunter2");
+		assertThat(MessageCompositionAssistant.getAppendedInput("See you soon.", "See you soon. Call me")).isEqualTo("Call me");
+	}
+	
+	@Test
+	public void testMergeAnalyses() {
+		ContentAnalysis previous = new ContentAnalysis(false, false, true, RiskLevel.MEDIUM, Collections.singletonList("Sensitive"));
+		ContentAnalysis appended = new ContentAnalysis(true, false, false, RiskLevel.LOW, Arrays.asList("Sensitive", "Spam"));
+		ContentAnalysis merged = MessageCompositionAssistant.mergeAnalyses(previous, appended);
+		
+		assertThat(merged.isSpam()).isTrue();
+		assertThat(merged.getHasInappropriateContent()).isFalse();
+		assertThat(merged.getContainsSensitiveInfo()).isTrue();
+		assertThat(merged.getRiskLevel()).isEqualTo(RiskLevel.MEDIUM);
+		assertThat(merged.getWarnings()).containsExactly("Sensitive", "Spam").inOrder();
+	}
+}
@@ -0,0 +1,30 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Completable;
+import me.tagavari.airmessage.data.DatabaseSchedulers;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class DatabaseSchedulersTest {
+	@Test
+	public void testWriteOrder() {
+		List<Integer> writeOrder = new ArrayList<>();
+		List<Completable> writes = new ArrayList<>();
+		for(int i = 0; i < 100; i++) {
+			int index = i;
+			writes.add(Completable.fromAction(() -> writeOrder.add(index)).subscribeOn(DatabaseSchedulers.write));
+		}
+
+		//Writes submitted separately should still be applied one at a time, in order
+		Completable.merge(writes).blockingAwait();
+
+		List<Integer> expectedOrder = new ArrayList<>();
+		for(int i = 0; i < 100; i++) expectedOrder.add(i);
+		assertThat(writeOrder).isEqualTo(expectedOrder);
+	}
+}
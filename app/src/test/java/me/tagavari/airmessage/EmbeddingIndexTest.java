@@ -0,0 +1,184 @@
+package me.tagavari.airmessage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import me.tagavari.airmessage.helper.EmbeddingIndex;
+import me.tagavari.airmessage.helper.OllamaEmbedder;
+import okhttp3.OkHttpClient;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class EmbeddingIndexTest {
+	private static final int dimensions = 256;
+	
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	private FakeServer server;
+	private String baseUrl;
+	private OllamaEmbedder embedder;
+	
+	@Before
+	public void setUp() throws IOException {
+		//Starting a fake Ollama server that embeds texts by their topic
+		server = FakeServer.start().handle("/api/embed", body -> {
+			JSONObject request = new JSONObject(body);
+			JSONArray inputArray = request.getJSONArray("input");
+			JSONArray embeddingsArray = new JSONArray();
+			for(int i = 0; i < inputArray.length(); i++) {
+				JSONArray embeddingArray = new JSONArray();
+				for(float value : fakeEmbedding(inputArray.getString(i))) embeddingArray.put((double) value);
+				embeddingsArray.put(embeddingArray);
+			}
+			
+			return FakeServer.Reply.ok(new JSONObject().put("model", request.getString("model")).put("embeddings", embeddingsArray).toString());
+		});
+		baseUrl = server.getBaseUrl();
+		
+		embedder = new OllamaEmbedder(new OkHttpClient());
+	}
+	
+	@After
+	public void tearDown() {
+		server.close();
+	}
+	
+	@Test
+	public void testSemanticSearch() throws IOException {
+		List<String> texts = Arrays.asList("topic1 dinner on friday", "topic2 verification code", "topic1 dinner reservation", "topic3 gym schedule");
+		List<float[]> vectors = embedder.embed(baseUrl, texts);
+		assertThat(vectors).hasSize(texts.size());
+		assertThat(vectors.get(0).length).isEqualTo(dimensions);
+		
+		EmbeddingIndex index = new EmbeddingIndex(null);
+		for(int i = 0; i < texts.size(); i++) index.add(i, vectors.get(i));
+		
+		//Texts on the same topic should be the closest matches
+		float[] query = embedder.embed(baseUrl, List.of("topic1 where are we eating")).get(0);
+		List<EmbeddingIndex.Match> matches = index.search(query, 2, null);
+		assertThat(Arrays.asList(matches.get(0).getId(), matches.get(1).getId())).containsExactly(0L, 2L);
+		assertThat(matches.get(1).getSimilarity()).isGreaterThan(0.5F);
+		
+		//Filtered vectors should be left out
+		assertThat(index.search(query, 1, id -> id != 0 && id != 2).get(0).getSimilarity()).isLessThan(0.5F);
+	}
+	
+	@Test
+	public void testPersistence() throws IOException {
+		File file = new File(temporaryFolder.getRoot(), "embeddings/index.bin");
+		EmbeddingIndex index = new EmbeddingIndex(file);
+		for(int i = 0; i < 100; i++) index.add(i, fakeEmbedding("topic" + (i % 10) + " item " + i));
+		for(int i = 0; i < 50; i++) index.remove(i);
+		index.add(75, fakeEmbedding("topic3 replaced"));
+		index.close();
+		
+		//Reloading the index should restore the same vectors
+		float[] query = fakeEmbedding("topic3 query");
+		EmbeddingIndex reloadedIndex = new EmbeddingIndex(file);
+		reloadedIndex.load();
+		assertThat(reloadedIndex.getSize()).isEqualTo(50);
+		assertThat(reloadedIndex.contains(10)).isFalse();
+		assertThat(reloadedIndex.search(query, 5, null)).isEqualTo(index.search(query, 5, null));
+		reloadedIndex.close();
+		
+		//A log cut off partway through a record should keep every complete record, losing only the replacement of item 75
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(randomAccessFile.length() - 10);
+		}
+		EmbeddingIndex truncatedIndex = new EmbeddingIndex(file);
+		truncatedIndex.load();
+		assertThat(truncatedIndex.getSize()).isEqualTo(50);
+		assertThat(truncatedIndex.search(fakeEmbedding("topic5 item 75"), 1, null).get(0).getId()).isEqualTo(75L);
+		truncatedIndex.close();
+	}
+	
+	@Test
+	public void testRetrievalBenchmark() throws IOException {
+		//Indexing 100,000 vectors spread across 1,000 topics
+		int vectorCount = 100000;
+		float[][] vectors = new float[vectorCount][];
+		EmbeddingIndex index = new EmbeddingIndex(null);
+		for(int i = 0; i < vectorCount; i++) {
+			vectors[i] = fakeEmbedding("topic" + (i % 1000) + " item " + i);
+			index.add(i, vectors[i]);
+		}
+		
+		//Embedding the queries with the fake server
+		Random random = new Random(0);
+		List<String> queryTexts = new ArrayList<>();
+		for(int i = 0; i < 50; i++) queryTexts.add("topic" + random.nextInt(1000) + " query " + i);
+		List<float[]> queries = embedder.embed(baseUrl, queryTexts);
+		
+		//Warming up, then timing the queries
+		for(float[] query : queries) index.search(query, 10, null);
+		long startTime = System.nanoTime();
+		List<List<EmbeddingIndex.Match>> results = new ArrayList<>();
+		for(float[] query : queries) results.add(index.search(query, 10, null));
+		double averageMillis = (System.nanoTime() - startTime) / 1_000_000.0 / queries.size();
+		
+		//Comparing against an exact search over the original vectors
+		int foundCount = 0;
+		for(int i = 0; i < queries.size(); i++) {
+			Set<Long> exactIDs = exactSearch(vectors, queries.get(i), 10);
+			for(EmbeddingIndex.Match match : results.get(i)) {
+				if(exactIDs.contains(match.getId())) foundCount++;
+			}
+		}
+		double recall = (double) foundCount / (queries.size() * 10);
+		
+		assertThat(recall).isAtLeast(0.9);
+		assertThat(averageMillis).isLessThan(100.0);
+	}
+	
+	private static Set<Long> exactSearch(float[][] vectors, float[] query, int limit) {
+		double[] scores = new double[vectors.length];
+		for(int i = 0; i < vectors.length; i++) scores[i] = cosineSimilarity(vectors[i], query);
+		
+		Integer[] order = new Integer[vectors.length];
+		for(int i = 0; i < order.length; i++) order[i] = i;
+		Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+		
+		Set<Long> ids = new HashSet<>();
+		for(int i = 0; i < limit; i++) ids.add((long) order[i]);
+		return ids;
+	}
+	
+	private static double cosineSimilarity(float[] a, float[] b) {
+		double dot = 0, normA = 0, normB = 0;
+		for(int i = 0; i < a.length; i++) {
+			dot += a[i] * b[i];
+			normA += a[i] * a[i];
+			normB += b[i] * b[i];
+		}
+		return dot / Math.sqrt(normA * normB);
+	}
+	
+	/**
+	 * Creates an embedding near the center of the text's topic, given as "topic<number>" at the start of the text
+	 */
+	private static float[] fakeEmbedding(String text) {
+		int topic = Integer.parseInt(text.substring("topic".length(), text.indexOf(' ')));
+		Random topicRandom = new Random(topic);
+		Random textRandom = new Random(text.hashCode());
+		
+		float[] vector = new float[dimensions];
+		for(int i = 0; i < dimensions; i++) vector[i] = (float) (topicRandom.nextGaussian() + textRandom.nextGaussian() * 0.6);
+		return vector;
+	}
+}
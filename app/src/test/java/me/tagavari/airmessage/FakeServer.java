@@ -0,0 +1,116 @@
+package me.tagavari.airmessage;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A loopback HTTP server that stands in for an AI provider in tests
+ */
+class FakeServer implements AutoCloseable {
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Generates the response to a request
+	 */
+	interface Handler {
+		/**
+		 * @param body The request body
+		 * @return The response to send back
+		 */
+		Reply handle(String body) throws Exception;
+	}
+	
+	/**
+	 * A response from the fake server
+	 */
+	static class Reply {
+		final int status;
+		final String body;
+		
+		Reply(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+		
+		static Reply ok(String body) {
+			return new Reply(200, body);
+		}
+	}
+	
+	private FakeServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+	}
+	
+	/**
+	 * Starts a new fake server on a free port
+	 */
+	static FakeServer start() throws IOException {
+		FakeServer fakeServer = new FakeServer();
+		fakeServer.server.start();
+		return fakeServer;
+	}
+	
+	/**
+	 * Answers requests to a path with a handler. Requests are handled in parallel, so handlers can block.
+	 */
+	FakeServer handle(String path, Handler handler) {
+		server.createContext(path, exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			
+			Reply reply;
+			try {
+				reply = handler.handle(requestBody);
+			} catch(Exception exception) {
+				reply = new Reply(500, String.valueOf(exception.getMessage()));
+			}
+			
+			byte[] body = reply.body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(reply.status, body.length == 0 ? -1 : body.length);
+			try(OutputStream outputStream = exchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+			exchange.close();
+		});
+		return this;
+	}
+	
+	/**
+	 * Gets the URL of the server, without a trailing slash
+	 */
+	String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+	
+	/**
+	 * Gets the URL of a path on the server
+	 */
+	String getUrl(String path) {
+		return getBaseUrl() + path;
+	}
+	
+	/**
+	 * Gets the client ports that requests were received from, one for each connection that was used
+	 */
+	Set<Integer> getClientPorts() {
+		return clientPorts;
+	}
+	
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,108 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import kotlin.Pair;
+import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.helper.GhostMatchHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class GhostMatchTest {
+	@Test
+	public void testTextHash() {
+		//Formatting differences should not affect the hash
+		assertThat(GhostMatchHelper.hashText("Hello\r\nworld ")).isEqualTo(GhostMatchHelper.hashText("Hello\nworld"));
+		assertThat(GhostMatchHelper.hashText("cafe\u0301")).isEqualTo(GhostMatchHelper.hashText("caf\u00e9"));
+
+		//Different text should produce a different hash
+		assertThat(GhostMatchHelper.hashText("Hello")).isNotEqualTo(GhostMatchHelper.hashText("hello"));
+		assertThat(GhostMatchHelper.hashChecksum(new byte[]{1, 2, 3})).isNotEqualTo(GhostMatchHelper.hashChecksum(new byte[]{3, 2, 1}));
+	}
+
+	@Test
+	public void testMultipleAttachments() {
+		//Three ghost messages, each with one attachment
+		FakeLookup lookup = new FakeLookup();
+		lookup.add(10, 1, new byte[]{1});
+		lookup.add(20, 2, new byte[]{2});
+		lookup.add(30, 3, new byte[]{3});
+
+		//A server message that merged all three attachments, plus one that was never sent as a ghost
+		DatabaseManager.GhostMergeResult<String> result = GhostMatchHelper.planAttachmentMerge(Arrays.asList(
+				new Pair<>(new byte[]{1}, "a"),
+				new Pair<>(new byte[]{2}, "b"),
+				new Pair<>(new byte[]{3}, "c"),
+				new Pair<>(new byte[]{4}, "d")
+		), lookup);
+
+		assertThat(result).isNotNull();
+		assertThat(result.getTargetMessageID()).isEqualTo(1);
+		assertThat(result.getPersistingAttachment()).isEqualTo(new Pair<>(10L, "a"));
+		assertThat(result.getDiscardedMessageIDs()).containsExactly(2L, 3L).inOrder();
+		assertThat(result.getTransferAttachments()).containsExactly(new Pair<>(20L, "b"), new Pair<>(30L, "c")).inOrder();
+		assertThat(result.getNewAttachments()).containsExactly("d");
+	}
+
+	@Test
+	public void testDuplicateAttachments() {
+		//Two ghost messages with the same file
+		FakeLookup lookup = new FakeLookup();
+		lookup.add(10, 1, new byte[]{1});
+		lookup.add(20, 2, new byte[]{1});
+
+		//A server message with the same file three times
+		DatabaseManager.GhostMergeResult<String> result = GhostMatchHelper.planAttachmentMerge(Arrays.asList(
+				new Pair<>(new byte[]{1}, "a"),
+				new Pair<>(new byte[]{1}, "b"),
+				new Pair<>(new byte[]{1}, "c")
+		), lookup);
+
+		//Each ghost message should only be matched once
+		assertThat(result).isNotNull();
+		assertThat(result.getTargetMessageID()).isEqualTo(2);
+		assertThat(result.getDiscardedMessageIDs()).containsExactly(1L);
+		assertThat(result.getTransferAttachments()).containsExactly(new Pair<>(10L, "b"));
+		assertThat(result.getNewAttachments()).containsExactly("c");
+	}
+
+	@Test
+	public void testNoMatch() {
+		FakeLookup lookup = new FakeLookup();
+		lookup.add(10, 1, new byte[]{1});
+
+		assertThat(GhostMatchHelper.planAttachmentMerge(Arrays.asList(
+				new Pair<>(new byte[]{2}, "a"),
+				new Pair<>(null, "b")
+		), lookup)).isNull();
+	}
+
+	/**
+	 * An in-memory stand-in for the attachment table, where later entries are more recent
+	 */
+	private static class FakeLookup implements GhostMatchHelper.AttachmentLookup {
+		private final List<long[]> entries = new ArrayList<>();
+		private final List<Long> hashes = new ArrayList<>();
+
+		void add(long attachmentID, long messageID, byte[] checksum) {
+			entries.add(new long[]{attachmentID, messageID});
+			hashes.add(GhostMatchHelper.hashChecksum(checksum));
+		}
+
+		@Override
+		public Pair<Long, Long> find(byte[] checksum, Collection<Long> excludedMessageIDs) {
+			long hash = GhostMatchHelper.hashChecksum(checksum);
+			for(int i = entries.size() - 1; i >= 0; i--) {
+				long[] entry = entries.get(i);
+				if(hashes.get(i) != hash || excludedMessageIDs.contains(entry[1])) continue;
+				return new Pair<>(entry[0], entry[1]);
+			}
+			return null;
+		}
+	}
+}
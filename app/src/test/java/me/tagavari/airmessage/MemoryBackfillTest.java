@@ -0,0 +1,196 @@
+package me.tagavari.airmessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import kotlin.jvm.functions.Function1;
+import me.tagavari.airmessage.helper.MemoryBackfill;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MemoryBackfillTest {
+	private static final Pattern messagePattern = Pattern.compile("^\\[(\\d+)] ", Pattern.MULTILINE);
+	
+	private FakeServer server;
+	private final OkHttpClient client = new OkHttpClient();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicBoolean isServerUp = new AtomicBoolean(true);
+	
+	private Function1<String, String> extractor;
+	
+	@Before
+	public void setUp() throws IOException {
+		//Starting a fake Ollama server that extracts something from every message in a prompt
+		server = FakeServer.start().handle("/api/generate", prompt -> {
+			requestCount.incrementAndGet();
+			
+			StringBuilder response = new StringBuilder("[");
+			Matcher matcher = messagePattern.matcher(prompt);
+			while(matcher.find()) {
+				if(response.length() > 1) response.append(',');
+				response.append("{\"index\":").append(matcher.group(1)).append(",\"info\":\"Info ").append(matcher.group(1)).append("\",\"category\":\"fact\",\"confidence\":0.9}");
+			}
+			response.append(']');
+			
+			return new FakeServer.Reply(isServerUp.get() ? 200 : 503, response.toString());
+		});
+		
+		String url = server.getUrl("/api/generate");
+		extractor = prompt -> {
+			Request request = new Request.Builder().url(url).post(RequestBody.create(prompt, MediaType.get("text/plain"))).build();
+			try(Response response = client.newCall(request).execute()) {
+				return response.isSuccessful() ? response.body().string() : null;
+			} catch(IOException exception) {
+				return null;
+			}
+		};
+	}
+	
+	@After
+	public void tearDown() {
+		server.close();
+	}
+	
+	@Test
+	public void testBatchedThroughput() {
+		List<MemoryBackfill.BackfillMessage> messages = createMessages(200);
+		MemoryCheckpointStore checkpointStore = new MemoryCheckpointStore();
+		AtomicInteger extractedCount = new AtomicInteger();
+		
+		MemoryBackfill backfill = new MemoryBackfill(new ListPager(messages), checkpointStore, extractor, extractions -> {
+			extractedCount.addAndGet(extractions.size());
+			return extractions.size();
+		});
+		
+		MemoryBackfill.Result result = backfill.run(messages.size());
+		
+		//Every message should be processed and extracted, with many messages per request
+		assertThat(result.isComplete()).isTrue();
+		assertThat(result.getProcessedCount()).isEqualTo(messages.size());
+		assertThat(result.getConversationCount()).isEqualTo(10);
+		assertThat(extractedCount.get()).isEqualTo(messages.size());
+		assertThat(requestCount.get()).isEqualTo(result.getRequestCount());
+		assertThat(result.getRequestCount()).isAtMost(messages.size() / 10);
+		
+		//The checkpoint should be cleared once the backfill finishes
+		assertThat(checkpointStore.checkpoint).isNull();
+	}
+	
+	@Test
+	public void testResumeFromCheckpoint() {
+		List<MemoryBackfill.BackfillMessage> messages = createMessages(300);
+		MemoryCheckpointStore checkpointStore = new MemoryCheckpointStore();
+		List<Long> extractedIDs = new ArrayList<>();
+		Function1<List<kotlin.Pair<MemoryBackfill.BackfillMessage, MemoryBackfill.Extraction>>, Integer> sink = extractions -> {
+			for(kotlin.Pair<MemoryBackfill.BackfillMessage, MemoryBackfill.Extraction> extraction : extractions) extractedIDs.add(extraction.getFirst().getMessageID());
+			return extractions.size();
+		};
+		
+		//Failing partway through the backfill
+		AtomicInteger pageCount = new AtomicInteger();
+		ListPager pager = new ListPager(messages);
+		MemoryBackfill.MessagePager failingPager = (after, limit) -> {
+			if(pageCount.incrementAndGet() == 2) isServerUp.set(false);
+			return pager.loadPage(after, limit);
+		};
+		MemoryBackfill.Result result = new MemoryBackfill(failingPager, checkpointStore, extractor, sink, 200, 1500, 2).run(messages.size());
+		assertThat(result.isComplete()).isFalse();
+		assertThat(result.getProcessedCount()).isEqualTo(200);
+		assertThat(checkpointStore.checkpoint.getProcessedCount()).isEqualTo(200);
+		
+		//Resuming should process the remaining messages without repeating any
+		isServerUp.set(true);
+		result = new MemoryBackfill(pager, checkpointStore, extractor, sink, 200, 1500, 2).run(messages.size());
+		assertThat(result.isComplete()).isTrue();
+		assertThat(result.getProcessedCount()).isEqualTo(100);
+		assertThat(extractedIDs).containsNoDuplicates();
+		assertThat(extractedIDs).hasSize(messages.size());
+	}
+	
+	@Test
+	public void testPackBatches() {
+		List<MemoryBackfill.BackfillMessage> messages = createMessages(100);
+		List<List<MemoryBackfill.BackfillMessage>> batches = MemoryBackfill.packBatches(messages, 1500);
+		
+		//Batches should keep every message in order, and respect the message cap
+		List<MemoryBackfill.BackfillMessage> flattened = new ArrayList<>();
+		for(List<MemoryBackfill.BackfillMessage> batch : batches) {
+			assertThat(batch.size()).isAtMost(MemoryBackfill.maxBatchMessages);
+			flattened.addAll(batch);
+		}
+		assertThat(flattened).containsExactlyElementsIn(messages).inOrder();
+		
+		//A long message should get a batch to itself rather than exceeding the budget
+		String longText = "a".repeat(10000);
+		List<MemoryBackfill.BackfillMessage> longMessages = List.of(
+				new MemoryBackfill.BackfillMessage(1, 1, 1, longText),
+				new MemoryBackfill.BackfillMessage(2, 1, 2, longText));
+		assertThat(MemoryBackfill.packBatches(longMessages, MemoryBackfill.maxMessageTokens)).hasSize(2);
+	}
+	
+	@Test
+	public void testParseBatchResponse() {
+		String response = "```json\n[{\"index\": 1, \"info\": \"Code: 1234\", \"category\": \"code\", \"confidence\": 1.0}, {\"index\": 7, \"info\": \"Out of range\"}, {\"index\": 2, \"info\": \"\"}]\n```";
+		Map<Integer, MemoryBackfill.Extraction> extractions = MemoryBackfill.parseBatchResponse(response, 3);
+		assertThat(extractions).containsExactly(0, new MemoryBackfill.Extraction("Code: 1234", "code", 1.0F));
+		
+		assertThat(MemoryBackfill.parseBatchResponse("No useful information", 3)).isEmpty();
+	}
+	
+	/**
+	 * Creates messages spread across 10 conversations, ordered from newest to oldest
+	 */
+	private static List<MemoryBackfill.BackfillMessage> createMessages(int count) {
+		List<MemoryBackfill.BackfillMessage> messages = new ArrayList<>(count);
+		for(int i = count; i > 0; i--) {
+			messages.add(new MemoryBackfill.BackfillMessage(i, i % 10, i * 1000L, "Message number " + i + ": let's meet at the cafe on Main Street at " + (i % 12 + 1) + "pm"));
+		}
+		return messages;
+	}
+	
+	private static class ListPager implements MemoryBackfill.MessagePager {
+		private final List<MemoryBackfill.BackfillMessage> messages;
+		
+		ListPager(List<MemoryBackfill.BackfillMessage> messages) {
+			this.messages = messages;
+		}
+		
+		@Override
+		public List<MemoryBackfill.BackfillMessage> loadPage(MemoryBackfill.Checkpoint after, int limit) {
+			int start = 0;
+			if(after != null) {
+				while(start < messages.size() && messages.get(start).getDate() >= after.getDate()) start++;
+			}
+			return messages.subList(start, Math.min(start + limit, messages.size()));
+		}
+	}
+	
+	private static class MemoryCheckpointStore implements MemoryBackfill.CheckpointStore {
+		MemoryBackfill.Checkpoint checkpoint;
+		
+		@Override
+		public MemoryBackfill.Checkpoint load() {
+			return checkpoint;
+		}
+		
+		@Override
+		public void save(MemoryBackfill.Checkpoint checkpoint) {
+			this.checkpoint = checkpoint;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package me.tagavari.airmessage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import me.tagavari.airmessage.helper.MemoryBackfill;
+import me.tagavari.airmessage.helper.MemoryExtractionQueue;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MemoryExtractionQueueTest {
+	private static final Pattern messagePattern = Pattern.compile("(?m)^\\[(\\d+)\\] ");
+	
+	@Test
+	public void testFlood() {
+		Thread emitterThread = Thread.currentThread();
+		AtomicBoolean extractedOnEmitter = new AtomicBoolean();
+		Set<Long> mixedBatchConversations = Collections.synchronizedSet(new HashSet<>());
+		
+		//Simulating a slow AI provider that extracts information from every message
+		MemoryExtractionQueue queue = new MemoryExtractionQueue(prompt -> {
+			if(Thread.currentThread() == emitterThread) extractedOnEmitter.set(true);
+			sleep(5);
+			return extractAll(prompt);
+		}, extractions -> {
+			Set<Long> conversationIDs = extractions.stream().map(pair -> pair.getFirst().getConversationID()).collect(Collectors.toSet());
+			if(conversationIDs.size() > 1) mixedBatchConversations.addAll(conversationIDs);
+			return extractions.size();
+		}, Schedulers.io(), 500, 100);
+		
+		PublishSubject<MemoryBackfill.BackfillMessage> subject = PublishSubject.create();
+		subject.subscribe(queue::offer);
+		
+		//Flooding the subject with a sync burst spread across 20 conversations
+		int messageCount = 10000;
+		for(int i = 0; i < messageCount; i++) {
+			subject.onNext(new MemoryBackfill.BackfillMessage(i, i % 20, i, "Message number " + i + " about the plans for Friday"));
+		}
+		
+		//The emitting thread should only queue messages, and never run extraction itself
+		assertThat(extractedOnEmitter.get()).isFalse();
+		
+		//Every accepted message should eventually be processed or dropped, in batches that each cover one conversation
+		MemoryExtractionQueue.Stats stats = awaitDrained(queue);
+		assertThat(stats.getQueuedCount()).isEqualTo(messageCount);
+		assertThat(stats.getProcessedCount() + stats.getDroppedCount()).isEqualTo(messageCount);
+		assertThat(stats.getProcessedCount()).isAtLeast(500);
+		assertThat(stats.getExtractedCount()).isEqualTo(stats.getProcessedCount());
+		assertThat(stats.getRequestCount()).isLessThan(stats.getProcessedCount() / 5);
+		assertThat(mixedBatchConversations).isEmpty();
+	}
+	
+	@Test
+	public void testFailedBatches() {
+		AtomicBoolean isAvailable = new AtomicBoolean(false);
+		MemoryExtractionQueue queue = new MemoryExtractionQueue(prompt -> isAvailable.get() ? extractAll(prompt) : null, List::size, Schedulers.io(), 100, 10);
+		
+		//Short messages should be ignored
+		assertThat(queue.offer(new MemoryBackfill.BackfillMessage(0, 0, 0, "ok"))).isFalse();
+		
+		//Messages in failed batches should be dropped
+		for(int i = 0; i < 10; i++) queue.offer(new MemoryBackfill.BackfillMessage(i, 0, i, "Dinner reservation at seven " + i));
+		MemoryExtractionQueue.Stats stats = awaitDrained(queue);
+		assertThat(stats.getDroppedCount()).isEqualTo(10);
+		assertThat(stats.getProcessedCount()).isEqualTo(0);
+		
+		//The queue should keep draining new messages once the provider is back
+		isAvailable.set(true);
+		for(int i = 10; i < 20; i++) queue.offer(new MemoryBackfill.BackfillMessage(i, 0, i, "Dinner reservation at seven " + i));
+		stats = awaitDrained(queue);
+		assertThat(stats.getProcessedCount()).isEqualTo(10);
+		assertThat(stats.getExtractedCount()).isEqualTo(10);
+	}
+	
+	/**
+	 * Waits until every queued message has been processed or dropped
+	 */
+	private static MemoryExtractionQueue.Stats awaitDrained(MemoryExtractionQueue queue) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while(true) {
+			MemoryExtractionQueue.Stats stats = queue.getStats();
+			if(stats.getProcessedCount() + stats.getDroppedCount() >= stats.getQueuedCount() || System.nanoTime() > deadline) return stats;
+			sleep(10);
+		}
+	}
+	
+	/**
+	 * Responds to a batch extraction prompt with information for every message in it
+	 */
+	private static String extractAll(String prompt) {
+		JSONArray array = new JSONArray();
+		Matcher matcher = messagePattern.matcher(prompt);
+		while(matcher.find()) {
+			array.put(new JSONObject().put("index", Integer.parseInt(matcher.group(1))).put("info", "Plans for Friday").put("category", "plan"));
+		}
+		return array.toString();
+	}
+	
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch(InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import me.tagavari.airmessage.helper.ConversationMemoryManager;
+import me.tagavari.airmessage.helper.MemoryIndex;
+import me.tagavari.airmessage.helper.SemanticRetrieval;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MemoryIndexTest {
+	@Test
+	public void testRanking() {
+		MemoryIndex index = new MemoryIndex();
+		ConversationMemoryManager.MemoryItem dinner = createItem("a", "Dinner at Giuseppe's on Friday", "event", 1);
+		ConversationMemoryManager.MemoryItem code = createItem("b", "Verification code 482913", "code", 2);
+		ConversationMemoryManager.MemoryItem restaurant = createItem("c", "Favorite restaurant is Giuseppe's on Main Street", "fact", 3);
+		index.add(dinner);
+		index.add(code);
+		index.add(restaurant);
+		
+		//Memories sharing more query terms should rank higher, and unrelated memories shouldn't match
+		assertThat(index.search("Want to get dinner at Giuseppe's?", 10, item -> true)).containsExactly(dinner, restaurant).inOrder();
+		assertThat(index.search("What was that verification code?", 10, item -> true)).containsExactly(code);
+		assertThat(index.search("the", 10, item -> true)).isEmpty();
+		
+		//Filtered memories should be left out
+		assertThat(index.search("Giuseppe's", 10, item -> !item.getConversationGuid().equals("c"))).containsExactly(dinner);
+		
+		//Recent memories should be returned newest first
+		assertThat(index.getRecent(2, item -> true)).containsExactly(restaurant, code).inOrder();
+	}
+	
+	@Test
+	public void testDuplicatesAndTrimming() {
+		MemoryIndex index = new MemoryIndex();
+		ConversationMemoryManager.MemoryItem oldest = createItem("a", "Meeting moved to Tuesday", "event", 1);
+		assertThat(index.add(oldest)).isTrue();
+		assertThat(index.add(createItem("a", "Meeting moved to Tuesday", "event", 5))).isFalse();
+		assertThat(index.contains("a", "Meeting moved to Tuesday")).isTrue();
+		assertThat(index.contains("b", "Meeting moved to Tuesday")).isFalse();
+		
+		index.add(createItem("b", "Tuesday lunch with Sam", "event", 2));
+		index.add(createItem("c", "Gym on Tuesday mornings", "plan", 3));
+		
+		//Trimming should remove the oldest memories and their index terms
+		assertThat(index.trimTo(2)).containsExactly(oldest);
+		assertThat(index.getSize()).isEqualTo(2);
+		assertThat(index.contains("a", "Meeting moved to Tuesday")).isFalse();
+		assertThat(index.getByEmbeddingID(SemanticRetrieval.getMemoryID(oldest))).isNull();
+		assertThat(index.search("meeting", 10, item -> true)).isEmpty();
+		assertThat(index.search("tuesday", 10, item -> true)).hasSize(2);
+		
+		index.clear();
+		assertThat(index.getSize()).isEqualTo(0);
+		assertThat(index.search("tuesday", 10, item -> true)).isEmpty();
+	}
+	
+	@Test
+	public void testRetrievalBenchmark() {
+		//Building an index of 50,000 memories from a random vocabulary
+		Random random = new Random(0);
+		String[] vocabulary = new String[5000];
+		for(int i = 0; i < vocabulary.length; i++) vocabulary[i] = "word" + i;
+		
+		MemoryIndex index = new MemoryIndex();
+		for(int i = 0; i < 50000; i++) {
+			StringBuilder text = new StringBuilder();
+			for(int j = 0; j < 8; j++) text.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+			index.add(createItem(Integer.toString(i % 100), text.toString(), "fact", i));
+		}
+		
+		String[] queries = new String[1000];
+		for(int i = 0; i < queries.length; i++) {
+			queries[i] = "Did you hear about " + vocabulary[random.nextInt(vocabulary.length)] + " and " + vocabulary[random.nextInt(vocabulary.length)] + " yesterday?";
+		}
+		
+		//Warming up, then timing the queries
+		for(String query : queries) index.search(query, 10, item -> true);
+		long startTime = System.nanoTime();
+		int resultCount = 0;
+		for(String query : queries) {
+			List<ConversationMemoryManager.MemoryItem> results = index.search(query, 10, item -> !item.getConversationGuid().equals("0"));
+			resultCount += results.size();
+		}
+		double averageMillis = (System.nanoTime() - startTime) / 1_000_000.0 / queries.length;
+		
+		//The bound is loose enough for slow machines, and only catches searches that fall back to scanning every memory
+		assertThat(resultCount).isGreaterThan(0);
+		assertThat(averageMillis).isLessThan(20.0);
+	}
+	
+	private static ConversationMemoryManager.MemoryItem createItem(String conversationGuid, String text, String category, long timestamp) {
+		return new ConversationMemoryManager.MemoryItem(conversationGuid + "_" + text.hashCode(), conversationGuid, null, text, text, null, timestamp, category, 1.0F);
+	}
+}
@@ -0,0 +1,53 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import me.tagavari.airmessage.helper.MessageArchiveHelper;
+import me.tagavari.airmessage.helper.MessageArchiveHelper.ArchiveTable;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MessageArchiveTest {
+	@Test
+	public void testRoundTrip() throws IOException {
+		//Building a long message, which can't be written with writeUTF
+		StringBuilder longText = new StringBuilder();
+		for(int i = 0; i < 10000; i++) longText.append("café 😀 ");
+
+		List<ArchiveTable> tables = Arrays.asList(
+				new ArchiveTable("messages", Arrays.asList("_id", "message_text", "date"), Arrays.asList(
+						new Object[]{1L, "Hello", 1000L},
+						new Object[]{2L, longText.toString(), 2000L},
+						new Object[]{3L, null, 3000L}
+				)),
+				new ArchiveTable("attachments", Arrays.asList("_id", "message", "checksum", "ratio"), Collections.singletonList(
+						new Object[]{10L, 2L, new byte[]{1, 2, 3}, 0.5}
+				)),
+				new ArchiveTable("tapback", Arrays.asList("_id", "message"), Collections.emptyList())
+		);
+
+		List<ArchiveTable> decoded = MessageArchiveHelper.decodeBlock(MessageArchiveHelper.encodeBlock(tables));
+
+		assertThat(decoded).hasSize(3);
+		for(int i = 0; i < tables.size(); i++) {
+			assertThat(decoded.get(i).getName()).isEqualTo(tables.get(i).getName());
+			assertThat(decoded.get(i).getColumns()).isEqualTo(tables.get(i).getColumns());
+			assertThat(decoded.get(i).getRows()).hasSize(tables.get(i).getRows().size());
+			for(int j = 0; j < tables.get(i).getRows().size(); j++) {
+				assertThat(decoded.get(i).getRows().get(j)).isEqualTo(tables.get(i).getRows().get(j));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedValue() throws IOException {
+		MessageArchiveHelper.encodeBlock(Collections.singletonList(
+				new ArchiveTable("messages", Collections.singletonList("_id"), Collections.singletonList(new Object[]{1}))
+		));
+	}
+}
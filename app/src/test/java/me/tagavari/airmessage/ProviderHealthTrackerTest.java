@@ -0,0 +1,94 @@
+package me.tagavari.airmessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import kotlin.jvm.functions.Function1;
+import me.tagavari.airmessage.helper.ProviderHealthTracker;
+import okhttp3.OkHttpClient;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ProviderHealthTrackerTest {
+	private FakeServer server;
+	private String baseUrl;
+	private final AtomicBoolean isServerUp = new AtomicBoolean(true);
+	private final AtomicInteger probeCount = new AtomicInteger();
+	
+	private TestScheduler scheduler;
+	private ProviderHealthTracker tracker;
+	
+	@Before
+	public void setUp() throws IOException {
+		//Starting a fake Ollama server that can be taken up and down
+		server = FakeServer.start().handle("/api/tags", body -> {
+			probeCount.incrementAndGet();
+			return new FakeServer.Reply(isServerUp.get() ? 200 : 503, "{\"models\":[]}");
+		});
+		baseUrl = server.getBaseUrl();
+		
+		scheduler = new TestScheduler();
+		Function1<String, Boolean> probe = ProviderHealthTracker.createOllamaProbe(new OkHttpClient());
+		tracker = new ProviderHealthTracker(probe, () -> scheduler.now(TimeUnit.MILLISECONDS), scheduler);
+	}
+	
+	@After
+	public void tearDown() {
+		server.close();
+	}
+	
+	@Test
+	public void testCachedHealth() {
+		assertThat(tracker.isAvailable(baseUrl)).isTrue();
+		assertThat(tracker.isAvailable(baseUrl)).isTrue();
+		assertThat(probeCount.get()).isEqualTo(1);
+		
+		//The server should be probed again once the cached state expires
+		scheduler.advanceTimeBy(ProviderHealthTracker.healthTtlMillis, TimeUnit.MILLISECONDS);
+		assertThat(tracker.isAvailable(baseUrl)).isTrue();
+		assertThat(probeCount.get()).isEqualTo(2);
+	}
+	
+	@Test
+	public void testCircuitBreaker() {
+		isServerUp.set(false);
+		for(int i = 0; i < ProviderHealthTracker.failureThreshold; i++) {
+			tracker.recordFailure(baseUrl);
+		}
+		assertThat(tracker.isOpen(baseUrl)).isTrue();
+		
+		//Calls should fail without contacting the server while the breaker is open
+		assertThat(tracker.isAvailable(baseUrl)).isFalse();
+		assertThat(probeCount.get()).isEqualTo(0);
+		
+		//The background probe should find that the server is still down, and keep the breaker open
+		scheduler.advanceTimeTo(ProviderHealthTracker.minOpenMillis, TimeUnit.MILLISECONDS);
+		assertThat(probeCount.get()).isEqualTo(1);
+		assertThat(tracker.isOpen(baseUrl)).isTrue();
+		
+		//The next probe should be delayed further, and close the breaker once the server is back
+		isServerUp.set(true);
+		scheduler.advanceTimeBy(ProviderHealthTracker.minOpenMillis, TimeUnit.MILLISECONDS);
+		assertThat(probeCount.get()).isEqualTo(1);
+		scheduler.advanceTimeBy(ProviderHealthTracker.minOpenMillis, TimeUnit.MILLISECONDS);
+		assertThat(probeCount.get()).isEqualTo(2);
+		assertThat(tracker.isOpen(baseUrl)).isFalse();
+		assertThat(tracker.isAvailable(baseUrl)).isTrue();
+		assertThat(probeCount.get()).isEqualTo(2);
+	}
+	
+	@Test
+	public void testFailuresReset() {
+		tracker.recordFailure(baseUrl);
+		tracker.recordSuccess(baseUrl);
+		tracker.recordFailure(baseUrl);
+		assertThat(tracker.isOpen(baseUrl)).isFalse();
+	}
+}
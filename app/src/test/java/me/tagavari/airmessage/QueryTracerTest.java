@@ -0,0 +1,51 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.data.QueryTracer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class QueryTracerTest {
+	@Test
+	public void testTraceBudget() throws Exception {
+		QueryTracer.Trace<Integer> trace = QueryTracer.trace(() -> {
+			QueryTracer.record("DatabaseManager.loadConversations", 10, 1000);
+			QueryTracer.record("DatabaseManager.loadConversations", 5, 3000);
+			QueryTracer.record("DatabaseManager.getMessage", 1, 5000);
+			return 1;
+		});
+		
+		assertThat(trace.getResult()).isEqualTo(1);
+		assertThat(trace.getQueryCount()).isEqualTo(3);
+		assertThat(trace.getQueryCount("DatabaseManager.loadConversations")).isEqualTo(2);
+		assertThat(trace.getQueryCount("DatabaseManager.unused")).isEqualTo(0);
+		
+		//Operations should be ordered by total time spent
+		List<QueryTracer.OperationStats> stats = trace.getStats();
+		assertThat(stats.get(0).getOperation()).isEqualTo("DatabaseManager.getMessage");
+		assertThat(stats.get(1).getRowCount()).isEqualTo(15);
+		assertThat(stats.get(1).getMaxNanos()).isEqualTo(3000);
+		
+		//Queries outside of the trace shouldn't be counted
+		assertThat(QueryTracer.isTracing()).isFalse();
+	}
+	
+	@Test
+	public void testOperationName() {
+		StackTraceElement[] stackTrace = {
+				new StackTraceElement("android.database.sqlite.SQLiteDatabase", "rawQuery", null, 0),
+				new StackTraceElement(DatabaseManager.class.getName(), "loadConversations", null, 0),
+				new StackTraceElement("me.tagavari.airmessage.activity.Conversations", "onCreate", null, 0)
+		};
+		assertThat(QueryTracer.getOperationName(stackTrace)).isEqualTo("DatabaseManager.loadConversations");
+		
+		StackTraceElement[] unknownStackTrace = {
+				new StackTraceElement("android.database.sqlite.SQLiteDatabase", "rawQuery", null, 0)
+		};
+		assertThat(QueryTracer.getOperationName(unknownStackTrace)).isEqualTo(QueryTracer.unknownOperation);
+	}
+}
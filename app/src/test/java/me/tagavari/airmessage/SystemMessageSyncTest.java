@@ -0,0 +1,237 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import kotlin.Pair;
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper;
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.HighWaterMark;
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.SyncMessage;
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.SyncState;
+import me.tagavari.airmessage.helper.SystemMessageSyncHelper.ThreadFingerprint;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SystemMessageSyncTest {
+	@Test
+	public void testNewMessages() {
+		FakeSource source = new FakeSource();
+		FakeTarget target = new FakeTarget();
+		source.addSMS(1, 1000, false, "Hello");
+		target.importAll(source);
+		SyncState state = SystemMessageSyncHelper.captureState(source);
+		
+		//New messages should be added without comparing the thread
+		source.addSMS(1, 2000, true, "Hi");
+		source.addSMS(2, 3000, false, "New thread");
+		state = SystemMessageSyncHelper.sync(source, target, state);
+		
+		assertThat(target.getTexts(1)).containsExactly("Hello", "Hi").inOrder();
+		assertThat(target.getTexts(2)).containsExactly("New thread");
+		assertThat(source.threadReads).isEqualTo(0);
+		
+		//Nothing should change if the system database didn't change
+		SystemMessageSyncHelper.sync(source, target, state);
+		assertThat(target.getTexts(1)).hasSize(2);
+		assertThat(target.addCount).isEqualTo(2);
+	}
+	
+	@Test
+	public void testExistingCopy() {
+		FakeSource source = new FakeSource();
+		FakeTarget target = new FakeTarget();
+		SyncState state = SystemMessageSyncHelper.captureState(source);
+		
+		//A message that was already saved by the app, with a slightly different date
+		source.addSMS(1, 10_000, true, "Sent from the app");
+		target.addLocal(1, 10_500, true, "Sent from the app", false);
+		SystemMessageSyncHelper.sync(source, target, state);
+		
+		assertThat(target.getTexts(1)).containsExactly("Sent from the app");
+	}
+	
+	@Test
+	public void testDeletions() {
+		FakeSource source = new FakeSource();
+		FakeTarget target = new FakeTarget();
+		source.addSMS(1, 1000, false, "One");
+		source.addSMS(1, 2000, false, "Two");
+		source.addSMS(2, 3000, false, "Other");
+		target.importAll(source);
+		SyncState state = SystemMessageSyncHelper.captureState(source);
+		
+		//Deleting a message while a new one arrives in the same thread, and deleting a thread
+		source.remove(1, "One");
+		source.addSMS(1, 4000, false, "Three");
+		source.remove(2, "Other");
+		SystemMessageSyncHelper.sync(source, target, state);
+		
+		assertThat(target.getTexts(1)).containsExactly("Two", "Three").inOrder();
+		assertThat(target.getTexts(2)).isEmpty();
+		assertThat(target.deletedThreads).containsExactly(2L);
+		assertThat(source.threadReads).isEqualTo(1);
+	}
+	
+	@Test
+	public void testLocalOnlyMessages() {
+		FakeSource source = new FakeSource();
+		FakeTarget target = new FakeTarget();
+		source.addSMS(1, 1000, false, "One");
+		target.importAll(source);
+		SyncState state = SystemMessageSyncHelper.captureState(source);
+		
+		//Messages without a system message ID, and messages still being sent, shouldn't be deleted when the thread is compared
+		target.addLocal(1, 2000, false, "Imported before IDs were recorded", false);
+		target.addLocal(1, 3000, true, "Failed to send", true);
+		source.remove(1, "One");
+		source.addSMS(1, 4000, false, "Two");
+		source.addSMS(1, 5000, false, "Three");
+		SystemMessageSyncHelper.sync(source, target, state);
+		
+		assertThat(target.getTexts(1)).containsExactly("Imported before IDs were recorded", "Failed to send", "Two", "Three").inOrder();
+		assertThat(source.threadReads).isEqualTo(1);
+	}
+	
+	@Test
+	public void testSkippedMessages() {
+		FakeSource source = new FakeSource();
+		FakeTarget target = new FakeTarget();
+		source.addSMS(1, 1000, false, "Hello");
+		target.importAll(source);
+		SyncState state = SystemMessageSyncHelper.captureState(source);
+		
+		//A 2FA message that was written to the system database but deliberately kept out of the conversation
+		long codeID = source.addSMS(1, 2000, false, "Your verification code is 123456");
+		Set<Long> skippedIDs = Set.of(codeID);
+		state = SystemMessageSyncHelper.sync(source, target, state, skippedIDs);
+		assertThat(target.getTexts(1)).containsExactly("Hello");
+		assertThat(target.addCount).isEqualTo(0);
+		
+		//It should stay out when the thread is compared in full
+		source.remove(1, "Hello");
+		source.addSMS(1, 3000, false, "Later");
+		SystemMessageSyncHelper.sync(source, target, state, skippedIDs);
+		assertThat(target.getTexts(1)).containsExactly("Later");
+		assertThat(source.threadReads).isEqualTo(1);
+	}
+	
+	@Test
+	public void testMatchText() {
+		//Messages without text should only match other messages without text
+		List<SyncMessage> remote = List.of(new SyncMessage(1, 1, true, 1000, false, null), new SyncMessage(2, 1, true, 2000, false, "Photo caption"));
+		List<SyncMessage> local = List.of(new SyncMessage(1, 1, true, 1000, false, "Other text"), new SyncMessage(2, 1, true, 2000, false, null));
+		Pair<List<SyncMessage>, List<SyncMessage>> result = SystemMessageSyncHelper.matchMessages(remote, local);
+		assertThat(result.getFirst()).hasSize(2);
+		assertThat(result.getSecond()).hasSize(2);
+		
+		//Messages with a recorded system message ID should match by ID
+		local = List.of(new SyncMessage(1, 1, true, 1000, false, "Other text", 1, false));
+		result = SystemMessageSyncHelper.matchMessages(remote, local);
+		assertThat(result.getFirst()).containsExactly(remote.get(1));
+		assertThat(result.getSecond()).isEmpty();
+	}
+	
+	/**
+	 * An in-memory stand-in for the system message database
+	 */
+	private static class FakeSource implements SystemMessageSyncHelper.MessageSource {
+		final List<SyncMessage> messages = new ArrayList<>();
+		long nextID = 1;
+		int threadReads = 0;
+		
+		long addSMS(long threadID, long date, boolean isOutgoing, String text) {
+			long id = nextID++;
+			messages.add(new SyncMessage(id, threadID, false, date, isOutgoing, text));
+			return id;
+		}
+		
+		void remove(long threadID, String text) {
+			messages.removeIf(message -> message.getThreadID() == threadID && message.getText().equals(text));
+		}
+		
+		@Override
+		public Pair<HighWaterMark, HighWaterMark> getHighWaterMarks() {
+			HighWaterMark smsMark = messages.stream().max((a, b) -> Long.compare(a.getId(), b.getId()))
+					.map(message -> new HighWaterMark(message.getId(), message.getDate())).orElse(HighWaterMark.empty);
+			return new Pair<>(smsMark, HighWaterMark.empty);
+		}
+		
+		@Override
+		public Map<Long, ThreadFingerprint> getThreadFingerprints() {
+			Map<Long, ThreadFingerprint> threadMap = new HashMap<>();
+			for(SyncMessage message : messages) {
+				ThreadFingerprint fingerprint = threadMap.get(message.getThreadID());
+				if(fingerprint == null) threadMap.put(message.getThreadID(), new ThreadFingerprint(1, message.getDate()));
+				else threadMap.put(message.getThreadID(), new ThreadFingerprint(fingerprint.getMessageCount() + 1, Math.max(fingerprint.getLatestDate(), message.getDate())));
+			}
+			return threadMap;
+		}
+		
+		@Override
+		public List<SyncMessage> getMessagesAfter(HighWaterMark smsMark, HighWaterMark mmsMark) {
+			return messages.stream().filter(message -> message.getId() > smsMark.getId()).collect(Collectors.toList());
+		}
+		
+		@Override
+		public List<SyncMessage> getThreadMessages(long threadID) {
+			threadReads++;
+			return messages.stream().filter(message -> message.getThreadID() == threadID).collect(Collectors.toList());
+		}
+	}
+	
+	/**
+	 * An in-memory stand-in for AirMessage's database
+	 */
+	private static class FakeTarget implements SystemMessageSyncHelper.MessageTarget {
+		final List<SyncMessage> messages = new ArrayList<>();
+		final List<Long> deletedThreads = new ArrayList<>();
+		long nextID = 1;
+		int addCount = 0;
+		
+		void add(SyncMessage message) {
+			messages.add(new SyncMessage(nextID++, message.getThreadID(), message.isMMS(), message.getDate(), message.isOutgoing(), message.getText(), message.getId(), false));
+		}
+		
+		void addLocal(long threadID, long date, boolean isOutgoing, String text, boolean isUnsent) {
+			messages.add(new SyncMessage(nextID++, threadID, false, date, isOutgoing, text, -1, isUnsent));
+		}
+		
+		void importAll(FakeSource source) {
+			for(SyncMessage message : source.messages) add(message);
+		}
+		
+		List<String> getTexts(long threadID) {
+			return messages.stream().filter(message -> message.getThreadID() == threadID)
+					.sorted((a, b) -> Long.compare(a.getDate(), b.getDate()))
+					.map(SyncMessage::getText).collect(Collectors.toList());
+		}
+		
+		@Override
+		public List<SyncMessage> getLocalMessages(long threadID, long fromDate, long toDate) {
+			return messages.stream().filter(message -> message.getThreadID() == threadID && message.getDate() >= fromDate && message.getDate() <= toDate).collect(Collectors.toList());
+		}
+		
+		@Override
+		public void addMessages(long threadID, List<SyncMessage> messages) {
+			for(SyncMessage message : messages) add(message);
+			addCount += messages.size();
+		}
+		
+		@Override
+		public void deleteMessages(long threadID, List<Long> localIDs) {
+			messages.removeIf(message -> localIDs.contains(message.getId()));
+		}
+		
+		@Override
+		public void deleteThread(long threadID) {
+			messages.removeIf(message -> message.getThreadID() == threadID);
+			deletedThreads.add(threadID);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package me.tagavari.airmessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import me.tagavari.airmessage.data.WriteBehindBuffer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class WriteBehindTest {
+	@Test
+	public void testBurstCoalescing() {
+		TestScheduler scheduler = new TestScheduler();
+		List<Map<Long, Integer>> batches = new ArrayList<>();
+		WriteBehindBuffer<Long, Integer> buffer = new WriteBehindBuffer<>(500, scheduler, (pending, update) -> update, batch -> batches.add(new HashMap<>(batch)));
+
+		//Simulating a burst of 100 updates across 5 records
+		for(int i = 0; i < 100; i++) {
+			buffer.put((long) (i % 5), i);
+			scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		}
+
+		//Nothing should be written before the delay elapses
+		assertThat(batches).isEmpty();
+		assertThat(buffer.hasPending()).isTrue();
+
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+
+		//All updates should be written in one batch, with only the latest value for each record
+		assertThat(batches).hasSize(1);
+		assertThat(batches.get(0)).containsExactly(0L, 95, 1L, 96, 2L, 97, 3L, 98, 4L, 99);
+		assertThat(buffer.hasPending()).isFalse();
+	}
+
+	@Test
+	public void testFlush() {
+		TestScheduler scheduler = new TestScheduler();
+		List<Map<Long, Integer>> batches = new ArrayList<>();
+		WriteBehindBuffer<Long, Integer> buffer = new WriteBehindBuffer<>(500, scheduler, (pending, update) -> update, batch -> batches.add(new HashMap<>(batch)));
+
+		buffer.put(1L, 1);
+		buffer.put(1L, 2);
+		assertThat(buffer.getPending(1L)).isEqualTo(2);
+
+		//Flushing should write immediately
+		buffer.flush();
+		assertThat(batches).hasSize(1);
+		assertThat(batches.get(0)).containsExactly(1L, 2);
+
+		//The scheduled flush should have nothing left to write
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		assertThat(batches).hasSize(1);
+
+		//Updates after a flush should start a new batch
+		buffer.put(2L, 3);
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		assertThat(batches).hasSize(2);
+		assertThat(batches.get(1)).containsExactly(2L, 3);
+	}
+
+	@Test
+	public void testMerge() {
+		TestScheduler scheduler = new TestScheduler();
+		List<Map<Long, int[]>> batches = new ArrayList<>();
+		WriteBehindBuffer<Long, int[]> buffer = new WriteBehindBuffer<>(500, scheduler,
+				(pending, update) -> update[1] == -1 ? new int[]{update[0], pending[1]} : update,
+				batch -> batches.add(new HashMap<>(batch)));
+
+		//A newer update without a secondary value should keep the pending one
+		buffer.put(1L, new int[]{1, 100});
+		buffer.put(1L, new int[]{2, -1});
+		buffer.flush();
+
+		assertThat(batches).hasSize(1);
+		assertThat(batches.get(0).get(1L)).asList().containsExactly(2, 100).inOrder();
+	}
+}